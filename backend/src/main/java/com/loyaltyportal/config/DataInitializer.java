@@ -22,15 +22,18 @@ public class DataInitializer implements CommandLineRunner {
     private final AccountManagerRepository accountManagerRepository;
     private final ProductRepository productRepository;
     private final InventoryRepository inventoryRepository;
+    private final CompanyPointsSummaryRepository summaryRepository;
 
     public DataInitializer(CompanyRepository companyRepository,
                           AccountManagerRepository accountManagerRepository,
                           ProductRepository productRepository,
-                          InventoryRepository inventoryRepository) {
+                          InventoryRepository inventoryRepository,
+                          CompanyPointsSummaryRepository summaryRepository) {
         this.companyRepository = companyRepository;
         this.accountManagerRepository = accountManagerRepository;
         this.productRepository = productRepository;
         this.inventoryRepository = inventoryRepository;
+        this.summaryRepository = summaryRepository;
     }
 
     @Override
@@ -176,7 +179,10 @@ public class DataInitializer implements CommandLineRunner {
         company.setActive(true);
         company.setCreatedAt(LocalDateTime.now());
         company.setUpdatedAt(LocalDateTime.now());
-        return companyRepository.save(company);
+        company = companyRepository.save(company);
+        // Created with the company, so its first orders never race to create it
+        summaryRepository.save(new CompanyPointsSummary(company.getId()));
+        return company;
     }
 
     private AccountManager createAccountManager(String firstName, String lastName, String email, Company company) {
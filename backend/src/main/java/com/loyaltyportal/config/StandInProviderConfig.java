@@ -0,0 +1,29 @@
+package com.loyaltyportal.config;
+
+import com.loyaltyportal.service.mock.standin.FaultProfile;
+import com.loyaltyportal.service.mock.standin.StandInProviderServer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+
+/**
+ * Starts the HTTP stand-in provider inside the application (profile {@code standin}),
+ * so the real clients can be load tested without the external APIs.
+ */
+@Configuration
+@ConditionalOnProperty(name = "loyalty.standin.enabled", havingValue = "true")
+public class StandInProviderConfig {
+
+    @Bean(destroyMethod = "stop")
+    public StandInProviderServer standInProviderServer(
+            @Value("${loyalty.standin.port:9090}") int port,
+            @Value("${loyalty.standin.profile:realistic}") String profile) throws IOException {
+        StandInProviderServer server = new StandInProviderServer(port);
+        server.setDefaultProfile(FaultProfile.preset(profile));
+        server.start();
+        return server;
+    }
+}
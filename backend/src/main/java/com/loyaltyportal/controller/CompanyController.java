@@ -1,7 +1,9 @@
 package com.loyaltyportal.controller;
 
 import com.loyaltyportal.entity.Company;
+import com.loyaltyportal.entity.CompanyPointsSummary;
 import com.loyaltyportal.repository.CompanyRepository;
+import com.loyaltyportal.service.CompanyPointsSummaryService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -18,10 +20,12 @@ import java.util.UUID;
 public class CompanyController {
 
     private final CompanyRepository companyRepository;
+    private final CompanyPointsSummaryService summaryService;
 
     @Autowired
-    public CompanyController(CompanyRepository companyRepository) {
+    public CompanyController(CompanyRepository companyRepository, CompanyPointsSummaryService summaryService) {
         this.companyRepository = companyRepository;
+        this.summaryService = summaryService;
     }
 
     @GetMapping
@@ -52,6 +56,16 @@ public class CompanyController {
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    @GetMapping("/{id}/summary")
+    @Operation(summary = "Get company points summary",
+               description = "Points debited, refunded and ordered by status, maintained as orders and transactions change")
+    public ResponseEntity<CompanyPointsSummary> getCompanySummary(
+            @Parameter(description = "Company ID") @PathVariable UUID id) {
+        return summaryService.getSummary(id)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
     @GetMapping("/loyalty-account/{loyaltyAccountId}")
     @Operation(summary = "Get company by loyalty account ID", 
                description = "Retrieve a company by its loyalty account ID")
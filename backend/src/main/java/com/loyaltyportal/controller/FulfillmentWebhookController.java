@@ -0,0 +1,70 @@
+package com.loyaltyportal.controller;
+
+import com.loyaltyportal.dto.FulfillmentCallback;
+import com.loyaltyportal.service.FulfillmentWebhookProcessor;
+import com.loyaltyportal.service.FulfillmentWebhookProcessor.Outcome;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.*;
+
+import javax.validation.ConstraintViolationException;
+import javax.validation.Valid;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@RestController
+@Validated
+@RequestMapping("/webhooks/fulfillment")
+@Tag(name = "Webhooks", description = "Callbacks from fulfillment providers")
+public class FulfillmentWebhookController {
+
+    private final FulfillmentWebhookProcessor webhookProcessor;
+
+    @Autowired
+    public FulfillmentWebhookController(FulfillmentWebhookProcessor webhookProcessor) {
+        this.webhookProcessor = webhookProcessor;
+    }
+
+    @PostMapping
+    @Operation(summary = "Receive fulfillment callback",
+               description = "Record a status update from the virtual fulfillment provider")
+    public ResponseEntity<Map<String, Object>> receiveCallback(@Valid @RequestBody FulfillmentCallback callback) {
+        return respond(webhookProcessor.accept(List.of(callback)));
+    }
+
+    @PostMapping("/batch")
+    @Operation(summary = "Receive fulfillment callbacks in bulk",
+               description = "Record several status updates; either all are recorded or none are")
+    public ResponseEntity<Map<String, Object>> receiveCallbacks(
+            @Valid @RequestBody List<@Valid FulfillmentCallback> callbacks) {
+        return respond(webhookProcessor.accept(callbacks));
+    }
+
+    @ExceptionHandler(ConstraintViolationException.class)
+    public ResponseEntity<Map<String, Object>> invalidCallbacks(ConstraintViolationException e) {
+        List<String> errors = e.getConstraintViolations().stream()
+                .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                .toList();
+        return ResponseEntity.badRequest().body(Map.of("status", "invalid", "errors", errors));
+    }
+
+    private ResponseEntity<Map<String, Object>> respond(List<Outcome> outcomes) {
+        Map<String, Long> counts = outcomes.stream()
+                .collect(Collectors.groupingBy(outcome -> outcome.name().toLowerCase(), Collectors.counting()));
+
+        if (outcomes.contains(Outcome.REJECTED)) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(
+                            Math.max(1, webhookProcessor.getRetryAfter().toSeconds())))
+                    .body(Map.of("status", "busy", "outcomes", counts));
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .body(Map.of("status", "accepted", "outcomes", counts));
+    }
+}
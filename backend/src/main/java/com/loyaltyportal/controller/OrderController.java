@@ -1,9 +1,14 @@
 package com.loyaltyportal.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.loyaltyportal.entity.OrderStatus;
 import com.loyaltyportal.entity.RedemptionOrder;
 import com.loyaltyportal.repository.RedemptionOrderRepository;
 import com.loyaltyportal.service.OrderWorkflowService;
+import com.loyaltyportal.service.ShipmentIngestionService;
+import com.loyaltyportal.service.ShipmentIngestionService.IngestionSummary;
+import com.loyaltyportal.service.ShipmentIngestionService.RowResult;
+import com.loyaltyportal.service.StatusStatistics;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -17,8 +22,15 @@ import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 @RestController
@@ -30,11 +42,19 @@ public class OrderController {
 
     private final RedemptionOrderRepository orderRepository;
     private final OrderWorkflowService workflowService;
+    private final ShipmentIngestionService shipmentIngestionService;
+    private final StatusStatistics statusStatistics;
+    private final ObjectMapper objectMapper;
 
     @Autowired
-    public OrderController(RedemptionOrderRepository orderRepository, OrderWorkflowService workflowService) {
+    public OrderController(RedemptionOrderRepository orderRepository, OrderWorkflowService workflowService,
+                           ShipmentIngestionService shipmentIngestionService, StatusStatistics statusStatistics,
+                           ObjectMapper objectMapper) {
         this.orderRepository = orderRepository;
         this.workflowService = workflowService;
+        this.shipmentIngestionService = shipmentIngestionService;
+        this.statusStatistics = statusStatistics;
+        this.objectMapper = objectMapper;
     }
 
     @GetMapping("/{orderId}")
@@ -136,6 +156,35 @@ public class OrderController {
         }
     }
 
+    @PostMapping(value = "/shipments/bulk", consumes = {"text/csv", "application/x-ndjson"})
+    @Operation(summary = "Apply a shipment manifest",
+               description = "Mark many physical items as shipped or delivered from a carrier manifest (CSV with a " +
+                       "header row, or NDJSON). Rows are identified by item_id or by order_number and sku. The " +
+                       "result is streamed back as NDJSON, one line per row and a final summary line.")
+    public void ingestShipments(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        ShipmentIngestionService.Format format = request.getContentType().startsWith("text/csv")
+                ? ShipmentIngestionService.Format.CSV
+                : ShipmentIngestionService.Format.NDJSON;
+
+        response.setContentType("application/x-ndjson");
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        PrintWriter writer = response.getWriter();
+
+        IngestionSummary summary = shipmentIngestionService.ingest(request.getInputStream(), format, results -> {
+            try {
+                for (RowResult result : results) {
+                    writer.println(objectMapper.writeValueAsString(result));
+                }
+                response.flushBuffer();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        writer.println(objectMapper.writeValueAsString(Map.of("summary", summary)));
+        writer.flush();
+    }
+
     @GetMapping("/processing/physical")
     @Operation(summary = "Get orders with physical items", 
                description = "Retrieve orders that are processing and contain physical items")
@@ -155,16 +204,15 @@ public class OrderController {
     @GetMapping("/statistics")
     @Operation(summary = "Get order statistics", description = "Retrieve order statistics and counts")
     public ResponseEntity<OrderStatistics> getOrderStatistics() {
-        long totalOrders = orderRepository.count();
-        long pendingOrders = orderRepository.countOrdersByStatus(OrderStatus.PENDING);
-        long processingOrders = orderRepository.countOrdersByStatus(OrderStatus.PROCESSING);
-        long completedOrders = orderRepository.countOrdersByStatus(OrderStatus.COMPLETED);
-        long cancelledOrders = orderRepository.countOrdersByStatus(OrderStatus.CANCELLED);
-        long failedOrders = orderRepository.countOrdersByStatus(OrderStatus.FAILED);
-        
+        // Served from counts refreshed every few seconds, not counted per request
+        StatusStatistics.Snapshot counts = statusStatistics.current();
         OrderStatistics stats = new OrderStatistics(
-                totalOrders, pendingOrders, processingOrders, 
-                completedOrders, cancelledOrders, failedOrders
+                counts.getTotalOrders(),
+                counts.orders(OrderStatus.PENDING),
+                counts.orders(OrderStatus.PROCESSING),
+                counts.orders(OrderStatus.COMPLETED),
+                counts.orders(OrderStatus.CANCELLED),
+                counts.orders(OrderStatus.FAILED)
         );
         
         return ResponseEntity.ok(stats);
@@ -0,0 +1,75 @@
+package com.loyaltyportal.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.loyaltyportal.service.PickListService;
+import com.loyaltyportal.service.PickListService.PickStop;
+import com.loyaltyportal.service.PickListService.PickWave;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+@RestController
+@RequestMapping("/pick-lists")
+@Tag(name = "Pick Lists", description = "Warehouse pick waves for physical fulfillment")
+public class PickListController {
+
+    private static final Logger logger = LoggerFactory.getLogger(PickListController.class);
+
+    private final PickListService pickListService;
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public PickListController(PickListService pickListService, ObjectMapper objectMapper) {
+        this.pickListService = pickListService;
+        this.objectMapper = objectMapper;
+    }
+
+    @GetMapping("/waves")
+    @Operation(summary = "Get next pick wave",
+               description = "Physical items awaiting fulfillment, grouped into stops by bin location and SKU. " +
+                       "Pass the returned nextCursor to get the following wave; it is null once the backlog is covered.")
+    public void getPickWave(
+            @Parameter(description = "Cursor from the previous wave") @RequestParam(required = false) String cursor,
+            @Parameter(description = "Maximum items in the wave") @RequestParam(required = false) Integer size,
+            HttpServletResponse response) throws IOException {
+
+        PickWave wave;
+        try {
+            wave = pickListService.buildWave(cursor, size);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Rejected pick wave request: {}", e.getMessage());
+            response.sendError(HttpStatus.BAD_REQUEST.value(), e.getMessage());
+            return;
+        }
+
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        // Stops are written one at a time, so the document is never held as one string
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            generator.writeStartObject();
+            generator.writeStringField("cursor", wave.getCursor());
+            generator.writeStringField("nextCursor", wave.getNextCursor());
+            generator.writeNumberField("itemCount", wave.getItemCount());
+            generator.writeNumberField("orderCount", wave.getOrderNumbers().size());
+            generator.writeFieldName("generatedAt");
+            objectMapper.writeValue(generator, wave.getGeneratedAt());
+            generator.writeArrayFieldStart("stops");
+            for (PickStop stop : wave.getStops()) {
+                objectMapper.writeValue(generator, stop);
+            }
+            generator.writeEndArray();
+            generator.writeFieldName("orderNumbers");
+            objectMapper.writeValue(generator, wave.getOrderNumbers());
+            generator.writeEndObject();
+        }
+    }
+}
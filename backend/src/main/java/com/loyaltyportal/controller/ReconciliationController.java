@@ -0,0 +1,64 @@
+package com.loyaltyportal.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.loyaltyportal.service.ReconciliationService;
+import com.loyaltyportal.service.ReconciliationService.Summary;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.web.bind.annotation.*;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/reconciliation")
+@Tag(name = "Reconciliation", description = "Ledger reconciliation against the loyalty provider")
+public class ReconciliationController {
+
+    private final ReconciliationService reconciliationService;
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public ReconciliationController(ReconciliationService reconciliationService, ObjectMapper objectMapper) {
+        this.reconciliationService = reconciliationService;
+        this.objectMapper = objectMapper;
+    }
+
+    @PostMapping("/runs")
+    @Operation(summary = "Reconcile a time range",
+               description = "Compare completed transactions processed in [from, to) with the provider's statement. " +
+                       "Mismatches are streamed back as NDJSON as they are found, followed by a summary line. " +
+                       "With enqueueRetries, transactions missing at the provider are sent again.")
+    public void reconcile(
+            @Parameter(description = "Start of the range (inclusive)")
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @Parameter(description = "End of the range (exclusive)")
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @Parameter(description = "Reopen transactions missing at the provider for retry")
+            @RequestParam(defaultValue = "false") boolean enqueueRetries,
+            HttpServletResponse response) throws IOException {
+        response.setContentType("application/x-ndjson");
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        PrintWriter writer = response.getWriter();
+
+        Summary summary = reconciliationService.reconcile(from, to, enqueueRetries, mismatch -> {
+            try {
+                writer.println(objectMapper.writeValueAsString(mismatch));
+                response.flushBuffer();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        writer.println(objectMapper.writeValueAsString(Map.of("summary", summary)));
+        writer.flush();
+    }
+}
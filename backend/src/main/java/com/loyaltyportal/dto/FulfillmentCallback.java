@@ -0,0 +1,102 @@
+package com.loyaltyportal.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.validation.constraints.NotBlank;
+import java.time.LocalDateTime;
+
+/**
+ * Status callback sent by the virtual fulfillment provider
+ */
+public class FulfillmentCallback {
+
+    @NotBlank(message = "Fulfillment ID is required")
+    @JsonProperty("fulfillmentId")
+    private String fulfillmentId;
+
+    @NotBlank(message = "Reference ID is required")
+    @JsonProperty("referenceId")
+    private String referenceId;
+
+    @NotBlank(message = "Status is required")
+    @JsonProperty("status")
+    private String status;
+
+    @JsonProperty("message")
+    private String message;
+
+    @JsonProperty("occurredAt")
+    private LocalDateTime occurredAt;
+
+    // Default constructor for Jackson
+    public FulfillmentCallback() {}
+
+    public FulfillmentCallback(String fulfillmentId, String referenceId, String status, String message) {
+        this.fulfillmentId = fulfillmentId;
+        this.referenceId = referenceId;
+        this.status = status;
+        this.message = message;
+    }
+
+    public boolean isFailure() {
+        return "FAILED".equalsIgnoreCase(status) || "REJECTED".equalsIgnoreCase(status);
+    }
+
+    /**
+     * Delivered or fulfilled; intermediate statuses such as PROCESSING are ignored
+     */
+    public boolean isSuccess() {
+        return "SUCCESS".equalsIgnoreCase(status) || "COMPLETED".equalsIgnoreCase(status)
+                || "DELIVERED".equalsIgnoreCase(status) || "FULFILLED".equalsIgnoreCase(status);
+    }
+
+    // Getters and Setters
+    public String getFulfillmentId() {
+        return fulfillmentId;
+    }
+
+    public void setFulfillmentId(String fulfillmentId) {
+        this.fulfillmentId = fulfillmentId;
+    }
+
+    public String getReferenceId() {
+        return referenceId;
+    }
+
+    public void setReferenceId(String referenceId) {
+        this.referenceId = referenceId;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public LocalDateTime getOccurredAt() {
+        return occurredAt;
+    }
+
+    public void setOccurredAt(LocalDateTime occurredAt) {
+        this.occurredAt = occurredAt;
+    }
+
+    @Override
+    public String toString() {
+        return "FulfillmentCallback{" +
+                "fulfillmentId='" + fulfillmentId + '\'' +
+                ", referenceId='" + referenceId + '\'' +
+                ", status='" + status + '\'' +
+                '}';
+    }
+}
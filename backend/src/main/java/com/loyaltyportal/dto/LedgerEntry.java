@@ -0,0 +1,37 @@
+package com.loyaltyportal.dto;
+
+import com.loyaltyportal.entity.TransactionType;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * One completed loyalty transaction, as read by the reconciliation projection query
+ */
+public class LedgerEntry {
+
+    private final UUID transactionId;
+    private final String externalTransactionId;
+    private final TransactionType type;
+    private final Integer points;
+    private final String accountId;
+    private final LocalDateTime processedAt;
+
+    public LedgerEntry(UUID transactionId, String externalTransactionId, TransactionType type,
+                       Integer points, String accountId, LocalDateTime processedAt) {
+        this.transactionId = transactionId;
+        this.externalTransactionId = externalTransactionId;
+        this.type = type;
+        this.points = points;
+        this.accountId = accountId;
+        this.processedAt = processedAt;
+    }
+
+    // Getters
+    public UUID getTransactionId() { return transactionId; }
+    public String getExternalTransactionId() { return externalTransactionId; }
+    public TransactionType getType() { return type; }
+    public Integer getPoints() { return points; }
+    public String getAccountId() { return accountId; }
+    public LocalDateTime getProcessedAt() { return processedAt; }
+}
@@ -0,0 +1,41 @@
+package com.loyaltyportal.dto;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * One physical order item awaiting picking, as read by the pick-list projection query
+ */
+public class PickLine {
+
+    private final UUID itemId;
+    private final LocalDateTime createdAt;
+    private final UUID orderId;
+    private final String orderNumber;
+    private final String sku;
+    private final String productName;
+    private final String binLocation;
+    private final Integer quantity;
+
+    public PickLine(UUID itemId, LocalDateTime createdAt, UUID orderId, String orderNumber,
+                    String sku, String productName, String binLocation, Integer quantity) {
+        this.itemId = itemId;
+        this.createdAt = createdAt;
+        this.orderId = orderId;
+        this.orderNumber = orderNumber;
+        this.sku = sku;
+        this.productName = productName;
+        this.binLocation = binLocation;
+        this.quantity = quantity;
+    }
+
+    // Getters
+    public UUID getItemId() { return itemId; }
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public UUID getOrderId() { return orderId; }
+    public String getOrderNumber() { return orderNumber; }
+    public String getSku() { return sku; }
+    public String getProductName() { return productName; }
+    public String getBinLocation() { return binLocation; }
+    public Integer getQuantity() { return quantity; }
+}
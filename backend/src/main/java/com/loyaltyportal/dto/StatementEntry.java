@@ -0,0 +1,92 @@
+package com.loyaltyportal.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.LocalDateTime;
+
+/**
+ * One applied transaction on the provider's statement
+ */
+public class StatementEntry {
+
+    @JsonProperty("transaction_id")
+    private String transactionId;
+
+    @JsonProperty("account_id")
+    private String accountId;
+
+    /** DEBIT or CREDIT; our refunds are credits on the provider's side */
+    @JsonProperty("type")
+    private String type;
+
+    @JsonProperty("points")
+    private Integer points;
+
+    @JsonProperty("reference")
+    private String reference;
+
+    @JsonProperty("processed_at")
+    private LocalDateTime processedAt;
+
+    // Default constructor for Jackson
+    public StatementEntry() {}
+
+    public StatementEntry(String transactionId, String accountId, String type, Integer points,
+                          String reference, LocalDateTime processedAt) {
+        this.transactionId = transactionId;
+        this.accountId = accountId;
+        this.type = type;
+        this.points = points;
+        this.reference = reference;
+        this.processedAt = processedAt;
+    }
+
+    // Getters and Setters
+    public String getTransactionId() {
+        return transactionId;
+    }
+
+    public void setTransactionId(String transactionId) {
+        this.transactionId = transactionId;
+    }
+
+    public String getAccountId() {
+        return accountId;
+    }
+
+    public void setAccountId(String accountId) {
+        this.accountId = accountId;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public Integer getPoints() {
+        return points;
+    }
+
+    public void setPoints(Integer points) {
+        this.points = points;
+    }
+
+    public String getReference() {
+        return reference;
+    }
+
+    public void setReference(String reference) {
+        this.reference = reference;
+    }
+
+    public LocalDateTime getProcessedAt() {
+        return processedAt;
+    }
+
+    public void setProcessedAt(LocalDateTime processedAt) {
+        this.processedAt = processedAt;
+    }
+}
@@ -0,0 +1,44 @@
+package com.loyaltyportal.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A page of the provider's statement, ordered by transaction ID
+ */
+public class StatementPage {
+
+    @JsonProperty("entries")
+    private List<StatementEntry> entries = new ArrayList<>();
+
+    /** Transaction ID to continue after, or null on the last page */
+    @JsonProperty("next_cursor")
+    private String nextCursor;
+
+    // Default constructor for Jackson
+    public StatementPage() {}
+
+    public StatementPage(List<StatementEntry> entries, String nextCursor) {
+        this.entries = entries;
+        this.nextCursor = nextCursor;
+    }
+
+    // Getters and Setters
+    public List<StatementEntry> getEntries() {
+        return entries;
+    }
+
+    public void setEntries(List<StatementEntry> entries) {
+        this.entries = entries;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
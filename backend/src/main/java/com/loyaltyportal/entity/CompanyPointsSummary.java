@@ -0,0 +1,210 @@
+package com.loyaltyportal.entity;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Running points totals for one company, kept up to date in the same transaction as
+ * each completed loyalty transaction and order status change, so reading them does
+ * not re-aggregate the company's history.
+ */
+@Entity
+@Table(name = "company_points_summary")
+public class CompanyPointsSummary {
+
+    @Id
+    @Column(name = "company_id", columnDefinition = "uuid")
+    private UUID companyId;
+
+    /** Completed DEBIT transactions */
+    @Column(name = "points_debited", nullable = false)
+    private long pointsDebited;
+
+    /** Completed CREDIT transactions */
+    @Column(name = "points_credited", nullable = false)
+    private long pointsCredited;
+
+    /** Completed REFUND transactions */
+    @Column(name = "points_refunded", nullable = false)
+    private long pointsRefunded;
+
+    @Column(name = "order_count", nullable = false)
+    private long orderCount;
+
+    /** Points of all orders, whatever their status */
+    @Column(name = "points_ordered", nullable = false)
+    private long pointsOrdered;
+
+    @Column(name = "pending_order_points", nullable = false)
+    private long pendingOrderPoints;
+
+    @Column(name = "processing_order_points", nullable = false)
+    private long processingOrderPoints;
+
+    @Column(name = "completed_order_points", nullable = false)
+    private long completedOrderPoints;
+
+    @Column(name = "cancelled_order_points", nullable = false)
+    private long cancelledOrderPoints;
+
+    @Column(name = "failed_order_points", nullable = false)
+    private long failedOrderPoints;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @Column(name = "rebuilt_at")
+    private LocalDateTime rebuiltAt;
+
+    @PrePersist
+    @PreUpdate
+    protected void updateTimestamp() {
+        updatedAt = LocalDateTime.now();
+    }
+
+    // Constructors
+    public CompanyPointsSummary() {}
+
+    public CompanyPointsSummary(UUID companyId) {
+        this.companyId = companyId;
+    }
+
+    // Business methods
+    public void addCompletedTransaction(TransactionType type, long points) {
+        switch (type) {
+            case DEBIT -> pointsDebited += points;
+            case CREDIT -> pointsCredited += points;
+            case REFUND -> pointsRefunded += points;
+        }
+    }
+
+    public void addOrder(OrderStatus status, long points) {
+        addOrders(status, 1, points);
+    }
+
+    public void addOrders(OrderStatus status, long count, long points) {
+        orderCount += count;
+        pointsOrdered += points;
+        addOrderPoints(status, points);
+    }
+
+    public void moveOrder(OrderStatus from, OrderStatus to, long points) {
+        if (from == to) {
+            return;
+        }
+        addOrderPoints(from, -points);
+        addOrderPoints(to, points);
+    }
+
+    public long getOrderPoints(OrderStatus status) {
+        return switch (status) {
+            case PENDING -> pendingOrderPoints;
+            case PROCESSING -> processingOrderPoints;
+            case COMPLETED -> completedOrderPoints;
+            case CANCELLED -> cancelledOrderPoints;
+            case FAILED -> failedOrderPoints;
+        };
+    }
+
+    /**
+     * Net points taken from the company's loyalty account
+     */
+    public long getNetPointsUsed() {
+        return pointsDebited - pointsRefunded - pointsCredited;
+    }
+
+    /**
+     * Copy the totals of a freshly computed summary; returns whether any differed
+     */
+    public boolean replaceTotals(CompanyPointsSummary computed) {
+        boolean drifted = pointsDebited != computed.pointsDebited
+                || pointsCredited != computed.pointsCredited
+                || pointsRefunded != computed.pointsRefunded
+                || orderCount != computed.orderCount
+                || pointsOrdered != computed.pointsOrdered
+                || pendingOrderPoints != computed.pendingOrderPoints
+                || processingOrderPoints != computed.processingOrderPoints
+                || completedOrderPoints != computed.completedOrderPoints
+                || cancelledOrderPoints != computed.cancelledOrderPoints
+                || failedOrderPoints != computed.failedOrderPoints;
+        pointsDebited = computed.pointsDebited;
+        pointsCredited = computed.pointsCredited;
+        pointsRefunded = computed.pointsRefunded;
+        orderCount = computed.orderCount;
+        pointsOrdered = computed.pointsOrdered;
+        pendingOrderPoints = computed.pendingOrderPoints;
+        processingOrderPoints = computed.processingOrderPoints;
+        completedOrderPoints = computed.completedOrderPoints;
+        cancelledOrderPoints = computed.cancelledOrderPoints;
+        failedOrderPoints = computed.failedOrderPoints;
+        rebuiltAt = LocalDateTime.now();
+        return drifted;
+    }
+
+    private void addOrderPoints(OrderStatus status, long points) {
+        if (status == null) {
+            return;
+        }
+        switch (status) {
+            case PENDING -> pendingOrderPoints += points;
+            case PROCESSING -> processingOrderPoints += points;
+            case COMPLETED -> completedOrderPoints += points;
+            case CANCELLED -> cancelledOrderPoints += points;
+            case FAILED -> failedOrderPoints += points;
+        }
+    }
+
+    // Getters and Setters
+    public UUID getCompanyId() {
+        return companyId;
+    }
+
+    public long getPointsDebited() {
+        return pointsDebited;
+    }
+
+    public long getPointsCredited() {
+        return pointsCredited;
+    }
+
+    public long getPointsRefunded() {
+        return pointsRefunded;
+    }
+
+    public long getOrderCount() {
+        return orderCount;
+    }
+
+    public long getPointsOrdered() {
+        return pointsOrdered;
+    }
+
+    public long getPendingOrderPoints() {
+        return pendingOrderPoints;
+    }
+
+    public long getProcessingOrderPoints() {
+        return processingOrderPoints;
+    }
+
+    public long getCompletedOrderPoints() {
+        return completedOrderPoints;
+    }
+
+    public long getCancelledOrderPoints() {
+        return cancelledOrderPoints;
+    }
+
+    public long getFailedOrderPoints() {
+        return failedOrderPoints;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public LocalDateTime getRebuiltAt() {
+        return rebuiltAt;
+    }
+}
@@ -0,0 +1,182 @@
+package com.loyaltyportal.entity;
+
+import org.hibernate.annotations.GenericGenerator;
+
+import javax.persistence.*;
+import javax.validation.constraints.NotNull;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * A fulfillment provider callback that has been acknowledged but perhaps not yet
+ * applied. Written before the webhook answers, so a callback the provider considers
+ * delivered survives a crash or a shutdown with work still queued. The fulfillment id
+ * is unique, which makes the table the lasting record for deduplication.
+ */
+@Entity
+@Table(name = "fulfillment_inbox")
+public class FulfillmentInboxEntry {
+
+    @Id
+    @GeneratedValue(generator = "uuid")
+    @GenericGenerator(name = "uuid", strategy = "uuid2")
+    @Column(columnDefinition = "uuid")
+    private UUID id;
+
+    @NotNull(message = "Fulfillment ID is required")
+    @Column(name = "fulfillment_id", nullable = false, unique = true, length = 100)
+    private String fulfillmentId;
+
+    @NotNull(message = "Reference is required")
+    @Column(name = "reference_id", nullable = false, length = 100)
+    private String referenceId;
+
+    @NotNull(message = "Callback status is required")
+    @Column(name = "callback_status", nullable = false, length = 20)
+    private String callbackStatus;
+
+    @Column(name = "message", columnDefinition = "TEXT")
+    private String message;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", length = 20, nullable = false)
+    private OutboxStatus status = OutboxStatus.PENDING;
+
+    @Column(name = "attempts", nullable = false)
+    private Integer attempts = 0;
+
+    @Column(name = "last_error", columnDefinition = "TEXT")
+    private String lastError;
+
+    @Column(name = "processed_at")
+    private LocalDateTime processedAt;
+
+    @Column(name = "received_at", nullable = false)
+    private LocalDateTime receivedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        if (receivedAt == null) {
+            receivedAt = LocalDateTime.now();
+        }
+    }
+
+    // Business methods
+    public void markAsApplied() {
+        this.status = OutboxStatus.COMPLETED;
+        this.processedAt = LocalDateTime.now();
+        this.lastError = null;
+    }
+
+    public void recordFailedAttempt(String error) {
+        this.attempts = attempts + 1;
+        this.lastError = error;
+    }
+
+    public void markAsFailed(String error) {
+        this.status = OutboxStatus.FAILED;
+        this.lastError = error;
+        this.processedAt = LocalDateTime.now();
+    }
+
+    // Constructors
+    public FulfillmentInboxEntry() {}
+
+    public FulfillmentInboxEntry(String fulfillmentId, String referenceId, String callbackStatus, String message) {
+        this.fulfillmentId = fulfillmentId;
+        this.referenceId = referenceId;
+        this.callbackStatus = callbackStatus;
+        this.message = message;
+    }
+
+    // Getters and Setters
+    public UUID getId() {
+        return id;
+    }
+
+    public void setId(UUID id) {
+        this.id = id;
+    }
+
+    public String getFulfillmentId() {
+        return fulfillmentId;
+    }
+
+    public void setFulfillmentId(String fulfillmentId) {
+        this.fulfillmentId = fulfillmentId;
+    }
+
+    public String getReferenceId() {
+        return referenceId;
+    }
+
+    public void setReferenceId(String referenceId) {
+        this.referenceId = referenceId;
+    }
+
+    public String getCallbackStatus() {
+        return callbackStatus;
+    }
+
+    public void setCallbackStatus(String callbackStatus) {
+        this.callbackStatus = callbackStatus;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public OutboxStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(OutboxStatus status) {
+        this.status = status;
+    }
+
+    public Integer getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(Integer attempts) {
+        this.attempts = attempts;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+
+    public LocalDateTime getProcessedAt() {
+        return processedAt;
+    }
+
+    public void setProcessedAt(LocalDateTime processedAt) {
+        this.processedAt = processedAt;
+    }
+
+    public LocalDateTime getReceivedAt() {
+        return receivedAt;
+    }
+
+    public void setReceivedAt(LocalDateTime receivedAt) {
+        this.receivedAt = receivedAt;
+    }
+
+    @Override
+    public String toString() {
+        return "FulfillmentInboxEntry{" +
+                "fulfillmentId='" + fulfillmentId + '\'' +
+                ", referenceId='" + referenceId + '\'' +
+                ", callbackStatus='" + callbackStatus + '\'' +
+                ", status=" + status +
+                '}';
+    }
+}
@@ -0,0 +1,267 @@
+package com.loyaltyportal.entity;
+
+import org.hibernate.annotations.GenericGenerator;
+
+import javax.persistence.*;
+import javax.validation.constraints.NotNull;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * A virtual fulfillment waiting to be sent to the provider. Written in the same
+ * transaction that puts the order item into PROCESSING, so a fulfillment is never
+ * lost between the order commit and the provider call. The request payload is
+ * copied in so the dispatcher does not need to load the order graph.
+ */
+@Entity
+@Table(name = "fulfillment_outbox")
+public class FulfillmentOutboxEntry {
+
+    @Id
+    @GeneratedValue(generator = "uuid")
+    @GenericGenerator(name = "uuid", strategy = "uuid2")
+    @Column(columnDefinition = "uuid")
+    private UUID id;
+
+    @NotNull(message = "Order item is required")
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "order_item_id", nullable = false)
+    private OrderItem orderItem;
+
+    @NotNull(message = "Reference is required")
+    @Column(name = "reference_id", nullable = false, length = 100)
+    private String referenceId;
+
+    @NotNull(message = "Product SKU is required")
+    @Column(name = "product_sku", nullable = false, length = 100)
+    private String productSku;
+
+    @NotNull(message = "Quantity is required")
+    @Column(name = "quantity", nullable = false)
+    private Integer quantity;
+
+    @Column(name = "customer_email")
+    private String customerEmail;
+
+    @Column(name = "customer_name")
+    private String customerName;
+
+    @Column(name = "company_name")
+    private String companyName;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", length = 20, nullable = false)
+    private OutboxStatus status = OutboxStatus.PENDING;
+
+    @Column(name = "attempts", nullable = false)
+    private Integer attempts = 0;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "claimed_at")
+    private LocalDateTime claimedAt;
+
+    @Column(name = "last_error", columnDefinition = "TEXT")
+    private String lastError;
+
+    @Column(name = "fulfillment_id", length = 100)
+    private String fulfillmentId;
+
+    @Column(name = "processed_at")
+    private LocalDateTime processedAt;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now();
+        }
+        if (nextAttemptAt == null) {
+            nextAttemptAt = createdAt;
+        }
+    }
+
+    // Business methods
+    public void markAsClaimed() {
+        this.status = OutboxStatus.IN_FLIGHT;
+        this.attempts = attempts + 1;
+        this.claimedAt = LocalDateTime.now();
+    }
+
+    public void markAsCompleted(String fulfillmentId) {
+        this.status = OutboxStatus.COMPLETED;
+        this.fulfillmentId = fulfillmentId;
+        this.processedAt = LocalDateTime.now();
+        this.lastError = null;
+    }
+
+    public void scheduleRetry(String error, LocalDateTime nextAttemptAt) {
+        this.status = OutboxStatus.PENDING;
+        this.lastError = error;
+        this.nextAttemptAt = nextAttemptAt;
+        this.claimedAt = null;
+    }
+
+    public void markAsFailed(String error) {
+        this.status = OutboxStatus.FAILED;
+        this.lastError = error;
+        this.processedAt = LocalDateTime.now();
+    }
+
+    // Constructors
+    public FulfillmentOutboxEntry() {}
+
+    public FulfillmentOutboxEntry(OrderItem orderItem, String referenceId, String productSku, Integer quantity,
+                                  String customerEmail, String customerName, String companyName) {
+        this.orderItem = orderItem;
+        this.referenceId = referenceId;
+        this.productSku = productSku;
+        this.quantity = quantity;
+        this.customerEmail = customerEmail;
+        this.customerName = customerName;
+        this.companyName = companyName;
+    }
+
+    // Getters and Setters
+    public UUID getId() {
+        return id;
+    }
+
+    public void setId(UUID id) {
+        this.id = id;
+    }
+
+    public OrderItem getOrderItem() {
+        return orderItem;
+    }
+
+    public void setOrderItem(OrderItem orderItem) {
+        this.orderItem = orderItem;
+    }
+
+    public String getReferenceId() {
+        return referenceId;
+    }
+
+    public void setReferenceId(String referenceId) {
+        this.referenceId = referenceId;
+    }
+
+    public String getProductSku() {
+        return productSku;
+    }
+
+    public void setProductSku(String productSku) {
+        this.productSku = productSku;
+    }
+
+    public Integer getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(Integer quantity) {
+        this.quantity = quantity;
+    }
+
+    public String getCustomerEmail() {
+        return customerEmail;
+    }
+
+    public void setCustomerEmail(String customerEmail) {
+        this.customerEmail = customerEmail;
+    }
+
+    public String getCustomerName() {
+        return customerName;
+    }
+
+    public void setCustomerName(String customerName) {
+        this.customerName = customerName;
+    }
+
+    public String getCompanyName() {
+        return companyName;
+    }
+
+    public void setCompanyName(String companyName) {
+        this.companyName = companyName;
+    }
+
+    public OutboxStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(OutboxStatus status) {
+        this.status = status;
+    }
+
+    public Integer getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(Integer attempts) {
+        this.attempts = attempts;
+    }
+
+    public LocalDateTime getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public void setNextAttemptAt(LocalDateTime nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
+    public LocalDateTime getClaimedAt() {
+        return claimedAt;
+    }
+
+    public void setClaimedAt(LocalDateTime claimedAt) {
+        this.claimedAt = claimedAt;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+
+    public String getFulfillmentId() {
+        return fulfillmentId;
+    }
+
+    public void setFulfillmentId(String fulfillmentId) {
+        this.fulfillmentId = fulfillmentId;
+    }
+
+    public LocalDateTime getProcessedAt() {
+        return processedAt;
+    }
+
+    public void setProcessedAt(LocalDateTime processedAt) {
+        this.processedAt = processedAt;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    @Override
+    public String toString() {
+        return "FulfillmentOutboxEntry{" +
+                "id=" + id +
+                ", referenceId='" + referenceId + '\'' +
+                ", productSku='" + productSku + '\'' +
+                ", status=" + status +
+                ", attempts=" + attempts +
+                '}';
+    }
+}
@@ -39,6 +39,9 @@ public class Inventory {
     @Column(name = "max_quantity")
     private Integer maxQuantity;
 
+    @Column(name = "bin_location", length = 50)
+    private String binLocation;
+
     @Column(name = "last_updated")
     private LocalDateTime lastUpdated;
 
@@ -157,6 +160,14 @@ public class Inventory {
         this.maxQuantity = maxQuantity;
     }
 
+    public String getBinLocation() {
+        return binLocation;
+    }
+
+    public void setBinLocation(String binLocation) {
+        this.binLocation = binLocation;
+    }
+
     public LocalDateTime getLastUpdated() {
         return lastUpdated;
     }
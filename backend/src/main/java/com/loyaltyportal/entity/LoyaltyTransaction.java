@@ -13,7 +13,7 @@ public class LoyaltyTransaction {
 
     @Id
     @GeneratedValue(generator = "uuid")
-    @GenericGenerator(name = "uuid", strategy = "uuid2")
+    @GenericGenerator(name = "uuid", strategy = "com.loyaltyportal.entity.TimeOrderedUuidGenerator")
     @Column(columnDefinition = "uuid")
     private UUID id;
 
@@ -52,6 +52,13 @@ public class LoyaltyTransaction {
     @Column(name = "processed_at")
     private LocalDateTime processedAt;
 
+    /**
+     * When the retry engine should next try this transaction; null once it is
+     * completed or has run out of retries
+     */
+    @Column(name = "next_attempt_at")
+    private LocalDateTime nextAttemptAt;
+
     @Column(name = "created_at")
     private LocalDateTime createdAt;
 
@@ -60,6 +67,10 @@ public class LoyaltyTransaction {
         if (createdAt == null) {
             createdAt = LocalDateTime.now();
         }
+        // Only new PENDING transactions are due; one recorded as FAILED has failed for good
+        if (nextAttemptAt == null && isPending()) {
+            nextAttemptAt = createdAt;
+        }
     }
 
     // Business methods
@@ -98,6 +109,7 @@ public class LoyaltyTransaction {
         this.externalTransactionId = externalTransactionId;
         this.processedAt = LocalDateTime.now();
         this.errorMessage = null;
+        this.nextAttemptAt = null;
     }
 
     public void markAsFailed(String errorMessage) {
@@ -119,8 +131,42 @@ public class LoyaltyTransaction {
         this.retryCount++;
     }
 
+    /**
+     * Record a failed attempt and schedule the next one
+     */
+    public void scheduleRetry(String errorMessage, LocalDateTime nextAttemptAt) {
+        markAsFailed(errorMessage);
+        this.retryCount++;
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
+    /**
+     * Record the last allowed failed attempt; the transaction is not retried again
+     */
+    public void markAsExhausted(String errorMessage) {
+        markAsFailed(errorMessage);
+        this.retryCount++;
+        this.nextAttemptAt = null;
+    }
+
+    /**
+     * Send a completed transaction again, e.g. because the provider has no record of it
+     */
+    public void reopenForRetry(String reason) {
+        if (!isCompleted()) {
+            throw new IllegalStateException("Only completed transactions can be reopened");
+        }
+        this.status = TransactionStatus.PENDING;
+        this.retryCount = 0;
+        this.errorMessage = reason;
+        this.nextAttemptAt = LocalDateTime.now();
+    }
+
+    /**
+     * Failed with another attempt scheduled; exhausted transactions are not retried
+     */
     public boolean canRetry() {
-        return isFailed() && retryCount < 3;
+        return isFailed() && nextAttemptAt != null;
     }
 
     // Constructors
@@ -215,6 +261,14 @@ public class LoyaltyTransaction {
         this.processedAt = processedAt;
     }
 
+    public LocalDateTime getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public void setNextAttemptAt(LocalDateTime nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
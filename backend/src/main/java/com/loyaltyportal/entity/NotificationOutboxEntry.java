@@ -0,0 +1,263 @@
+package com.loyaltyportal.entity;
+
+import org.hibernate.annotations.GenericGenerator;
+
+import javax.persistence.*;
+import javax.validation.constraints.NotNull;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * An email waiting to be sent. Written in the transaction of the change it reports,
+ * so a notification is neither lost on restart nor sent for a change that rolled back.
+ * The message is rendered up front, so sending needs no entity graph.
+ */
+@Entity
+@Table(name = "notification_outbox")
+public class NotificationOutboxEntry {
+
+    @Id
+    @GeneratedValue(generator = "uuid")
+    @GenericGenerator(name = "uuid", strategy = "uuid2")
+    @Column(columnDefinition = "uuid")
+    private UUID id;
+
+    @NotNull(message = "Notification type is required")
+    @Column(name = "notification_type", nullable = false, length = 50)
+    private String notificationType;
+
+    @NotNull(message = "Recipient is required")
+    @Column(name = "recipient", nullable = false)
+    private String recipient;
+
+    @NotNull(message = "Subject is required")
+    @Column(name = "subject", nullable = false)
+    private String subject;
+
+    @NotNull(message = "Body is required")
+    @Column(name = "body", nullable = false, columnDefinition = "TEXT")
+    private String body;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", length = 20, nullable = false)
+    private OutboxStatus status = OutboxStatus.PENDING;
+
+    @Column(name = "attempts", nullable = false)
+    private Integer attempts = 0;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "claimed_at")
+    private LocalDateTime claimedAt;
+
+    @Column(name = "last_error", columnDefinition = "TEXT")
+    private String lastError;
+
+    @Column(name = "sent_at")
+    private LocalDateTime sentAt;
+
+    @Column(name = "coalesce_key")
+    private String coalesceKey;
+
+    @Column(name = "order_number", length = 50)
+    private String orderNumber;
+
+    @Column(name = "recipient_name")
+    private String recipientName;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now();
+        }
+        if (nextAttemptAt == null) {
+            nextAttemptAt = createdAt;
+        }
+    }
+
+    // Business methods
+    public void markAsClaimed() {
+        this.status = OutboxStatus.IN_FLIGHT;
+        this.attempts = attempts + 1;
+        this.claimedAt = LocalDateTime.now();
+    }
+
+    public void markAsSent() {
+        this.status = OutboxStatus.COMPLETED;
+        this.sentAt = LocalDateTime.now();
+        this.lastError = null;
+    }
+
+    public void scheduleRetry(String error, LocalDateTime nextAttemptAt) {
+        this.status = OutboxStatus.PENDING;
+        this.lastError = error;
+        this.nextAttemptAt = nextAttemptAt;
+        this.claimedAt = null;
+    }
+
+    public void markAsFailed(String error) {
+        this.status = OutboxStatus.FAILED;
+        this.lastError = error;
+    }
+
+    /**
+     * Hold this entry until {@code sendAt} so later entries with the same key can be
+     * merged into one digest email. The body is then a single digest line.
+     */
+    public void holdForDigest(String coalesceKey, String orderNumber, String recipientName, LocalDateTime sendAt) {
+        this.coalesceKey = coalesceKey;
+        this.orderNumber = orderNumber;
+        this.recipientName = recipientName;
+        this.nextAttemptAt = sendAt;
+    }
+
+    public boolean isDigestLine() {
+        return coalesceKey != null;
+    }
+
+    // Constructors
+    public NotificationOutboxEntry() {}
+
+    public NotificationOutboxEntry(String notificationType, String recipient, String subject, String body) {
+        this.notificationType = notificationType;
+        this.recipient = recipient;
+        this.subject = subject;
+        this.body = body;
+    }
+
+    // Getters and Setters
+    public UUID getId() {
+        return id;
+    }
+
+    public void setId(UUID id) {
+        this.id = id;
+    }
+
+    public String getNotificationType() {
+        return notificationType;
+    }
+
+    public void setNotificationType(String notificationType) {
+        this.notificationType = notificationType;
+    }
+
+    public String getRecipient() {
+        return recipient;
+    }
+
+    public void setRecipient(String recipient) {
+        this.recipient = recipient;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public void setSubject(String subject) {
+        this.subject = subject;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public void setBody(String body) {
+        this.body = body;
+    }
+
+    public OutboxStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(OutboxStatus status) {
+        this.status = status;
+    }
+
+    public Integer getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(Integer attempts) {
+        this.attempts = attempts;
+    }
+
+    public LocalDateTime getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public void setNextAttemptAt(LocalDateTime nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
+    public LocalDateTime getClaimedAt() {
+        return claimedAt;
+    }
+
+    public void setClaimedAt(LocalDateTime claimedAt) {
+        this.claimedAt = claimedAt;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+
+    public LocalDateTime getSentAt() {
+        return sentAt;
+    }
+
+    public void setSentAt(LocalDateTime sentAt) {
+        this.sentAt = sentAt;
+    }
+
+    public String getCoalesceKey() {
+        return coalesceKey;
+    }
+
+    public void setCoalesceKey(String coalesceKey) {
+        this.coalesceKey = coalesceKey;
+    }
+
+    public String getOrderNumber() {
+        return orderNumber;
+    }
+
+    public void setOrderNumber(String orderNumber) {
+        this.orderNumber = orderNumber;
+    }
+
+    public String getRecipientName() {
+        return recipientName;
+    }
+
+    public void setRecipientName(String recipientName) {
+        this.recipientName = recipientName;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    @Override
+    public String toString() {
+        return "NotificationOutboxEntry{" +
+                "id=" + id +
+                ", notificationType='" + notificationType + '\'' +
+                ", recipient='" + recipient + '\'' +
+                ", status=" + status +
+                ", attempts=" + attempts +
+                '}';
+    }
+}
@@ -14,7 +14,7 @@ public class OrderItem {
 
     @Id
     @GeneratedValue(generator = "uuid")
-    @GenericGenerator(name = "uuid", strategy = "uuid2")
+    @GenericGenerator(name = "uuid", strategy = "com.loyaltyportal.entity.TimeOrderedUuidGenerator")
     @Column(columnDefinition = "uuid")
     private UUID id;
 
@@ -74,6 +74,11 @@ public class OrderItem {
         return product != null && ProductType.VIRTUAL.equals(product.getProductType());
     }
 
+    public boolean isComplete() {
+        return FulfillmentStatus.FULFILLED.equals(fulfillmentStatus)
+                || FulfillmentStatus.DELIVERED.equals(fulfillmentStatus);
+    }
+
     public void markAsFulfilled(String reference) {
         this.fulfillmentStatus = FulfillmentStatus.FULFILLED;
         this.fulfillmentReference = reference;
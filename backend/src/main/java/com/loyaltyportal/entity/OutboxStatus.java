@@ -0,0 +1,23 @@
+package com.loyaltyportal.entity;
+
+public enum OutboxStatus {
+    PENDING("Pending"),
+    IN_FLIGHT("In Flight"),
+    COMPLETED("Completed"),
+    FAILED("Failed");
+
+    private final String displayName;
+
+    OutboxStatus(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
@@ -16,7 +16,7 @@ public class RedemptionOrder {
 
     @Id
     @GeneratedValue(generator = "uuid")
-    @GenericGenerator(name = "uuid", strategy = "uuid2")
+    @GenericGenerator(name = "uuid", strategy = "com.loyaltyportal.entity.TimeOrderedUuidGenerator")
     @Column(columnDefinition = "uuid")
     private UUID id;
 
@@ -61,6 +61,17 @@ public class RedemptionOrder {
     @Column(name = "cancellation_reason")
     private String cancellationReason;
 
+    // Item counters are set on insert and afterwards only changed by the atomic
+    // updates in RedemptionOrderRepository, never by saving the entity
+    @Column(name = "item_count", nullable = false, updatable = false)
+    private Integer itemCount = 0;
+
+    @Column(name = "completed_item_count", nullable = false, updatable = false)
+    private Integer completedItemCount = 0;
+
+    @Column(name = "failed_item_count", nullable = false, updatable = false)
+    private Integer failedItemCount = 0;
+
     @OneToMany(mappedBy = "order", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private List<OrderItem> items;
 
@@ -239,6 +250,22 @@ public class RedemptionOrder {
         this.cancellationReason = cancellationReason;
     }
 
+    public Integer getItemCount() {
+        return itemCount;
+    }
+
+    public void setItemCount(Integer itemCount) {
+        this.itemCount = itemCount;
+    }
+
+    public Integer getCompletedItemCount() {
+        return completedItemCount;
+    }
+
+    public Integer getFailedItemCount() {
+        return failedItemCount;
+    }
+
     public List<OrderItem> getItems() {
         return items;
     }
@@ -0,0 +1,24 @@
+package com.loyaltyportal.repository;
+
+import com.loyaltyportal.entity.CompanyPointsSummary;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.LockModeType;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface CompanyPointsSummaryRepository extends JpaRepository<CompanyPointsSummary, UUID> {
+
+    /**
+     * Lock a company's summary row for an update; concurrent changes for the same
+     * company queue on it until the updating transaction commits
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM CompanyPointsSummary s WHERE s.companyId = :companyId")
+    Optional<CompanyPointsSummary> findForUpdate(@Param("companyId") UUID companyId);
+}
@@ -22,6 +22,9 @@ public interface CompanyRepository extends JpaRepository<Company, UUID> {
     @Query("SELECT c FROM Company c WHERE c.name LIKE %:name% AND c.isActive = true")
     List<Company> findActiveCompaniesByNameContaining(@Param("name") String name);
 
+    @Query("SELECT c.id FROM Company c ORDER BY c.id")
+    List<UUID> findAllIds();
+
     @Query("SELECT COUNT(c) FROM Company c WHERE c.isActive = true")
     long countActiveCompanies();
 
@@ -0,0 +1,42 @@
+package com.loyaltyportal.repository;
+
+import com.loyaltyportal.entity.FulfillmentInboxEntry;
+import com.loyaltyportal.entity.OutboxStatus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.LockModeType;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface FulfillmentInboxRepository extends JpaRepository<FulfillmentInboxEntry, UUID> {
+
+    @Query("SELECT e.fulfillmentId FROM FulfillmentInboxEntry e WHERE e.fulfillmentId IN :fulfillmentIds")
+    List<String> findExistingFulfillmentIds(@Param("fulfillmentIds") Collection<String> fulfillmentIds);
+
+    /**
+     * Lock the still-pending entries among {@code ids}. A worker that loses the race for
+     * an entry waits here and then no longer sees it as pending, so each callback is
+     * applied once even when it was queued twice.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT e FROM FulfillmentInboxEntry e WHERE e.id IN :ids AND e.status = 'PENDING'")
+    List<FulfillmentInboxEntry> findPendingForUpdate(@Param("ids") Collection<UUID> ids);
+
+    /**
+     * Pending entries received before {@code receivedBefore}, oldest first, for
+     * requeueing after a restart or a failed attempt
+     */
+    @Query("SELECT e.id FROM FulfillmentInboxEntry e WHERE e.status = 'PENDING' AND e.receivedAt < :receivedBefore " +
+           "ORDER BY e.receivedAt")
+    List<UUID> findPendingIds(@Param("receivedBefore") LocalDateTime receivedBefore, Pageable pageable);
+
+    long countByStatus(OutboxStatus status);
+}
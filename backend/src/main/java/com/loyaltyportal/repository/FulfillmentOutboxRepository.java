@@ -0,0 +1,47 @@
+package com.loyaltyportal.repository;
+
+import com.loyaltyportal.entity.FulfillmentOutboxEntry;
+import com.loyaltyportal.entity.OutboxStatus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface FulfillmentOutboxRepository extends JpaRepository<FulfillmentOutboxEntry, UUID> {
+
+    /**
+     * Lock due entries for dispatch. Rows already locked by another instance are
+     * skipped (lock timeout -2 is Hibernate's SKIP LOCKED), so dispatchers on several
+     * nodes never claim the same entry.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "javax.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT e FROM FulfillmentOutboxEntry e WHERE e.status = 'PENDING' AND e.nextAttemptAt <= :now " +
+           "ORDER BY e.nextAttemptAt")
+    List<FulfillmentOutboxEntry> findDueForDispatch(@Param("now") LocalDateTime now, Pageable pageable);
+
+    /**
+     * Return entries claimed by a dispatcher that died before recording the result
+     */
+    @Modifying
+    @Query("UPDATE FulfillmentOutboxEntry e SET e.status = 'PENDING', e.claimedAt = null, e.nextAttemptAt = :now " +
+           "WHERE e.status = 'IN_FLIGHT' AND e.claimedAt < :claimedBefore")
+    int releaseStaleClaims(@Param("claimedBefore") LocalDateTime claimedBefore, @Param("now") LocalDateTime now);
+
+    long countByStatus(OutboxStatus status);
+
+    @Query("SELECT e FROM FulfillmentOutboxEntry e JOIN FETCH e.orderItem WHERE e.referenceId IN :referenceIds")
+    List<FulfillmentOutboxEntry> findByReferenceIdIn(@Param("referenceIds") Collection<String> referenceIds);
+}
@@ -5,12 +5,18 @@ import com.loyaltyportal.entity.LoyaltyTransaction;
 import com.loyaltyportal.entity.RedemptionOrder;
 import com.loyaltyportal.entity.TransactionStatus;
 import com.loyaltyportal.entity.TransactionType;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -46,26 +52,72 @@ public interface LoyaltyTransactionRepository extends JpaRepository<LoyaltyTrans
                                                       @Param("startDate") LocalDateTime startDate, 
                                                       @Param("endDate") LocalDateTime endDate);
 
-    @Query("SELECT lt FROM LoyaltyTransaction lt WHERE lt.status = :status AND lt.retryCount < 3")
+    @Query("SELECT lt FROM LoyaltyTransaction lt WHERE lt.status = :status AND lt.nextAttemptAt IS NOT NULL " +
+           "ORDER BY lt.nextAttemptAt, lt.id")
     List<LoyaltyTransaction> findRetryableTransactions(@Param("status") TransactionStatus status);
 
-    @Query("SELECT lt FROM LoyaltyTransaction lt WHERE lt.status = 'FAILED' AND lt.retryCount < 3")
+    /**
+     * Failed transactions with a retry still scheduled, soonest first
+     */
+    @Query("SELECT lt FROM LoyaltyTransaction lt WHERE lt.status = 'FAILED' AND lt.nextAttemptAt IS NOT NULL " +
+           "ORDER BY lt.nextAttemptAt, lt.id")
     List<LoyaltyTransaction> findFailedTransactionsForRetry();
 
+    @Query("SELECT COUNT(lt) FROM LoyaltyTransaction lt WHERE lt.nextAttemptAt <= :now AND lt.status IN ('PENDING', 'FAILED') " +
+           "AND lt.createdAt >= :since")
+    long countDue(@Param("now") LocalDateTime now, @Param("since") LocalDateTime since);
+
     @Query("SELECT SUM(lt.pointsAmount) FROM LoyaltyTransaction lt WHERE lt.company.id = :companyId AND lt.transactionType = :transactionType AND lt.status = 'COMPLETED'")
     Long sumPointsByCompanyAndType(@Param("companyId") UUID companyId, @Param("transactionType") TransactionType transactionType);
 
+    /**
+     * A company's completed points as (type, points) rows
+     */
+    @Query("SELECT lt.transactionType, SUM(lt.pointsAmount) FROM LoyaltyTransaction lt " +
+           "WHERE lt.company.id = :companyId AND lt.status = 'COMPLETED' GROUP BY lt.transactionType")
+    List<Object[]> sumCompletedPointsByCompany(@Param("companyId") UUID companyId);
+
     @Query("SELECT COUNT(lt) FROM LoyaltyTransaction lt WHERE lt.company.id = :companyId AND lt.status = :status")
     long countByCompanyAndStatus(@Param("companyId") UUID companyId, @Param("status") TransactionStatus status);
 
     @Query("SELECT COUNT(lt) FROM LoyaltyTransaction lt WHERE lt.status = :status")
     long countByStatus(@Param("status") TransactionStatus status);
 
+    /**
+     * Transaction counts as (status, count) rows, in one scan
+     */
+    @Query("SELECT lt.status, COUNT(lt) FROM LoyaltyTransaction lt GROUP BY lt.status")
+    List<Object[]> countGroupedByStatus();
+
     @Query("SELECT lt FROM LoyaltyTransaction lt LEFT JOIN FETCH lt.order LEFT JOIN FETCH lt.company WHERE lt.id = :id")
     Optional<LoyaltyTransaction> findByIdWithOrderAndCompany(@Param("id") UUID id);
 
-    @Query("SELECT lt FROM LoyaltyTransaction lt WHERE lt.status IN ('PENDING', 'FAILED') AND lt.retryCount < 3 ORDER BY lt.createdAt ASC")
-    List<LoyaltyTransaction> findTransactionsToProcess();
+    /**
+     * Lock the next chunk of transactions due by {@code now} after the given keyset
+     * position on (next_attempt_at, id). Only due rows are read, straight off the
+     * next-attempt index. Rows locked by another instance are skipped (lock timeout -2
+     * is Hibernate's SKIP LOCKED), so processors on several nodes drain the backlog
+     * without overlapping. The {@code since} bound on created_at lets a partitioned
+     * ledger prune to its recent partitions.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "javax.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT lt FROM LoyaltyTransaction lt WHERE lt.nextAttemptAt <= :now AND lt.status IN ('PENDING', 'FAILED') " +
+           "AND lt.createdAt >= :since " +
+           "AND (lt.nextAttemptAt > :afterAttemptAt OR (lt.nextAttemptAt = :afterAttemptAt AND lt.id > :afterId)) " +
+           "ORDER BY lt.nextAttemptAt, lt.id")
+    List<LoyaltyTransaction> findNextToProcess(@Param("now") LocalDateTime now,
+                                               @Param("since") LocalDateTime since,
+                                               @Param("afterAttemptAt") LocalDateTime afterAttemptAt,
+                                               @Param("afterId") UUID afterId,
+                                               Pageable pageable);
+
+    /**
+     * Load order and company for already loaded transactions in one query, without
+     * taking locks on them
+     */
+    @Query("SELECT lt FROM LoyaltyTransaction lt JOIN FETCH lt.order JOIN FETCH lt.company WHERE lt.id IN :ids")
+    List<LoyaltyTransaction> findWithOrderAndCompanyByIdIn(@Param("ids") Collection<UUID> ids);
 
     boolean existsByExternalTransactionId(String externalTransactionId);
 }
\ No newline at end of file
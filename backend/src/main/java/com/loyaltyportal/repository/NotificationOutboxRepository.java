@@ -0,0 +1,63 @@
+package com.loyaltyportal.repository;
+
+import com.loyaltyportal.entity.NotificationOutboxEntry;
+import com.loyaltyportal.entity.OutboxStatus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface NotificationOutboxRepository extends JpaRepository<NotificationOutboxEntry, UUID> {
+
+    /**
+     * Lock due entries for sending, skipping rows locked by another instance
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "javax.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT e FROM NotificationOutboxEntry e WHERE e.status = 'PENDING' AND e.nextAttemptAt <= :now " +
+           "ORDER BY e.nextAttemptAt")
+    List<NotificationOutboxEntry> findDueForDispatch(@Param("now") LocalDateTime now, Pageable pageable);
+
+    /**
+     * Return entries claimed by a sender that died before recording the result
+     */
+    @Modifying
+    @Query("UPDATE NotificationOutboxEntry e SET e.status = 'PENDING', e.claimedAt = null, e.nextAttemptAt = :now " +
+           "WHERE e.status = 'IN_FLIGHT' AND e.claimedAt < :claimedBefore")
+    int releaseStaleClaims(@Param("claimedBefore") LocalDateTime claimedBefore, @Param("now") LocalDateTime now);
+
+    /**
+     * Lock the pending entries of the given digests, whether due or not, so they go
+     * out in the same email as the due entry that opened the digest
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "javax.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT e FROM NotificationOutboxEntry e WHERE e.status = 'PENDING' AND e.coalesceKey IN :coalesceKeys " +
+           "ORDER BY e.createdAt")
+    List<NotificationOutboxEntry> findPendingByCoalesceKeyIn(@Param("coalesceKeys") Collection<String> coalesceKeys);
+
+    /**
+     * Make the held digest lines of an order due now
+     */
+    @Modifying
+    @Query("UPDATE NotificationOutboxEntry e SET e.nextAttemptAt = :now WHERE e.orderNumber = :orderNumber " +
+           "AND e.coalesceKey IS NOT NULL AND e.status = 'PENDING' AND e.nextAttemptAt > :now")
+    int releaseDigestsForOrder(@Param("orderNumber") String orderNumber, @Param("now") LocalDateTime now);
+
+    long countByStatus(OutboxStatus status);
+
+    @Query("SELECT MIN(e.createdAt) FROM NotificationOutboxEntry e WHERE e.status = 'PENDING'")
+    LocalDateTime findOldestPendingCreatedAt();
+}
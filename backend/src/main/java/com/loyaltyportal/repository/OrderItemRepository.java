@@ -1,15 +1,23 @@
 package com.loyaltyportal.repository;
 
+import com.loyaltyportal.dto.PickLine;
 import com.loyaltyportal.entity.FulfillmentStatus;
 import com.loyaltyportal.entity.OrderItem;
 import com.loyaltyportal.entity.Product;
 import com.loyaltyportal.entity.RedemptionOrder;
+import com.loyaltyportal.service.notification.ItemEmailView;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.LockModeType;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 @Repository
@@ -17,6 +25,14 @@ public interface OrderItemRepository extends JpaRepository<OrderItem, UUID> {
 
     List<OrderItem> findByOrder(RedemptionOrder order);
 
+    /**
+     * Load an item with a row lock, so concurrent status changes for the same item
+     * are applied one after the other
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT oi FROM OrderItem oi WHERE oi.id = :id")
+    Optional<OrderItem> findByIdForUpdate(@Param("id") UUID id);
+
     List<OrderItem> findByProduct(Product product);
 
     List<OrderItem> findByFulfillmentStatus(FulfillmentStatus fulfillmentStatus);
@@ -36,9 +52,36 @@ public interface OrderItemRepository extends JpaRepository<OrderItem, UUID> {
     @Query("SELECT oi FROM OrderItem oi WHERE oi.product.productType = 'VIRTUAL' AND oi.fulfillmentStatus = :status")
     List<OrderItem> findVirtualItemsByFulfillmentStatus(@Param("status") FulfillmentStatus status);
 
-    @Query("SELECT oi FROM OrderItem oi WHERE oi.fulfillmentStatus = 'PENDING' AND oi.product.productType = 'PHYSICAL'")
+    @Query("SELECT oi FROM OrderItem oi JOIN FETCH oi.product p JOIN FETCH oi.order " +
+           "WHERE oi.fulfillmentStatus = 'PENDING' AND p.productType = 'PHYSICAL'")
     List<OrderItem> findPendingPhysicalItems();
 
+    /**
+     * Physical items in the given status, oldest first, starting after the keyset
+     * (createdAt, id). Returns flat rows, so nothing is lazy-loaded per item.
+     */
+    @Query("SELECT new com.loyaltyportal.dto.PickLine(oi.id, oi.createdAt, o.id, o.orderNumber, " +
+           "p.sku, p.name, inv.binLocation, oi.quantity) " +
+           "FROM OrderItem oi JOIN oi.order o JOIN oi.product p LEFT JOIN Inventory inv ON inv.product = p " +
+           "WHERE oi.fulfillmentStatus = :status AND p.productType = 'PHYSICAL' " +
+           "AND (oi.createdAt > :afterCreatedAt OR (oi.createdAt = :afterCreatedAt AND oi.id > :afterId)) " +
+           "ORDER BY oi.createdAt, oi.id")
+    List<PickLine> findPickLines(@Param("status") FulfillmentStatus status,
+                                 @Param("afterCreatedAt") LocalDateTime afterCreatedAt,
+                                 @Param("afterId") UUID afterId,
+                                 Pageable pageable);
+
+    /**
+     * What item notification emails show, in one query instead of an item, order,
+     * account manager and product load per email
+     */
+    @Query("SELECT new com.loyaltyportal.service.notification.ItemEmailView(am.name, am.email, o.orderNumber, " +
+           "o.shippingAddress, p.name, p.sku, oi.quantity, oi.trackingNumber, oi.deliveredAt, " +
+           "oi.fulfillmentReference) " +
+           "FROM OrderItem oi JOIN oi.order o JOIN o.accountManager am JOIN oi.product p " +
+           "WHERE oi.id IN :ids")
+    List<ItemEmailView> findEmailViews(@Param("ids") Collection<UUID> ids);
+
     @Query("SELECT oi FROM OrderItem oi WHERE oi.fulfillmentStatus = 'PENDING' AND oi.product.productType = 'VIRTUAL'")
     List<OrderItem> findPendingVirtualItems();
 
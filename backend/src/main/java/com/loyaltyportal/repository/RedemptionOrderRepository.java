@@ -4,14 +4,17 @@ import com.loyaltyportal.entity.AccountManager;
 import com.loyaltyportal.entity.Company;
 import com.loyaltyportal.entity.OrderStatus;
 import com.loyaltyportal.entity.RedemptionOrder;
+import com.loyaltyportal.service.notification.OrderEmailView;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -52,9 +55,32 @@ public interface RedemptionOrderRepository extends JpaRepository<RedemptionOrder
     @Query("SELECT COUNT(o) FROM RedemptionOrder o WHERE o.status = :status")
     long countOrdersByStatus(@Param("status") OrderStatus status);
 
+    /**
+     * Order counts as (status, count) rows, in one scan
+     */
+    @Query("SELECT o.status, COUNT(o) FROM RedemptionOrder o GROUP BY o.status")
+    List<Object[]> countGroupedByStatus();
+
     @Query("SELECT SUM(o.totalPoints) FROM RedemptionOrder o WHERE o.company.id = :companyId AND o.status = :status")
     Long sumPointsByCompanyAndStatus(@Param("companyId") UUID companyId, @Param("status") OrderStatus status);
 
+    /**
+     * A company's orders as (status, count, total points) rows
+     */
+    @Query("SELECT o.status, COUNT(o), SUM(o.totalPoints) FROM RedemptionOrder o WHERE o.company.id = :companyId " +
+           "GROUP BY o.status")
+    List<Object[]> summarizeByCompany(@Param("companyId") UUID companyId);
+
+    /**
+     * What order notification emails show, in one query instead of an order, account
+     * manager and company load per email
+     */
+    @Query("SELECT new com.loyaltyportal.service.notification.OrderEmailView(am.name, am.email, o.orderNumber, " +
+           "c.name, o.totalPoints, o.itemCount, o.createdAt, o.completedAt, o.shippingAddress) " +
+           "FROM RedemptionOrder o JOIN o.accountManager am JOIN o.company c " +
+           "WHERE o.id IN :ids")
+    List<OrderEmailView> findEmailViews(@Param("ids") Collection<UUID> ids);
+
     @Query("SELECT o FROM RedemptionOrder o LEFT JOIN FETCH o.items WHERE o.id = :id")
     Optional<RedemptionOrder> findByIdWithItems(@Param("id") UUID id);
 
@@ -71,4 +97,23 @@ public interface RedemptionOrderRepository extends JpaRepository<RedemptionOrder
     List<RedemptionOrder> findProcessingOrdersWithVirtualItems();
 
     boolean existsByOrderNumber(String orderNumber);
+
+    @Modifying
+    @Query("UPDATE RedemptionOrder o SET o.completedItemCount = o.completedItemCount + 1 WHERE o.id = :orderId")
+    int incrementCompletedItems(@Param("orderId") UUID orderId);
+
+    @Modifying
+    @Query("UPDATE RedemptionOrder o SET o.failedItemCount = o.failedItemCount + 1 WHERE o.id = :orderId")
+    int incrementFailedItems(@Param("orderId") UUID orderId);
+
+    /**
+     * Complete the order if every item is done. Only one caller can move the order
+     * out of PROCESSING, so exactly one of them sees 1 returned.
+     */
+    @Modifying
+    @Query("UPDATE RedemptionOrder o SET o.status = com.loyaltyportal.entity.OrderStatus.COMPLETED, " +
+           "o.completedAt = :completedAt WHERE o.id = :orderId " +
+           "AND o.status = com.loyaltyportal.entity.OrderStatus.PROCESSING " +
+           "AND o.completedItemCount >= o.itemCount")
+    int markCompletedIfAllItemsDone(@Param("orderId") UUID orderId, @Param("completedAt") LocalDateTime completedAt);
 }
\ No newline at end of file
@@ -0,0 +1,319 @@
+package com.loyaltyportal.service;
+
+import com.loyaltyportal.entity.CompanyPointsSummary;
+import com.loyaltyportal.entity.OrderStatus;
+import com.loyaltyportal.entity.TransactionType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps the live ledger and order tables down to recent history.
+ *
+ * On PostgreSQL {@code loyalty_transaction} is range partitioned by month on
+ * {@code created_at}. The partitions for the coming months are created on their own
+ * schedule, whether or not archiving is enabled, so that new transactions never pile up in
+ * the default partition. Each archive run moves every partition older than the retention
+ * period whose transactions are all closed (none pending, processing or awaiting a retry)
+ * to {@code loyalty_transaction_archive}:
+ * detach and attach are catalogue changes, no rows are copied. Orders are referenced by
+ * foreign keys and so are not partitioned; closed orders older than the retention period
+ * whose ledger rows have been archived are moved, with their items, to the order archive
+ * tables in batches of {@code batch-size}, one transaction per batch.
+ */
+@Service
+public class ArchiveService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ArchiveService.class);
+
+    private static final String LEDGER = "loyalty_transaction";
+    private static final String LEDGER_ARCHIVE = "loyalty_transaction_archive";
+    private static final Pattern PARTITION_NAME = Pattern.compile(LEDGER + "_p(\\d{6})");
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private static final String PARTITIONS_SQL =
+            "SELECT c.relname FROM pg_inherits i " +
+            "JOIN pg_class c ON c.oid = i.inhrelid " +
+            "JOIN pg_class p ON p.oid = i.inhparent " +
+            "WHERE p.relname = :parent";
+
+    private static final String FOREIGN_KEYS_SQL =
+            "SELECT conname FROM pg_constraint WHERE conrelid = CAST(:table AS regclass) AND contype = 'f'";
+
+    private static final String ORDER_COLUMNS =
+            "id, order_number, company_id, account_manager_id, total_points, status, shipping_address, " +
+            "special_instructions, created_at, completed_at, cancelled_at, cancellation_reason, item_count, " +
+            "completed_item_count, failed_item_count";
+
+    private static final String ITEM_COLUMNS =
+            "id, order_id, product_id, quantity, points_per_item, fulfillment_status, fulfillment_reference, " +
+            "tracking_number, delivered_at, created_at";
+
+    // Ordered so that the oldest eligible orders go first and every step keys off the batch ID
+    private static final String ARCHIVE_ORDERS_SQL =
+            "INSERT INTO redemption_order_archive (" + ORDER_COLUMNS + ", archive_batch_id) " +
+            "SELECT " + ORDER_COLUMNS + ", :batchId FROM redemption_order o " +
+            "WHERE o.status IN ('COMPLETED', 'CANCELLED', 'FAILED') AND o.created_at < :cutoff " +
+            "AND NOT EXISTS (SELECT 1 FROM loyalty_transaction lt WHERE lt.order_id = o.id) " +
+            "ORDER BY o.created_at LIMIT :batchSize";
+
+    private static final String ARCHIVE_ITEMS_SQL =
+            "INSERT INTO order_item_archive (" + ITEM_COLUMNS + ") " +
+            "SELECT " + ITEM_COLUMNS + " FROM order_item WHERE order_id IN " +
+            "(SELECT id FROM redemption_order_archive WHERE archive_batch_id = :batchId)";
+
+    private static final String DELETE_OUTBOX_SQL =
+            "DELETE FROM fulfillment_outbox WHERE order_item_id IN (SELECT id FROM order_item WHERE order_id IN " +
+            "(SELECT id FROM redemption_order_archive WHERE archive_batch_id = :batchId))";
+
+    private static final String DELETE_ITEMS_SQL =
+            "DELETE FROM order_item WHERE order_id IN " +
+            "(SELECT id FROM redemption_order_archive WHERE archive_batch_id = :batchId)";
+
+    private static final String DELETE_ORDERS_SQL =
+            "DELETE FROM redemption_order WHERE id IN " +
+            "(SELECT id FROM redemption_order_archive WHERE archive_batch_id = :batchId)";
+
+    private static final String ARCHIVED_LEDGER_TOTALS_SQL =
+            "SELECT transaction_type, SUM(points_amount) FROM loyalty_transaction_archive " +
+            "WHERE company_id = :companyId AND status = 'COMPLETED' GROUP BY transaction_type";
+
+    private static final String ARCHIVED_ORDER_TOTALS_SQL =
+            "SELECT status, COUNT(*), SUM(total_points) FROM redemption_order_archive " +
+            "WHERE company_id = :companyId GROUP BY status";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int retentionMonths;
+    private final int monthsAhead;
+    private final int batchSize;
+
+    private volatile Boolean partitioned;
+
+    private final Counter partitionsArchived;
+    private final Counter ordersArchived;
+
+    @Autowired
+    public ArchiveService(
+            NamedParameterJdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${loyalty.archive.enabled:false}") boolean enabled,
+            @Value("${loyalty.archive.retention-months:13}") int retentionMonths,
+            @Value("${loyalty.archive.months-ahead:3}") int monthsAhead,
+            @Value("${loyalty.archive.batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.retentionMonths = retentionMonths;
+        this.monthsAhead = monthsAhead;
+        this.batchSize = batchSize;
+
+        this.partitionsArchived = Counter.builder("loyalty.archive.partitions")
+                .description("Ledger partitions moved to the archive")
+                .register(meterRegistry);
+        this.ordersArchived = Counter.builder("loyalty.archive.orders")
+                .description("Closed orders moved to the archive")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Scheduled(cron = "${loyalty.archive.partition-cron:0 0 * * * *}")
+    public void maintainPartitions() {
+        if (!isPartitioned()) {
+            return;
+        }
+
+        try {
+            createPartitions(YearMonth.now());
+        } catch (RuntimeException e) {
+            logger.error("Ledger partition maintenance failed: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(cron = "${loyalty.archive.cron:0 30 4 * * *}")
+    public void run() {
+        if (!enabled) {
+            return;
+        }
+
+        YearMonth oldestRetained = YearMonth.now().minusMonths(retentionMonths);
+        try {
+            archivePartitions(oldestRetained);
+            archiveOrders(oldestRetained.atDay(1).atStartOfDay());
+        } catch (RuntimeException e) {
+            logger.error("Archive run failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Whether the ledger is partitioned, i.e. the database is PostgreSQL; the changelog
+     * leaves it a plain table elsewhere
+     */
+    private boolean isPartitioned() {
+        if (partitioned == null) {
+            try {
+                partitioned = "PostgreSQL".equals(jdbcTemplate.getJdbcOperations().execute(
+                        (ConnectionCallback<String>) connection -> connection.getMetaData().getDatabaseProductName()));
+            } catch (RuntimeException e) {
+                logger.warn("Could not determine the database: {}", e.getMessage());
+                return false;
+            }
+        }
+        return partitioned;
+    }
+
+    /**
+     * Create the ledger partitions for the current month and the following {@code months-ahead}
+     */
+    void createPartitions(YearMonth current) {
+        for (int i = 0; i <= monthsAhead; i++) {
+            YearMonth month = current.plusMonths(i);
+            try {
+                jdbcTemplate.getJdbcOperations().execute("CREATE TABLE IF NOT EXISTS " + partitionName(month)
+                        + " PARTITION OF " + LEDGER + " FOR VALUES FROM " + bounds(month));
+            } catch (RuntimeException e) {
+                // e.g. rows for the month already landed in the default partition
+                logger.error("Failed to create ledger partition for {}: {}", month, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Move every closed partition for a month before {@code oldestRetained} to the archive
+     */
+    int archivePartitions(YearMonth oldestRetained) {
+        List<YearMonth> months = new ArrayList<>();
+        for (String name : jdbcTemplate.queryForList(PARTITIONS_SQL, Map.of("parent", LEDGER), String.class)) {
+            Matcher matcher = PARTITION_NAME.matcher(name);
+            if (matcher.matches()) {
+                YearMonth month = YearMonth.parse(matcher.group(1), PARTITION_SUFFIX);
+                if (month.isBefore(oldestRetained)) {
+                    months.add(month);
+                }
+            }
+        }
+        months.sort(null);
+
+        int archived = 0;
+        for (YearMonth month : months) {
+            String partition = partitionName(month);
+            try {
+                if (Boolean.TRUE.equals(transactionTemplate.execute(status -> archivePartition(partition, month)))) {
+                    archived++;
+                    partitionsArchived.increment();
+                    logger.info("Archived ledger partition {}", partition);
+                }
+            } catch (RuntimeException e) {
+                logger.error("Failed to archive ledger partition {}: {}", partition, e.getMessage());
+            }
+        }
+        return archived;
+    }
+
+    private boolean archivePartition(String partition, YearMonth month) {
+        Boolean open = jdbcTemplate.getJdbcOperations().queryForObject("SELECT EXISTS (SELECT 1 FROM " + partition
+                + " WHERE status IN ('PENDING', 'PROCESSING') OR next_attempt_at IS NOT NULL)", Boolean.class);
+        if (Boolean.TRUE.equals(open)) {
+            logger.warn("Ledger partition {} still has open transactions and is kept", partition);
+            return false;
+        }
+
+        jdbcTemplate.getJdbcOperations().execute("ALTER TABLE " + LEDGER + " DETACH PARTITION " + partition);
+        // The archive keeps no references, so its orders can be archived in turn
+        for (String constraint : jdbcTemplate.queryForList(FOREIGN_KEYS_SQL, Map.of("table", partition),
+                String.class)) {
+            jdbcTemplate.getJdbcOperations().execute("ALTER TABLE " + partition + " DROP CONSTRAINT \""
+                    + constraint + "\"");
+        }
+        jdbcTemplate.getJdbcOperations().execute("ALTER TABLE " + LEDGER_ARCHIVE + " ATTACH PARTITION "
+                + partition + " FOR VALUES FROM " + bounds(month));
+        return true;
+    }
+
+    /**
+     * Move closed orders created before {@code cutoff}, whose ledger rows are no longer
+     * live, to the archive; returns how many were moved
+     */
+    long archiveOrders(LocalDateTime cutoff) {
+        long total = 0;
+        while (true) {
+            UUID batchId = UUID.randomUUID();
+            MapSqlParameterSource params = new MapSqlParameterSource()
+                    .addValue("batchId", batchId)
+                    .addValue("cutoff", cutoff)
+                    .addValue("batchSize", batchSize);
+            Integer moved = transactionTemplate.execute(status -> {
+                int orders = jdbcTemplate.update(ARCHIVE_ORDERS_SQL, params);
+                if (orders > 0) {
+                    jdbcTemplate.update(ARCHIVE_ITEMS_SQL, params);
+                    jdbcTemplate.update(DELETE_OUTBOX_SQL, params);
+                    jdbcTemplate.update(DELETE_ITEMS_SQL, params);
+                    jdbcTemplate.update(DELETE_ORDERS_SQL, params);
+                }
+                return orders;
+            });
+            int orders = moved != null ? moved : 0;
+            total += orders;
+            ordersArchived.increment(orders);
+            if (orders < batchSize) {
+                break;
+            }
+        }
+        if (total > 0) {
+            logger.info("Archived {} orders created before {}", total, cutoff.toLocalDate());
+        }
+        return total;
+    }
+
+    /**
+     * Add the company's archived ledger and order totals, so a summary computed from the
+     * live tables still covers its whole history
+     */
+    public void addArchivedTotals(UUID companyId, CompanyPointsSummary summary) {
+        if (!enabled) {
+            return;
+        }
+        Map<String, Object> params = Map.of("companyId", companyId);
+        jdbcTemplate.query(ARCHIVED_LEDGER_TOTALS_SQL, params, row -> {
+            summary.addCompletedTransaction(TransactionType.valueOf(row.getString(1)), row.getLong(2));
+        });
+        jdbcTemplate.query(ARCHIVED_ORDER_TOTALS_SQL, params, row -> {
+            summary.addOrders(OrderStatus.valueOf(row.getString(1)), row.getLong(2), row.getLong(3));
+        });
+    }
+
+    static String partitionName(YearMonth month) {
+        return LEDGER + "_p" + month.format(PARTITION_SUFFIX);
+    }
+
+    private static String bounds(YearMonth month) {
+        LocalDate start = month.atDay(1);
+        return "('" + start + "') TO ('" + start.plusMonths(1) + "')";
+    }
+}
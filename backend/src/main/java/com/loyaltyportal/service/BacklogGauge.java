@@ -0,0 +1,66 @@
+package com.loyaltyportal.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * A gauge over a backlog query that is refreshed by the poller working the backlog,
+ * not by the metrics scrape. A scrape reads the value of the last refresh, and a poller
+ * runs the query at most once per {@link #REFRESH_INTERVAL}, so neither a scrape nor a
+ * one-second poll turns into a COUNT against the table.
+ */
+class BacklogGauge {
+
+    private static final Logger logger = LoggerFactory.getLogger(BacklogGauge.class);
+
+    static final Duration REFRESH_INTERVAL = Duration.ofSeconds(15);
+
+    private final String name;
+    private final LongSupplier query;
+    private final AtomicLong value = new AtomicLong();
+    private long refreshedAt;
+    private boolean refreshed;
+
+    private BacklogGauge(String name, LongSupplier query) {
+        this.name = name;
+        this.query = query;
+    }
+
+    static BacklogGauge register(MeterRegistry meterRegistry, String name, String description,
+                                 String baseUnit, LongSupplier query) {
+        BacklogGauge gauge = new BacklogGauge(name, query);
+        Gauge.builder(name, gauge.value, AtomicLong::get)
+                .description(description)
+                .baseUnit(baseUnit)
+                .register(meterRegistry);
+        return gauge;
+    }
+
+    /**
+     * Re-run the query if the last refresh is older than the refresh interval
+     */
+    synchronized void refresh() {
+        long now = System.nanoTime();
+        if (refreshed && now - refreshedAt < REFRESH_INTERVAL.toNanos()) {
+            return;
+        }
+        refreshedAt = now;
+        refreshed = true;
+        try {
+            value.set(query.getAsLong());
+        } catch (RuntimeException e) {
+            // Keep reporting the last value; the next refresh tries again
+            logger.warn("Could not refresh {}: {}", name, e.getMessage());
+        }
+    }
+
+    long value() {
+        return value.get();
+    }
+}
@@ -0,0 +1,183 @@
+package com.loyaltyportal.service;
+
+import com.loyaltyportal.entity.CompanyPointsSummary;
+import com.loyaltyportal.entity.LoyaltyTransaction;
+import com.loyaltyportal.entity.OrderStatus;
+import com.loyaltyportal.entity.RedemptionOrder;
+import com.loyaltyportal.entity.TransactionType;
+import com.loyaltyportal.repository.CompanyPointsSummaryRepository;
+import com.loyaltyportal.repository.CompanyRepository;
+import com.loyaltyportal.repository.LoyaltyTransactionRepository;
+import com.loyaltyportal.repository.RedemptionOrderRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Maintains {@link CompanyPointsSummary} rows.
+ *
+ * The record methods are called right after the change they describe, in the same
+ * transaction, and apply it as a delta under the summary's row lock. A company without
+ * a summary row gets one computed from its history instead; that computation already
+ * includes the change. The nightly rebuild recomputes every company and counts the
+ * rows that had drifted, e.g. because a status change bypassed these methods.
+ */
+@Service
+public class CompanyPointsSummaryService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CompanyPointsSummaryService.class);
+
+    private final CompanyPointsSummaryRepository summaryRepository;
+    private final CompanyRepository companyRepository;
+    private final RedemptionOrderRepository orderRepository;
+    private final LoyaltyTransactionRepository transactionRepository;
+    private final ArchiveService archiveService;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean rebuildEnabled;
+
+    private final Counter drifted;
+
+    @Autowired
+    public CompanyPointsSummaryService(
+            CompanyPointsSummaryRepository summaryRepository,
+            CompanyRepository companyRepository,
+            RedemptionOrderRepository orderRepository,
+            LoyaltyTransactionRepository transactionRepository,
+            ArchiveService archiveService,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${loyalty.company-summary.rebuild.enabled:true}") boolean rebuildEnabled) {
+        this.summaryRepository = summaryRepository;
+        this.companyRepository = companyRepository;
+        this.orderRepository = orderRepository;
+        this.transactionRepository = transactionRepository;
+        this.archiveService = archiveService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.rebuildEnabled = rebuildEnabled;
+
+        this.drifted = Counter.builder("loyalty.company.summary.drifted")
+                .description("Company points summaries corrected by the rebuild")
+                .register(meterRegistry);
+    }
+
+    public Optional<CompanyPointsSummary> getSummary(UUID companyId) {
+        return summaryRepository.findById(companyId);
+    }
+
+    /**
+     * Call after a transaction has been saved as, or moved to, COMPLETED
+     */
+    @Transactional
+    public void recordCompletedTransaction(LoyaltyTransaction transaction) {
+        UUID companyId = transaction.getCompany().getId();
+        summaryRepository.findForUpdate(companyId).ifPresentOrElse(
+                summary -> summary.addCompletedTransaction(transaction.getTransactionType(),
+                        transaction.getPointsAmount()),
+                () -> create(companyId));
+    }
+
+    /**
+     * Call after a completed transaction has been reopened for another attempt
+     */
+    @Transactional
+    public void recordTransactionReopened(LoyaltyTransaction transaction) {
+        UUID companyId = transaction.getCompany().getId();
+        summaryRepository.findForUpdate(companyId).ifPresentOrElse(
+                summary -> summary.addCompletedTransaction(transaction.getTransactionType(),
+                        -transaction.getPointsAmount()),
+                () -> create(companyId));
+    }
+
+    /**
+     * Call after a new order has been saved
+     */
+    @Transactional
+    public void recordOrderCreated(RedemptionOrder order) {
+        UUID companyId = order.getCompany().getId();
+        summaryRepository.findForUpdate(companyId).ifPresentOrElse(
+                summary -> summary.addOrder(order.getStatus(), order.getTotalPoints()),
+                () -> create(companyId));
+    }
+
+    /**
+     * Call after an order has moved from {@code previous} to its current status
+     */
+    @Transactional
+    public void recordOrderStatusChange(RedemptionOrder order, OrderStatus previous) {
+        if (previous == order.getStatus()) {
+            return;
+        }
+        UUID companyId = order.getCompany().getId();
+        summaryRepository.findForUpdate(companyId).ifPresentOrElse(
+                summary -> summary.moveOrder(previous, order.getStatus(), order.getTotalPoints()),
+                () -> create(companyId));
+    }
+
+    @Scheduled(cron = "${loyalty.company-summary.rebuild.cron:0 15 3 * * *}")
+    public void rebuildAll() {
+        if (!rebuildEnabled) {
+            return;
+        }
+
+        int companies = 0;
+        int corrected = 0;
+        for (UUID companyId : companyRepository.findAllIds()) {
+            try {
+                // One transaction per company, so each row lock is held briefly
+                if (Boolean.TRUE.equals(transactionTemplate.execute(status -> rebuild(companyId)))) {
+                    corrected++;
+                }
+                companies++;
+            } catch (RuntimeException e) {
+                logger.error("Failed to rebuild points summary for company {}: {}", companyId, e.getMessage());
+            }
+        }
+        logger.info("Rebuilt points summaries for {} companies, {} corrected", companies, corrected);
+    }
+
+    /**
+     * Recompute one company's summary; returns whether the stored totals had drifted
+     */
+    boolean rebuild(UUID companyId) {
+        Optional<CompanyPointsSummary> existing = summaryRepository.findForUpdate(companyId);
+        if (existing.isEmpty()) {
+            create(companyId);
+            return false;
+        }
+
+        // Computed after taking the lock: changes still in flight commit their delta after us
+        boolean drift = existing.get().replaceTotals(compute(companyId));
+        if (drift) {
+            drifted.increment();
+            logger.warn("Points summary for company {} had drifted and was corrected", companyId);
+        }
+        return drift;
+    }
+
+    private void create(UUID companyId) {
+        summaryRepository.save(compute(companyId));
+    }
+
+    private CompanyPointsSummary compute(UUID companyId) {
+        CompanyPointsSummary summary = new CompanyPointsSummary(companyId);
+        for (Object[] row : transactionRepository.sumCompletedPointsByCompany(companyId)) {
+            summary.addCompletedTransaction((TransactionType) row[0], (Long) row[1]);
+        }
+        for (Object[] row : orderRepository.summarizeByCompany(companyId)) {
+            summary.addOrders((OrderStatus) row[0], (Long) row[1], (Long) row[2]);
+        }
+        archiveService.addArchivedTotals(companyId, summary);
+        return summary;
+    }
+}
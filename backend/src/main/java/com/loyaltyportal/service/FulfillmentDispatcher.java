@@ -0,0 +1,302 @@
+package com.loyaltyportal.service;
+
+import com.loyaltyportal.entity.FulfillmentOutboxEntry;
+import com.loyaltyportal.entity.OutboxStatus;
+import com.loyaltyportal.repository.FulfillmentOutboxRepository;
+import com.loyaltyportal.service.VirtualFulfillmentClient.VirtualFulfillmentRequest;
+import com.loyaltyportal.service.VirtualFulfillmentClient.VirtualFulfillmentResponse;
+import com.loyaltyportal.service.resilience.Backoff;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Drains the fulfillment outbox.
+ *
+ * Each pass claims a batch of due entries (rows locked by another instance are
+ * skipped), groups them by SKU into batch calls - across orders, so the poll interval
+ * is the batching window - sends them with at most {@code max-concurrency} requests
+ * in flight, and records every item's result in its own transaction. Failures are
+ * retried with exponential backoff and jitter until {@code max-attempts}, after which
+ * the item is marked as failed. An entry left IN_FLIGHT by a node that died is
+ * released after {@code in-flight-timeout}, so delivery is at-least-once; the
+ * provider deduplicates on the reference id.
+ */
+@Service
+public class FulfillmentDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(FulfillmentDispatcher.class);
+
+    private final FulfillmentOutboxRepository outboxRepository;
+    private final VirtualFulfillmentClient fulfillmentClient;
+    private final OrderWorkflowService workflowService;
+    private final TransactionTemplate transactionTemplate;
+
+    private final boolean enabled;
+    private final int batchSize;
+    private final int maxConcurrency;
+    private final int maxAttempts;
+    private final Backoff backoff;
+    private final Duration inFlightTimeout;
+    private final Duration batchTimeout;
+
+    private final Counter completed;
+    private final Counter retried;
+    private final Counter failed;
+    private final BacklogGauge pending;
+
+    @Autowired
+    public FulfillmentDispatcher(
+            FulfillmentOutboxRepository outboxRepository,
+            VirtualFulfillmentClient fulfillmentClient,
+            OrderWorkflowService workflowService,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${loyalty.fulfillment.outbox.enabled:true}") boolean enabled,
+            @Value("${loyalty.fulfillment.outbox.batch-size:50}") int batchSize,
+            @Value("${loyalty.fulfillment.outbox.max-concurrency:8}") int maxConcurrency,
+            @Value("${loyalty.fulfillment.outbox.max-attempts:8}") int maxAttempts,
+            @Value("${loyalty.fulfillment.outbox.backoff:5s}") Duration backoff,
+            @Value("${loyalty.fulfillment.outbox.max-backoff:10m}") Duration maxBackoff,
+            @Value("${loyalty.fulfillment.outbox.in-flight-timeout:5m}") Duration inFlightTimeout,
+            @Value("${loyalty.fulfillment.outbox.batch-timeout:2m}") Duration batchTimeout) {
+        this.outboxRepository = outboxRepository;
+        this.fulfillmentClient = fulfillmentClient;
+        this.workflowService = workflowService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.maxConcurrency = maxConcurrency;
+        this.maxAttempts = maxAttempts;
+        this.backoff = new Backoff(backoff, maxBackoff);
+        this.inFlightTimeout = inFlightTimeout;
+        this.batchTimeout = batchTimeout;
+
+        this.completed = outcomeCounter(meterRegistry, "completed");
+        this.retried = outcomeCounter(meterRegistry, "retried");
+        this.failed = outcomeCounter(meterRegistry, "failed");
+        this.pending = BacklogGauge.register(meterRegistry, "loyalty.fulfillment.outbox.pending",
+                "Fulfillment outbox entries waiting for dispatch", null,
+                () -> outboxRepository.countByStatus(OutboxStatus.PENDING));
+    }
+
+    /**
+     * Dispatch due entries until a pass claims less than a full batch
+     */
+    @Scheduled(fixedDelayString = "${loyalty.fulfillment.outbox.poll-interval:1000}")
+    public void dispatchDue() {
+        pending.refresh();
+        if (!enabled) {
+            return;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        Integer released = transactionTemplate.execute(status ->
+                outboxRepository.releaseStaleClaims(now.minus(inFlightTimeout), now));
+        if (released != null && released > 0) {
+            logger.warn("Released {} stale fulfillment outbox claims", released);
+        }
+
+        int claimed;
+        do {
+            claimed = dispatchBatch();
+        } while (claimed == batchSize);
+    }
+
+    /**
+     * Claim, send and record one batch; returns the number of entries claimed, or 0 if
+     * the provider calls did not finish within {@code batch-timeout}
+     */
+    int dispatchBatch() {
+        List<Claim> claims = transactionTemplate.execute(status -> outboxRepository
+                .findDueForDispatch(LocalDateTime.now(), PageRequest.of(0, batchSize))
+                .stream()
+                .map(entry -> {
+                    entry.markAsClaimed();
+                    return new Claim(entry);
+                })
+                .toList());
+        if (claims == null || claims.isEmpty()) {
+            return 0;
+        }
+
+        List<List<Claim>> groups = groupBySku(claims);
+        logger.debug("Dispatching {} virtual fulfillments in {} calls", claims.size(), groups.size());
+        List<Outcome> outcomes;
+        try {
+            outcomes = Flux.fromIterable(groups)
+                    .flatMap(this::send, maxConcurrency)
+                    .collectList()
+                    .block(batchTimeout);
+        } catch (IllegalStateException e) {
+            // The claims stay IN_FLIGHT and are released after the in-flight timeout
+            logger.error("Fulfillment batch of {} items did not finish within {}s, stopping this pass",
+                    claims.size(), batchTimeout.toSeconds());
+            return 0;
+        }
+
+        // Recorded on the scheduler thread, never on a Netty event loop
+        outcomes.forEach(this::record);
+        return claims.size();
+    }
+
+    /**
+     * Split a claimed batch into provider calls: one per SKU, up to the client's max
+     * batch size, or one per item when the client is not batching
+     */
+    private List<List<Claim>> groupBySku(List<Claim> claims) {
+        int size = fulfillmentClient.isBatching() ? fulfillmentClient.getMaxBatchSize() : 1;
+        Map<String, List<Claim>> bySku = new LinkedHashMap<>();
+        for (Claim claim : claims) {
+            bySku.computeIfAbsent(claim.request.getProductSku(), sku -> new ArrayList<>()).add(claim);
+        }
+
+        List<List<Claim>> groups = new ArrayList<>();
+        for (List<Claim> sku : bySku.values()) {
+            for (int from = 0; from < sku.size(); from += size) {
+                groups.add(sku.subList(from, Math.min(from + size, sku.size())));
+            }
+        }
+        return groups;
+    }
+
+    private Flux<Outcome> send(List<Claim> group) {
+        if (group.size() == 1 || !fulfillmentClient.isBatching()) {
+            return Flux.fromIterable(group).concatMap(this::sendOne);
+        }
+
+        List<VirtualFulfillmentRequest> requests = group.stream().map(claim -> claim.request).toList();
+        return fulfillmentClient.fulfillBatch(requests)
+                .flatMapMany(responses -> Flux.fromIterable(fanOut(group, responses)))
+                .onErrorResume(error -> VirtualFulfillmentClient.isBatchEndpointMissing(error)
+                        ? Flux.fromIterable(group).concatMap(this::sendOne)
+                        : Flux.fromIterable(group).map(claim -> new Outcome(claim, null, error)));
+    }
+
+    private Mono<Outcome> sendOne(Claim claim) {
+        return fulfillmentClient.fulfill(claim.request)
+                .map(response -> new Outcome(claim, response, null))
+                .onErrorResume(error -> Mono.just(new Outcome(claim, null, error)));
+    }
+
+    /**
+     * Match batch results to claims by reference id, falling back to position for
+     * providers that do not echo it
+     */
+    private static List<Outcome> fanOut(List<Claim> group, List<VirtualFulfillmentResponse> responses) {
+        Map<String, VirtualFulfillmentResponse> byReference = new HashMap<>();
+        for (VirtualFulfillmentResponse response : responses) {
+            if (response.getReferenceId() != null) {
+                byReference.put(response.getReferenceId(), response);
+            }
+        }
+
+        List<Outcome> outcomes = new ArrayList<>(group.size());
+        for (int i = 0; i < group.size(); i++) {
+            Claim claim = group.get(i);
+            VirtualFulfillmentResponse response = byReference.isEmpty()
+                    ? (i < responses.size() ? responses.get(i) : null)
+                    : byReference.get(claim.request.getReferenceId());
+            outcomes.add(response != null
+                    ? new Outcome(claim, response, null)
+                    : new Outcome(claim, null, new IllegalStateException("No result for item in batch response")));
+        }
+        return outcomes;
+    }
+
+    private void record(Outcome outcome) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                FulfillmentOutboxEntry entry = outboxRepository.findById(outcome.claim.entryId).orElse(null);
+                if (entry == null || entry.getStatus() != OutboxStatus.IN_FLIGHT) {
+                    // Released as stale and picked up again; that attempt will record its own result
+                    return;
+                }
+
+                if (outcome.response != null && outcome.response.isSuccessful()) {
+                    entry.markAsCompleted(outcome.response.getFulfillmentId());
+                    workflowService.completeVirtualFulfillment(outcome.claim.orderItemId, outcome.response);
+                    completed.increment();
+                    return;
+                }
+
+                String error = outcome.error != null ? outcome.error.getMessage()
+                        : "Provider returned " + outcome.response.getStatus() + ": " + outcome.response.getMessage();
+                if (entry.getAttempts() >= maxAttempts) {
+                    entry.markAsFailed(error);
+                    workflowService.failVirtualFulfillment(outcome.claim.orderItemId, error);
+                    failed.increment();
+                } else {
+                    entry.scheduleRetry(error, LocalDateTime.now().plus(backoff.after(entry.getAttempts())));
+                    retried.increment();
+                    logger.warn("Virtual fulfillment {} failed (attempt {}), retrying: {}",
+                            entry.getReferenceId(), entry.getAttempts(), error);
+                }
+            });
+        } catch (RuntimeException e) {
+            // The entry stays IN_FLIGHT and is released after the in-flight timeout
+            logger.error("Failed to record fulfillment result for outbox entry {}: {}",
+                    outcome.claim.entryId, e.getMessage());
+        }
+    }
+
+    private static Counter outcomeCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("loyalty.fulfillment.outbox.dispatched")
+                .description("Fulfillment outbox entries dispatched, by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Detached copy of a claimed entry, safe to use outside the claiming transaction
+     */
+    private static class Claim {
+        final UUID entryId;
+        final UUID orderItemId;
+        final VirtualFulfillmentRequest request;
+
+        Claim(FulfillmentOutboxEntry entry) {
+            this.entryId = entry.getId();
+            this.orderItemId = entry.getOrderItem().getId();
+            this.request = new VirtualFulfillmentRequest(
+                    entry.getReferenceId(),
+                    entry.getProductSku(),
+                    entry.getQuantity(),
+                    entry.getCustomerEmail(),
+                    entry.getCustomerName(),
+                    entry.getCompanyName()
+            );
+        }
+    }
+
+    private static class Outcome {
+        final Claim claim;
+        final VirtualFulfillmentResponse response;
+        final Throwable error;
+
+        Outcome(Claim claim, VirtualFulfillmentResponse response, Throwable error) {
+            this.claim = claim;
+            this.response = response;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,397 @@
+package com.loyaltyportal.service;
+
+import com.loyaltyportal.dto.FulfillmentCallback;
+import com.loyaltyportal.entity.FulfillmentInboxEntry;
+import com.loyaltyportal.entity.FulfillmentOutboxEntry;
+import com.loyaltyportal.entity.OutboxStatus;
+import com.loyaltyportal.repository.FulfillmentInboxRepository;
+import com.loyaltyportal.repository.FulfillmentOutboxRepository;
+import com.loyaltyportal.service.VirtualFulfillmentClient.VirtualFulfillmentResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Records fulfillment provider callbacks in an inbox and applies them in batches.
+ *
+ * {@link #accept} writes the request's new callbacks to the {@code fulfillment_inbox}
+ * table in one insert batch and only then reports them accepted, so an acknowledged
+ * callback is never lost to a crash or a shutdown; applying them to order items is left
+ * to worker threads. The queue of inbox entries waiting for a worker is bounded; when a
+ * burst would overflow it the callbacks are refused and the provider is asked to retry
+ * later, instead of the request threads piling up. Callbacks are deduplicated by
+ * fulfillment id, first against a sliding window of recent ids and then against the
+ * inbox itself.
+ *
+ * Worker threads drain up to {@code batch-size} entries at a time and apply them in one
+ * transaction. If that transaction fails, each entry is retried in its own transaction
+ * so one bad callback does not hold back the rest; one that still fails stays pending
+ * until {@code max-attempts}. Pending entries left over from a restart or a failed
+ * attempt are requeued every {@code recovery-interval} once older than
+ * {@code recovery-delay}.
+ */
+@Service
+public class FulfillmentWebhookProcessor {
+
+    private static final Logger logger = LoggerFactory.getLogger(FulfillmentWebhookProcessor.class);
+
+    public enum Outcome {
+        ACCEPTED,
+        DUPLICATE,
+        IGNORED,
+        REJECTED
+    }
+
+    private final FulfillmentInboxRepository inboxRepository;
+    private final FulfillmentOutboxRepository outboxRepository;
+    private final OrderWorkflowService workflowService;
+    private final TransactionTemplate transactionTemplate;
+
+    private final int batchSize;
+    private final int workers;
+    private final int maxAttempts;
+    private final Duration retryAfter;
+    private final Duration recoveryDelay;
+
+    private final BlockingQueue<UUID> queue;
+    private final Set<UUID> queued = ConcurrentHashMap.newKeySet();
+    private final Map<String, Boolean> recentIds;
+    /** Queue room held for callbacks being written to the inbox; guarded by recentIds */
+    private int reserved;
+    private final Map<Outcome, Counter> received = new LinkedHashMap<>();
+    private final Counter applied;
+    private final Counter unmatched;
+    private final BacklogGauge pending;
+    private ExecutorService executor;
+    private volatile boolean running;
+
+    @Autowired
+    public FulfillmentWebhookProcessor(
+            FulfillmentInboxRepository inboxRepository,
+            FulfillmentOutboxRepository outboxRepository,
+            OrderWorkflowService workflowService,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${loyalty.fulfillment.webhook.queue-capacity:10000}") int queueCapacity,
+            @Value("${loyalty.fulfillment.webhook.batch-size:200}") int batchSize,
+            @Value("${loyalty.fulfillment.webhook.workers:2}") int workers,
+            @Value("${loyalty.fulfillment.webhook.dedupe-window:100000}") int dedupeWindow,
+            @Value("${loyalty.fulfillment.webhook.max-attempts:5}") int maxAttempts,
+            @Value("${loyalty.fulfillment.webhook.retry-after:2s}") Duration retryAfter,
+            @Value("${loyalty.fulfillment.webhook.recovery-delay:1m}") Duration recoveryDelay) {
+        this.inboxRepository = inboxRepository;
+        this.outboxRepository = outboxRepository;
+        this.workflowService = workflowService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.workers = Math.max(1, workers);
+        this.maxAttempts = maxAttempts;
+        this.retryAfter = retryAfter;
+        this.recoveryDelay = recoveryDelay;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.recentIds = new LinkedHashMap<String, Boolean>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > dedupeWindow;
+            }
+        };
+
+        for (Outcome outcome : Outcome.values()) {
+            received.put(outcome, Counter.builder("loyalty.fulfillment.webhook.received")
+                    .description("Fulfillment callbacks received, by outcome")
+                    .tag("outcome", outcome.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+        this.applied = Counter.builder("loyalty.fulfillment.webhook.applied")
+                .description("Fulfillment callbacks applied to order items")
+                .register(meterRegistry);
+        this.unmatched = Counter.builder("loyalty.fulfillment.webhook.unmatched")
+                .description("Fulfillment callbacks with an unknown reference id")
+                .register(meterRegistry);
+        Gauge.builder("loyalty.fulfillment.webhook.queue.size", queue, BlockingQueue::size)
+                .description("Fulfillment callbacks waiting to be applied")
+                .register(meterRegistry);
+        this.pending = BacklogGauge.register(meterRegistry, "loyalty.fulfillment.webhook.inbox.pending",
+                "Acknowledged fulfillment callbacks not yet applied", null,
+                () -> inboxRepository.countByStatus(OutboxStatus.PENDING));
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        executor = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "fulfillment-webhook");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < workers; i++) {
+            executor.submit(this::drainLoop);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            // Still pending in the inbox, so the next start requeues them
+            logger.warn("Stopping with {} fulfillment callbacks still queued", queue.size());
+        }
+    }
+
+    /**
+     * Record a batch of callbacks in the inbox and queue them. All of them are accepted
+     * or, if the queue cannot take the whole batch or the inbox cannot be written, none
+     * are, so the provider can simply resend it.
+     */
+    public List<Outcome> accept(List<FulfillmentCallback> callbacks) {
+        List<Outcome> outcomes = new ArrayList<>(callbacks.size());
+        Map<String, Integer> fresh = new LinkedHashMap<>();
+        synchronized (recentIds) {
+            for (FulfillmentCallback callback : callbacks) {
+                if (callback.getFulfillmentId() == null || callback.getReferenceId() == null
+                        || (!callback.isSuccess() && !callback.isFailure())) {
+                    outcomes.add(Outcome.IGNORED);
+                } else if (recentIds.containsKey(callback.getFulfillmentId())
+                        || fresh.putIfAbsent(callback.getFulfillmentId(), outcomes.size()) != null) {
+                    outcomes.add(Outcome.DUPLICATE);
+                } else {
+                    outcomes.add(Outcome.ACCEPTED);
+                }
+            }
+
+            if (fresh.size() > queue.remainingCapacity() - reserved) {
+                return reject(callbacks);
+            }
+            // Hold the ids and the queue room while the inbox is written outside the lock
+            fresh.keySet().forEach(id -> recentIds.put(id, Boolean.TRUE));
+            reserved += fresh.size();
+        }
+        List<String> claimedIds = new ArrayList<>(fresh.keySet());
+
+        List<UUID> saved;
+        try {
+            saved = fresh.isEmpty() ? List.of() : transactionTemplate.execute(status -> {
+                for (String existing : inboxRepository.findExistingFulfillmentIds(fresh.keySet())) {
+                    outcomes.set(fresh.remove(existing), Outcome.DUPLICATE);
+                }
+                List<FulfillmentInboxEntry> entries = fresh.values().stream()
+                        .map(callbacks::get)
+                        .map(callback -> new FulfillmentInboxEntry(callback.getFulfillmentId(),
+                                callback.getReferenceId(), callback.getStatus(), callback.getMessage()))
+                        .toList();
+                return inboxRepository.saveAll(entries).stream().map(FulfillmentInboxEntry::getId).toList();
+            });
+        } catch (RuntimeException e) {
+            logger.warn("Could not record {} fulfillment callbacks: {}", callbacks.size(), e.getMessage());
+            synchronized (recentIds) {
+                // Not recorded, so the provider's retry must get through
+                claimedIds.forEach(recentIds::remove);
+                reserved -= claimedIds.size();
+            }
+            return reject(callbacks);
+        }
+
+        synchronized (recentIds) {
+            reserved -= claimedIds.size();
+            saved.forEach(this::enqueue);
+        }
+        outcomes.forEach(outcome -> received.get(outcome).increment());
+        return outcomes;
+    }
+
+    /**
+     * Requeue inbox entries that are still pending: left over from a restart, or put
+     * back after a failed attempt
+     */
+    @Scheduled(fixedDelayString = "${loyalty.fulfillment.webhook.recovery-interval:30000}")
+    public void requeuePending() {
+        pending.refresh();
+        int room;
+        synchronized (recentIds) {
+            room = queue.remainingCapacity() - reserved;
+        }
+        if (room <= 0) {
+            return;
+        }
+
+        List<UUID> pending = inboxRepository.findPendingIds(LocalDateTime.now().minus(recoveryDelay),
+                PageRequest.of(0, room));
+        int requeued = 0;
+        synchronized (recentIds) {
+            for (UUID id : pending) {
+                if (queue.remainingCapacity() - reserved > 0 && enqueue(id)) {
+                    requeued++;
+                }
+            }
+        }
+        if (requeued > 0) {
+            logger.info("Requeued {} pending fulfillment callbacks from the inbox", requeued);
+        }
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    private void drainLoop() {
+        List<UUID> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                UUID first = queue.poll(200, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                applyBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                logger.error("Unexpected error applying fulfillment callbacks: {}", e.getMessage(), e);
+            } finally {
+                queued.removeAll(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    void applyBatch(List<UUID> batch) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> apply(batch));
+        } catch (RuntimeException e) {
+            logger.warn("Batch of {} fulfillment callbacks failed ({}), applying one by one",
+                    batch.size(), e.getMessage());
+            for (UUID id : batch) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> apply(List.of(id)));
+                } catch (RuntimeException single) {
+                    logger.error("Failed to apply fulfillment callback {}: {}", id, single.getMessage());
+                    recordFailure(id, single.getMessage());
+                }
+            }
+        }
+    }
+
+    private void apply(List<UUID> ids) {
+        List<FulfillmentInboxEntry> callbacks = inboxRepository.findPendingForUpdate(ids);
+        if (callbacks.isEmpty()) {
+            return;
+        }
+        List<String> references = callbacks.stream().map(FulfillmentInboxEntry::getReferenceId).toList();
+        Map<String, FulfillmentOutboxEntry> entries = outboxRepository.findByReferenceIdIn(references).stream()
+                .collect(Collectors.toMap(FulfillmentOutboxEntry::getReferenceId, Function.identity(), (a, b) -> a));
+
+        for (FulfillmentInboxEntry inboxEntry : callbacks) {
+            FulfillmentCallback callback = new FulfillmentCallback(inboxEntry.getFulfillmentId(),
+                    inboxEntry.getReferenceId(), inboxEntry.getCallbackStatus(), inboxEntry.getMessage());
+            FulfillmentOutboxEntry entry = entries.get(callback.getReferenceId());
+            if (entry == null) {
+                unmatched.increment();
+                logger.warn("Fulfillment callback for unknown reference: {}", callback);
+                inboxEntry.markAsFailed("Unknown reference id");
+                continue;
+            }
+
+            if (callback.isSuccess()) {
+                if (entry.getStatus() != OutboxStatus.COMPLETED) {
+                    // Stop the dispatcher from sending it again
+                    entry.markAsCompleted(callback.getFulfillmentId());
+                }
+                workflowService.completeVirtualFulfillment(entry.getOrderItem().getId(),
+                        new VirtualFulfillmentResponse(callback.getReferenceId(), callback.getFulfillmentId(),
+                                callback.getStatus(), callback.getMessage()));
+            } else {
+                if (entry.getStatus() != OutboxStatus.COMPLETED) {
+                    entry.markAsFailed(callback.getMessage());
+                }
+                workflowService.failVirtualFulfillment(entry.getOrderItem().getId(),
+                        callback.getMessage() != null ? callback.getMessage() : "Reported failed by provider");
+            }
+            inboxEntry.markAsApplied();
+            applied.increment();
+        }
+    }
+
+    /**
+     * Count a failed attempt; the entry stays pending for the next requeue until
+     * {@code max-attempts}
+     */
+    private void recordFailure(UUID id, String error) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> inboxRepository.findById(id)
+                    .filter(entry -> entry.getStatus() == OutboxStatus.PENDING)
+                    .ifPresent(entry -> {
+                        entry.recordFailedAttempt(error);
+                        if (entry.getAttempts() >= maxAttempts) {
+                            entry.markAsFailed(error);
+                            logger.error("Giving up on fulfillment callback {} after {} attempts",
+                                    entry.getFulfillmentId(), entry.getAttempts());
+                        }
+                    }));
+        } catch (RuntimeException e) {
+            logger.error("Failed to record attempt for fulfillment callback {}: {}", id, e.getMessage());
+        }
+    }
+
+    /**
+     * Must be called while holding the recentIds lock
+     */
+    private boolean enqueue(UUID id) {
+        if (!queued.add(id)) {
+            return false;
+        }
+        if (!queue.offer(id)) {
+            // Stays pending in the inbox and is picked up by a later requeue
+            queued.remove(id);
+            return false;
+        }
+        return true;
+    }
+
+    private List<Outcome> reject(List<FulfillmentCallback> callbacks) {
+        received.get(Outcome.REJECTED).increment(callbacks.size());
+        return callbacks.stream().map(callback -> Outcome.REJECTED).toList();
+    }
+}
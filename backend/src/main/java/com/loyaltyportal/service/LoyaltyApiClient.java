@@ -1,8 +1,16 @@
 package com.loyaltyportal.service;
 
 import com.loyaltyportal.dto.BalanceResponse;
+import com.loyaltyportal.dto.StatementEntry;
+import com.loyaltyportal.dto.StatementPage;
 import com.loyaltyportal.dto.TransactionRequest;
 import com.loyaltyportal.dto.TransactionResponse;
+import com.loyaltyportal.entity.TransactionType;
+import com.loyaltyportal.service.resilience.ProviderRateLimiter;
+import com.loyaltyportal.service.resilience.ProviderRateLimiter.Priority;
+import com.loyaltyportal.service.resilience.ProviderResilience;
+import com.loyaltyportal.service.resilience.ProviderRetry;
+import com.loyaltyportal.service.resilience.RequestHedger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -10,35 +18,49 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
-import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.util.retry.Retry;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
 
 @Service
 public class LoyaltyApiClient {
 
     private static final Logger logger = LoggerFactory.getLogger(LoyaltyApiClient.class);
 
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
     private final WebClient webClient;
     private final String apiKey;
     private final Duration timeout;
-    private final int maxRetryAttempts;
-    private final Duration retryDelay;
+    private final ProviderResilience resilience;
+    private final ProviderRetry retry;
+    private final ProviderRateLimiter rateLimiter;
+    private final RequestHedger hedger;
 
     public LoyaltyApiClient(
             @Value("${loyalty.api.base-url}") String baseUrl,
             @Value("${loyalty.api.api-key}") String apiKey,
             @Value("${loyalty.api.timeout:30s}") Duration timeout,
-            @Value("${loyalty.api.retry.max-attempts:3}") int maxRetryAttempts,
-            @Value("${loyalty.api.retry.backoff-delay:1s}") Duration retryDelay) {
+            ProviderResilience resilience,
+            ProviderRetry retry,
+            ProviderRateLimiter rateLimiter,
+            RequestHedger hedger) {
         
         this.apiKey = apiKey;
         this.timeout = timeout;
-        this.maxRetryAttempts = maxRetryAttempts;
-        this.retryDelay = retryDelay;
+        this.resilience = resilience;
+        this.retry = retry;
+        this.rateLimiter = rateLimiter;
+        this.hedger = hedger;
         
         this.webClient = WebClient.builder()
                 .baseUrl(baseUrl)
@@ -54,20 +76,17 @@ public class LoyaltyApiClient {
     public Mono<BalanceResponse> getBalance(String loyaltyAccountId) {
         logger.info("Fetching balance for loyalty account: {}", loyaltyAccountId);
         
-        return webClient.get()
-                .uri("/balance/{accountId}", loyaltyAccountId)
-                .retrieve()
-                .onStatus(HttpStatus::is4xxClientError, response -> 
-                    response.bodyToMono(String.class)
-                            .map(body -> new LoyaltyApiException("Client error: " + body)))
-                .onStatus(HttpStatus::is5xxServerError, response -> 
-                    response.bodyToMono(String.class)
-                            .map(body -> new LoyaltyApiException("Server error: " + body)))
-                .bodyToMono(BalanceResponse.class)
-                .timeout(timeout)
-                .retryWhen(Retry.backoff(maxRetryAttempts, retryDelay)
-                        .filter(throwable -> !(throwable instanceof WebClientResponseException) ||
-                                ((WebClientResponseException) throwable).getStatusCode().is5xxServerError()))
+        // Balance reads are idempotent, so a slow attempt may be hedged with a second one
+        Mono<BalanceResponse> call = hedger.hedge("balance", () -> webClient.get()
+                        .uri("/balance/{accountId}", loyaltyAccountId)
+                        .retrieve()
+                        .onStatus(HttpStatus::is4xxClientError, response -> toApiException(response, "Client error: "))
+                        .onStatus(HttpStatus::is5xxServerError, response -> toApiException(response, "Server error: "))
+                        .bodyToMono(BalanceResponse.class)
+                        .timeout(timeout)
+                        .transform(attempt -> limited("balance", loyaltyAccountId, Priority.LOW, attempt)));
+        
+        return retry.idempotent("balance", call)
                 .doOnSuccess(response -> logger.info("Successfully fetched balance for account {}: {} points", 
                         loyaltyAccountId, response.getBalance()))
                 .doOnError(error -> logger.error("Failed to fetch balance for account {}: {}", 
@@ -83,21 +102,18 @@ public class LoyaltyApiClient {
         
         TransactionRequest request = new TransactionRequest(loyaltyAccountId, points, reference);
         
-        return webClient.post()
+        Mono<TransactionResponse> call = webClient.post()
                 .uri("/debit")
+                .headers(headers -> setIdempotencyKey(headers, reference))
                 .bodyValue(request)
                 .retrieve()
-                .onStatus(HttpStatus::is4xxClientError, response -> 
-                    response.bodyToMono(String.class)
-                            .map(body -> new LoyaltyApiException("Debit failed: " + body)))
-                .onStatus(HttpStatus::is5xxServerError, response -> 
-                    response.bodyToMono(String.class)
-                            .map(body -> new LoyaltyApiException("Server error during debit: " + body)))
+                .onStatus(HttpStatus::is4xxClientError, response -> toApiException(response, "Debit failed: "))
+                .onStatus(HttpStatus::is5xxServerError, response -> toApiException(response, "Server error during debit: "))
                 .bodyToMono(TransactionResponse.class)
                 .timeout(timeout)
-                .retryWhen(Retry.backoff(maxRetryAttempts, retryDelay)
-                        .filter(throwable -> !(throwable instanceof WebClientResponseException) ||
-                                ((WebClientResponseException) throwable).getStatusCode().is5xxServerError()))
+                .transform(attempt -> limited("debit", loyaltyAccountId, Priority.HIGH, attempt));
+        
+        return withRetry("debit", reference, call)
                 .doOnSuccess(response -> logger.info("Successfully debited {} points from account {}, transaction ID: {}", 
                         points, loyaltyAccountId, response.getTransactionId()))
                 .doOnError(error -> logger.error("Failed to debit points from account {}: {}", 
@@ -113,27 +129,86 @@ public class LoyaltyApiClient {
         
         TransactionRequest request = new TransactionRequest(loyaltyAccountId, points, reference);
         
-        return webClient.post()
+        Mono<TransactionResponse> call = webClient.post()
                 .uri("/credit")
+                .headers(headers -> setIdempotencyKey(headers, reference))
                 .bodyValue(request)
                 .retrieve()
-                .onStatus(HttpStatus::is4xxClientError, response -> 
-                    response.bodyToMono(String.class)
-                            .map(body -> new LoyaltyApiException("Credit failed: " + body)))
-                .onStatus(HttpStatus::is5xxServerError, response -> 
-                    response.bodyToMono(String.class)
-                            .map(body -> new LoyaltyApiException("Server error during credit: " + body)))
+                .onStatus(HttpStatus::is4xxClientError, response -> toApiException(response, "Credit failed: "))
+                .onStatus(HttpStatus::is5xxServerError, response -> toApiException(response, "Server error during credit: "))
                 .bodyToMono(TransactionResponse.class)
                 .timeout(timeout)
-                .retryWhen(Retry.backoff(maxRetryAttempts, retryDelay)
-                        .filter(throwable -> !(throwable instanceof WebClientResponseException) ||
-                                ((WebClientResponseException) throwable).getStatusCode().is5xxServerError()))
+                .transform(attempt -> limited("credit", loyaltyAccountId, Priority.HIGH, attempt));
+        
+        return withRetry("credit", reference, call)
                 .doOnSuccess(response -> logger.info("Successfully credited {} points to account {}, transaction ID: {}", 
                         points, loyaltyAccountId, response.getTransactionId()))
                 .doOnError(error -> logger.error("Failed to credit points to account {}: {}", 
                         loyaltyAccountId, error.getMessage()));
     }
 
+    /**
+     * Submit several debits or credits in one provider call.
+     * Results come back in request order; the caller matches them up by reference.
+     */
+    public Mono<List<TransactionResponse>> submitBatch(TransactionType type, List<TransactionRequest> requests) {
+        String path = TransactionType.DEBIT.equals(type) ? "/debit/batch" : "/credit/batch";
+        logger.info("Submitting batch of {} {} requests", requests.size(), type);
+        
+        String batchKey = batchIdempotencyKey(type, requests);
+        
+        Mono<List<TransactionResponse>> call = webClient.post()
+                .uri(path)
+                .headers(headers -> setIdempotencyKey(headers, batchKey))
+                .bodyValue(requests)
+                .retrieve()
+                .onStatus(HttpStatus::is4xxClientError, response -> toApiException(response, "Batch failed: "))
+                .onStatus(HttpStatus::is5xxServerError, response -> toApiException(response, "Server error during batch: "))
+                .bodyToFlux(TransactionResponse.class)
+                .collectList()
+                .timeout(timeout)
+                .transform(attempt -> limited(path.substring(1), null, Priority.HIGH, attempt));
+        
+        return withRetry(path.substring(1), batchKey, call)
+                .doOnSuccess(responses -> logger.info("Batch of {} {} requests completed", requests.size(), type))
+                .doOnError(error -> logger.error("Batch of {} {} requests failed: {}", 
+                        requests.size(), type, error.getMessage()));
+    }
+
+    /**
+     * Stream the provider's statement of transactions processed in [from, to), ordered by
+     * transaction ID. Pages are fetched one at a time as the subscriber asks for more, so
+     * a statement of any length is read in constant memory.
+     */
+    public Flux<StatementEntry> streamStatement(LocalDateTime from, LocalDateTime to, int pageSize) {
+        logger.info("Streaming provider statement from {} to {}", from, to);
+        
+        return statementPage(from, to, null, pageSize)
+                .expand(page -> page.getNextCursor() != null
+                        ? statementPage(from, to, page.getNextCursor(), pageSize)
+                        : Mono.empty())
+                .concatMapIterable(StatementPage::getEntries, 1);
+    }
+
+    private Mono<StatementPage> statementPage(LocalDateTime from, LocalDateTime to, String after, int pageSize) {
+        Mono<StatementPage> call = webClient.get()
+                .uri(builder -> builder.path("/statement")
+                        .queryParam("from", from)
+                        .queryParam("to", to)
+                        .queryParamIfPresent("after", Optional.ofNullable(after))
+                        .queryParam("limit", pageSize)
+                        .build())
+                .retrieve()
+                .onStatus(HttpStatus::is4xxClientError, response -> toApiException(response, "Statement failed: "))
+                .onStatus(HttpStatus::is5xxServerError, response -> toApiException(response, "Server error during statement: "))
+                .bodyToMono(StatementPage.class)
+                .timeout(timeout)
+                .transform(attempt -> limited("statement", null, Priority.LOW, attempt));
+        
+        // Pages are reads keyed by cursor, so a failed page can simply be fetched again
+        return retry.idempotent("statement", call);
+    }
+
     /**
      * Check if the loyalty API is available
      */
@@ -148,13 +223,105 @@ public class LoyaltyApiClient {
                 .doOnSuccess(healthy -> logger.debug("Loyalty API health check: {}", healthy ? "OK" : "FAILED"));
     }
 
+    private Mono<LoyaltyApiException> toApiException(ClientResponse response, String prefix) {
+        Duration retryAfter = parseRetryAfter(response.headers().asHttpHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        return response.bodyToMono(String.class)
+                .defaultIfEmpty("")
+                .map(body -> new LoyaltyApiException(prefix + body, response.statusCode(), retryAfter));
+    }
+
+    private Duration parseRetryAfter(String value) {
+        if (!StringUtils.hasText(value)) {
+            return null;
+        }
+        try {
+            return Duration.ofSeconds(Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            // HTTP-date form; the rate limiter falls back to its default pause
+            return null;
+        }
+    }
+
+    /**
+     * One attempt: wait for a rate limit token, then pass the resilience guards.
+     * A 429 pauses the endpoint's rate limiter for the Retry-After period.
+     */
+    private <T> Mono<T> limited(String endpoint, String accountId, Priority priority, Mono<T> attempt) {
+        Mono<T> guarded = resilience.guard(endpoint, attempt)
+                .doOnError(LoyaltyApiException.class, error -> {
+                    if (error.getStatus() == HttpStatus.TOO_MANY_REQUESTS) {
+                        rateLimiter.onThrottled(endpoint, error.getRetryAfter());
+                    }
+                });
+        return rateLimiter.throttle(endpoint, accountId, priority, guarded);
+    }
+
+    /**
+     * Debits and credits may only be retried after an ambiguous failure when the provider
+     * can recognise the repeat, i.e. when the call carries an idempotency key.
+     */
+    private <T> Mono<T> withRetry(String endpoint, String idempotencyKey, Mono<T> call) {
+        return StringUtils.hasText(idempotencyKey)
+                ? retry.idempotent(endpoint, call)
+                : retry.nonIdempotent(endpoint, call);
+    }
+
+    private void setIdempotencyKey(HttpHeaders headers, String idempotencyKey) {
+        if (StringUtils.hasText(idempotencyKey)) {
+            headers.set(IDEMPOTENCY_KEY_HEADER, idempotencyKey);
+        }
+    }
+
+    /**
+     * Derived from the item references so a resent batch carries the same key.
+     */
+    private String batchIdempotencyKey(TransactionType type, List<TransactionRequest> requests) {
+        StringBuilder references = new StringBuilder(type.name());
+        for (TransactionRequest request : requests) {
+            if (!StringUtils.hasText(request.getReference())) {
+                return null;
+            }
+            references.append('|').append(request.getReference());
+        }
+        return "BATCH-" + UUID.nameUUIDFromBytes(references.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
     public static class LoyaltyApiException extends RuntimeException {
+        private final HttpStatus status;
+        private final Duration retryAfter;
+
         public LoyaltyApiException(String message) {
+            this(message, (HttpStatus) null);
+        }
+        
+        public LoyaltyApiException(String message, HttpStatus status) {
+            this(message, status, null);
+        }
+        
+        public LoyaltyApiException(String message, HttpStatus status, Duration retryAfter) {
             super(message);
+            this.status = status;
+            this.retryAfter = retryAfter;
         }
         
         public LoyaltyApiException(String message, Throwable cause) {
             super(message, cause);
+            this.status = null;
+            this.retryAfter = null;
+        }
+
+        /**
+         * HTTP status returned by the provider, or null when the call never got a response
+         */
+        public HttpStatus getStatus() {
+            return status;
+        }
+
+        /**
+         * Provider's Retry-After hint on a 429/503, or null if it gave none
+         */
+        public Duration getRetryAfter() {
+            return retryAfter;
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,260 @@
+package com.loyaltyportal.service;
+
+import com.loyaltyportal.dto.TransactionRequest;
+import com.loyaltyportal.dto.TransactionResponse;
+import com.loyaltyportal.entity.TransactionType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Micro-batching front for provider debits and credits.
+ *
+ * Requests are sent straight away while nothing is in flight, so a quiet system pays
+ * no extra latency. Once a call is outstanding, further requests queue up and go out
+ * together as one batch call when the queue reaches {@code max-batch-size}, when
+ * {@code max-wait} has passed, or when the outstanding call returns - whichever is
+ * first. Each caller still gets its own response, matched by reference, so a
+ * reference appears at most once per batch: a repeat of a queued request joins it and
+ * shares its result, while a different request under the same reference is refused.
+ *
+ * If the provider answers the batch endpoint with 404, 405 or 501 the client stops
+ * batching and uses single calls from then on.
+ */
+@Service
+public class LoyaltyBatchClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoyaltyBatchClient.class);
+
+    private final LoyaltyApiClient loyaltyApiClient;
+    private final boolean enabled;
+    private final int maxBatchSize;
+    private final Duration maxWait;
+
+    private final Batcher debits = new Batcher(TransactionType.DEBIT);
+    private final Batcher credits = new Batcher(TransactionType.CREDIT);
+    private volatile boolean batchSupported = true;
+
+    @Autowired
+    public LoyaltyBatchClient(
+            LoyaltyApiClient loyaltyApiClient,
+            @Value("${loyalty.api.batching.enabled:false}") boolean enabled,
+            @Value("${loyalty.api.batching.max-batch-size:50}") int maxBatchSize,
+            @Value("${loyalty.api.batching.max-wait:5ms}") Duration maxWait) {
+        this.loyaltyApiClient = loyaltyApiClient;
+        this.enabled = enabled;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWait = maxWait;
+    }
+
+    public Mono<TransactionResponse> debitPoints(String loyaltyAccountId, Integer points, String reference) {
+        if (!isBatching()) {
+            return loyaltyApiClient.debitPoints(loyaltyAccountId, points, reference);
+        }
+        return debits.submit(new TransactionRequest(loyaltyAccountId, points, reference));
+    }
+
+    public Mono<TransactionResponse> creditPoints(String loyaltyAccountId, Integer points, String reference) {
+        if (!isBatching()) {
+            return loyaltyApiClient.creditPoints(loyaltyAccountId, points, reference);
+        }
+        return credits.submit(new TransactionRequest(loyaltyAccountId, points, reference));
+    }
+
+    public boolean isBatchSupported() {
+        return batchSupported;
+    }
+
+    private boolean isBatching() {
+        return enabled && batchSupported;
+    }
+
+    private static boolean isBatchEndpointMissing(Throwable error) {
+        if (!(error instanceof LoyaltyApiClient.LoyaltyApiException)) {
+            return false;
+        }
+        HttpStatus status = ((LoyaltyApiClient.LoyaltyApiException) error).getStatus();
+        return status == HttpStatus.NOT_FOUND || status == HttpStatus.METHOD_NOT_ALLOWED
+                || status == HttpStatus.NOT_IMPLEMENTED;
+    }
+
+    private static boolean isSameRequest(TransactionRequest a, TransactionRequest b) {
+        return Objects.equals(a.getAccountId(), b.getAccountId()) && Objects.equals(a.getPoints(), b.getPoints());
+    }
+
+    private static class Pending {
+        final TransactionRequest request;
+        final Sinks.One<TransactionResponse> sink = Sinks.one();
+
+        Pending(TransactionRequest request) {
+            this.request = request;
+        }
+    }
+
+    private class Batcher {
+        private final TransactionType type;
+        private List<Pending> pending = new ArrayList<>();
+        private Map<String, Pending> pendingByReference = new HashMap<>();
+        private int inFlight;
+        private Disposable flushTimer;
+
+        Batcher(TransactionType type) {
+            this.type = type;
+        }
+
+        Mono<TransactionResponse> submit(TransactionRequest request) {
+            return Mono.defer(() -> {
+                Pending entry = new Pending(request);
+                List<Pending> batch = null;
+                synchronized (this) {
+                    Pending queued = pendingByReference.putIfAbsent(request.getReference(), entry);
+                    if (queued != null) {
+                        return isSameRequest(queued.request, request)
+                                ? queued.sink.asMono()
+                                : Mono.error(new LoyaltyApiClient.LoyaltyApiException(
+                                        "Conflicting request already queued for reference " + request.getReference()));
+                    }
+                    pending.add(entry);
+                    if (inFlight == 0 || pending.size() >= maxBatchSize) {
+                        batch = drain();
+                    } else if (flushTimer == null) {
+                        flushTimer = Schedulers.parallel().schedule(this::flushOnTimer,
+                                maxWait.toNanos(), TimeUnit.NANOSECONDS);
+                    }
+                }
+                if (batch != null) {
+                    send(batch);
+                }
+                return entry.sink.asMono();
+            });
+        }
+
+        /** Must be called while holding the lock */
+        private List<Pending> drain() {
+            if (flushTimer != null) {
+                flushTimer.dispose();
+                flushTimer = null;
+            }
+            List<Pending> batch = pending;
+            pending = new ArrayList<>();
+            pendingByReference = new HashMap<>();
+            inFlight++;
+            return batch;
+        }
+
+        private void flushOnTimer() {
+            List<Pending> batch;
+            synchronized (this) {
+                flushTimer = null;
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = drain();
+            }
+            send(batch);
+        }
+
+        private void onBatchDone() {
+            List<Pending> batch = null;
+            synchronized (this) {
+                inFlight--;
+                if (!pending.isEmpty() && inFlight == 0) {
+                    batch = drain();
+                }
+            }
+            if (batch != null) {
+                send(batch);
+            }
+        }
+
+        private void send(List<Pending> batch) {
+            if (batch.size() == 1 || !batchSupported) {
+                sendIndividually(batch);
+                return;
+            }
+
+            List<TransactionRequest> requests = batch.stream()
+                    .map(entry -> entry.request)
+                    .collect(Collectors.toList());
+
+            loyaltyApiClient.submitBatch(type, requests)
+                    .doFinally(signal -> onBatchDone())
+                    .subscribe(
+                            responses -> complete(batch, responses),
+                            error -> fail(batch, error));
+        }
+
+        private void sendIndividually(List<Pending> batch) {
+            int[] remaining = {batch.size()};
+            for (Pending entry : batch) {
+                single(entry.request)
+                        .doFinally(signal -> {
+                            boolean last;
+                            synchronized (remaining) {
+                                last = --remaining[0] == 0;
+                            }
+                            if (last) {
+                                onBatchDone();
+                            }
+                        })
+                        .subscribe(entry.sink::tryEmitValue, entry.sink::tryEmitError);
+            }
+        }
+
+        private Mono<TransactionResponse> single(TransactionRequest request) {
+            return TransactionType.DEBIT.equals(type)
+                    ? loyaltyApiClient.debitPoints(request.getAccountId(), request.getPoints(), request.getReference())
+                    : loyaltyApiClient.creditPoints(request.getAccountId(), request.getPoints(), request.getReference());
+        }
+
+        private void complete(List<Pending> batch, List<TransactionResponse> responses) {
+            Map<String, TransactionResponse> byReference = new HashMap<>();
+            for (TransactionResponse response : responses) {
+                byReference.put(response.getReference(), response);
+            }
+            for (Pending entry : batch) {
+                TransactionResponse response = byReference.get(entry.request.getReference());
+                if (response != null) {
+                    entry.sink.tryEmitValue(response);
+                } else {
+                    entry.sink.tryEmitError(new LoyaltyApiClient.LoyaltyApiException(
+                            "No result in batch for reference " + entry.request.getReference()));
+                }
+            }
+        }
+
+        private void fail(List<Pending> batch, Throwable error) {
+            if (isBatchEndpointMissing(error)) {
+                // The provider rejected the batch as a whole, so nothing in it was applied
+                if (batchSupported) {
+                    batchSupported = false;
+                    logger.warn("Provider has no {} batch endpoint, falling back to single calls", type);
+                }
+                synchronized (this) {
+                    inFlight++;
+                }
+                sendIndividually(batch);
+                return;
+            }
+            for (Pending entry : batch) {
+                entry.sink.tryEmitError(error);
+            }
+        }
+    }
+}
@@ -20,13 +20,19 @@ public class LoyaltyTransactionService {
     private static final Logger logger = LoggerFactory.getLogger(LoyaltyTransactionService.class);
 
     private final LoyaltyTransactionRepository transactionRepository;
-    private final LoyaltyApiClient loyaltyApiClient;
+    private final PendingTransactionProcessor pendingTransactionProcessor;
+    private final StatusStatistics statusStatistics;
+    private final CompanyPointsSummaryService summaryService;
 
     @Autowired
     public LoyaltyTransactionService(LoyaltyTransactionRepository transactionRepository, 
-                                   LoyaltyApiClient loyaltyApiClient) {
+                                   PendingTransactionProcessor pendingTransactionProcessor,
+                                   StatusStatistics statusStatistics,
+                                   CompanyPointsSummaryService summaryService) {
         this.transactionRepository = transactionRepository;
-        this.loyaltyApiClient = loyaltyApiClient;
+        this.pendingTransactionProcessor = pendingTransactionProcessor;
+        this.statusStatistics = statusStatistics;
+        this.summaryService = summaryService;
     }
 
     /**
@@ -47,6 +53,9 @@ public class LoyaltyTransactionService {
         }
         
         transaction = transactionRepository.save(transaction);
+        if (transaction.isCompleted()) {
+            summaryService.recordCompletedTransaction(transaction);
+        }
         
         logger.info("Successfully recorded transaction: {} for order: {}", 
                 transaction.getId(), order.getOrderNumber());
@@ -55,7 +64,8 @@ public class LoyaltyTransactionService {
     }
 
     /**
-     * Record a failed transaction
+     * Record a transaction that failed for good, such as the debit of an order that
+     * could not be processed; it is not retried
      */
     public LoyaltyTransaction recordFailedTransaction(RedemptionOrder order, TransactionType type, 
                                                     Integer points, String errorMessage) {
@@ -102,8 +112,11 @@ public class LoyaltyTransactionService {
     }
 
     /**
-     * Retry a failed transaction
+     * Retry a failed transaction now rather than at its scheduled attempt. The outcome
+     * is recorded as for a scheduled retry: rescheduled with backoff, or left FAILED
+     * for good after the last attempt.
      */
+    @Transactional(noRollbackFor = TransactionException.class)
     public void retryTransaction(UUID transactionId) {
         logger.info("Retrying transaction: {}", transactionId);
         
@@ -121,126 +134,51 @@ public class LoyaltyTransactionService {
             throw new TransactionException("Transaction cannot be retried");
         }
         
-        transaction.incrementRetryCount();
-        transaction.setStatus(TransactionStatus.PROCESSING);
-        transactionRepository.save(transaction);
-        
-        // Execute the retry based on transaction type
-        try {
-            executeTransactionRetry(transaction);
-        } catch (Exception e) {
-            logger.error("Retry failed for transaction {}: {}", transactionId, e.getMessage());
-            transaction.markAsFailed("Retry failed: " + e.getMessage());
-            transactionRepository.save(transaction);
-            throw new TransactionException("Retry failed: " + e.getMessage());
+        if (!pendingTransactionProcessor.attemptNow(transaction)) {
+            logger.error("Retry failed for transaction {}: {}", transactionId, transaction.getErrorMessage());
+            throw new TransactionException(transaction.getErrorMessage());
         }
-    }
-
-    /**
-     * Process pending transactions (scheduled job)
-     */
-    @Transactional
-    public void processPendingTransactions() {
-        List<LoyaltyTransaction> pendingTransactions = transactionRepository.findTransactionsToProcess();
-        
-        logger.info("Processing {} pending transactions", pendingTransactions.size());
         
-        for (LoyaltyTransaction transaction : pendingTransactions) {
-            try {
-                processTransaction(transaction);
-            } catch (Exception e) {
-                logger.error("Failed to process transaction {}: {}", transaction.getId(), e.getMessage());
-                transaction.incrementRetryCount();
-                if (transaction.getRetryCount() >= 3) {
-                    transaction.markAsFailed("Max retries exceeded: " + e.getMessage());
-                }
-                transactionRepository.save(transaction);
-            }
-        }
+        logger.info("Successfully retried transaction: {} with external ID: {}", 
+                transactionId, transaction.getExternalTransactionId());
     }
 
     /**
      * Calculate total points used by a company
      */
     public Long getTotalPointsUsed(UUID companyId) {
-        return transactionRepository.sumPointsByCompanyAndType(companyId, TransactionType.DEBIT);
+        return summaryService.getSummary(companyId).map(CompanyPointsSummary::getPointsDebited).orElse(0L);
     }
 
     /**
      * Calculate total points refunded to a company
      */
     public Long getTotalPointsRefunded(UUID companyId) {
-        return transactionRepository.sumPointsByCompanyAndType(companyId, TransactionType.REFUND);
+        return summaryService.getSummary(companyId).map(CompanyPointsSummary::getPointsRefunded).orElse(0L);
     }
 
     /**
-     * Get transaction statistics
+     * Get transaction statistics, from the periodically refreshed status counts
      */
     public TransactionStatistics getTransactionStatistics() {
-        long totalTransactions = transactionRepository.count();
-        long pendingCount = transactionRepository.countByStatus(TransactionStatus.PENDING);
-        long processingCount = transactionRepository.countByStatus(TransactionStatus.PROCESSING);
-        long completedCount = transactionRepository.countByStatus(TransactionStatus.COMPLETED);
-        long failedCount = transactionRepository.countByStatus(TransactionStatus.FAILED);
-        long refundedCount = transactionRepository.countByStatus(TransactionStatus.REFUNDED);
-        
-        return new TransactionStatistics(totalTransactions, pendingCount, processingCount, 
-                completedCount, failedCount, refundedCount);
-    }
-
-    // Private helper methods
-    private void executeTransactionRetry(LoyaltyTransaction transaction) {
-        Company company = transaction.getCompany();
-        String reference = generateTransactionReference(transaction);
-        
-        if (TransactionType.DEBIT.equals(transaction.getTransactionType())) {
-            // Retry debit
-            loyaltyApiClient.debitPoints(company.getLoyaltyAccountId(), 
-                    transaction.getPointsAmount(), reference)
-                    .subscribe(
-                        response -> handleSuccessfulRetry(transaction, response.getTransactionId()),
-                        error -> handleFailedRetry(transaction, error.getMessage())
-                    );
-        } else if (TransactionType.CREDIT.equals(transaction.getTransactionType()) || 
-                   TransactionType.REFUND.equals(transaction.getTransactionType())) {
-            // Retry credit/refund
-            loyaltyApiClient.creditPoints(company.getLoyaltyAccountId(), 
-                    transaction.getPointsAmount(), reference)
-                    .subscribe(
-                        response -> handleSuccessfulRetry(transaction, response.getTransactionId()),
-                        error -> handleFailedRetry(transaction, error.getMessage())
-                    );
-        }
-    }
-
-    private void processTransaction(LoyaltyTransaction transaction) {
-        transaction.markAsProcessing();
-        transactionRepository.save(transaction);
-        
-        executeTransactionRetry(transaction);
+        StatusStatistics.Snapshot counts = statusStatistics.current();
+        return new TransactionStatistics(counts.getTotalTransactions(),
+                counts.transactions(TransactionStatus.PENDING),
+                counts.transactions(TransactionStatus.PROCESSING),
+                counts.transactions(TransactionStatus.COMPLETED),
+                counts.transactions(TransactionStatus.FAILED),
+                counts.transactions(TransactionStatus.REFUNDED));
     }
 
-    private void handleSuccessfulRetry(LoyaltyTransaction transaction, String externalTransactionId) {
-        transaction.markAsCompleted(externalTransactionId);
-        transactionRepository.save(transaction);
-        
-        logger.info("Successfully retried transaction: {} with external ID: {}", 
-                transaction.getId(), externalTransactionId);
-    }
-
-    private void handleFailedRetry(LoyaltyTransaction transaction, String errorMessage) {
-        transaction.markAsFailed("Retry failed: " + errorMessage);
-        transactionRepository.save(transaction);
-        
-        logger.error("Failed to retry transaction: {} error: {}", transaction.getId(), errorMessage);
-    }
-
-    private String generateTransactionReference(LoyaltyTransaction transaction) {
-        String prefix = transaction.getTransactionType().name();
+    /**
+     * Same reference as the original attempt (see RedemptionService), so the provider
+     * recognises a retry of an operation it already applied instead of applying it twice.
+     */
+    static String generateTransactionReference(LoyaltyTransaction transaction) {
         String orderNumber = transaction.getOrder().getOrderNumber();
-        String suffix = transaction.getRetryCount() > 0 ? "-RETRY-" + transaction.getRetryCount() : "";
+        String prefix = TransactionType.DEBIT.equals(transaction.getTransactionType()) ? "ORDER-" : "REFUND-";
         
-        return prefix + "-" + orderNumber + suffix;
+        return prefix + orderNumber;
     }
 
     // Helper classes
@@ -0,0 +1,382 @@
+package com.loyaltyportal.service;
+
+import com.loyaltyportal.entity.NotificationOutboxEntry;
+import com.loyaltyportal.entity.OutboxStatus;
+import com.loyaltyportal.repository.NotificationOutboxRepository;
+import com.loyaltyportal.service.notification.DigestEmailView;
+import com.loyaltyportal.service.notification.EmailTemplates;
+import com.loyaltyportal.service.resilience.Backoff;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.lang.Nullable;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import javax.mail.MessagingException;
+import javax.mail.internet.MimeMessage;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends the emails queued in the notification outbox.
+ *
+ * Each pass claims due entries (rows locked by another instance are skipped) and
+ * hands them to a dedicated pool of sender threads in chunks of
+ * {@code messages-per-connection}. A chunk goes out over a single SMTP connection
+ * from the shared mail session, instead of a connect, handshake and login per email.
+ * Work waits in a bounded queue; a pass only claims what the queue has room for, so
+ * a slow mail server leaves emails PENDING in the database rather than piling up in
+ * memory. Sending is paced to {@code rate-per-second} overall. When a held digest
+ * line falls due, all pending lines of its digest are claimed with it and sent as one
+ * email.
+ *
+ * Failed emails are retried with exponential backoff until {@code max-attempts}.
+ * Entries left IN_FLIGHT by a node that died are released after
+ * {@code in-flight-timeout}, so an email may occasionally be sent twice but is never
+ * lost.
+ */
+@Service
+public class NotificationDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(NotificationDispatcher.class);
+
+    private final NotificationOutboxRepository outboxRepository;
+    private final JavaMailSender mailSender;
+    private final EmailTemplates templates;
+    private final TransactionTemplate transactionTemplate;
+
+    private final boolean enabled;
+    private final String fromEmail;
+    private final int batchSize;
+    private final int messagesPerConnection;
+    private final double ratePerSecond;
+    private final int maxAttempts;
+    private final Backoff backoff;
+    private final Duration inFlightTimeout;
+
+    private final ArrayBlockingQueue<Runnable> queue;
+    private final ThreadPoolExecutor senders;
+    private final Object paceLock = new Object();
+    private long nextSendNanos = System.nanoTime();
+
+    private final Counter sent;
+    private final Counter retried;
+    private final Counter failed;
+    private final BacklogGauge pending;
+    private final BacklogGauge lag;
+
+    @Autowired
+    public NotificationDispatcher(
+            NotificationOutboxRepository outboxRepository,
+            @Nullable JavaMailSender mailSender,
+            EmailTemplates templates,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${loyalty.notification.outbox.enabled:true}") boolean enabled,
+            @Value("${loyalty.notification.email.from:noreply@loyalty-portal.com}") String fromEmail,
+            @Value("${loyalty.notification.outbox.batch-size:100}") int batchSize,
+            @Value("${loyalty.notification.outbox.senders:4}") int senders,
+            @Value("${loyalty.notification.outbox.queue-capacity:16}") int queueCapacity,
+            @Value("${loyalty.notification.outbox.messages-per-connection:20}") int messagesPerConnection,
+            @Value("${loyalty.notification.outbox.rate-per-second:20}") double ratePerSecond,
+            @Value("${loyalty.notification.outbox.max-attempts:6}") int maxAttempts,
+            @Value("${loyalty.notification.outbox.backoff:30s}") Duration backoff,
+            @Value("${loyalty.notification.outbox.max-backoff:30m}") Duration maxBackoff,
+            @Value("${loyalty.notification.outbox.in-flight-timeout:5m}") Duration inFlightTimeout) {
+        this.outboxRepository = outboxRepository;
+        this.mailSender = mailSender;
+        this.templates = templates;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled && mailSender != null;
+        this.fromEmail = fromEmail;
+        this.batchSize = batchSize;
+        this.messagesPerConnection = Math.max(1, messagesPerConnection);
+        this.ratePerSecond = ratePerSecond;
+        this.maxAttempts = maxAttempts;
+        this.backoff = new Backoff(backoff, maxBackoff);
+        this.inFlightTimeout = inFlightTimeout;
+
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.senders = new ThreadPoolExecutor(senders, senders, 0, TimeUnit.MILLISECONDS, queue, runnable -> {
+            Thread thread = new Thread(runnable, "notification-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.sent = outcomeCounter(meterRegistry, "sent");
+        this.retried = outcomeCounter(meterRegistry, "retried");
+        this.failed = outcomeCounter(meterRegistry, "failed");
+        this.pending = BacklogGauge.register(meterRegistry, "loyalty.notification.outbox.pending",
+                "Emails waiting in the notification outbox", null,
+                () -> outboxRepository.countByStatus(OutboxStatus.PENDING));
+        this.lag = BacklogGauge.register(meterRegistry, "loyalty.notification.outbox.lag",
+                "Age in seconds of the oldest email waiting to be sent", "seconds",
+                () -> lagSeconds(outboxRepository));
+        Gauge.builder("loyalty.notification.queue.size", queue, ArrayBlockingQueue::size)
+                .description("Email chunks claimed and waiting for a sender thread")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void stop() {
+        senders.shutdown();
+        try {
+            if (!senders.awaitTermination(10, TimeUnit.SECONDS)) {
+                // Unsent claims are released after the in-flight timeout
+                senders.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            senders.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Claim due emails until the sender queue is full or nothing is due
+     */
+    @Scheduled(fixedDelayString = "${loyalty.notification.outbox.poll-interval:1000}")
+    public void dispatchDue() {
+        pending.refresh();
+        lag.refresh();
+        if (!enabled) {
+            return;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        Integer released = transactionTemplate.execute(status ->
+                outboxRepository.releaseStaleClaims(now.minus(inFlightTimeout), now));
+        if (released != null && released > 0) {
+            logger.warn("Released {} stale notification outbox claims", released);
+        }
+
+        int claimed;
+        do {
+            claimed = dispatchBatch();
+        } while (claimed > 0 && queue.remainingCapacity() > 0);
+    }
+
+    /**
+     * Claim as many due emails as the sender queue has room for and queue them in
+     * chunks; returns the number of entries claimed
+     */
+    int dispatchBatch() {
+        int limit = Math.min(batchSize, queue.remainingCapacity() * messagesPerConnection);
+        if (limit == 0) {
+            return 0;
+        }
+
+        List<Claim> claims = transactionTemplate.execute(status -> claim(limit));
+        if (claims == null || claims.isEmpty()) {
+            return 0;
+        }
+
+        for (int from = 0; from < claims.size(); from += messagesPerConnection) {
+            List<Claim> chunk = claims.subList(from, Math.min(from + messagesPerConnection, claims.size()));
+            // Only this thread queues work and it checked the capacity above
+            senders.execute(() -> sendChunk(chunk));
+        }
+        return claims.size();
+    }
+
+    /**
+     * A due digest line pulls in every pending line of its digest, and each digest
+     * becomes one claim
+     */
+    private List<Claim> claim(int limit) {
+        List<NotificationOutboxEntry> due = outboxRepository.findDueForDispatch(LocalDateTime.now(),
+                PageRequest.of(0, limit));
+
+        List<Claim> claims = new ArrayList<>();
+        Set<String> digestKeys = new LinkedHashSet<>();
+        for (NotificationOutboxEntry entry : due) {
+            if (entry.isDigestLine()) {
+                digestKeys.add(entry.getCoalesceKey());
+            } else {
+                entry.markAsClaimed();
+                claims.add(Claim.single(entry));
+            }
+        }
+
+        if (!digestKeys.isEmpty()) {
+            Map<String, List<NotificationOutboxEntry>> digests = new LinkedHashMap<>();
+            for (NotificationOutboxEntry entry : outboxRepository.findPendingByCoalesceKeyIn(digestKeys)) {
+                entry.markAsClaimed();
+                digests.computeIfAbsent(entry.getCoalesceKey(), key -> new ArrayList<>()).add(entry);
+            }
+            digests.values().forEach(lines -> claims.add(Claim.digest(lines, templates)));
+        }
+        return claims;
+    }
+
+    private void sendChunk(List<Claim> chunk) {
+        Map<MimeMessage, Claim> messages = new IdentityHashMap<>();
+        Map<Claim, String> errors = new IdentityHashMap<>();
+        for (Claim claim : chunk) {
+            try {
+                messages.put(toMessage(claim), claim);
+            } catch (MessagingException e) {
+                errors.put(claim, "Could not build message: " + e.getMessage());
+            }
+        }
+
+        if (!messages.isEmpty()) {
+            pace(messages.size());
+            try {
+                // One connection for the whole chunk
+                mailSender.send(messages.keySet().toArray(new MimeMessage[0]));
+            } catch (MailSendException e) {
+                Map<Object, Exception> failedMessages = e.getFailedMessages();
+                if (failedMessages.isEmpty()) {
+                    messages.values().forEach(claim -> errors.put(claim, e.getMessage()));
+                } else {
+                    failedMessages.forEach((message, error) -> {
+                        Claim claim = messages.get(message);
+                        if (claim != null) {
+                            errors.put(claim, error.getMessage());
+                        }
+                    });
+                }
+            } catch (RuntimeException e) {
+                messages.values().forEach(claim -> errors.put(claim, e.getMessage()));
+            }
+        }
+
+        record(chunk, errors);
+    }
+
+    private MimeMessage toMessage(Claim claim) throws MessagingException {
+        MimeMessage message = mailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(message, "UTF-8");
+        helper.setFrom(fromEmail);
+        helper.setTo(claim.recipient);
+        helper.setSubject(claim.subject);
+        helper.setText(claim.body);
+        return message;
+    }
+
+    /**
+     * Wait for this chunk's share of the overall send rate
+     */
+    private void pace(int messageCount) {
+        if (ratePerSecond <= 0) {
+            return;
+        }
+        long waitNanos;
+        synchronized (paceLock) {
+            long now = System.nanoTime();
+            long start = Math.max(now, nextSendNanos);
+            nextSendNanos = start + (long) (messageCount * 1_000_000_000L / ratePerSecond);
+            waitNanos = start - now;
+        }
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void record(List<Claim> chunk, Map<Claim, String> errors) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (Claim claim : chunk) {
+                    String error = errors.get(claim);
+                    for (NotificationOutboxEntry entry : outboxRepository.findAllById(claim.entryIds)) {
+                        if (entry.getStatus() == OutboxStatus.IN_FLIGHT) {
+                            record(entry, error);
+                        }
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            // The entries stay IN_FLIGHT and are released after the in-flight timeout
+            logger.error("Failed to record results for {} emails: {}", chunk.size(), e.getMessage());
+        }
+    }
+
+    private void record(NotificationOutboxEntry entry, String error) {
+        if (error == null) {
+            entry.markAsSent();
+            sent.increment();
+        } else if (entry.getAttempts() >= maxAttempts) {
+            entry.markAsFailed(error);
+            failed.increment();
+            logger.error("Giving up on {} email to {}: {}",
+                    entry.getNotificationType(), entry.getRecipient(), error);
+        } else {
+            entry.scheduleRetry(error, LocalDateTime.now().plus(backoff.after(entry.getAttempts())));
+            retried.increment();
+            logger.warn("Email to {} failed (attempt {}), retrying: {}",
+                    entry.getRecipient(), entry.getAttempts(), error);
+        }
+    }
+
+    private static long lagSeconds(NotificationOutboxRepository repository) {
+        LocalDateTime oldest = repository.findOldestPendingCreatedAt();
+        return oldest == null ? 0 : Math.max(0, Duration.between(oldest, LocalDateTime.now()).toSeconds());
+    }
+
+    private static Counter outcomeCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("loyalty.notification.outbox.dispatched")
+                .description("Notification outbox entries dispatched, by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    /**
+     * One email to send, covering one entry or a whole digest; detached, so safe to
+     * use outside the claiming transaction
+     */
+    private static class Claim {
+        final List<UUID> entryIds;
+        final String recipient;
+        final String subject;
+        final String body;
+
+        private Claim(List<UUID> entryIds, String recipient, String subject, String body) {
+            this.entryIds = entryIds;
+            this.recipient = recipient;
+            this.subject = subject;
+            this.body = body;
+        }
+
+        static Claim single(NotificationOutboxEntry entry) {
+            return new Claim(List.of(entry.getId()), entry.getRecipient(), entry.getSubject(), entry.getBody());
+        }
+
+        static Claim digest(List<NotificationOutboxEntry> lines, EmailTemplates templates) {
+            NotificationOutboxEntry first = lines.get(0);
+            String type = first.getNotificationType();
+            return new Claim(
+                    lines.stream().map(NotificationOutboxEntry::getId).toList(),
+                    first.getRecipient(),
+                    EmailTemplates.digestSubject(type, first.getOrderNumber(), lines.size()),
+                    templates.digest(type, new DigestEmailView(first.getRecipientName(), first.getOrderNumber(),
+                            lines.stream().map(NotificationOutboxEntry::getBody).toList())));
+        }
+    }
+}
@@ -1,31 +1,56 @@
 package com.loyaltyportal.service;
 
+import com.loyaltyportal.entity.NotificationOutboxEntry;
 import com.loyaltyportal.entity.OrderItem;
 import com.loyaltyportal.entity.RedemptionOrder;
+import com.loyaltyportal.repository.NotificationOutboxRepository;
+import com.loyaltyportal.service.notification.EmailTemplates;
+import com.loyaltyportal.service.notification.ItemEmailView;
+import com.loyaltyportal.service.notification.OrderEmailView;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.List;
 
+/**
+ * Renders notification emails and queues them in the notification outbox.
+ *
+ * Nothing here talks to SMTP: the email is written in the caller's transaction and
+ * sent later by {@link NotificationDispatcher}, so order endpoints never wait on the
+ * mail server and an email is only sent if the change it reports commits.
+ *
+ * Item-level emails (shipped, delivered, virtual item delivered) are queued as digest
+ * lines, held for {@code loyalty.notification.digest.window} and sent as one email
+ * per recipient, order and type. Completing the order releases its held lines at once.
+ *
+ * Bodies come from the precompiled {@link EmailTemplates}, rendered from flat view
+ * models; callers that already hold the views (order workflows, bulk shipment
+ * ingestion) can pass them in directly instead of loaded entities.
+ */
 @Service
 public class NotificationService {
 
     private static final Logger logger = LoggerFactory.getLogger(NotificationService.class);
 
-    private final JavaMailSender mailSender;
-    
-    @Value("${loyalty.notification.email.from}")
-    private String fromEmail;
+    private final NotificationOutboxRepository outboxRepository;
+    private final EmailTemplates templates;
     
     @Value("${loyalty.notification.email.enabled:true}")
     private boolean emailEnabled;
 
-    public NotificationService(JavaMailSender mailSender) {
-        this.mailSender = mailSender;
+    @Value("${loyalty.notification.digest.enabled:true}")
+    private boolean digestEnabled;
+
+    @Value("${loyalty.notification.digest.window:5m}")
+    private Duration digestWindow;
+
+    public NotificationService(NotificationOutboxRepository outboxRepository, EmailTemplates templates) {
+        this.outboxRepository = outboxRepository;
+        this.templates = templates;
     }
 
     /**
@@ -40,10 +65,11 @@ public class NotificationService {
         
         logger.info("Sending order confirmation for: {}", order.getOrderNumber());
         
-        String subject = "Order Confirmation - " + order.getOrderNumber();
-        String body = buildOrderConfirmationEmail(order);
+        OrderEmailView view = OrderEmailView.from(order);
+        String subject = "Order Confirmation - " + view.getOrderNumber();
+        String body = templates.orderConfirmation(view);
         
-        sendEmail(order.getAccountManager().getEmail(), subject, body);
+        sendEmail("ORDER_CONFIRMATION", view.getRecipientEmail(), subject, body);
     }
 
     /**
@@ -62,15 +88,20 @@ public class NotificationService {
     /**
      * Send virtual fulfillment success notification
      */
-    public void sendVirtualFulfillmentNotification(OrderItem item, Object response) {
+    public void sendVirtualFulfillmentNotification(ItemEmailView item) {
         if (!emailEnabled) return;
         
-        logger.info("Sending virtual fulfillment notification for item: {}", item.getProduct().getSku());
+        logger.info("Sending virtual fulfillment notification for item: {}", item.getSku());
+        
+        if (digestEnabled) {
+            queueDigestLine("VIRTUAL_FULFILLMENT", item);
+            return;
+        }
         
-        String subject = "Virtual Item Delivered - " + item.getOrder().getOrderNumber();
-        String body = buildVirtualFulfillmentEmail(item);
+        String subject = "Virtual Item Delivered - " + item.getOrderNumber();
+        String body = templates.virtualFulfillment(item);
         
-        sendEmail(item.getOrder().getAccountManager().getEmail(), subject, body);
+        sendEmail("VIRTUAL_FULFILLMENT", item.getRecipientEmail(), subject, body);
     }
 
     /**
@@ -88,157 +119,72 @@ public class NotificationService {
     /**
      * Send shipping notification
      */
-    public void sendShippingNotification(OrderItem item) {
+    public void sendShippingNotification(ItemEmailView item) {
         if (!emailEnabled) return;
         
         logger.info("Sending shipping notification for item: {} tracking: {}", 
-                item.getProduct().getSku(), item.getTrackingNumber());
+                item.getSku(), item.getTrackingNumber());
+        
+        if (digestEnabled) {
+            queueDigestLine("SHIPPING", item);
+            return;
+        }
         
-        String subject = "Item Shipped - " + item.getOrder().getOrderNumber();
-        String body = buildShippingEmail(item);
+        String subject = "Item Shipped - " + item.getOrderNumber();
+        String body = templates.shipping(item);
         
-        sendEmail(item.getOrder().getAccountManager().getEmail(), subject, body);
+        sendEmail("SHIPPING", item.getRecipientEmail(), subject, body);
     }
 
     /**
      * Send delivery notification
      */
-    public void sendDeliveryNotification(OrderItem item) {
+    public void sendDeliveryNotification(ItemEmailView item) {
         if (!emailEnabled) return;
         
-        logger.info("Sending delivery notification for item: {}", item.getProduct().getSku());
+        logger.info("Sending delivery notification for item: {}", item.getSku());
+        
+        if (digestEnabled) {
+            queueDigestLine("DELIVERY", item);
+            return;
+        }
         
-        String subject = "Item Delivered - " + item.getOrder().getOrderNumber();
-        String body = buildDeliveryEmail(item);
+        String subject = "Item Delivered - " + item.getOrderNumber();
+        String body = templates.delivery(item);
         
-        sendEmail(item.getOrder().getAccountManager().getEmail(), subject, body);
+        sendEmail("DELIVERY", item.getRecipientEmail(), subject, body);
     }
 
     /**
      * Send order completion notification
      */
-    public void sendOrderCompletionNotification(RedemptionOrder order) {
+    public void sendOrderCompletionNotification(OrderEmailView order) {
         if (!emailEnabled) return;
         
         logger.info("Sending order completion notification for: {}", order.getOrderNumber());
         
         String subject = "Order Complete - " + order.getOrderNumber();
-        String body = buildOrderCompletionEmail(order);
-        
-        sendEmail(order.getAccountManager().getEmail(), subject, body);
-    }
-
-    // Private helper methods
-    private void sendEmail(String to, String subject, String body) {
-        try {
-            SimpleMailMessage message = new SimpleMailMessage();
-            message.setFrom(fromEmail);
-            message.setTo(to);
-            message.setSubject(subject);
-            message.setText(body);
-            
-            mailSender.send(message);
-            
-            logger.debug("Email sent successfully to: {} subject: {}", to, subject);
-            
-        } catch (Exception e) {
-            logger.error("Failed to send email to: {} subject: {} error: {}", to, subject, e.getMessage());
-        }
-    }
-
-    private String buildOrderConfirmationEmail(RedemptionOrder order) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("Dear ").append(order.getAccountManager().getName()).append(",\n\n");
-        sb.append("Your loyalty points redemption order has been confirmed:\n\n");
-        sb.append("Order Number: ").append(order.getOrderNumber()).append("\n");
-        sb.append("Company: ").append(order.getCompany().getName()).append("\n");
-        sb.append("Total Points: ").append(order.getTotalPoints()).append("\n");
-        sb.append("Items: ").append(order.getItems().size()).append("\n");
-        sb.append("Order Date: ").append(order.getCreatedAt()).append("\n\n");
-        
-        if (order.getShippingAddress() != null) {
-            sb.append("Shipping Address:\n").append(order.getShippingAddress()).append("\n\n");
-        }
-        
-        sb.append("We will notify you when your items are processed and shipped.\n\n");
-        sb.append("Thank you for your business!\n\n");
-        sb.append("Loyalty Redemption Portal Team");
-        
-        return sb.toString();
-    }
-
-    private String buildVirtualFulfillmentEmail(OrderItem item) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("Dear ").append(item.getOrder().getAccountManager().getName()).append(",\n\n");
-        sb.append("Your virtual item has been delivered:\n\n");
-        sb.append("Product: ").append(item.getProduct().getName()).append("\n");
-        sb.append("SKU: ").append(item.getProduct().getSku()).append("\n");
-        sb.append("Quantity: ").append(item.getQuantity()).append("\n");
-        sb.append("Order: ").append(item.getOrder().getOrderNumber()).append("\n");
-        sb.append("Delivered At: ").append(item.getDeliveredAt()).append("\n\n");
-        
-        if (item.getFulfillmentReference() != null) {
-            sb.append("Fulfillment Reference: ").append(item.getFulfillmentReference()).append("\n\n");
-        }
-        
-        sb.append("Please check your email for any additional instructions or access codes.\n\n");
-        sb.append("Thank you for your business!\n\n");
-        sb.append("Loyalty Redemption Portal Team");
-        
-        return sb.toString();
-    }
-
-    private String buildShippingEmail(OrderItem item) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("Dear ").append(item.getOrder().getAccountManager().getName()).append(",\n\n");
-        sb.append("Your item has been shipped:\n\n");
-        sb.append("Product: ").append(item.getProduct().getName()).append("\n");
-        sb.append("SKU: ").append(item.getProduct().getSku()).append("\n");
-        sb.append("Quantity: ").append(item.getQuantity()).append("\n");
-        sb.append("Order: ").append(item.getOrder().getOrderNumber()).append("\n");
-        sb.append("Tracking Number: ").append(item.getTrackingNumber()).append("\n\n");
-        
-        if (item.getOrder().getShippingAddress() != null) {
-            sb.append("Shipping Address:\n").append(item.getOrder().getShippingAddress()).append("\n\n");
-        }
+        String body = templates.orderCompletion(order);
         
-        sb.append("You can track your shipment using the tracking number provided.\n\n");
-        sb.append("Thank you for your business!\n\n");
-        sb.append("Loyalty Redemption Portal Team");
+        sendEmail("ORDER_COMPLETION", order.getRecipientEmail(), subject, body);
         
-        return sb.toString();
+        // Nothing more is coming for this order, so stop holding its digests
+        outboxRepository.releaseDigestsForOrder(order.getOrderNumber(), LocalDateTime.now());
     }
 
-    private String buildDeliveryEmail(OrderItem item) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("Dear ").append(item.getOrder().getAccountManager().getName()).append(",\n\n");
-        sb.append("Your item has been delivered:\n\n");
-        sb.append("Product: ").append(item.getProduct().getName()).append("\n");
-        sb.append("SKU: ").append(item.getProduct().getSku()).append("\n");
-        sb.append("Quantity: ").append(item.getQuantity()).append("\n");
-        sb.append("Order: ").append(item.getOrder().getOrderNumber()).append("\n");
-        sb.append("Delivered At: ").append(item.getDeliveredAt()).append("\n\n");
-        
-        sb.append("We hope you enjoy your new item!\n\n");
-        sb.append("Thank you for your business!\n\n");
-        sb.append("Loyalty Redemption Portal Team");
-        
-        return sb.toString();
+    // Private helper methods
+    private void sendEmail(String type, String to, String subject, String body) {
+        outboxRepository.save(new NotificationOutboxEntry(type, to, subject, body));
+        logger.debug("Email queued for: {} subject: {}", to, subject);
     }
 
-    private String buildOrderCompletionEmail(RedemptionOrder order) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("Dear ").append(order.getAccountManager().getName()).append(",\n\n");
-        sb.append("Your order has been completed:\n\n");
-        sb.append("Order Number: ").append(order.getOrderNumber()).append("\n");
-        sb.append("Total Points: ").append(order.getTotalPoints()).append("\n");
-        sb.append("Items: ").append(order.getItems().size()).append("\n");
-        sb.append("Completed At: ").append(order.getCompletedAt()).append("\n\n");
-        
-        sb.append("All items in your order have been successfully fulfilled.\n\n");
-        sb.append("Thank you for your business!\n\n");
-        sb.append("Loyalty Redemption Portal Team");
+    private void queueDigestLine(String type, ItemEmailView item) {
+        String recipient = item.getRecipientEmail();
         
-        return sb.toString();
+        NotificationOutboxEntry entry = new NotificationOutboxEntry(type, recipient,
+                EmailTemplates.digestSubject(type, item.getOrderNumber(), 1), templates.digestLine(type, item));
+        entry.holdForDigest(type + "|" + item.getOrderNumber() + "|" + recipient, item.getOrderNumber(),
+                item.getRecipientName(), LocalDateTime.now().plus(digestWindow));
+        outboxRepository.save(entry);
     }
-}
\ No newline at end of file
+}
@@ -1,15 +1,16 @@
 package com.loyaltyportal.service;
 
 import com.loyaltyportal.entity.*;
+import com.loyaltyportal.repository.FulfillmentOutboxRepository;
 import com.loyaltyportal.repository.OrderItemRepository;
 import com.loyaltyportal.repository.RedemptionOrderRepository;
+import com.loyaltyportal.service.VirtualFulfillmentClient.VirtualFulfillmentResponse;
+import com.loyaltyportal.service.notification.ItemEmailView;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.reactive.function.client.WebClient;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -25,10 +26,8 @@ public class OrderWorkflowService {
     private final OrderItemRepository orderItemRepository;
     private final InventoryService inventoryService;
     private final NotificationService notificationService;
-    private final WebClient virtualFulfillmentClient;
-
-    @Value("${loyalty.fulfillment.virtual.api-url}")
-    private String virtualFulfillmentApiUrl;
+    private final FulfillmentOutboxRepository outboxRepository;
+    private final CompanyPointsSummaryService summaryService;
 
     @Autowired
     public OrderWorkflowService(
@@ -36,12 +35,14 @@ public class OrderWorkflowService {
             OrderItemRepository orderItemRepository,
             InventoryService inventoryService,
             NotificationService notificationService,
-            WebClient.Builder webClientBuilder) {
+            FulfillmentOutboxRepository outboxRepository,
+            CompanyPointsSummaryService summaryService) {
         this.orderRepository = orderRepository;
         this.orderItemRepository = orderItemRepository;
         this.inventoryService = inventoryService;
         this.notificationService = notificationService;
-        this.virtualFulfillmentClient = webClientBuilder.build();
+        this.outboxRepository = outboxRepository;
+        this.summaryService = summaryService;
     }
 
     /**
@@ -72,6 +73,19 @@ public class OrderWorkflowService {
         notificationService.sendOrderConfirmation(order);
     }
 
+    /**
+     * Move an order whose points debit went through from PENDING to PROCESSING and
+     * start fulfilling it
+     */
+    public void startFulfillment(RedemptionOrder order) {
+        OrderStatus previous = order.getStatus();
+        order.markAsProcessing();
+        orderRepository.save(order);
+        summaryService.recordOrderStatusChange(order, previous);
+
+        initiateOrderFulfillment(order);
+    }
+
     /**
      * Process physical items - create manual fulfillment tasks
      */
@@ -99,6 +113,7 @@ public class OrderWorkflowService {
                 
                 item.markAsFailed("Failed to initiate fulfillment: " + e.getMessage());
                 orderItemRepository.save(item);
+                orderRepository.incrementFailedItems(order.getId());
             }
         }
         
@@ -127,18 +142,21 @@ public class OrderWorkflowService {
                 
                 item.markAsFailed("Failed to fulfill virtually: " + e.getMessage());
                 orderItemRepository.save(item);
+                orderRepository.incrementFailedItems(order.getId());
             }
         }
     }
 
     /**
-     * Fulfill a virtual item via API call
+     * Queue a virtual item for fulfillment. The outbox entry commits with the item's
+     * PROCESSING status; {@link FulfillmentDispatcher} sends it to the provider.
      */
     private void fulfillVirtualItem(RedemptionOrder order, OrderItem item) {
-        logger.info("Fulfilling virtual item: {} for order: {}", 
+        logger.info("Queueing virtual item: {} for order: {}", 
                 item.getProduct().getSku(), order.getOrderNumber());
         
-        VirtualFulfillmentRequest request = new VirtualFulfillmentRequest(
+        FulfillmentOutboxEntry entry = new FulfillmentOutboxEntry(
+                item,
                 order.getOrderNumber() + "-" + item.getId(),
                 item.getProduct().getSku(),
                 item.getQuantity(),
@@ -146,22 +164,21 @@ public class OrderWorkflowService {
                 order.getAccountManager().getName(),
                 order.getCompany().getName()
         );
-        
-        virtualFulfillmentClient.post()
-                .uri(virtualFulfillmentApiUrl + "/fulfill")
-                .bodyValue(request)
-                .retrieve()
-                .bodyToMono(VirtualFulfillmentResponse.class)
-                .subscribe(
-                    response -> handleVirtualFulfillmentSuccess(item, response),
-                    error -> handleVirtualFulfillmentError(item, error)
-                );
+        outboxRepository.save(entry);
     }
 
     /**
-     * Handle successful virtual fulfillment
+     * Record a successful virtual fulfillment reported by the dispatcher
      */
-    private void handleVirtualFulfillmentSuccess(OrderItem item, VirtualFulfillmentResponse response) {
+    public void completeVirtualFulfillment(UUID itemId, VirtualFulfillmentResponse response) {
+        OrderItem item = orderItemRepository.findByIdForUpdate(itemId)
+                .orElseThrow(() -> new WorkflowException("Order item not found: " + itemId));
+        
+        if (item.isComplete()) {
+            logger.info("Virtual item {} already fulfilled, ignoring duplicate result", itemId);
+            return;
+        }
+        
         logger.info("Virtual fulfillment successful for item: {} with reference: {}", 
                 item.getProduct().getSku(), response.getFulfillmentId());
         
@@ -169,25 +186,34 @@ public class OrderWorkflowService {
         item.setDeliveredAt(LocalDateTime.now());
         orderItemRepository.save(item);
         
-        // Check if all items in the order are fulfilled
-        checkOrderCompletion(item.getOrder());
+        // Queue the item notification first, so completing the order releases it too
+        notificationService.sendVirtualFulfillmentNotification(emailView(item));
         
-        // Send fulfillment notification
-        notificationService.sendVirtualFulfillmentNotification(item, response);
+        // Check if all items in the order are fulfilled
+        recordItemCompleted(item.getOrder());
     }
 
     /**
-     * Handle virtual fulfillment error
+     * Record a virtual fulfillment the dispatcher has given up on
      */
-    private void handleVirtualFulfillmentError(OrderItem item, Throwable error) {
+    public void failVirtualFulfillment(UUID itemId, String errorMessage) {
+        OrderItem item = orderItemRepository.findByIdForUpdate(itemId)
+                .orElseThrow(() -> new WorkflowException("Order item not found: " + itemId));
+        
+        if (item.isComplete() || FulfillmentStatus.FAILED.equals(item.getFulfillmentStatus())) {
+            logger.info("Virtual item {} already finished, ignoring failure: {}", itemId, errorMessage);
+            return;
+        }
+        
         logger.error("Virtual fulfillment failed for item: {} error: {}", 
-                item.getProduct().getSku(), error.getMessage());
+                item.getProduct().getSku(), errorMessage);
         
-        item.markAsFailed("Virtual fulfillment failed: " + error.getMessage());
+        item.markAsFailed("Virtual fulfillment failed: " + errorMessage);
         orderItemRepository.save(item);
+        orderRepository.incrementFailedItems(item.getOrder().getId());
         
         // Notify about the failure
-        notificationService.sendFulfillmentFailureNotification(item, error.getMessage());
+        notificationService.sendFulfillmentFailureNotification(item, errorMessage);
     }
 
     /**
@@ -207,7 +233,7 @@ public class OrderWorkflowService {
         orderItemRepository.save(item);
         
         // Send shipping notification
-        notificationService.sendShippingNotification(item);
+        notificationService.sendShippingNotification(emailView(item));
         
         logger.info("Successfully marked item as shipped: {} tracking: {}", itemId, trackingNumber);
     }
@@ -218,7 +244,7 @@ public class OrderWorkflowService {
     public void markItemAsDelivered(UUID itemId) {
         logger.info("Marking item as delivered: {}", itemId);
         
-        OrderItem item = orderItemRepository.findById(itemId)
+        OrderItem item = orderItemRepository.findByIdForUpdate(itemId)
                 .orElseThrow(() -> new WorkflowException("Order item not found: " + itemId));
         
         if (!FulfillmentStatus.SHIPPED.equals(item.getFulfillmentStatus())) {
@@ -228,36 +254,47 @@ public class OrderWorkflowService {
         item.markAsDelivered();
         orderItemRepository.save(item);
         
-        // Check if all items in the order are completed
-        checkOrderCompletion(item.getOrder());
+        // Queue the item notification first, so completing the order releases it too
+        notificationService.sendDeliveryNotification(emailView(item));
         
-        // Send delivery notification
-        notificationService.sendDeliveryNotification(item);
+        // Check if all items in the order are completed
+        recordItemCompleted(item.getOrder());
         
         logger.info("Successfully marked item as delivered: {}", itemId);
     }
 
     /**
-     * Check if order is complete and update status
+     * Count one more completed item and complete the order when it was the last one.
+     * Both are single conditional updates on the order row, so concurrent completions
+     * queue on its lock and exactly one of them completes the order.
      */
-    private void checkOrderCompletion(RedemptionOrder order) {
-        List<OrderItem> items = orderItemRepository.findByOrder(order);
-        
-        boolean allItemsCompleted = items.stream().allMatch(item -> 
-                FulfillmentStatus.DELIVERED.equals(item.getFulfillmentStatus()) ||
-                FulfillmentStatus.FULFILLED.equals(item.getFulfillmentStatus()));
+    private void recordItemCompleted(RedemptionOrder order) {
+        orderRepository.incrementCompletedItems(order.getId());
         
-        if (allItemsCompleted && !order.isCompleted()) {
-            order.markAsCompleted();
-            orderRepository.save(order);
+        LocalDateTime completedAt = LocalDateTime.now();
+        if (orderRepository.markCompletedIfAllItemsDone(order.getId(), completedAt) == 1) {
+            // Mirror the update on the loaded entity; flushing it writes the same values
+            OrderStatus previous = order.getStatus();
+            order.setStatus(OrderStatus.COMPLETED);
+            order.setCompletedAt(completedAt);
+            summaryService.recordOrderStatusChange(order, previous);
             
             // Send order completion notification
-            notificationService.sendOrderCompletionNotification(order);
+            notificationService.sendOrderCompletionNotification(
+                    orderRepository.findEmailViews(List.of(order.getId())).get(0));
             
             logger.info("Order completed: {}", order.getOrderNumber());
         }
     }
 
+    /**
+     * Read what the item email shows in one query rather than walking the item's lazy
+     * order, account manager and product. The query flushes the item's changes first.
+     */
+    private ItemEmailView emailView(OrderItem item) {
+        return orderItemRepository.findEmailViews(List.of(item.getId())).get(0);
+    }
+
     /**
      * Get orders that need manual fulfillment attention
      */
@@ -274,62 +311,9 @@ public class OrderWorkflowService {
 
     // Private helper methods
     private void createManualFulfillmentTask(RedemptionOrder order, OrderItem item) {
-        // In a real implementation, this would create a task in a workflow system
-        // or send to a fulfillment management system
+        // The item is now PROCESSING, which puts it in the next pick wave (see PickListService)
         logger.info("Creating manual fulfillment task for order: {} item: {} quantity: {}", 
                 order.getOrderNumber(), item.getProduct().getSku(), item.getQuantity());
-        
-        // For now, we'll just log the task creation
-        // Future enhancement: integrate with workflow management system
-    }
-
-    // DTOs for virtual fulfillment API
-    private static class VirtualFulfillmentRequest {
-        private String referenceId;
-        private String productSku;
-        private Integer quantity;
-        private String customerEmail;
-        private String customerName;
-        private String companyName;
-
-        public VirtualFulfillmentRequest(String referenceId, String productSku, Integer quantity, 
-                                       String customerEmail, String customerName, String companyName) {
-            this.referenceId = referenceId;
-            this.productSku = productSku;
-            this.quantity = quantity;
-            this.customerEmail = customerEmail;
-            this.customerName = customerName;
-            this.companyName = companyName;
-        }
-
-        // Getters and Setters
-        public String getReferenceId() { return referenceId; }
-        public void setReferenceId(String referenceId) { this.referenceId = referenceId; }
-        public String getProductSku() { return productSku; }
-        public void setProductSku(String productSku) { this.productSku = productSku; }
-        public Integer getQuantity() { return quantity; }
-        public void setQuantity(Integer quantity) { this.quantity = quantity; }
-        public String getCustomerEmail() { return customerEmail; }
-        public void setCustomerEmail(String customerEmail) { this.customerEmail = customerEmail; }
-        public String getCustomerName() { return customerName; }
-        public void setCustomerName(String customerName) { this.customerName = customerName; }
-        public String getCompanyName() { return companyName; }
-        public void setCompanyName(String companyName) { this.companyName = companyName; }
-    }
-
-    private static class VirtualFulfillmentResponse {
-        private String fulfillmentId;
-        private String status;
-        private String message;
-
-        public VirtualFulfillmentResponse() {}
-
-        public String getFulfillmentId() { return fulfillmentId; }
-        public void setFulfillmentId(String fulfillmentId) { this.fulfillmentId = fulfillmentId; }
-        public String getStatus() { return status; }
-        public void setStatus(String status) { this.status = status; }
-        public String getMessage() { return message; }
-        public void setMessage(String message) { this.message = message; }
     }
 
     public static class WorkflowException extends RuntimeException {
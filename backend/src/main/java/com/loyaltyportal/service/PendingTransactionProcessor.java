@@ -0,0 +1,327 @@
+package com.loyaltyportal.service;
+
+import com.loyaltyportal.dto.TransactionResponse;
+import com.loyaltyportal.entity.LoyaltyTransaction;
+import com.loyaltyportal.entity.OrderStatus;
+import com.loyaltyportal.entity.RedemptionOrder;
+import com.loyaltyportal.entity.TransactionStatus;
+import com.loyaltyportal.entity.TransactionType;
+import com.loyaltyportal.repository.LoyaltyTransactionRepository;
+import com.loyaltyportal.service.resilience.Backoff;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Works off loyalty transactions that are due for an attempt, in small chunks.
+ *
+ * New PENDING transactions are due straight away; a failed attempt is rescheduled with
+ * exponential backoff and jitter, so retries against a struggling provider spread out
+ * instead of arriving in bursts, and after {@link #MAX_RETRIES} attempts the
+ * transaction is left FAILED with no next attempt. A debit whose order has failed or
+ * been cancelled is not sent again; one that goes through for a PENDING order moves
+ * the order on to fulfillment.
+ *
+ * A pass walks the due rows in (next_attempt_at, id) order. Each chunk is claimed with
+ * SKIP LOCKED, sent to the provider with at most {@code max-concurrency} calls in
+ * flight, and recorded in the same transaction, so its row locks are held only for
+ * one chunk. Several nodes can drain the backlog in parallel: each skips the rows the
+ * others hold. If a chunk fails or a node dies, its transaction rolls back and the rows
+ * are picked up again; the provider deduplicates on the reference, which is the same
+ * as the original attempt's.
+ *
+ * Only transactions created within {@code horizon} are considered, which keeps the
+ * poll on the ledger's recent partitions; older ones are left for manual handling.
+ */
+@Service
+public class PendingTransactionProcessor {
+
+    private static final Logger logger = LoggerFactory.getLogger(PendingTransactionProcessor.class);
+
+    private static final LocalDateTime START_ATTEMPT_AT = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final UUID START_ID = new UUID(0L, 0L);
+    static final int MAX_RETRIES = 3;
+
+    private final LoyaltyTransactionRepository transactionRepository;
+    private final LoyaltyBatchClient loyaltyClient;
+    private final CompanyPointsSummaryService summaryService;
+    private final OrderWorkflowService workflowService;
+    private final TransactionTemplate transactionTemplate;
+
+    private final boolean enabled;
+    private final int chunkSize;
+    private final int maxConcurrency;
+    private final Duration chunkTimeout;
+    private final Backoff backoff;
+    private final Duration horizon;
+
+    private final Counter completed;
+    private final Counter retried;
+    private final Counter failed;
+    private final BacklogGauge due;
+
+    @Autowired
+    public PendingTransactionProcessor(
+            LoyaltyTransactionRepository transactionRepository,
+            LoyaltyBatchClient loyaltyClient,
+            CompanyPointsSummaryService summaryService,
+            OrderWorkflowService workflowService,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${loyalty.transactions.retry.enabled:true}") boolean enabled,
+            @Value("${loyalty.transactions.retry.chunk-size:50}") int chunkSize,
+            @Value("${loyalty.transactions.retry.max-concurrency:8}") int maxConcurrency,
+            @Value("${loyalty.transactions.retry.chunk-timeout:2m}") Duration chunkTimeout,
+            @Value("${loyalty.transactions.retry.backoff:30s}") Duration backoff,
+            @Value("${loyalty.transactions.retry.max-backoff:30m}") Duration maxBackoff,
+            @Value("${loyalty.transactions.retry.horizon:35d}") Duration horizon) {
+        this.transactionRepository = transactionRepository;
+        this.loyaltyClient = loyaltyClient;
+        this.summaryService = summaryService;
+        this.workflowService = workflowService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.chunkSize = chunkSize;
+        this.maxConcurrency = maxConcurrency;
+        this.chunkTimeout = chunkTimeout;
+        this.backoff = new Backoff(backoff, maxBackoff);
+        this.horizon = horizon;
+
+        this.completed = outcomeCounter(meterRegistry, "completed");
+        this.retried = outcomeCounter(meterRegistry, "retried");
+        this.failed = outcomeCounter(meterRegistry, "failed");
+        this.due = BacklogGauge.register(meterRegistry, "loyalty.transactions.retry.due",
+                "Loyalty transactions due for an attempt", null,
+                () -> {
+                    LocalDateTime now = LocalDateTime.now();
+                    return transactionRepository.countDue(now, now.minus(horizon));
+                });
+    }
+
+    @Scheduled(fixedDelayString = "${loyalty.transactions.retry.poll-interval:10000}")
+    public void processBacklog() {
+        due.refresh();
+        if (!enabled) {
+            return;
+        }
+
+        int processed = drain();
+        if (processed > 0) {
+            logger.info("Processed {} due loyalty transactions", processed);
+        }
+    }
+
+    /**
+     * One pass over the transactions due now; returns the number processed. Rows
+     * rescheduled during the pass move past {@code now} and are not seen again.
+     */
+    int drain() {
+        LocalDateTime now = LocalDateTime.now();
+        Position position = new Position(START_ATTEMPT_AT, START_ID);
+        int processed = 0;
+        while (true) {
+            Position after = position;
+            Chunk chunk;
+            try {
+                chunk = transactionTemplate.execute(status -> processChunk(now, after));
+            } catch (RuntimeException e) {
+                // Rolled back, so the chunk's rows are free for the next pass
+                logger.error("Failed to process loyalty transaction chunk, stopping this pass: {}", e.getMessage());
+                break;
+            }
+            if (chunk == null || chunk.size == 0) {
+                break;
+            }
+
+            processed += chunk.size;
+            position = chunk.end;
+            if (chunk.size < chunkSize) {
+                break;
+            }
+        }
+        return processed;
+    }
+
+    /**
+     * Claim, send and record the chunk of due rows after {@code after}
+     */
+    private Chunk processChunk(LocalDateTime now, Position after) {
+        List<LoyaltyTransaction> claimed = transactionRepository.findNextToProcess(now, now.minus(horizon),
+                after.attemptAt, after.id, PageRequest.of(0, chunkSize));
+        if (claimed.isEmpty()) {
+            return Chunk.EMPTY;
+        }
+        // Keyset position of the claimed rows, taken before recording moves them
+        LoyaltyTransaction last = claimed.get(claimed.size() - 1);
+        Position end = new Position(last.getNextAttemptAt(), last.getId());
+
+        // Initialises order and company on the claimed instances for the provider calls
+        Map<UUID, LoyaltyTransaction> byId = claimed.stream()
+                .collect(Collectors.toMap(LoyaltyTransaction::getId, Function.identity()));
+        transactionRepository.findWithOrderAndCompanyByIdIn(byId.keySet());
+        List<Call> calls = claimed.stream()
+                .filter(transaction -> !abandonDebitOfClosedOrder(transaction))
+                .map(Call::new)
+                .toList();
+
+        List<Outcome> outcomes = Flux.fromIterable(calls)
+                .flatMap(this::send, maxConcurrency)
+                .collectList()
+                .block(chunkTimeout);
+
+        // Recorded on this thread, inside the chunk's transaction
+        for (Outcome outcome : outcomes) {
+            record(byId.get(outcome.call.transactionId), outcome);
+        }
+        return new Chunk(claimed.size(), end);
+    }
+
+    /**
+     * Attempt one failed transaction now instead of at its scheduled time, e.g. on an
+     * operator's request, and record the outcome by the same rules as a scheduled
+     * attempt; returns whether it completed. Order and company must be loaded.
+     */
+    boolean attemptNow(LoyaltyTransaction transaction) {
+        if (abandonDebitOfClosedOrder(transaction)) {
+            return false;
+        }
+        Outcome outcome = send(new Call(transaction)).block(chunkTimeout);
+        record(transaction, outcome);
+        return transaction.isCompleted();
+    }
+
+    /**
+     * A debit for an order that has failed or been cancelled must not charge the company
+     * now; it is left FAILED with no next attempt
+     */
+    private boolean abandonDebitOfClosedOrder(LoyaltyTransaction transaction) {
+        OrderStatus orderStatus = transaction.getOrder().getStatus();
+        if (!TransactionType.DEBIT.equals(transaction.getTransactionType())
+                || (orderStatus != OrderStatus.FAILED && orderStatus != OrderStatus.CANCELLED)) {
+            return false;
+        }
+        transaction.markAsExhausted("Order is " + orderStatus.name() + ", debit not retried");
+        failed.increment();
+        logger.warn("Not retrying debit {} of {} order {}", transaction.getId(), orderStatus.name(),
+                transaction.getOrder().getOrderNumber());
+        return true;
+    }
+
+    private Mono<Outcome> send(Call call) {
+        Mono<TransactionResponse> response = TransactionType.DEBIT.equals(call.type)
+                ? loyaltyClient.debitPoints(call.accountId, call.points, call.reference)
+                : loyaltyClient.creditPoints(call.accountId, call.points, call.reference);
+        return response
+                .map(result -> new Outcome(call, result, null))
+                .onErrorResume(error -> Mono.just(new Outcome(call, null, error)));
+    }
+
+    private void record(LoyaltyTransaction transaction, Outcome outcome) {
+        transaction.setStatus(TransactionStatus.PROCESSING);
+        if (outcome.response != null && outcome.response.isSuccessful()) {
+            transaction.markAsCompleted(outcome.response.getTransactionId());
+            summaryService.recordCompletedTransaction(transaction);
+            RedemptionOrder order = transaction.getOrder();
+            if (TransactionType.DEBIT.equals(transaction.getTransactionType()) && order.isPending()) {
+                // The points are paid, so the order goes on as if the first debit had worked
+                workflowService.startFulfillment(order);
+            }
+            completed.increment();
+            return;
+        }
+
+        String error = outcome.error != null ? outcome.error.getMessage()
+                : "Provider returned " + outcome.response.getStatus() + ": " + outcome.response.getErrorMessage();
+        int attempt = transaction.getRetryCount() + 1;
+        if (attempt >= MAX_RETRIES) {
+            transaction.markAsExhausted("Max retries exceeded: " + error);
+            failed.increment();
+            logger.error("Loyalty transaction {} failed after {} attempts: {}",
+                    transaction.getId(), attempt, error);
+        } else {
+            Duration delay = backoff.after(attempt);
+            transaction.scheduleRetry("Retry failed: " + error, LocalDateTime.now().plus(delay));
+            retried.increment();
+            logger.warn("Loyalty transaction {} failed (attempt {}), retrying in {}s: {}",
+                    transaction.getId(), attempt, delay.toSeconds(), error);
+        }
+    }
+
+    private static Counter outcomeCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("loyalty.transactions.retry.processed")
+                .description("Pending loyalty transactions processed, by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private static class Position {
+        final LocalDateTime attemptAt;
+        final UUID id;
+
+        Position(LocalDateTime attemptAt, UUID id) {
+            this.attemptAt = attemptAt;
+            this.id = id;
+        }
+    }
+
+    private static class Chunk {
+        static final Chunk EMPTY = new Chunk(0, null);
+
+        final int size;
+        final Position end;
+
+        Chunk(int size, Position end) {
+            this.size = size;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Detached copy of what the provider call needs, safe to use on reactor threads
+     */
+    private static class Call {
+        final UUID transactionId;
+        final TransactionType type;
+        final String accountId;
+        final Integer points;
+        final String reference;
+
+        Call(LoyaltyTransaction transaction) {
+            this.transactionId = transaction.getId();
+            this.type = transaction.getTransactionType();
+            this.accountId = transaction.getCompany().getLoyaltyAccountId();
+            this.points = transaction.getPointsAmount();
+            this.reference = LoyaltyTransactionService.generateTransactionReference(transaction);
+        }
+    }
+
+    private static class Outcome {
+        final Call call;
+        final TransactionResponse response;
+        final Throwable error;
+
+        Outcome(Call call, TransactionResponse response, Throwable error) {
+            this.call = call;
+            this.response = response;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.loyaltyportal.service;
+
+import com.loyaltyportal.dto.PickLine;
+import com.loyaltyportal.entity.FulfillmentStatus;
+import com.loyaltyportal.repository.OrderItemRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Builds pick waves for the warehouse from physical items awaiting manual fulfillment.
+ *
+ * A wave is the next {@code wave-size} items, oldest first, read with one projection
+ * query. Within the wave, items are grouped into stops by bin location and SKU, so a
+ * picker walks each location once and takes the total quantity for all orders there.
+ * Waves are paged with an opaque keyset cursor rather than an offset, so fetching the
+ * hundredth wave of a large backlog costs the same as the first.
+ */
+@Service
+@Transactional(readOnly = true)
+public class PickListService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PickListService.class);
+
+    static final String UNASSIGNED_LOCATION = "UNASSIGNED";
+
+    private static final LocalDateTime START_CREATED_AT = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final UUID START_ID = new UUID(0L, 0L);
+
+    private final OrderItemRepository orderItemRepository;
+    private final int defaultWaveSize;
+    private final int maxWaveSize;
+
+    @Autowired
+    public PickListService(
+            OrderItemRepository orderItemRepository,
+            @Value("${loyalty.fulfillment.pick-list.wave-size:200}") int defaultWaveSize,
+            @Value("${loyalty.fulfillment.pick-list.max-wave-size:1000}") int maxWaveSize) {
+        this.orderItemRepository = orderItemRepository;
+        this.defaultWaveSize = defaultWaveSize;
+        this.maxWaveSize = maxWaveSize;
+    }
+
+    /**
+     * Build the wave that follows {@code cursor}, or the first wave if it is null
+     *
+     * @throws IllegalArgumentException if the cursor was not issued by this service
+     */
+    public PickWave buildWave(String cursor, Integer size) {
+        int waveSize = Math.min(maxWaveSize, Math.max(1, size != null ? size : defaultWaveSize));
+        LocalDateTime afterCreatedAt = START_CREATED_AT;
+        UUID afterId = START_ID;
+        if (cursor != null && !cursor.isBlank()) {
+            String[] position = decodeCursor(cursor);
+            afterCreatedAt = LocalDateTime.parse(position[0]);
+            afterId = UUID.fromString(position[1]);
+        }
+
+        List<PickLine> lines = orderItemRepository.findPickLines(
+                FulfillmentStatus.PROCESSING, afterCreatedAt, afterId, PageRequest.of(0, waveSize));
+
+        String nextCursor = null;
+        if (lines.size() == waveSize) {
+            PickLine last = lines.get(lines.size() - 1);
+            nextCursor = encodeCursor(last.getCreatedAt(), last.getItemId());
+        }
+
+        PickWave wave = new PickWave(cursor, nextCursor, lines.size(), group(lines));
+        logger.debug("Built pick wave of {} items in {} stops for {} orders",
+                wave.getItemCount(), wave.getStops().size(), wave.getOrderNumbers().size());
+        return wave;
+    }
+
+    private static List<PickStop> group(List<PickLine> lines) {
+        Map<String, PickStop> stops = new LinkedHashMap<>();
+        for (PickLine line : lines) {
+            String location = line.getBinLocation() != null ? line.getBinLocation() : UNASSIGNED_LOCATION;
+            stops.computeIfAbsent(location + "\u0000" + line.getSku(),
+                            key -> new PickStop(location, line.getSku(), line.getProductName()))
+                    .add(new PickAllocation(line.getOrderNumber(), line.getItemId(), line.getQuantity()));
+        }
+
+        List<PickStop> ordered = new ArrayList<>(stops.values());
+        // Walk the warehouse in location order; items without a bin come last
+        ordered.sort(Comparator
+                .comparing((PickStop stop) -> UNASSIGNED_LOCATION.equals(stop.getLocation()))
+                .thenComparing(PickStop::getLocation)
+                .thenComparing(PickStop::getSku));
+        return ordered;
+    }
+
+    static String encodeCursor(LocalDateTime createdAt, UUID itemId) {
+        String position = createdAt + "|" + itemId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String[] decodeCursor(String cursor) {
+        try {
+            String[] position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|");
+            if (position.length != 2) {
+                throw new IllegalArgumentException("Invalid pick wave cursor");
+            }
+            LocalDateTime.parse(position[0]);
+            UUID.fromString(position[1]);
+            return position;
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid pick wave cursor", e);
+        }
+    }
+
+    public static class PickWave {
+        private final String cursor;
+        private final String nextCursor;
+        private final int itemCount;
+        private final List<PickStop> stops;
+        private final Set<String> orderNumbers = new LinkedHashSet<>();
+        private final LocalDateTime generatedAt = LocalDateTime.now();
+
+        public PickWave(String cursor, String nextCursor, int itemCount, List<PickStop> stops) {
+            this.cursor = cursor;
+            this.nextCursor = nextCursor;
+            this.itemCount = itemCount;
+            this.stops = stops;
+            stops.forEach(stop -> stop.getAllocations()
+                    .forEach(allocation -> orderNumbers.add(allocation.getOrderNumber())));
+        }
+
+        // Getters
+        public String getCursor() { return cursor; }
+        public String getNextCursor() { return nextCursor; }
+        public int getItemCount() { return itemCount; }
+        public List<PickStop> getStops() { return stops; }
+        public Set<String> getOrderNumbers() { return orderNumbers; }
+        public LocalDateTime getGeneratedAt() { return generatedAt; }
+    }
+
+    public static class PickStop {
+        private final String location;
+        private final String sku;
+        private final String productName;
+        private final List<PickAllocation> allocations = new ArrayList<>();
+        private int totalQuantity;
+
+        public PickStop(String location, String sku, String productName) {
+            this.location = location;
+            this.sku = sku;
+            this.productName = productName;
+        }
+
+        void add(PickAllocation allocation) {
+            allocations.add(allocation);
+            totalQuantity += allocation.getQuantity();
+        }
+
+        // Getters
+        public String getLocation() { return location; }
+        public String getSku() { return sku; }
+        public String getProductName() { return productName; }
+        public int getTotalQuantity() { return totalQuantity; }
+        public List<PickAllocation> getAllocations() { return allocations; }
+    }
+
+    public static class PickAllocation {
+        private final String orderNumber;
+        private final UUID itemId;
+        private final int quantity;
+
+        public PickAllocation(String orderNumber, UUID itemId, int quantity) {
+            this.orderNumber = orderNumber;
+            this.itemId = itemId;
+            this.quantity = quantity;
+        }
+
+        // Getters
+        public String getOrderNumber() { return orderNumber; }
+        public UUID getItemId() { return itemId; }
+        public int getQuantity() { return quantity; }
+    }
+}
@@ -0,0 +1,406 @@
+package com.loyaltyportal.service;
+
+import com.loyaltyportal.dto.LedgerEntry;
+import com.loyaltyportal.dto.StatementEntry;
+import com.loyaltyportal.entity.LoyaltyTransaction;
+import com.loyaltyportal.entity.TransactionType;
+import com.loyaltyportal.repository.LoyaltyTransactionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Compares our completed loyalty transactions with the provider's statement.
+ *
+ * Both sides are read in provider transaction ID order, ours in keyset chunks of
+ * projections and theirs page by page, and merge-joined, so memory stays constant
+ * however many rows the range holds. Both are read over the range widened by a grace
+ * window, because the two clocks stamp a transaction slightly apart; an unmatched row is
+ * only reported when it falls inside the range itself, so adjacent runs do not report
+ * it twice. The merge compares IDs with {@link String#compareTo}, so the ledger is read
+ * in the byte order of the "C" collation rather than the database's default collation,
+ * which may sort punctuation and case differently. Either side still arriving out of
+ * order aborts the run rather than reporting false mismatches.
+ */
+@Service
+public class ReconciliationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReconciliationService.class);
+
+    static final String REOPEN_REASON = "Missing from provider statement";
+
+    private static final String LEDGER_CHUNK_SQL =
+            "SELECT lt.id, lt.external_transaction_id, lt.transaction_type, lt.points_amount, " +
+            "c.loyalty_account_id, lt.processed_at " +
+            "FROM loyalty_transaction lt JOIN company c ON c.id = lt.company_id " +
+            "WHERE lt.status = 'COMPLETED' " +
+            "AND lt.external_transaction_id COLLATE \"C\" > :afterExternalId " +
+            "AND lt.processed_at >= :from AND lt.processed_at < :to " +
+            "ORDER BY lt.external_transaction_id COLLATE \"C\" " +
+            "LIMIT :limit";
+
+    private final LoyaltyTransactionRepository transactionRepository;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final LoyaltyApiClient loyaltyApiClient;
+    private final CompanyPointsSummaryService summaryService;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int chunkSize;
+    private final int pageSize;
+    private final Duration grace;
+
+    private final Map<MismatchKind, Counter> mismatchCounters = new EnumMap<>(MismatchKind.class);
+
+    @Autowired
+    public ReconciliationService(
+            LoyaltyTransactionRepository transactionRepository,
+            NamedParameterJdbcTemplate jdbcTemplate,
+            LoyaltyApiClient loyaltyApiClient,
+            CompanyPointsSummaryService summaryService,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${loyalty.reconciliation.enabled:false}") boolean enabled,
+            @Value("${loyalty.reconciliation.chunk-size:1000}") int chunkSize,
+            @Value("${loyalty.reconciliation.page-size:1000}") int pageSize,
+            @Value("${loyalty.reconciliation.grace:5m}") Duration grace) {
+        this.transactionRepository = transactionRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.loyaltyApiClient = loyaltyApiClient;
+        this.summaryService = summaryService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.chunkSize = chunkSize;
+        this.pageSize = pageSize;
+        this.grace = grace;
+
+        for (MismatchKind kind : MismatchKind.values()) {
+            mismatchCounters.put(kind, Counter.builder("loyalty.reconciliation.mismatches")
+                    .description("Differences found between our ledger and the provider statement")
+                    .tag("kind", kind.name())
+                    .register(meterRegistry));
+        }
+    }
+
+    /**
+     * Nightly run over the previous day; mismatches are logged, nothing is retried
+     */
+    @Scheduled(cron = "${loyalty.reconciliation.cron:0 45 2 * * *}")
+    public void reconcilePreviousDay() {
+        if (!enabled) {
+            return;
+        }
+
+        LocalDateTime to = LocalDate.now().atStartOfDay();
+        try {
+            Summary summary = reconcile(to.minusDays(1), to, false,
+                    mismatch -> logger.warn("Reconciliation mismatch {} for provider transaction {} (ours {})",
+                            mismatch.getKind(), mismatch.getExternalTransactionId(), mismatch.getTransactionId()));
+            logger.info("Reconciled {} to {}: {} matched, {} mismatches", summary.getFrom(), summary.getTo(),
+                    summary.getMatched(), summary.getMismatchCount());
+        } catch (RuntimeException e) {
+            logger.error("Reconciliation of {} failed: {}", to.minusDays(1).toLocalDate(), e.getMessage());
+        }
+    }
+
+    /**
+     * Reconcile transactions processed in [from, to), handing each mismatch to the sink as
+     * it is found. With {@code enqueueRetries}, transactions the provider has no record of
+     * are reopened for the retry processor, each in its own transaction.
+     */
+    public Summary reconcile(LocalDateTime from, LocalDateTime to, boolean enqueueRetries,
+                             Consumer<Mismatch> sink) {
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("from must be before to");
+        }
+
+        LocalDateTime readFrom = from.minus(grace);
+        LocalDateTime readTo = to.plus(grace);
+        Summary summary = new Summary(from, to);
+
+        try (Stream<StatementEntry> statement = loyaltyApiClient.streamStatement(readFrom, readTo, pageSize)
+                .toStream(pageSize)) {
+            Cursor<LedgerEntry> ours = new Cursor<>("ledger", ledger(readFrom, readTo),
+                    LedgerEntry::getExternalTransactionId);
+            Cursor<StatementEntry> theirs = new Cursor<>("statement", statement.iterator(),
+                    StatementEntry::getTransactionId);
+
+            while (ours.current != null || theirs.current != null) {
+                int order = ours.current == null ? 1
+                        : theirs.current == null ? -1
+                        : ours.key().compareTo(theirs.key());
+
+                if (order < 0) {
+                    LedgerEntry entry = ours.current;
+                    if (within(entry.getProcessedAt(), from, to)) {
+                        Mismatch mismatch = Mismatch.of(MismatchKind.MISSING_AT_PROVIDER, entry, null);
+                        report(mismatch, summary, sink);
+                        if (enqueueRetries && reopen(entry.getTransactionId())) {
+                            summary.retriesEnqueued++;
+                        }
+                    }
+                    ours.advance();
+                } else if (order > 0) {
+                    StatementEntry entry = theirs.current;
+                    if (within(entry.getProcessedAt(), from, to)) {
+                        report(Mismatch.of(MismatchKind.MISSING_LOCALLY, null, entry), summary, sink);
+                    }
+                    theirs.advance();
+                } else {
+                    compare(ours.current, theirs.current, from, to, summary, sink);
+                    ours.advance();
+                    theirs.advance();
+                }
+            }
+        }
+        return summary;
+    }
+
+    private void compare(LedgerEntry ours, StatementEntry theirs, LocalDateTime from, LocalDateTime to,
+                         Summary summary, Consumer<Mismatch> sink) {
+        if (!within(ours.getProcessedAt(), from, to) && !within(theirs.getProcessedAt(), from, to)) {
+            return;
+        }
+
+        boolean matched = true;
+        if (!Objects.equals(ours.getPoints(), theirs.getPoints())) {
+            report(Mismatch.of(MismatchKind.AMOUNT_MISMATCH, ours, theirs), summary, sink);
+            matched = false;
+        }
+        if (!providerType(ours.getType()).equals(theirs.getType())) {
+            report(Mismatch.of(MismatchKind.TYPE_MISMATCH, ours, theirs), summary, sink);
+            matched = false;
+        }
+        if (!Objects.equals(ours.getAccountId(), theirs.getAccountId())) {
+            report(Mismatch.of(MismatchKind.ACCOUNT_MISMATCH, ours, theirs), summary, sink);
+            matched = false;
+        }
+        if (matched) {
+            summary.matched++;
+        }
+    }
+
+    private void report(Mismatch mismatch, Summary summary, Consumer<Mismatch> sink) {
+        summary.record(mismatch.getKind());
+        mismatchCounters.get(mismatch.getKind()).increment();
+        sink.accept(mismatch);
+    }
+
+    private boolean reopen(UUID transactionId) {
+        try {
+            return Boolean.TRUE.equals(transactionTemplate.execute(status ->
+                    transactionRepository.findById(transactionId)
+                            .filter(LoyaltyTransaction::isCompleted)
+                            .map(transaction -> {
+                                transaction.reopenForRetry(REOPEN_REASON);
+                                summaryService.recordTransactionReopened(transaction);
+                                return true;
+                            })
+                            .orElse(false)));
+        } catch (RuntimeException e) {
+            logger.error("Failed to reopen transaction {} for retry: {}", transactionId, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Our completed transactions in provider ID order, fetched a chunk at a time as the
+     * iterator is consumed
+     */
+    private Iterator<LedgerEntry> ledger(LocalDateTime from, LocalDateTime to) {
+        return new Iterator<>() {
+            private Iterator<LedgerEntry> chunk = Collections.emptyIterator();
+            private String after = "";
+            private boolean exhausted;
+
+            @Override
+            public boolean hasNext() {
+                if (!chunk.hasNext() && !exhausted) {
+                    List<LedgerEntry> rows = ledgerChunk(from, to, after);
+                    exhausted = rows.size() < chunkSize;
+                    if (!rows.isEmpty()) {
+                        after = rows.get(rows.size() - 1).getExternalTransactionId();
+                    }
+                    chunk = rows.iterator();
+                }
+                return chunk.hasNext();
+            }
+
+            @Override
+            public LedgerEntry next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return chunk.next();
+            }
+        };
+    }
+
+    /**
+     * The next chunk of completed transactions processed in [from, to), after the given
+     * provider transaction ID in byte order
+     */
+    private List<LedgerEntry> ledgerChunk(LocalDateTime from, LocalDateTime to, String afterExternalId) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", from)
+                .addValue("to", to)
+                .addValue("afterExternalId", afterExternalId)
+                .addValue("limit", chunkSize);
+        return jdbcTemplate.query(LEDGER_CHUNK_SQL, params, (rs, rowNum) -> {
+            Timestamp processedAt = rs.getTimestamp("processed_at");
+            return new LedgerEntry(rs.getObject("id", UUID.class), rs.getString("external_transaction_id"),
+                    TransactionType.valueOf(rs.getString("transaction_type")), rs.getInt("points_amount"),
+                    rs.getString("loyalty_account_id"), processedAt != null ? processedAt.toLocalDateTime() : null);
+        });
+    }
+
+    private static boolean within(LocalDateTime at, LocalDateTime from, LocalDateTime to) {
+        return at != null && !at.isBefore(from) && at.isBefore(to);
+    }
+
+    /**
+     * The provider only knows debits and credits; our refunds are credits to it
+     */
+    private static String providerType(TransactionType type) {
+        return type == TransactionType.DEBIT ? "DEBIT" : "CREDIT";
+    }
+
+    /**
+     * One side of the merge, checked to be strictly ascending by key as it advances
+     */
+    private static class Cursor<T> {
+        private final String side;
+        private final Iterator<T> rows;
+        private final Function<T, String> keyOf;
+        T current;
+
+        Cursor(String side, Iterator<T> rows, Function<T, String> keyOf) {
+            this.side = side;
+            this.rows = rows;
+            this.keyOf = keyOf;
+            advance();
+        }
+
+        String key() {
+            return keyOf.apply(current);
+        }
+
+        void advance() {
+            String previous = current != null ? key() : null;
+            current = rows.hasNext() ? rows.next() : null;
+            if (current != null && previous != null && key().compareTo(previous) <= 0) {
+                throw new IllegalStateException("The " + side + " is not in transaction ID order at " + key()
+                        + " after " + previous);
+            }
+        }
+    }
+
+    public enum MismatchKind {
+        /** Completed on our side, absent from the statement */
+        MISSING_AT_PROVIDER,
+        /** On the statement, not completed on our side */
+        MISSING_LOCALLY,
+        AMOUNT_MISMATCH,
+        TYPE_MISMATCH,
+        ACCOUNT_MISMATCH
+    }
+
+    public static class Mismatch {
+        private final MismatchKind kind;
+        private final String externalTransactionId;
+        private final UUID transactionId;
+        private final Integer ourPoints;
+        private final Integer providerPoints;
+        private final String ourAccountId;
+        private final String providerAccountId;
+        private final LocalDateTime processedAt;
+
+        private Mismatch(MismatchKind kind, String externalTransactionId, UUID transactionId,
+                         Integer ourPoints, Integer providerPoints, String ourAccountId,
+                         String providerAccountId, LocalDateTime processedAt) {
+            this.kind = kind;
+            this.externalTransactionId = externalTransactionId;
+            this.transactionId = transactionId;
+            this.ourPoints = ourPoints;
+            this.providerPoints = providerPoints;
+            this.ourAccountId = ourAccountId;
+            this.providerAccountId = providerAccountId;
+            this.processedAt = processedAt;
+        }
+
+        static Mismatch of(MismatchKind kind, LedgerEntry ours, StatementEntry theirs) {
+            return new Mismatch(kind,
+                    ours != null ? ours.getExternalTransactionId() : theirs.getTransactionId(),
+                    ours != null ? ours.getTransactionId() : null,
+                    ours != null ? ours.getPoints() : null,
+                    theirs != null ? theirs.getPoints() : null,
+                    ours != null ? ours.getAccountId() : null,
+                    theirs != null ? theirs.getAccountId() : null,
+                    ours != null ? ours.getProcessedAt() : theirs.getProcessedAt());
+        }
+
+        public MismatchKind getKind() { return kind; }
+        public String getExternalTransactionId() { return externalTransactionId; }
+        public UUID getTransactionId() { return transactionId; }
+        public Integer getOurPoints() { return ourPoints; }
+        public Integer getProviderPoints() { return providerPoints; }
+        public String getOurAccountId() { return ourAccountId; }
+        public String getProviderAccountId() { return providerAccountId; }
+        public LocalDateTime getProcessedAt() { return processedAt; }
+    }
+
+    public static class Summary {
+        private final LocalDateTime from;
+        private final LocalDateTime to;
+        private final Map<MismatchKind, Long> mismatches = new EnumMap<>(MismatchKind.class);
+        private long matched;
+        private long retriesEnqueued;
+
+        Summary(LocalDateTime from, LocalDateTime to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        void record(MismatchKind kind) {
+            mismatches.merge(kind, 1L, Long::sum);
+        }
+
+        public long getMismatchCount() {
+            long total = 0;
+            for (long count : mismatches.values()) {
+                total += count;
+            }
+            return total;
+        }
+
+        public LocalDateTime getFrom() { return from; }
+        public LocalDateTime getTo() { return to; }
+        public long getMatched() { return matched; }
+        public Map<MismatchKind, Long> getMismatches() { return Collections.unmodifiableMap(mismatches); }
+        public long getRetriesEnqueued() { return retriesEnqueued; }
+    }
+}
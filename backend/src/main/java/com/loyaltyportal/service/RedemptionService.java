@@ -31,8 +31,10 @@ public class RedemptionService {
     private final ProductRepository productRepository;
     private final InventoryService inventoryService;
     private final LoyaltyApiClient loyaltyApiClient;
+    private final LoyaltyBatchClient loyaltyBatchClient;
     private final LoyaltyTransactionService transactionService;
     private final OrderWorkflowService workflowService;
+    private final CompanyPointsSummaryService summaryService;
 
     @Autowired
     public RedemptionService(
@@ -43,8 +45,10 @@ public class RedemptionService {
             ProductRepository productRepository,
             InventoryService inventoryService,
             LoyaltyApiClient loyaltyApiClient,
+            LoyaltyBatchClient loyaltyBatchClient,
             LoyaltyTransactionService transactionService,
-            OrderWorkflowService workflowService) {
+            OrderWorkflowService workflowService,
+            CompanyPointsSummaryService summaryService) {
         this.orderRepository = orderRepository;
         this.orderItemRepository = orderItemRepository;
         this.companyRepository = companyRepository;
@@ -52,8 +56,10 @@ public class RedemptionService {
         this.productRepository = productRepository;
         this.inventoryService = inventoryService;
         this.loyaltyApiClient = loyaltyApiClient;
+        this.loyaltyBatchClient = loyaltyBatchClient;
         this.transactionService = transactionService;
         this.workflowService = workflowService;
+        this.summaryService = summaryService;
     }
 
     /**
@@ -179,6 +185,7 @@ public class RedemptionService {
             );
             order.setShippingAddress(orderData.shippingAddress);
             order.setSpecialInstructions(orderData.specialInstructions);
+            order.setItemCount(orderData.itemsData.size());
             order = orderRepository.save(order);
 
             // Create order items and reserve inventory
@@ -194,6 +201,7 @@ public class RedemptionService {
             }
 
             order.setItems(orderItems);
+            summaryService.recordOrderCreated(order);
             return order;
         })
         .map(this::convertToOrderSummary);
@@ -212,7 +220,7 @@ public class RedemptionService {
 
     private Mono<OrderSummaryDto> executeOrderProcessing(RedemptionOrder order) {
         // First, try to debit points
-        return loyaltyApiClient.debitPoints(
+        return loyaltyBatchClient.debitPoints(
                 order.getCompany().getLoyaltyAccountId(),
                 order.getTotalPoints(),
                 "ORDER-" + order.getOrderNumber()
@@ -240,12 +248,8 @@ public class RedemptionService {
                 TransactionStatus.COMPLETED
         );
 
-        // Mark order as processing
-        order.markAsProcessing();
-        order = orderRepository.save(order);
-
-        // Initiate fulfillment workflows
-        workflowService.initiateOrderFulfillment(order);
+        // Mark order as processing and initiate fulfillment workflows
+        workflowService.startFulfillment(order);
 
         return convertToOrderSummary(order);
     }
@@ -267,8 +271,10 @@ public class RedemptionService {
         }
 
         // Mark order as failed
+        OrderStatus previous = order.getStatus();
         order.setStatus(OrderStatus.FAILED);
         order = orderRepository.save(order);
+        summaryService.recordOrderStatusChange(order, previous);
 
         return convertToOrderSummary(order);
     }
@@ -287,7 +293,7 @@ public class RedemptionService {
     private Mono<OrderSummaryDto> executeCancellation(RedemptionOrder order, String reason) {
         // If order was processed, refund the points
         if (order.isProcessing()) {
-            return loyaltyApiClient.creditPoints(
+            return loyaltyBatchClient.creditPoints(
                     order.getCompany().getLoyaltyAccountId(),
                     order.getTotalPoints(),
                     "REFUND-" + order.getOrderNumber()
@@ -324,8 +330,10 @@ public class RedemptionService {
         }
 
         // Mark order as cancelled
+        OrderStatus previous = order.getStatus();
         order.markAsCancelled(reason);
         order = orderRepository.save(order);
+        summaryService.recordOrderStatusChange(order, previous);
 
         return convertToOrderSummary(order);
     }
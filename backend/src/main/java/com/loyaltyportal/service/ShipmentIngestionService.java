@@ -0,0 +1,534 @@
+package com.loyaltyportal.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.loyaltyportal.entity.FulfillmentStatus;
+import com.loyaltyportal.entity.OrderStatus;
+import com.loyaltyportal.entity.ProductType;
+import com.loyaltyportal.entity.RedemptionOrder;
+import com.loyaltyportal.repository.OrderItemRepository;
+import com.loyaltyportal.repository.RedemptionOrderRepository;
+import com.loyaltyportal.service.notification.ItemEmailView;
+import com.loyaltyportal.service.notification.OrderEmailView;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Applies carrier manifests: many shipped/delivered updates in one upload.
+ *
+ * The input is read line by line and applied in chunks of {@code chunk-size} rows.
+ * Each chunk loads the state of all its items with one query, writes the status
+ * changes as JDBC batches (conditional on the current status, so a concurrent change
+ * is reported rather than overwritten), bumps each affected order's completed-item
+ * counter once and checks completion once per order, updating the company points
+ * summary for each order it completes. The chunk's emails are queued in the
+ * notification outbox in the same transaction, so they go out only if the chunk
+ * commits and never hold up the upload. Results are reported per row as each chunk
+ * commits.
+ */
+@Service
+public class ShipmentIngestionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShipmentIngestionService.class);
+
+    public enum Format {
+        CSV,
+        NDJSON
+    }
+
+    private static final String ITEM_STATE_SELECT =
+            "SELECT i.id, i.order_id, i.fulfillment_status, p.product_type, o.order_number, p.sku " +
+            "FROM order_item i " +
+            "JOIN redemption_order o ON o.id = i.order_id " +
+            "JOIN product p ON p.id = i.product_id ";
+
+    private static final String SHIP_SQL =
+            "UPDATE order_item SET fulfillment_status = 'SHIPPED', tracking_number = :trackingNumber " +
+            "WHERE id = :id AND fulfillment_status IN ('PENDING', 'PROCESSING', 'SHIPPED')";
+
+    private static final String DELIVER_SQL =
+            "UPDATE order_item SET fulfillment_status = 'DELIVERED', delivered_at = :deliveredAt " +
+            "WHERE id = :id AND fulfillment_status = 'SHIPPED'";
+
+    private static final String COUNT_COMPLETED_SQL =
+            "UPDATE redemption_order SET completed_item_count = completed_item_count + :delivered WHERE id = :id";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final RedemptionOrderRepository orderRepository;
+    private final OrderItemRepository orderItemRepository;
+    private final NotificationService notificationService;
+    private final CompanyPointsSummaryService summaryService;
+    private final ObjectMapper objectMapper;
+    private final int chunkSize;
+
+    @Autowired
+    public ShipmentIngestionService(
+            NamedParameterJdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            RedemptionOrderRepository orderRepository,
+            OrderItemRepository orderItemRepository,
+            NotificationService notificationService,
+            CompanyPointsSummaryService summaryService,
+            ObjectMapper objectMapper,
+            @Value("${loyalty.fulfillment.shipments.chunk-size:500}") int chunkSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.orderRepository = orderRepository;
+        this.orderItemRepository = orderItemRepository;
+        this.notificationService = notificationService;
+        this.summaryService = summaryService;
+        this.objectMapper = objectMapper;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Read a manifest and apply it, handing each chunk's row results to
+     * {@code report} once the chunk has committed
+     */
+    public IngestionSummary ingest(InputStream input, Format format, Consumer<List<RowResult>> report)
+            throws IOException {
+        IngestionSummary summary = new IngestionSummary();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+
+        Map<String, Integer> columns = null;
+        List<ShipmentUpdate> chunk = new ArrayList<>(chunkSize);
+        int row = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            if (format == Format.CSV && columns == null) {
+                columns = parseHeader(line);
+                continue;
+            }
+
+            row++;
+            chunk.add(format == Format.CSV ? parseCsv(row, line, columns) : parseJson(row, line));
+            if (chunk.size() >= chunkSize) {
+                report.accept(applyChunk(chunk, summary));
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            report.accept(applyChunk(chunk, summary));
+        }
+
+        logger.info("Shipment manifest applied: {} rows, {} applied, {} failed",
+                summary.getRows(), summary.getApplied(), summary.getFailed());
+        return summary;
+    }
+
+    private List<RowResult> applyChunk(List<ShipmentUpdate> chunk, IngestionSummary summary) {
+        List<RowResult> results;
+        try {
+            results = transactionTemplate.execute(status -> apply(chunk));
+        } catch (RuntimeException e) {
+            // Nothing in the chunk committed, its queued emails included
+            logger.error("Failed to apply shipment chunk of {} rows: {}", chunk.size(), e.getMessage());
+            results = chunk.stream()
+                    .map(update -> RowResult.failed(update, "Chunk could not be applied: " + e.getMessage()))
+                    .toList();
+        }
+
+        for (RowResult result : results) {
+            summary.record(result);
+        }
+        return results;
+    }
+
+    private List<RowResult> apply(List<ShipmentUpdate> chunk) {
+        Map<UUID, ItemState> byId = new HashMap<>();
+        Map<String, List<ItemState>> byOrderAndSku = new HashMap<>();
+        loadItemStates(chunk, byId, byOrderAndSku);
+
+        Map<Integer, RowResult> results = new LinkedHashMap<>();
+        List<ShipmentUpdate> shipped = new ArrayList<>();
+        List<ShipmentUpdate> delivered = new ArrayList<>();
+        for (ShipmentUpdate update : chunk) {
+            if (update.error != null) {
+                results.put(update.row, RowResult.failed(update, update.error));
+                continue;
+            }
+
+            ItemState item = resolve(update, byId, byOrderAndSku, results);
+            if (item == null) {
+                continue;
+            }
+            update.itemId = item.id;
+            update.orderId = item.orderId;
+
+            String error = transition(item, update.status);
+            if (error != null) {
+                results.put(update.row, RowResult.failed(update, error));
+            } else {
+                (update.status == FulfillmentStatus.SHIPPED ? shipped : delivered).add(update);
+                results.put(update.row, RowResult.applied(update));
+            }
+        }
+
+        // Shipments first, so an item shipped and delivered in the same chunk is delivered
+        int[] shipCounts = jdbcTemplate.batchUpdate(SHIP_SQL, shipped.stream()
+                .map(update -> new MapSqlParameterSource()
+                        .addValue("id", update.itemId)
+                        .addValue("trackingNumber", update.trackingNumber))
+                .toArray(MapSqlParameterSource[]::new));
+        markConflicts(shipped, shipCounts, results);
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        int[] deliverCounts = jdbcTemplate.batchUpdate(DELIVER_SQL, delivered.stream()
+                .map(update -> new MapSqlParameterSource()
+                        .addValue("id", update.itemId)
+                        .addValue("deliveredAt", now))
+                .toArray(MapSqlParameterSource[]::new));
+        markConflicts(delivered, deliverCounts, results);
+
+        List<UUID> shippedItems = new ArrayList<>();
+        List<UUID> deliveredItems = new ArrayList<>();
+        Map<UUID, Integer> deliveredPerOrder = new LinkedHashMap<>();
+        for (ShipmentUpdate update : shipped) {
+            if (results.get(update.row).isApplied()) {
+                shippedItems.add(update.itemId);
+            }
+        }
+        for (ShipmentUpdate update : delivered) {
+            if (results.get(update.row).isApplied()) {
+                deliveredItems.add(update.itemId);
+                deliveredPerOrder.merge(update.orderId, 1, Integer::sum);
+            }
+        }
+
+        // One counter update and one completion check per affected order
+        jdbcTemplate.batchUpdate(COUNT_COMPLETED_SQL, deliveredPerOrder.entrySet().stream()
+                .map(entry -> new MapSqlParameterSource()
+                        .addValue("id", entry.getKey())
+                        .addValue("delivered", entry.getValue()))
+                .toArray(MapSqlParameterSource[]::new));
+        LocalDateTime completedAt = LocalDateTime.now();
+        List<UUID> completedOrders = new ArrayList<>();
+        for (UUID orderId : deliveredPerOrder.keySet()) {
+            if (orderRepository.markCompletedIfAllItemsDone(orderId, completedAt) == 1) {
+                completedOrders.add(orderId);
+            }
+        }
+        if (!completedOrders.isEmpty()) {
+            // Only PROCESSING orders can complete. Mirror the update in case an order was
+            // already loaded in this persistence context; flushing it writes the same values
+            for (RedemptionOrder order : orderRepository.findAllById(completedOrders)) {
+                order.setStatus(OrderStatus.COMPLETED);
+                order.setCompletedAt(completedAt);
+                summaryService.recordOrderStatusChange(order, OrderStatus.PROCESSING);
+            }
+        }
+
+        queueNotifications(shippedItems, deliveredItems, completedOrders);
+        return new ArrayList<>(results.values());
+    }
+
+    /**
+     * Queue the chunk's emails, item emails first so completing an order releases its
+     * held digest lines too
+     */
+    private void queueNotifications(List<UUID> shippedItems, List<UUID> deliveredItems, List<UUID> completedOrders) {
+        if (!shippedItems.isEmpty()) {
+            for (ItemEmailView item : orderItemRepository.findEmailViews(shippedItems)) {
+                notificationService.sendShippingNotification(item);
+            }
+        }
+        if (!deliveredItems.isEmpty()) {
+            for (ItemEmailView item : orderItemRepository.findEmailViews(deliveredItems)) {
+                notificationService.sendDeliveryNotification(item);
+            }
+        }
+        if (!completedOrders.isEmpty()) {
+            for (OrderEmailView order : orderRepository.findEmailViews(completedOrders)) {
+                notificationService.sendOrderCompletionNotification(order);
+                logger.info("Order completed: {}", order.getOrderNumber());
+            }
+        }
+    }
+
+    private void loadItemStates(List<ShipmentUpdate> chunk, Map<UUID, ItemState> byId,
+                                Map<String, List<ItemState>> byOrderAndSku) {
+        Set<UUID> itemIds = new LinkedHashSet<>();
+        Set<String> orderNumbers = new LinkedHashSet<>();
+        for (ShipmentUpdate update : chunk) {
+            if (update.itemId != null) {
+                itemIds.add(update.itemId);
+            } else if (update.orderNumber != null) {
+                orderNumbers.add(update.orderNumber);
+            }
+        }
+
+        List<ItemState> states = new ArrayList<>();
+        if (!itemIds.isEmpty()) {
+            states.addAll(jdbcTemplate.query(ITEM_STATE_SELECT + "WHERE i.id IN (:ids)",
+                    new MapSqlParameterSource("ids", itemIds), (rs, rowNum) -> ItemState.from(rs)));
+        }
+        if (!orderNumbers.isEmpty()) {
+            states.addAll(jdbcTemplate.query(ITEM_STATE_SELECT + "WHERE o.order_number IN (:orderNumbers)",
+                    new MapSqlParameterSource("orderNumbers", orderNumbers), (rs, rowNum) -> ItemState.from(rs)));
+        }
+
+        for (ItemState state : states) {
+            // Both queries may return the same item; keep one instance so transitions are shared
+            ItemState item = byId.computeIfAbsent(state.id, id -> state);
+            if (item == state) {
+                byOrderAndSku.computeIfAbsent(key(state.orderNumber, state.sku), key -> new ArrayList<>()).add(state);
+            }
+        }
+    }
+
+    private ItemState resolve(ShipmentUpdate update, Map<UUID, ItemState> byId,
+                              Map<String, List<ItemState>> byOrderAndSku, Map<Integer, RowResult> results) {
+        if (update.itemId != null) {
+            ItemState item = byId.get(update.itemId);
+            if (item == null) {
+                results.put(update.row, RowResult.failed(update, "Order item not found"));
+            }
+            return item;
+        }
+
+        List<ItemState> matches = byOrderAndSku.getOrDefault(key(update.orderNumber, update.sku), List.of());
+        if (matches.size() != 1) {
+            results.put(update.row, RowResult.failed(update, matches.isEmpty()
+                    ? "No item for order " + update.orderNumber + " and SKU " + update.sku
+                    : "Several items for order " + update.orderNumber + " and SKU " + update.sku + "; use item_id"));
+            return null;
+        }
+        return matches.get(0);
+    }
+
+    /**
+     * Validate against the item's state as of earlier rows in this chunk and advance it
+     */
+    private static String transition(ItemState item, FulfillmentStatus target) {
+        if (!ProductType.PHYSICAL.getType().equals(item.productType)) {
+            return "Only physical products can be shipped";
+        }
+        FulfillmentStatus current = item.status;
+        if (target == FulfillmentStatus.SHIPPED && current != FulfillmentStatus.PENDING
+                && current != FulfillmentStatus.PROCESSING && current != FulfillmentStatus.SHIPPED) {
+            return "Cannot ship item in status " + current.name();
+        }
+        if (target == FulfillmentStatus.DELIVERED && current != FulfillmentStatus.SHIPPED) {
+            return "Item must be shipped before it can be delivered";
+        }
+        item.status = target;
+        return null;
+    }
+
+    private static void markConflicts(List<ShipmentUpdate> updates, int[] counts, Map<Integer, RowResult> results) {
+        for (int i = 0; i < updates.size(); i++) {
+            if (counts[i] == 0) {
+                ShipmentUpdate update = updates.get(i);
+                results.put(update.row, RowResult.failed(update, "Item status changed concurrently, not applied"));
+            }
+        }
+    }
+
+    private Map<String, Integer> parseHeader(String line) {
+        Map<String, Integer> columns = new HashMap<>();
+        String[] names = line.split(",", -1);
+        for (int i = 0; i < names.length; i++) {
+            columns.put(names[i].trim().replace("_", "").toLowerCase(), i);
+        }
+        return columns;
+    }
+
+    private ShipmentUpdate parseCsv(int row, String line, Map<String, Integer> columns) {
+        String[] cells = line.split(",", -1);
+        return ShipmentUpdate.of(row,
+                cell(cells, columns, "itemid"),
+                cell(cells, columns, "ordernumber"),
+                cell(cells, columns, "sku"),
+                cell(cells, columns, "trackingnumber"),
+                cell(cells, columns, "status"));
+    }
+
+    private ShipmentUpdate parseJson(int row, String line) {
+        try {
+            JsonNode node = objectMapper.readTree(line);
+            return ShipmentUpdate.of(row,
+                    text(node, "itemId"),
+                    text(node, "orderNumber"),
+                    text(node, "sku"),
+                    text(node, "trackingNumber"),
+                    text(node, "status"));
+        } catch (JsonProcessingException e) {
+            ShipmentUpdate update = new ShipmentUpdate(row);
+            update.error = "Invalid JSON: " + e.getOriginalMessage();
+            return update;
+        }
+    }
+
+    private static String cell(String[] cells, Map<String, Integer> columns, String column) {
+        Integer index = columns.get(column);
+        if (index == null || index >= cells.length) {
+            return null;
+        }
+        String value = cells[index].trim();
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            value = value.substring(1, value.length() - 1);
+        }
+        return value.isEmpty() ? null : value;
+    }
+
+    private static String text(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return value == null || value.isNull() || value.asText().isBlank() ? null : value.asText().trim();
+    }
+
+    private static String key(String orderNumber, String sku) {
+        return orderNumber + "\u0000" + sku;
+    }
+
+    private static class ItemState {
+        UUID id;
+        UUID orderId;
+        FulfillmentStatus status;
+        String productType;
+        String orderNumber;
+        String sku;
+
+        static ItemState from(java.sql.ResultSet rs) throws java.sql.SQLException {
+            ItemState state = new ItemState();
+            state.id = rs.getObject("id", UUID.class);
+            state.orderId = rs.getObject("order_id", UUID.class);
+            String status = rs.getString("fulfillment_status");
+            state.status = status != null ? FulfillmentStatus.valueOf(status) : FulfillmentStatus.PENDING;
+            state.productType = rs.getString("product_type");
+            state.orderNumber = rs.getString("order_number");
+            state.sku = rs.getString("sku");
+            return state;
+        }
+    }
+
+    public static class ShipmentUpdate {
+        private final int row;
+        private UUID itemId;
+        private UUID orderId;
+        private String orderNumber;
+        private String sku;
+        private String trackingNumber;
+        private FulfillmentStatus status;
+        private String error;
+
+        ShipmentUpdate(int row) {
+            this.row = row;
+        }
+
+        static ShipmentUpdate of(int row, String itemId, String orderNumber, String sku,
+                                 String trackingNumber, String status) {
+            ShipmentUpdate update = new ShipmentUpdate(row);
+            update.orderNumber = orderNumber;
+            update.sku = sku;
+            update.trackingNumber = trackingNumber;
+
+            if (itemId != null) {
+                try {
+                    update.itemId = UUID.fromString(itemId);
+                } catch (IllegalArgumentException e) {
+                    update.error = "Invalid item_id: " + itemId;
+                    return update;
+                }
+            } else if (orderNumber == null || sku == null) {
+                update.error = "Either item_id or order_number and sku are required";
+                return update;
+            }
+
+            if ("SHIPPED".equalsIgnoreCase(status)) {
+                update.status = FulfillmentStatus.SHIPPED;
+                if (trackingNumber == null) {
+                    update.error = "Tracking number is required for shipped items";
+                }
+            } else if ("DELIVERED".equalsIgnoreCase(status)) {
+                update.status = FulfillmentStatus.DELIVERED;
+            } else {
+                update.error = "Unsupported status: " + status;
+            }
+            return update;
+        }
+
+        public int getRow() { return row; }
+        public UUID getItemId() { return itemId; }
+    }
+
+    public static class RowResult {
+        private final int row;
+        private final UUID itemId;
+        private final String result;
+        private final String message;
+
+        private RowResult(int row, UUID itemId, String result, String message) {
+            this.row = row;
+            this.itemId = itemId;
+            this.result = result;
+            this.message = message;
+        }
+
+        static RowResult applied(ShipmentUpdate update) {
+            return new RowResult(update.row, update.itemId, "APPLIED", update.status.name());
+        }
+
+        static RowResult failed(ShipmentUpdate update, String message) {
+            return new RowResult(update.row, update.itemId, "FAILED", message);
+        }
+
+        @JsonIgnore
+        public boolean isApplied() {
+            return "APPLIED".equals(result);
+        }
+
+        public int getRow() { return row; }
+        public UUID getItemId() { return itemId; }
+        public String getResult() { return result; }
+        public String getMessage() { return message; }
+    }
+
+    public static class IngestionSummary {
+        private int rows;
+        private int applied;
+        private int failed;
+
+        void record(RowResult result) {
+            rows++;
+            if (result.isApplied()) {
+                applied++;
+            } else {
+                failed++;
+            }
+        }
+
+        public int getRows() { return rows; }
+        public int getApplied() { return applied; }
+        public int getFailed() { return failed; }
+    }
+}
@@ -0,0 +1,113 @@
+package com.loyaltyportal.service;
+
+import com.loyaltyportal.entity.OrderStatus;
+import com.loyaltyportal.entity.TransactionStatus;
+import com.loyaltyportal.repository.LoyaltyTransactionRepository;
+import com.loyaltyportal.repository.RedemptionOrderRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Order and transaction counts by status for the admin dashboard.
+ *
+ * Each table is counted with a single GROUP BY status query on a short interval and the
+ * result kept as an immutable snapshot, so dashboard polls read memory instead of
+ * scanning the tables. Counts may be up to {@code loyalty.statistics.refresh-interval}
+ * old.
+ */
+@Service
+public class StatusStatistics {
+
+    private static final Logger logger = LoggerFactory.getLogger(StatusStatistics.class);
+
+    private final RedemptionOrderRepository orderRepository;
+    private final LoyaltyTransactionRepository transactionRepository;
+
+    private volatile Snapshot snapshot;
+
+    @Autowired
+    public StatusStatistics(RedemptionOrderRepository orderRepository,
+                            LoyaltyTransactionRepository transactionRepository) {
+        this.orderRepository = orderRepository;
+        this.transactionRepository = transactionRepository;
+    }
+
+    @Scheduled(fixedDelayString = "${loyalty.statistics.refresh-interval:5000}")
+    public void refresh() {
+        try {
+            snapshot = load();
+        } catch (RuntimeException e) {
+            // Keep serving the previous snapshot
+            logger.warn("Failed to refresh status statistics: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * The latest snapshot; loaded on the spot only before the first refresh
+     */
+    public Snapshot current() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            current = load();
+            snapshot = current;
+        }
+        return current;
+    }
+
+    private Snapshot load() {
+        Map<OrderStatus, Long> orders = new EnumMap<>(OrderStatus.class);
+        for (Object[] row : orderRepository.countGroupedByStatus()) {
+            orders.put((OrderStatus) row[0], (Long) row[1]);
+        }
+        Map<TransactionStatus, Long> transactions = new EnumMap<>(TransactionStatus.class);
+        for (Object[] row : transactionRepository.countGroupedByStatus()) {
+            transactions.put((TransactionStatus) row[0], (Long) row[1]);
+        }
+        return new Snapshot(orders, transactions, LocalDateTime.now());
+    }
+
+    public static class Snapshot {
+        private final Map<OrderStatus, Long> orders;
+        private final Map<TransactionStatus, Long> transactions;
+        private final long totalOrders;
+        private final long totalTransactions;
+        private final LocalDateTime refreshedAt;
+
+        Snapshot(Map<OrderStatus, Long> orders, Map<TransactionStatus, Long> transactions,
+                 LocalDateTime refreshedAt) {
+            this.orders = Collections.unmodifiableMap(orders);
+            this.transactions = Collections.unmodifiableMap(transactions);
+            this.totalOrders = sum(orders.values());
+            this.totalTransactions = sum(transactions.values());
+            this.refreshedAt = refreshedAt;
+        }
+
+        public long orders(OrderStatus status) {
+            return orders.getOrDefault(status, 0L);
+        }
+
+        public long transactions(TransactionStatus status) {
+            return transactions.getOrDefault(status, 0L);
+        }
+
+        public long getTotalOrders() { return totalOrders; }
+        public long getTotalTransactions() { return totalTransactions; }
+        public LocalDateTime getRefreshedAt() { return refreshedAt; }
+
+        private static long sum(Iterable<Long> counts) {
+            long total = 0;
+            for (long count : counts) {
+                total += count;
+            }
+            return total;
+        }
+    }
+}
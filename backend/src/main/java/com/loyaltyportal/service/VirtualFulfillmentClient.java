@@ -0,0 +1,181 @@
+package com.loyaltyportal.service;
+
+import com.loyaltyportal.service.resilience.ProviderResilience;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Client for the virtual fulfillment provider API.
+ *
+ * {@link #fulfillBatch} sends several items in one {@code POST /fulfill/batch}. If the
+ * provider answers it with 404, 405 or 501 the client stops batching and callers fall
+ * back to single calls.
+ */
+@Service
+public class VirtualFulfillmentClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualFulfillmentClient.class);
+
+    private final WebClient webClient;
+    private final Duration timeout;
+    private final ProviderResilience resilience;
+    private final boolean batchingEnabled;
+    private final int maxBatchSize;
+    private volatile boolean batchSupported = true;
+
+    @Autowired
+    public VirtualFulfillmentClient(
+            WebClient.Builder webClientBuilder,
+            @Value("${loyalty.fulfillment.virtual.api-url}") String apiUrl,
+            @Value("${loyalty.fulfillment.virtual.timeout:30s}") Duration timeout,
+            ProviderResilience resilience,
+            @Value("${loyalty.fulfillment.virtual.batching.enabled:true}") boolean batchingEnabled,
+            @Value("${loyalty.fulfillment.virtual.batching.max-batch-size:25}") int maxBatchSize) {
+        this.webClient = webClientBuilder.baseUrl(apiUrl).build();
+        this.timeout = timeout;
+        this.resilience = resilience;
+        this.batchingEnabled = batchingEnabled;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+    }
+
+    /**
+     * Fulfill one virtual item
+     */
+    public Mono<VirtualFulfillmentResponse> fulfill(VirtualFulfillmentRequest request) {
+        logger.info("Requesting virtual fulfillment of {} x {} reference: {}", 
+                request.getQuantity(), request.getProductSku(), request.getReferenceId());
+        
+        return webClient.post()
+                .uri("/fulfill")
+                .bodyValue(request)
+                .retrieve()
+                .bodyToMono(VirtualFulfillmentResponse.class)
+                .timeout(timeout)
+                .transform(call -> resilience.guard("fulfill", call));
+    }
+
+    /**
+     * Fulfill several items in one call; the provider returns one result per request,
+     * in request order
+     */
+    public Mono<List<VirtualFulfillmentResponse>> fulfillBatch(List<VirtualFulfillmentRequest> requests) {
+        logger.info("Requesting batch virtual fulfillment of {} items", requests.size());
+        
+        return webClient.post()
+                .uri("/fulfill/batch")
+                .bodyValue(requests)
+                .retrieve()
+                .bodyToFlux(VirtualFulfillmentResponse.class)
+                .collectList()
+                .timeout(timeout)
+                .transform(call -> resilience.guard("fulfill/batch", call))
+                .doOnError(this::disableBatchingIfMissing);
+    }
+
+    public boolean isBatching() {
+        return batchingEnabled && batchSupported;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * True when the provider rejected a batch as a whole because it has no batch
+     * endpoint; nothing in the batch was applied
+     */
+    public static boolean isBatchEndpointMissing(Throwable error) {
+        if (!(error instanceof WebClientResponseException)) {
+            return false;
+        }
+        HttpStatus status = ((WebClientResponseException) error).getStatusCode();
+        return status == HttpStatus.NOT_FOUND || status == HttpStatus.METHOD_NOT_ALLOWED
+                || status == HttpStatus.NOT_IMPLEMENTED;
+    }
+
+    private void disableBatchingIfMissing(Throwable error) {
+        if (batchSupported && isBatchEndpointMissing(error)) {
+            batchSupported = false;
+            logger.warn("Fulfillment provider has no batch endpoint, falling back to single calls");
+        }
+    }
+
+    // DTOs for virtual fulfillment API
+    public static class VirtualFulfillmentRequest {
+        private String referenceId;
+        private String productSku;
+        private Integer quantity;
+        private String customerEmail;
+        private String customerName;
+        private String companyName;
+
+        public VirtualFulfillmentRequest() {}
+
+        public VirtualFulfillmentRequest(String referenceId, String productSku, Integer quantity, 
+                                       String customerEmail, String customerName, String companyName) {
+            this.referenceId = referenceId;
+            this.productSku = productSku;
+            this.quantity = quantity;
+            this.customerEmail = customerEmail;
+            this.customerName = customerName;
+            this.companyName = companyName;
+        }
+
+        // Getters and Setters
+        public String getReferenceId() { return referenceId; }
+        public void setReferenceId(String referenceId) { this.referenceId = referenceId; }
+        public String getProductSku() { return productSku; }
+        public void setProductSku(String productSku) { this.productSku = productSku; }
+        public Integer getQuantity() { return quantity; }
+        public void setQuantity(Integer quantity) { this.quantity = quantity; }
+        public String getCustomerEmail() { return customerEmail; }
+        public void setCustomerEmail(String customerEmail) { this.customerEmail = customerEmail; }
+        public String getCustomerName() { return customerName; }
+        public void setCustomerName(String customerName) { this.customerName = customerName; }
+        public String getCompanyName() { return companyName; }
+        public void setCompanyName(String companyName) { this.companyName = companyName; }
+    }
+
+    public static class VirtualFulfillmentResponse {
+        private String referenceId;
+        private String fulfillmentId;
+        private String status;
+        private String message;
+
+        public VirtualFulfillmentResponse() {}
+
+        public VirtualFulfillmentResponse(String fulfillmentId, String status, String message) {
+            this.fulfillmentId = fulfillmentId;
+            this.status = status;
+            this.message = message;
+        }
+
+        public VirtualFulfillmentResponse(String referenceId, String fulfillmentId, String status, String message) {
+            this(fulfillmentId, status, message);
+            this.referenceId = referenceId;
+        }
+
+        public boolean isSuccessful() {
+            return !"FAILED".equalsIgnoreCase(status) && fulfillmentId != null;
+        }
+
+        public String getReferenceId() { return referenceId; }
+        public void setReferenceId(String referenceId) { this.referenceId = referenceId; }
+        public String getFulfillmentId() { return fulfillmentId; }
+        public void setFulfillmentId(String fulfillmentId) { this.fulfillmentId = fulfillmentId; }
+        public String getStatus() { return status; }
+        public void setStatus(String status) { this.status = status; }
+        public String getMessage() { return message; }
+        public void setMessage(String message) { this.message = message; }
+    }
+}
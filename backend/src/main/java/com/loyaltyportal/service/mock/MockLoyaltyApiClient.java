@@ -1,32 +1,83 @@
 package com.loyaltyportal.service.mock;
 
 import com.loyaltyportal.dto.BalanceResponse;
+import com.loyaltyportal.dto.StatementEntry;
 import com.loyaltyportal.dto.TransactionRequest;
 import com.loyaltyportal.dto.TransactionResponse;
+import com.loyaltyportal.entity.TransactionType;
 import com.loyaltyportal.service.LoyaltyApiClient;
+import com.loyaltyportal.service.mock.standin.LatencyDistribution;
+import com.loyaltyportal.service.resilience.ProviderRateLimiter;
+import com.loyaltyportal.service.resilience.ProviderResilience;
+import com.loyaltyportal.service.resilience.ProviderRetry;
+import com.loyaltyportal.service.resilience.RequestHedger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
+/**
+ * In-process loyalty provider.
+ *
+ * Simulated latency is drawn per call from a configurable {@link LatencyDistribution}
+ * and applied with a timer ({@code delayElement}), so no caller thread is ever put to
+ * sleep; balances are updated atomically per account without a global lock.
+ */
 @Service
 @ConditionalOnProperty(name = "loyalty.api.mock.enabled", havingValue = "true")
 public class MockLoyaltyApiClient extends LoyaltyApiClient {
 
     private static final Logger logger = LoggerFactory.getLogger(MockLoyaltyApiClient.class);
 
+    private static final int DEFAULT_BALANCE = 50000;
+
     // Mock data storage
-    private final Map<String, Integer> accountBalances = new HashMap<>();
-    private final Map<String, String> accountTiers = new HashMap<>();
+    private final Map<String, Integer> accountBalances = new ConcurrentHashMap<>();
+    private final Map<String, String> accountTiers = new ConcurrentHashMap<>();
+    private final AtomicInteger providerCalls = new AtomicInteger();
+    private volatile boolean batchEndpointEnabled = true;
+
+    private final LatencyDistribution balanceLatency;
+    private final LatencyDistribution debitLatency;
+    private final LatencyDistribution creditLatency;
 
     public MockLoyaltyApiClient() {
-        super("http://mock-api", "mock-key", null, 3, null);
+        this(LatencyDistribution.fixed(Duration.ofMillis(100)), LatencyDistribution.fixed(Duration.ofMillis(200)),
+                LatencyDistribution.fixed(Duration.ofMillis(150)));
+    }
+
+    @Autowired
+    public MockLoyaltyApiClient(
+            @Value("${loyalty.api.mock.latency.balance:fixed:100ms}") String balanceLatency,
+            @Value("${loyalty.api.mock.latency.debit:fixed:200ms}") String debitLatency,
+            @Value("${loyalty.api.mock.latency.credit:fixed:150ms}") String creditLatency) {
+        this(LatencyDistribution.parse(balanceLatency), LatencyDistribution.parse(debitLatency),
+                LatencyDistribution.parse(creditLatency));
+    }
+
+    public MockLoyaltyApiClient(LatencyDistribution balanceLatency, LatencyDistribution debitLatency,
+                                LatencyDistribution creditLatency) {
+        super("http://mock-api", "mock-key", null, ProviderResilience.disabled(),
+                ProviderRetry.disabled(), ProviderRateLimiter.disabled(), RequestHedger.disabled());
+        this.balanceLatency = balanceLatency;
+        this.debitLatency = debitLatency;
+        this.creditLatency = creditLatency;
         initializeMockData();
     }
 
@@ -42,24 +93,18 @@ public class MockLoyaltyApiClient extends LoyaltyApiClient {
         accountTiers.put("TECH003", "PLATINUM");
         accountTiers.put("STARTUP004", "BRONZE");
         
-        logger.info("Mock Loyalty API Client initialized with {} accounts", accountBalances.size());
+        logger.info("Mock Loyalty API Client initialized with {} accounts, latency balance={} debit={} credit={}",
+                accountBalances.size(), balanceLatency, debitLatency, creditLatency);
     }
 
     @Override
     public Mono<BalanceResponse> getBalance(String loyaltyAccountId) {
         logger.info("MOCK: Fetching balance for loyalty account: {}", loyaltyAccountId);
         
-        return Mono.fromSupplier(() -> {
-            Integer balance = accountBalances.getOrDefault(loyaltyAccountId, 50000); // Default balance
+        return respond(balanceLatency, () -> {
+            Integer balance = accountBalances.getOrDefault(loyaltyAccountId, DEFAULT_BALANCE);
             String tier = accountTiers.getOrDefault(loyaltyAccountId, "SILVER");
             
-            // Simulate some processing time
-            try {
-                Thread.sleep(100);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
-            
             BalanceResponse response = new BalanceResponse(
                 loyaltyAccountId,
                 balance,
@@ -79,66 +124,9 @@ public class MockLoyaltyApiClient extends LoyaltyApiClient {
         logger.info("MOCK: Debiting {} points from loyalty account: {} with reference: {}", 
                 points, loyaltyAccountId, reference);
         
-        return Mono.fromSupplier(() -> {
-            Integer currentBalance = accountBalances.getOrDefault(loyaltyAccountId, 50000);
-            
-            // Simulate business rules
-            if (points > currentBalance) {
-                TransactionResponse errorResponse = new TransactionResponse();
-                errorResponse.setTransactionId(null);
-                errorResponse.setAccountId(loyaltyAccountId);
-                errorResponse.setPoints(points);
-                errorResponse.setReference(reference);
-                errorResponse.setStatus("FAILED");
-                errorResponse.setErrorCode("INSUFFICIENT_BALANCE");
-                errorResponse.setErrorMessage("Insufficient points balance");
-                errorResponse.setProcessedAt(LocalDateTime.now());
-                
-                logger.warn("MOCK: Debit failed - insufficient balance for account: {}", loyaltyAccountId);
-                return errorResponse;
-            }
-            
-            // Simulate occasional failures (5% failure rate)
-            if (Math.random() < 0.05) {
-                TransactionResponse errorResponse = new TransactionResponse();
-                errorResponse.setTransactionId(null);
-                errorResponse.setAccountId(loyaltyAccountId);
-                errorResponse.setPoints(points);
-                errorResponse.setReference(reference);
-                errorResponse.setStatus("FAILED");
-                errorResponse.setErrorCode("SYSTEM_ERROR");
-                errorResponse.setErrorMessage("Temporary system error - please retry");
-                errorResponse.setProcessedAt(LocalDateTime.now());
-                
-                logger.warn("MOCK: Simulated system error for account: {}", loyaltyAccountId);
-                return errorResponse;
-            }
-            
-            // Process successful debit
-            Integer newBalance = currentBalance - points;
-            accountBalances.put(loyaltyAccountId, newBalance);
-            
-            // Simulate processing time
-            try {
-                Thread.sleep(200);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
-            
-            TransactionResponse response = new TransactionResponse();
-            response.setTransactionId("TXN-" + UUID.randomUUID().toString().substring(0, 8));
-            response.setAccountId(loyaltyAccountId);
-            response.setPoints(points);
-            response.setReference(reference);
-            response.setStatus("SUCCESS");
-            response.setBalanceBefore(currentBalance);
-            response.setBalanceAfter(newBalance);
-            response.setProcessedAt(LocalDateTime.now());
-            
-            logger.info("MOCK: Successfully debited {} points from {}, new balance: {}", 
-                    points, loyaltyAccountId, newBalance);
-            
-            return response;
+        return respond(debitLatency, () -> {
+            providerCalls.incrementAndGet();
+            return processDebit(new TransactionRequest(loyaltyAccountId, points, reference));
         });
     }
 
@@ -147,51 +135,134 @@ public class MockLoyaltyApiClient extends LoyaltyApiClient {
         logger.info("MOCK: Crediting {} points to loyalty account: {} with reference: {}", 
                 points, loyaltyAccountId, reference);
         
-        return Mono.fromSupplier(() -> {
-            Integer currentBalance = accountBalances.getOrDefault(loyaltyAccountId, 50000);
-            
-            // Simulate occasional failures (2% failure rate for credits)
-            if (Math.random() < 0.02) {
-                TransactionResponse errorResponse = new TransactionResponse();
-                errorResponse.setTransactionId(null);
-                errorResponse.setAccountId(loyaltyAccountId);
-                errorResponse.setPoints(points);
-                errorResponse.setReference(reference);
-                errorResponse.setStatus("FAILED");
-                errorResponse.setErrorCode("SYSTEM_ERROR");
-                errorResponse.setErrorMessage("Credit processing temporarily unavailable");
-                errorResponse.setProcessedAt(LocalDateTime.now());
-                
-                logger.warn("MOCK: Simulated credit error for account: {}", loyaltyAccountId);
-                return errorResponse;
+        return respond(creditLatency, () -> {
+            providerCalls.incrementAndGet();
+            return processCredit(new TransactionRequest(loyaltyAccountId, points, reference));
+        });
+    }
+
+    @Override
+    public Mono<List<TransactionResponse>> submitBatch(TransactionType type, List<TransactionRequest> requests) {
+        logger.info("MOCK: Processing batch of {} {} requests", requests.size(), type);
+        
+        if (!batchEndpointEnabled) {
+            return Mono.error(new LoyaltyApiException("Batch failed: no such endpoint", HttpStatus.NOT_FOUND));
+        }
+        
+        // One round trip for the whole batch
+        return respond(TransactionType.DEBIT.equals(type) ? debitLatency : creditLatency, () -> {
+            providerCalls.incrementAndGet();
+            List<TransactionResponse> responses = new ArrayList<>(requests.size());
+            for (TransactionRequest request : requests) {
+                responses.add(TransactionType.DEBIT.equals(type) ? processDebit(request) : processCredit(request));
             }
+            return responses;
+        });
+    }
+
+    /**
+     * Apply the call when subscribed and emit its result after a sampled latency, on
+     * the timer scheduler rather than the subscriber's thread
+     */
+    private <T> Mono<T> respond(LatencyDistribution latency, Supplier<T> call) {
+        return Mono.defer(() -> {
+            long millis = latency.sampleMillis();
+            Mono<T> response = Mono.fromSupplier(call);
+            return millis > 0 ? response.delayElement(Duration.ofMillis(millis)) : response;
+        });
+    }
+
+    private TransactionResponse processDebit(TransactionRequest request) {
+        String loyaltyAccountId = request.getAccountId();
+        Integer points = request.getPoints();
+        TransactionResponse[] result = new TransactionResponse[1];
+        
+        // Check and update atomically for this account only
+        accountBalances.compute(loyaltyAccountId, (id, stored) -> {
+            int currentBalance = stored != null ? stored : DEFAULT_BALANCE;
             
-            // Process successful credit
-            Integer newBalance = currentBalance + points;
-            accountBalances.put(loyaltyAccountId, newBalance);
-            
-            // Simulate processing time
-            try {
-                Thread.sleep(150);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
+            // Simulate business rules
+            if (points > currentBalance) {
+                result[0] = failedResponse(request, "INSUFFICIENT_BALANCE", "Insufficient points balance");
+                return stored;
             }
             
-            TransactionResponse response = new TransactionResponse();
-            response.setTransactionId("TXN-" + UUID.randomUUID().toString().substring(0, 8));
-            response.setAccountId(loyaltyAccountId);
-            response.setPoints(points);
-            response.setReference(reference);
-            response.setStatus("SUCCESS");
-            response.setBalanceBefore(currentBalance);
-            response.setBalanceAfter(newBalance);
-            response.setProcessedAt(LocalDateTime.now());
-            
-            logger.info("MOCK: Successfully credited {} points to {}, new balance: {}", 
-                    points, loyaltyAccountId, newBalance);
+            // Simulate occasional failures (5% failure rate)
+            if (ThreadLocalRandom.current().nextDouble() < 0.05) {
+                result[0] = failedResponse(request, "SYSTEM_ERROR", "Temporary system error - please retry");
+                return stored;
+            }
             
-            return response;
+            result[0] = successResponse(request, currentBalance, currentBalance - points);
+            return currentBalance - points;
+        });
+        
+        if ("SUCCESS".equals(result[0].getStatus())) {
+            logger.info("MOCK: Successfully debited {} points from {}, new balance: {}", 
+                    points, loyaltyAccountId, result[0].getBalanceAfter());
+        } else {
+            logger.warn("MOCK: Debit failed for account: {} - {}", loyaltyAccountId, result[0].getErrorCode());
+        }
+        return result[0];
+    }
+
+    private TransactionResponse processCredit(TransactionRequest request) {
+        String loyaltyAccountId = request.getAccountId();
+        Integer points = request.getPoints();
+        
+        // Simulate occasional failures (2% failure rate for credits)
+        if (ThreadLocalRandom.current().nextDouble() < 0.02) {
+            logger.warn("MOCK: Simulated credit error for account: {}", loyaltyAccountId);
+            return failedResponse(request, "SYSTEM_ERROR", "Credit processing temporarily unavailable");
+        }
+        
+        TransactionResponse[] result = new TransactionResponse[1];
+        accountBalances.compute(loyaltyAccountId, (id, stored) -> {
+            int currentBalance = stored != null ? stored : DEFAULT_BALANCE;
+            result[0] = successResponse(request, currentBalance, currentBalance + points);
+            return currentBalance + points;
         });
+        
+        logger.info("MOCK: Successfully credited {} points to {}, new balance: {}", 
+                points, loyaltyAccountId, result[0].getBalanceAfter());
+        
+        return result[0];
+    }
+
+    private TransactionResponse successResponse(TransactionRequest request, Integer balanceBefore, Integer balanceAfter) {
+        TransactionResponse response = new TransactionResponse();
+        response.setTransactionId("TXN-" + UUID.randomUUID().toString().substring(0, 8));
+        response.setAccountId(request.getAccountId());
+        response.setPoints(request.getPoints());
+        response.setReference(request.getReference());
+        response.setStatus("SUCCESS");
+        response.setBalanceBefore(balanceBefore);
+        response.setBalanceAfter(balanceAfter);
+        response.setProcessedAt(LocalDateTime.now());
+        return response;
+    }
+
+    private TransactionResponse failedResponse(TransactionRequest request, String errorCode, String errorMessage) {
+        TransactionResponse errorResponse = new TransactionResponse();
+        errorResponse.setTransactionId(null);
+        errorResponse.setAccountId(request.getAccountId());
+        errorResponse.setPoints(request.getPoints());
+        errorResponse.setReference(request.getReference());
+        errorResponse.setStatus("FAILED");
+        errorResponse.setErrorCode(errorCode);
+        errorResponse.setErrorMessage(errorMessage);
+        errorResponse.setProcessedAt(LocalDateTime.now());
+        return errorResponse;
+    }
+
+    /**
+     * The in-process mock keeps balances, not a ledger; reconcile against the stand-in
+     * provider (profile {@code standin}) instead
+     */
+    @Override
+    public Flux<StatementEntry> streamStatement(LocalDateTime from, LocalDateTime to, int pageSize) {
+        return Flux.error(new LoyaltyApiException("Statement not available from the mock provider",
+                HttpStatus.NOT_IMPLEMENTED));
     }
 
     @Override
@@ -215,6 +286,21 @@ public class MockLoyaltyApiClient extends LoyaltyApiClient {
         return accountBalances.get(loyaltyAccountId);
     }
 
+    /**
+     * Simulate a provider without the batch endpoint (answers 404)
+     */
+    public void setBatchEndpointEnabled(boolean enabled) {
+        this.batchEndpointEnabled = enabled;
+        logger.info("MOCK: Batch endpoint {}", enabled ? "enabled" : "disabled");
+    }
+
+    /**
+     * Round trips made to the mock provider, single and batch calls alike
+     */
+    public int getProviderCallCount() {
+        return providerCalls.get();
+    }
+
     public void resetMockData() {
         logger.info("MOCK: Resetting all account data");
         initializeMockData();
@@ -3,17 +3,17 @@ package com.loyaltyportal.service.mock;
 import com.loyaltyportal.entity.OrderItem;
 import com.loyaltyportal.entity.RedemptionOrder;
 import com.loyaltyportal.service.NotificationService;
+import com.loyaltyportal.service.notification.ItemEmailView;
+import com.loyaltyportal.service.notification.OrderEmailView;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 @Service
 @ConditionalOnProperty(name = "loyalty.notification.mock.enabled", havingValue = "true")
@@ -21,13 +21,13 @@ public class MockNotificationService extends NotificationService {
 
     private static final Logger logger = LoggerFactory.getLogger(MockNotificationService.class);
 
-    // Mock email storage
-    private final List<MockEmailRecord> sentEmails = new ArrayList<>();
-    private final Map<String, List<MockEmailRecord>> emailsByRecipient = new HashMap<>();
+    // Mock email storage: the most recent emails, indexed by recipient and counted by type
+    private final MockRecordStore<MockEmailRecord> sentEmails;
 
-    public MockNotificationService() {
-        super(null); // No real JavaMailSender needed for mock
-        logger.info("Mock Notification Service initialized");
+    public MockNotificationService(@Value("${loyalty.notification.mock.capacity:10000}") int capacity) {
+        super(null, null); // Emails are recorded in memory, not queued in the outbox
+        this.sentEmails = new MockRecordStore<>(capacity, null, MockEmailRecord::getRecipient, MockEmailRecord::getType);
+        logger.info("Mock Notification Service initialized, retaining the last {} emails", capacity);
     }
 
     @Override
@@ -40,9 +40,6 @@ public class MockNotificationService extends NotificationService {
         
         recordSentEmail(recipient, subject, body, "ORDER_CONFIRMATION");
         
-        // Simulate email sending delay
-        simulateEmailDelay(100, 300);
-        
         logger.info("MOCK: Order confirmation email sent to: {}", recipient);
     }
 
@@ -62,17 +59,15 @@ public class MockNotificationService extends NotificationService {
     }
 
     @Override
-    public void sendVirtualFulfillmentNotification(OrderItem item, Object response) {
-        logger.info("MOCK: Sending virtual fulfillment notification for item: {}", item.getProduct().getSku());
+    public void sendVirtualFulfillmentNotification(ItemEmailView item) {
+        logger.info("MOCK: Sending virtual fulfillment notification for item: {}", item.getSku());
         
-        String recipient = item.getOrder().getAccountManager().getEmail();
-        String subject = "Virtual Item Delivered - " + item.getOrder().getOrderNumber();
+        String recipient = item.getRecipientEmail();
+        String subject = "Virtual Item Delivered - " + item.getOrderNumber();
         String body = buildMockVirtualFulfillmentEmail(item);
         
         recordSentEmail(recipient, subject, body, "VIRTUAL_FULFILLMENT");
         
-        simulateEmailDelay(50, 200);
-        
         logger.info("MOCK: Virtual fulfillment email sent to: {}", recipient);
     }
 
@@ -96,87 +91,76 @@ public class MockNotificationService extends NotificationService {
     }
 
     @Override
-    public void sendShippingNotification(OrderItem item) {
+    public void sendShippingNotification(ItemEmailView item) {
         logger.info("MOCK: Sending shipping notification for item: {} tracking: {}", 
-                item.getProduct().getSku(), item.getTrackingNumber());
+                item.getSku(), item.getTrackingNumber());
         
-        String recipient = item.getOrder().getAccountManager().getEmail();
-        String subject = "Item Shipped - " + item.getOrder().getOrderNumber();
+        String recipient = item.getRecipientEmail();
+        String subject = "Item Shipped - " + item.getOrderNumber();
         String body = buildMockShippingEmail(item);
         
         recordSentEmail(recipient, subject, body, "SHIPPING_NOTIFICATION");
         
-        simulateEmailDelay(80, 250);
-        
         logger.info("MOCK: Shipping notification email sent to: {}", recipient);
     }
 
     @Override
-    public void sendDeliveryNotification(OrderItem item) {
-        logger.info("MOCK: Sending delivery notification for item: {}", item.getProduct().getSku());
+    public void sendDeliveryNotification(ItemEmailView item) {
+        logger.info("MOCK: Sending delivery notification for item: {}", item.getSku());
         
-        String recipient = item.getOrder().getAccountManager().getEmail();
-        String subject = "Item Delivered - " + item.getOrder().getOrderNumber();
+        String recipient = item.getRecipientEmail();
+        String subject = "Item Delivered - " + item.getOrderNumber();
         String body = buildMockDeliveryEmail(item);
         
         recordSentEmail(recipient, subject, body, "DELIVERY_NOTIFICATION");
         
-        simulateEmailDelay(50, 150);
-        
         logger.info("MOCK: Delivery notification email sent to: {}", recipient);
     }
 
     @Override
-    public void sendOrderCompletionNotification(RedemptionOrder order) {
+    public void sendOrderCompletionNotification(OrderEmailView order) {
         logger.info("MOCK: Sending order completion notification for: {}", order.getOrderNumber());
         
-        String recipient = order.getAccountManager().getEmail();
+        String recipient = order.getRecipientEmail();
         String subject = "Order Complete - " + order.getOrderNumber();
         String body = buildMockOrderCompletionEmail(order);
         
         recordSentEmail(recipient, subject, body, "ORDER_COMPLETION");
         
-        simulateEmailDelay(100, 200);
-        
         logger.info("MOCK: Order completion email sent to: {}", recipient);
     }
 
     // Mock-specific methods for testing
     public List<MockEmailRecord> getAllSentEmails() {
-        return new ArrayList<>(sentEmails);
+        return sentEmails.find(email -> true);
     }
 
     public List<MockEmailRecord> getEmailsByRecipient(String recipient) {
-        return emailsByRecipient.getOrDefault(recipient, new ArrayList<>());
+        return sentEmails.findByGroup(recipient);
     }
 
     public List<MockEmailRecord> getEmailsByType(String type) {
-        return sentEmails.stream()
-                .filter(email -> type.equals(email.getType()))
-                .collect(Collectors.toList());
+        return sentEmails.find(email -> type.equals(email.getType()));
     }
 
+    /**
+     * Emails sent since the last clear, including those no longer retained
+     */
     public long getEmailCount() {
-        return sentEmails.size();
+        return sentEmails.totalRecorded();
     }
 
     public long getEmailCountByType(String type) {
-        return sentEmails.stream()
-                .filter(email -> type.equals(email.getType()))
-                .count();
+        return sentEmails.countOf(type);
     }
 
     public void clearEmailHistory() {
         logger.info("MOCK: Clearing email history");
         sentEmails.clear();
-        emailsByRecipient.clear();
     }
 
     public NotificationStatistics getStatistics() {
-        Map<String, Long> countsByType = sentEmails.stream()
-                .collect(Collectors.groupingBy(MockEmailRecord::getType, Collectors.counting()));
-        
-        return new NotificationStatistics(sentEmails.size(), countsByType);
+        return new NotificationStatistics(sentEmails.totalRecorded(), sentEmails.countsByType());
     }
 
     // Private helper methods
@@ -184,20 +168,9 @@ public class MockNotificationService extends NotificationService {
         MockEmailRecord email = new MockEmailRecord(recipient, subject, body, type, LocalDateTime.now());
         sentEmails.add(email);
         
-        emailsByRecipient.computeIfAbsent(recipient, k -> new ArrayList<>()).add(email);
-        
         logger.debug("MOCK: Recorded email - Type: {}, Recipient: {}, Subject: {}", type, recipient, subject);
     }
 
-    private void simulateEmailDelay(int minMs, int maxMs) {
-        try {
-            int delay = minMs + (int)(Math.random() * (maxMs - minMs));
-            Thread.sleep(delay);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
-    }
-
     // Mock email builders (simplified versions)
     private String buildMockOrderConfirmationEmail(RedemptionOrder order) {
         return String.format("MOCK Order Confirmation\nOrder: %s\nCompany: %s\nTotal Points: %d\nItems: %d",
@@ -211,9 +184,9 @@ public class MockNotificationService extends NotificationService {
                 order.getShippingAddress() != null ? order.getShippingAddress() : "Not provided");
     }
 
-    private String buildMockVirtualFulfillmentEmail(OrderItem item) {
+    private String buildMockVirtualFulfillmentEmail(ItemEmailView item) {
         return String.format("MOCK Virtual Item Delivered\nProduct: %s\nOrder: %s\nDelivered At: %s",
-                item.getProduct().getName(), item.getOrder().getOrderNumber(), 
+                item.getProductName(), item.getOrderNumber(), 
                 item.getDeliveredAt());
     }
 
@@ -227,19 +200,19 @@ public class MockNotificationService extends NotificationService {
                 item.getProduct().getName(), item.getOrder().getOrderNumber(), error);
     }
 
-    private String buildMockShippingEmail(OrderItem item) {
+    private String buildMockShippingEmail(ItemEmailView item) {
         return String.format("MOCK Item Shipped\nProduct: %s\nOrder: %s\nTracking: %s",
-                item.getProduct().getName(), item.getOrder().getOrderNumber(), 
+                item.getProductName(), item.getOrderNumber(), 
                 item.getTrackingNumber());
     }
 
-    private String buildMockDeliveryEmail(OrderItem item) {
+    private String buildMockDeliveryEmail(ItemEmailView item) {
         return String.format("MOCK Item Delivered\nProduct: %s\nOrder: %s\nDelivered At: %s",
-                item.getProduct().getName(), item.getOrder().getOrderNumber(), 
+                item.getProductName(), item.getOrderNumber(), 
                 item.getDeliveredAt());
     }
 
-    private String buildMockOrderCompletionEmail(RedemptionOrder order) {
+    private String buildMockOrderCompletionEmail(OrderEmailView order) {
         return String.format("MOCK Order Complete\nOrder: %s\nCompleted At: %s\nThank you for your business!",
                 order.getOrderNumber(), order.getCompletedAt());
     }
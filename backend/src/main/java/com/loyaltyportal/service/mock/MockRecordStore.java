@@ -0,0 +1,194 @@
+package com.loyaltyportal.service.mock;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Thread-safe capture of the most recent records written by a mock service.
+ *
+ * Records live in a fixed-capacity ring buffer; once it is full each new record evicts
+ * the oldest, together with its id and group index entries, so memory stays flat however
+ * long a mock-mode soak test runs. Totals and per-type counts are kept separately and
+ * cover every record since the last {@link #clear()}, including evicted ones.
+ */
+public class MockRecordStore<R> {
+
+    private final R[] ring;
+    private final Function<R, String> idOf;
+    private final Function<R, String> groupOf;
+    private final Function<R, String> typeOf;
+
+    private final Map<String, R> byId = new HashMap<>();
+    private final Map<String, ArrayDeque<R>> byGroup = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private int next;
+    private int size;
+
+    private final LongAdder total = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final Map<String, LongAdder> countsByType = new ConcurrentHashMap<>();
+
+    /**
+     * @param idOf    unique key for {@link #get}, or null if records are not looked up by id
+     * @param groupOf index key for {@link #findByGroup}, e.g. the recipient
+     * @param typeOf  key of the aggregate counters
+     */
+    @SuppressWarnings("unchecked")
+    public MockRecordStore(int capacity, Function<R, String> idOf, Function<R, String> groupOf,
+                           Function<R, String> typeOf) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.ring = (R[]) new Object[capacity];
+        this.idOf = idOf;
+        this.groupOf = groupOf;
+        this.typeOf = typeOf;
+    }
+
+    public void add(R record) {
+        lock.writeLock().lock();
+        try {
+            R oldest = ring[next];
+            if (oldest != null) {
+                unindex(oldest);
+                evicted.increment();
+            }
+            ring[next] = record;
+            next = (next + 1) % ring.length;
+            size = Math.min(size + 1, ring.length);
+            index(record);
+            total.increment();
+            countsByType.computeIfAbsent(typeOf.apply(record), type -> new LongAdder()).increment();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public R get(String id) {
+        lock.readLock().lock();
+        try {
+            return byId.get(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retained records of one group, oldest first
+     */
+    public List<R> findByGroup(String group) {
+        lock.readLock().lock();
+        try {
+            ArrayDeque<R> records = byGroup.get(group);
+            return records != null ? new ArrayList<>(records) : new ArrayList<>();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retained records matching the filter, oldest first
+     */
+    public List<R> find(Predicate<R> filter) {
+        lock.readLock().lock();
+        try {
+            List<R> matches = new ArrayList<>();
+            int start = size < ring.length ? 0 : next;
+            for (int i = 0; i < size; i++) {
+                R record = ring[(start + i) % ring.length];
+                if (filter.test(record)) {
+                    matches.add(record);
+                }
+            }
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Records currently retained, at most the capacity
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int capacity() {
+        return ring.length;
+    }
+
+    /**
+     * Records added since the last clear, including evicted ones
+     */
+    public long totalRecorded() {
+        return total.sum();
+    }
+
+    public long evictedCount() {
+        return evicted.sum();
+    }
+
+    public long countOf(String type) {
+        LongAdder count = countsByType.get(type);
+        return count != null ? count.sum() : 0;
+    }
+
+    public Map<String, Long> countsByType() {
+        Map<String, Long> counts = new TreeMap<>();
+        countsByType.forEach((type, count) -> counts.put(type, count.sum()));
+        return counts;
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            Arrays.fill(ring, null);
+            byId.clear();
+            byGroup.clear();
+            next = 0;
+            size = 0;
+            total.reset();
+            evicted.reset();
+            countsByType.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void index(R record) {
+        if (idOf != null) {
+            byId.put(idOf.apply(record), record);
+        }
+        byGroup.computeIfAbsent(groupOf.apply(record), group -> new ArrayDeque<>()).addLast(record);
+    }
+
+    private void unindex(R record) {
+        if (idOf != null) {
+            byId.remove(idOf.apply(record), record);
+        }
+        String group = groupOf.apply(record);
+        ArrayDeque<R> records = byGroup.get(group);
+        if (records != null) {
+            // Eviction is oldest-first, so the evicted record heads its group too
+            records.pollFirst();
+            if (records.isEmpty()) {
+                byGroup.remove(group);
+            }
+        }
+    }
+}
@@ -1,42 +1,75 @@
 package com.loyaltyportal.service.mock;
 
+import com.loyaltyportal.service.mock.standin.LatencyDistribution;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
 
+/**
+ * In-process virtual fulfillment provider. Latency is drawn from a configurable
+ * {@link LatencyDistribution} and applied with a timer, never by sleeping the caller.
+ */
 @Service
 @ConditionalOnProperty(name = "loyalty.fulfillment.virtual.mock.enabled", havingValue = "true")
 public class MockVirtualFulfillmentService {
 
     private static final Logger logger = LoggerFactory.getLogger(MockVirtualFulfillmentService.class);
 
-    // Mock fulfillment tracking
-    private final Map<String, VirtualFulfillmentRecord> fulfillmentRecords = new HashMap<>();
+    // Mock fulfillment tracking: the most recent records, indexed by id and customer
+    private final MockRecordStore<VirtualFulfillmentRecord> fulfillmentRecords;
+
+    private final LatencyDistribution latency;
+
+    public MockVirtualFulfillmentService(
+            @Value("${loyalty.fulfillment.virtual.mock.capacity:10000}") int capacity,
+            @Value("${loyalty.fulfillment.virtual.mock.latency:uniform:300ms-800ms}") String latency) {
+        this.latency = LatencyDistribution.parse(latency);
+        this.fulfillmentRecords = new MockRecordStore<>(capacity, VirtualFulfillmentRecord::getFulfillmentId,
+                VirtualFulfillmentRecord::getCustomerEmail, VirtualFulfillmentRecord::getStatus);
+    }
 
     /**
      * Mock virtual fulfillment processing
      */
-    public VirtualFulfillmentResponse fulfillVirtualProduct(VirtualFulfillmentRequest request) {
+    public Mono<VirtualFulfillmentResponse> fulfillVirtualProduct(VirtualFulfillmentRequest request) {
         logger.info("MOCK: Processing virtual fulfillment for product: {} quantity: {} customer: {}", 
                 request.getProductSku(), request.getQuantity(), request.getCustomerEmail());
         
-        // Simulate processing time
-        try {
-            Thread.sleep(300 + (int)(Math.random() * 500)); // 300-800ms
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
+        return Mono.fromSupplier(() -> processFulfillment(request))
+                .delayElement(Duration.ofMillis(latency.sampleMillis()));
+    }
+
+    /**
+     * Mock batch fulfillment: one simulated round trip for the whole batch and one
+     * result per request, in request order
+     */
+    public Mono<List<VirtualFulfillmentResponse>> fulfillVirtualProducts(List<VirtualFulfillmentRequest> requests) {
+        logger.info("MOCK: Processing batch of {} virtual fulfillments", requests.size());
         
+        // Simulated processing time: one round trip plus a little per item
+        return Mono.fromSupplier(() -> requests.stream()
+                        .map(this::processFulfillment)
+                        .toList())
+                .delayElement(Duration.ofMillis(latency.sampleMillis() + 5L * requests.size()));
+    }
+
+    private VirtualFulfillmentResponse processFulfillment(VirtualFulfillmentRequest request) {
         // Simulate occasional failures (3% failure rate)
-        if (Math.random() < 0.03) {
+        if (ThreadLocalRandom.current().nextDouble() < 0.03) {
             logger.warn("MOCK: Simulated virtual fulfillment failure for product: {}", request.getProductSku());
             return new VirtualFulfillmentResponse(
+                request.getReferenceId(),
                 null,
                 "FAILED",
                 "Mock fulfillment system temporarily unavailable"
@@ -60,12 +93,12 @@ public class MockVirtualFulfillmentService {
             LocalDateTime.now(),
             status
         );
-        fulfillmentRecords.put(fulfillmentId, record);
+        fulfillmentRecords.add(record);
         
         logger.info("MOCK: Virtual fulfillment successful for product: {} fulfillmentId: {}", 
                 request.getProductSku(), fulfillmentId);
         
-        return new VirtualFulfillmentResponse(fulfillmentId, status, message);
+        return new VirtualFulfillmentResponse(request.getReferenceId(), fulfillmentId, status, message);
     }
 
     /**
@@ -79,10 +112,10 @@ public class MockVirtualFulfillmentService {
      * Get all fulfillment records for a customer
      */
     public Map<String, VirtualFulfillmentRecord> getFulfillmentsByCustomer(String customerEmail) {
-        Map<String, VirtualFulfillmentRecord> customerFulfillments = new HashMap<>();
-        fulfillmentRecords.entrySet().stream()
-                .filter(entry -> entry.getValue().getCustomerEmail().equals(customerEmail))
-                .forEach(entry -> customerFulfillments.put(entry.getKey(), entry.getValue()));
+        Map<String, VirtualFulfillmentRecord> customerFulfillments = new LinkedHashMap<>();
+        for (VirtualFulfillmentRecord record : fulfillmentRecords.findByGroup(customerEmail)) {
+            customerFulfillments.put(record.getFulfillmentId(), record);
+        }
         return customerFulfillments;
     }
 
@@ -98,10 +131,8 @@ public class MockVirtualFulfillmentService {
      * Get fulfillment statistics
      */
     public FulfillmentStatistics getStatistics() {
-        long total = fulfillmentRecords.size();
-        long successful = fulfillmentRecords.values().stream()
-                .mapToInt(record -> "SUCCESS".equals(record.getStatus()) ? 1 : 0)
-                .sum();
+        long total = fulfillmentRecords.totalRecorded();
+        long successful = fulfillmentRecords.countOf("SUCCESS");
         long failed = total - successful;
         
         return new FulfillmentStatistics(total, successful, failed);
@@ -169,6 +200,7 @@ public class MockVirtualFulfillmentService {
     }
 
     public static class VirtualFulfillmentResponse {
+        private String referenceId;
         private String fulfillmentId;
         private String status;
         private String message;
@@ -181,7 +213,14 @@ public class MockVirtualFulfillmentService {
             this.message = message;
         }
 
+        public VirtualFulfillmentResponse(String referenceId, String fulfillmentId, String status, String message) {
+            this(fulfillmentId, status, message);
+            this.referenceId = referenceId;
+        }
+
         // Getters and Setters
+        public String getReferenceId() { return referenceId; }
+        public void setReferenceId(String referenceId) { this.referenceId = referenceId; }
         public String getFulfillmentId() { return fulfillmentId; }
         public void setFulfillmentId(String fulfillmentId) { this.fulfillmentId = fulfillmentId; }
         public String getStatus() { return status; }
@@ -0,0 +1,123 @@
+package com.loyaltyportal.service.mock.standin;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How a stand-in endpoint misbehaves. Immutable; the {@code with...} methods return
+ * a modified copy.
+ */
+public class FaultProfile {
+
+    private final LatencyDistribution latency;
+    private final double errorRate;
+    private final double throttleRate;
+    private final Duration retryAfter;
+    private final double slowDripRate;
+    private final Duration dripInterval;
+
+    private FaultProfile(LatencyDistribution latency, double errorRate, double throttleRate, Duration retryAfter,
+                         double slowDripRate, Duration dripInterval) {
+        this.latency = latency;
+        this.errorRate = errorRate;
+        this.throttleRate = throttleRate;
+        this.retryAfter = retryAfter;
+        this.slowDripRate = slowDripRate;
+        this.dripInterval = dripInterval;
+    }
+
+    /**
+     * No added latency, no faults
+     */
+    public static FaultProfile healthy() {
+        return new FaultProfile(LatencyDistribution.none(), 0, 0, Duration.ofSeconds(1), 0, Duration.ZERO);
+    }
+
+    /**
+     * Named presets for running the stand-in from the command line or configuration
+     */
+    public static FaultProfile preset(String name) {
+        switch (name) {
+            case "healthy":
+                return healthy();
+            case "realistic":
+                return healthy()
+                        .withLatency(LatencyDistribution.logNormal(Duration.ofMillis(40), Duration.ofMillis(400)))
+                        .withErrorRate(0.01);
+            case "degraded":
+                return healthy()
+                        .withLatency(LatencyDistribution.logNormal(Duration.ofMillis(300), Duration.ofSeconds(5)))
+                        .withErrorRate(0.15);
+            case "throttled":
+                return healthy()
+                        .withLatency(LatencyDistribution.logNormal(Duration.ofMillis(40), Duration.ofMillis(400)))
+                        .withThrottling(0.3, Duration.ofSeconds(1));
+            case "slow-drip":
+                return healthy()
+                        .withLatency(LatencyDistribution.logNormal(Duration.ofMillis(40), Duration.ofMillis(400)))
+                        .withSlowDrip(0.2, Duration.ofMillis(500));
+            default:
+                throw new IllegalArgumentException("Unknown stand-in fault profile: " + name);
+        }
+    }
+
+    public FaultProfile withLatency(LatencyDistribution latency) {
+        return new FaultProfile(latency, errorRate, throttleRate, retryAfter, slowDripRate, dripInterval);
+    }
+
+    /**
+     * Fraction of requests answered with 500
+     */
+    public FaultProfile withErrorRate(double errorRate) {
+        return new FaultProfile(latency, errorRate, throttleRate, retryAfter, slowDripRate, dripInterval);
+    }
+
+    /**
+     * Fraction of requests answered with 429 and the given Retry-After
+     */
+    public FaultProfile withThrottling(double throttleRate, Duration retryAfter) {
+        return new FaultProfile(latency, errorRate, throttleRate, retryAfter, slowDripRate, dripInterval);
+    }
+
+    /**
+     * Fraction of successful responses whose body is written a few bytes at a time,
+     * {@code dripInterval} apart, to exercise read timeouts
+     */
+    public FaultProfile withSlowDrip(double slowDripRate, Duration dripInterval) {
+        return new FaultProfile(latency, errorRate, throttleRate, retryAfter, slowDripRate, dripInterval);
+    }
+
+    public LatencyDistribution getLatency() {
+        return latency;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    public Duration getDripInterval() {
+        return dripInterval;
+    }
+
+    boolean shouldThrottle() {
+        return roll(throttleRate);
+    }
+
+    boolean shouldFail() {
+        return roll(errorRate);
+    }
+
+    boolean shouldDrip() {
+        return roll(slowDripRate);
+    }
+
+    private static boolean roll(double rate) {
+        return rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    @Override
+    public String toString() {
+        return "FaultProfile{latency=" + latency + ", errorRate=" + errorRate + ", throttleRate=" + throttleRate
+                + ", slowDripRate=" + slowDripRate + '}';
+    }
+}
@@ -0,0 +1,140 @@
+package com.loyaltyportal.service.mock.standin;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Response latency for a stand-in endpoint.
+ *
+ * Real provider latency is long-tailed, so the default shape is log-normal, fitted
+ * to a median and a p99. Bimodal mixes two shapes for providers with a separate slow
+ * path (cache misses, cold starts). Fixed and uniform shapes are there for tests that
+ * need deterministic or bounded timings.
+ */
+public abstract class LatencyDistribution {
+
+    private static final double Z_99 = 2.326;
+
+    /**
+     * Draw one latency in milliseconds
+     */
+    public abstract long sampleMillis();
+
+    public static LatencyDistribution none() {
+        return fixed(Duration.ZERO);
+    }
+
+    public static LatencyDistribution fixed(Duration latency) {
+        long millis = latency.toMillis();
+        return new LatencyDistribution() {
+            @Override
+            public long sampleMillis() {
+                return millis;
+            }
+
+            @Override
+            public String toString() {
+                return "fixed(" + millis + "ms)";
+            }
+        };
+    }
+
+    public static LatencyDistribution uniform(Duration min, Duration max) {
+        long minMillis = min.toMillis();
+        long maxMillis = Math.max(minMillis, max.toMillis());
+        return new LatencyDistribution() {
+            @Override
+            public long sampleMillis() {
+                return ThreadLocalRandom.current().nextLong(minMillis, maxMillis + 1);
+            }
+
+            @Override
+            public String toString() {
+                return "uniform(" + minMillis + "-" + maxMillis + "ms)";
+            }
+        };
+    }
+
+    /**
+     * Log-normal latency with the given median and 99th percentile
+     */
+    public static LatencyDistribution logNormal(Duration median, Duration p99) {
+        double mu = Math.log(Math.max(1, median.toMillis()));
+        double sigma = Math.max(0, Math.log((double) Math.max(1, p99.toMillis()) / Math.max(1, median.toMillis())) / Z_99);
+        return new LatencyDistribution() {
+            @Override
+            public long sampleMillis() {
+                return Math.round(Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian()));
+            }
+
+            @Override
+            public String toString() {
+                return "logNormal(p50=" + median.toMillis() + "ms, p99=" + p99.toMillis() + "ms)";
+            }
+        };
+    }
+
+    /**
+     * Draws from {@code tail} with the given probability and from {@code body} otherwise
+     */
+    public static LatencyDistribution bimodal(LatencyDistribution body, LatencyDistribution tail,
+                                              double tailProbability) {
+        return new LatencyDistribution() {
+            @Override
+            public long sampleMillis() {
+                return ThreadLocalRandom.current().nextDouble() < tailProbability
+                        ? tail.sampleMillis()
+                        : body.sampleMillis();
+            }
+
+            @Override
+            public String toString() {
+                return "bimodal(" + body + ", " + tail + " @ " + tailProbability + ")";
+            }
+        };
+    }
+
+    /**
+     * Parse a latency spec as used in configuration:
+     * {@code none}, {@code fixed:100ms}, {@code uniform:300ms-800ms},
+     * {@code lognormal:40ms/400ms} (median/p99) or
+     * {@code bimodal:20ms/60ms,1s/3s,0.02} (log-normal body, log-normal tail, tail probability)
+     *
+     * @throws IllegalArgumentException if the spec is malformed
+     */
+    public static LatencyDistribution parse(String spec) {
+        String trimmed = spec.trim();
+        int colon = trimmed.indexOf(':');
+        String shape = (colon < 0 ? trimmed : trimmed.substring(0, colon)).toLowerCase();
+        String args = colon < 0 ? "" : trimmed.substring(colon + 1).trim();
+        try {
+            return switch (shape) {
+                case "none" -> none();
+                case "fixed" -> fixed(duration(args));
+                case "uniform" -> {
+                    String[] range = args.split("-", 2);
+                    yield uniform(duration(range[0]), duration(range[1]));
+                }
+                case "lognormal" -> logNormal(args);
+                case "bimodal" -> {
+                    String[] parts = args.split(",");
+                    yield bimodal(logNormal(parts[0]), logNormal(parts[1]), Double.parseDouble(parts[2].trim()));
+                }
+                default -> throw new IllegalArgumentException("Unknown latency shape '" + shape + "'");
+            };
+        } catch (IndexOutOfBoundsException | NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed latency spec '" + spec + "'", e);
+        }
+    }
+
+    private static LatencyDistribution logNormal(String medianAndP99) {
+        String[] parts = medianAndP99.split("/", 2);
+        return logNormal(duration(parts[0]), duration(parts[1]));
+    }
+
+    private static Duration duration(String value) {
+        return DurationStyle.detectAndParse(value.trim());
+    }
+}
@@ -0,0 +1,496 @@
+package com.loyaltyportal.service.mock.standin;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.loyaltyportal.dto.BalanceResponse;
+import com.loyaltyportal.dto.StatementEntry;
+import com.loyaltyportal.dto.StatementPage;
+import com.loyaltyportal.dto.TransactionRequest;
+import com.loyaltyportal.dto.TransactionResponse;
+import com.loyaltyportal.service.LoyaltyApiClient;
+import com.loyaltyportal.service.mock.MockVirtualFulfillmentService.VirtualFulfillmentRequest;
+import com.loyaltyportal.service.mock.MockVirtualFulfillmentService.VirtualFulfillmentResponse;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stand-in for the loyalty provider and the virtual fulfillment API, served over
+ * real HTTP on localhost.
+ *
+ * Unlike the in-process mocks, requests go through the genuine {@code WebClient}
+ * stack: connection pool, serialization, timeouts, resilience guards and rate
+ * limiting. Each endpoint can be given a {@link FaultProfile} with a latency
+ * distribution, 500s, 429s with Retry-After, and slow-drip bodies. Latency is
+ * simulated with a scheduler rather than sleeping threads, so a small server can
+ * hold thousands of slow requests open at once.
+ *
+ * Debits and credits honour {@code Idempotency-Key} (falling back to the
+ * reference): a repeated key returns the original result without applying it twice.
+ * Every applied transaction is entered on a statement, served in transaction ID order
+ * with a cursor, for reconciliation.
+ *
+ * Endpoints: {@code GET /balance/{accountId}}, {@code POST /debit}, {@code POST /credit},
+ * {@code POST /debit/batch}, {@code POST /credit/batch}, {@code GET /statement},
+ * {@code GET /health}, {@code POST /fulfill}, {@code POST /fulfill/batch}.
+ */
+public class StandInProviderServer implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(StandInProviderServer.class);
+
+    private static final int DEFAULT_BALANCE = 50000;
+    private static final int MAX_REMEMBERED_KEYS = 100_000;
+    private static final int DRIP_CHUNK_BYTES = 16;
+    private static final int DEFAULT_STATEMENT_PAGE = 1000;
+    private static final int MAX_STATEMENT_PAGE = 5000;
+
+    private final int requestedPort;
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    private final Map<String, FaultProfile> profiles = new ConcurrentHashMap<>();
+    private volatile FaultProfile defaultProfile = FaultProfile.healthy();
+
+    private final Map<String, AtomicInteger> balances = new ConcurrentHashMap<>();
+    private final Map<String, TransactionResponse> appliedTransactions = Collections.synchronizedMap(
+            new LinkedHashMap<String, TransactionResponse>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, TransactionResponse> eldest) {
+                    return size() > MAX_REMEMBERED_KEYS;
+                }
+            });
+    private final ConcurrentSkipListMap<String, StatementEntry> statement = new ConcurrentSkipListMap<>();
+    private final Map<String, AtomicLong> requestCounts = new ConcurrentHashMap<>();
+
+    private HttpServer server;
+    private ExecutorService handlerExecutor;
+    private ScheduledExecutorService responseScheduler;
+
+    /**
+     * @param port port to listen on, or 0 for any free port
+     */
+    public StandInProviderServer(int port) {
+        this.requestedPort = port;
+    }
+
+    public synchronized void start() throws IOException {
+        if (server != null) {
+            return;
+        }
+        server = HttpServer.create(new InetSocketAddress("localhost", requestedPort), 1024);
+        handlerExecutor = Executors.newFixedThreadPool(4);
+        responseScheduler = Executors.newScheduledThreadPool(4);
+        server.setExecutor(handlerExecutor);
+
+        server.createContext("/balance/", exchange -> handle(exchange, "balance", this::balance));
+        server.createContext("/debit", exchange -> handle(exchange, "debit", request -> transaction(request, true)));
+        server.createContext("/credit", exchange -> handle(exchange, "credit", request -> transaction(request, false)));
+        server.createContext("/debit/batch", exchange -> handle(exchange, "debit/batch", request -> batch(request, true)));
+        server.createContext("/credit/batch", exchange -> handle(exchange, "credit/batch", request -> batch(request, false)));
+        server.createContext("/statement", exchange -> handle(exchange, "statement", this::statement));
+        server.createContext("/health", exchange -> handle(exchange, "health", request -> Map.of("status", "UP")));
+        server.createContext("/fulfill", exchange -> handle(exchange, "fulfill", this::fulfill));
+        server.createContext("/fulfill/batch", exchange -> handle(exchange, "fulfill/batch", this::fulfillBatch));
+        server.start();
+
+        logger.info("Stand-in provider listening on {} with default profile {}", getBaseUrl(), defaultProfile);
+    }
+
+    public synchronized void stop() {
+        if (server == null) {
+            return;
+        }
+        server.stop(0);
+        responseScheduler.shutdownNow();
+        handlerExecutor.shutdownNow();
+        server = null;
+        logger.info("Stand-in provider stopped");
+    }
+
+    @Override
+    public void close() {
+        stop();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public String getBaseUrl() {
+        return "http://localhost:" + getPort();
+    }
+
+    /**
+     * Profile for endpoints without one of their own
+     */
+    public void setDefaultProfile(FaultProfile profile) {
+        this.defaultProfile = profile;
+    }
+
+    /**
+     * @param endpoint one of balance, debit, credit, debit/batch, credit/batch, statement, health,
+     *                 fulfill, fulfill/batch
+     */
+    public void setProfile(String endpoint, FaultProfile profile) {
+        profiles.put(endpoint, profile);
+    }
+
+    public void setBalance(String accountId, int points) {
+        balances.computeIfAbsent(accountId, id -> new AtomicInteger()).set(points);
+    }
+
+    public int getBalance(String accountId) {
+        return account(accountId).get();
+    }
+
+    /**
+     * Add an entry to the statement directly, e.g. a transaction we never recorded
+     */
+    public void addStatementEntry(StatementEntry entry) {
+        statement.put(entry.getTransactionId(), entry);
+    }
+
+    /**
+     * Drop an applied transaction from the statement, as if the provider had lost it
+     */
+    public void removeStatementEntry(String transactionId) {
+        statement.remove(transactionId);
+    }
+
+    public int getStatementSize() {
+        return statement.size();
+    }
+
+    /**
+     * Requests received by an endpoint, including ones answered with a fault
+     */
+    public long getRequestCount(String endpoint) {
+        AtomicLong count = requestCounts.get(endpoint);
+        return count != null ? count.get() : 0;
+    }
+
+    public void reset() {
+        profiles.clear();
+        defaultProfile = FaultProfile.healthy();
+        balances.clear();
+        appliedTransactions.clear();
+        statement.clear();
+        requestCounts.clear();
+    }
+
+    @FunctionalInterface
+    private interface RequestHandler {
+        Object handle(Request request) throws IOException;
+    }
+
+    private static class Request {
+        final String path;
+        final String query;
+        final String idempotencyKey;
+        final byte[] body;
+
+        Request(String path, String query, String idempotencyKey, byte[] body) {
+            this.path = path;
+            this.query = query;
+            this.idempotencyKey = idempotencyKey;
+            this.body = body;
+        }
+
+        String param(String name) {
+            if (query == null) {
+                return null;
+            }
+            for (String pair : query.split("&")) {
+                int eq = pair.indexOf('=');
+                if (eq > 0 && pair.substring(0, eq).equals(name)) {
+                    return URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+                }
+            }
+            return null;
+        }
+    }
+
+    private void handle(HttpExchange exchange, String endpoint, RequestHandler handler) throws IOException {
+        requestCounts.computeIfAbsent(endpoint, e -> new AtomicLong()).incrementAndGet();
+        FaultProfile profile = profiles.getOrDefault(endpoint, defaultProfile);
+
+        Request request;
+        try (InputStream in = exchange.getRequestBody()) {
+            request = new Request(exchange.getRequestURI().getPath(), exchange.getRequestURI().getRawQuery(),
+                    exchange.getRequestHeaders().getFirst(LoyaltyApiClient.IDEMPOTENCY_KEY_HEADER),
+                    in.readAllBytes());
+        }
+
+        long delayMillis = Math.max(0, profile.getLatency().sampleMillis());
+        responseScheduler.schedule(() -> respond(exchange, profile, handler, request),
+                delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void respond(HttpExchange exchange, FaultProfile profile, RequestHandler handler, Request request) {
+        try {
+            if (profile.shouldThrottle()) {
+                exchange.getResponseHeaders().add("Retry-After",
+                        String.valueOf(Math.max(1, profile.getRetryAfter().getSeconds())));
+                send(exchange, 429, error("RATE_LIMITED", "Too many requests"));
+                return;
+            }
+            if (profile.shouldFail()) {
+                send(exchange, 500, error("SYSTEM_ERROR", "Simulated provider failure"));
+                return;
+            }
+
+            byte[] body = objectMapper.writeValueAsBytes(handler.handle(request));
+            if (profile.shouldDrip()) {
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                drip(exchange, body, 0, profile.getDripInterval());
+            } else {
+                send(exchange, 200, body);
+            }
+        } catch (StandInException e) {
+            sendQuietly(exchange, e.status, error(e.code, e.getMessage()));
+        } catch (Exception e) {
+            logger.warn("Stand-in provider failed to answer {}: {}", request.path, e.getMessage());
+            sendQuietly(exchange, 500, error("SYSTEM_ERROR", e.getMessage()));
+        }
+    }
+
+    /**
+     * Write the body a few bytes at a time without holding a thread between chunks
+     */
+    private void drip(HttpExchange exchange, byte[] body, int offset, Duration interval) {
+        try {
+            OutputStream out = exchange.getResponseBody();
+            int length = Math.min(DRIP_CHUNK_BYTES, body.length - offset);
+            out.write(body, offset, length);
+            out.flush();
+            if (offset + length >= body.length) {
+                exchange.close();
+                return;
+            }
+            responseScheduler.schedule(() -> drip(exchange, body, offset + length, interval),
+                    interval.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (IOException e) {
+            // Client gave up (timeout), which is what slow-drip is for
+            exchange.close();
+        }
+    }
+
+    private BalanceResponse balance(Request request) {
+        String accountId = request.path.substring("/balance/".length());
+        if (accountId.isEmpty()) {
+            throw new StandInException(404, "ACCOUNT_NOT_FOUND", "Account ID is required");
+        }
+        int balance = account(accountId).get();
+        return new BalanceResponse(accountId, balance, balance, 0, LocalDateTime.now(), "SILVER");
+    }
+
+    private TransactionResponse transaction(Request request, boolean debit) throws IOException {
+        TransactionRequest transaction = objectMapper.readValue(request.body, TransactionRequest.class);
+        String key = request.idempotencyKey != null ? request.idempotencyKey : transaction.getReference();
+        return apply(transaction, key, debit);
+    }
+
+    private List<TransactionResponse> batch(Request request, boolean debit) throws IOException {
+        List<TransactionRequest> transactions = objectMapper.readValue(request.body,
+                new TypeReference<List<TransactionRequest>>() {});
+        List<TransactionResponse> responses = new ArrayList<>(transactions.size());
+        for (TransactionRequest transaction : transactions) {
+            responses.add(apply(transaction, transaction.getReference(), debit));
+        }
+        return responses;
+    }
+
+    /**
+     * Apply a debit or credit once per idempotency key; repeats get the original result
+     */
+    private TransactionResponse apply(TransactionRequest request, String idempotencyKey, boolean debit) {
+        if (request.getAccountId() == null || request.getPoints() == null || request.getPoints() < 1) {
+            throw new StandInException(400, "INVALID_REQUEST", "Account ID and a positive points amount are required");
+        }
+        String key = (debit ? "DEBIT:" : "CREDIT:") + (idempotencyKey != null ? idempotencyKey : UUID.randomUUID());
+        TransactionResponse previous = appliedTransactions.get(key);
+        if (previous != null) {
+            return previous;
+        }
+
+        AtomicInteger balance = account(request.getAccountId());
+        TransactionResponse response;
+        synchronized (balance) {
+            previous = appliedTransactions.get(key);
+            if (previous != null) {
+                return previous;
+            }
+            int before = balance.get();
+            if (debit && request.getPoints() > before) {
+                response = new TransactionResponse(null, request.getAccountId(), request.getPoints(),
+                        request.getReference(), "FAILED");
+                response.setErrorCode("INSUFFICIENT_BALANCE");
+                response.setErrorMessage("Insufficient points balance");
+            } else {
+                int after = debit ? before - request.getPoints() : before + request.getPoints();
+                balance.set(after);
+                response = new TransactionResponse("TXN-" + UUID.randomUUID().toString().substring(0, 8),
+                        request.getAccountId(), request.getPoints(), request.getReference(), "SUCCESS");
+                response.setBalanceBefore(before);
+                response.setBalanceAfter(after);
+            }
+            response.setProcessedAt(LocalDateTime.now());
+            appliedTransactions.put(key, response);
+            if (response.getTransactionId() != null) {
+                statement.put(response.getTransactionId(), new StatementEntry(response.getTransactionId(),
+                        request.getAccountId(), debit ? "DEBIT" : "CREDIT", request.getPoints(),
+                        request.getReference(), response.getProcessedAt()));
+            }
+        }
+        return response;
+    }
+
+    /**
+     * One page of entries processed in [from, to), after the cursor in transaction ID order
+     */
+    private StatementPage statement(Request request) {
+        LocalDateTime from;
+        LocalDateTime to;
+        try {
+            from = LocalDateTime.parse(request.param("from"));
+            to = LocalDateTime.parse(request.param("to"));
+        } catch (RuntimeException e) {
+            throw new StandInException(400, "INVALID_REQUEST", "from and to are required ISO date-times");
+        }
+        String after = request.param("after");
+        String limitParam = request.param("limit");
+        int limit = limitParam != null
+                ? Math.max(1, Math.min(MAX_STATEMENT_PAGE, Integer.parseInt(limitParam)))
+                : DEFAULT_STATEMENT_PAGE;
+
+        Map<String, StatementEntry> remaining = after != null ? statement.tailMap(after, false) : statement;
+        List<StatementEntry> entries = new ArrayList<>(Math.min(limit, 256));
+        for (StatementEntry entry : remaining.values()) {
+            LocalDateTime processedAt = entry.getProcessedAt();
+            if (processedAt.isBefore(from) || !processedAt.isBefore(to)) {
+                continue;
+            }
+            if (entries.size() == limit) {
+                // Only hand out a cursor when there is another page to fetch
+                return new StatementPage(entries, entries.get(limit - 1).getTransactionId());
+            }
+            entries.add(entry);
+        }
+        return new StatementPage(entries, null);
+    }
+
+    private VirtualFulfillmentResponse fulfill(Request request) throws IOException {
+        return fulfillOne(objectMapper.readValue(request.body, VirtualFulfillmentRequest.class));
+    }
+
+    private List<VirtualFulfillmentResponse> fulfillBatch(Request request) throws IOException {
+        List<VirtualFulfillmentRequest> fulfillments = objectMapper.readValue(request.body,
+                new TypeReference<List<VirtualFulfillmentRequest>>() {});
+        List<VirtualFulfillmentResponse> responses = new ArrayList<>(fulfillments.size());
+        for (VirtualFulfillmentRequest fulfillment : fulfillments) {
+            responses.add(fulfillOne(fulfillment));
+        }
+        return responses;
+    }
+
+    private VirtualFulfillmentResponse fulfillOne(VirtualFulfillmentRequest fulfillment) {
+        if (fulfillment.getProductSku() == null) {
+            throw new StandInException(400, "INVALID_REQUEST", "Product SKU is required");
+        }
+        return new VirtualFulfillmentResponse(fulfillment.getReferenceId(),
+                "VF-" + UUID.randomUUID().toString().substring(0, 8), "SUCCESS",
+                "Fulfilled " + fulfillment.getQuantity() + " x " + fulfillment.getProductSku());
+    }
+
+    private AtomicInteger account(String accountId) {
+        return balances.computeIfAbsent(accountId, id -> new AtomicInteger(DEFAULT_BALANCE));
+    }
+
+    private byte[] error(String code, String message) {
+        try {
+            Map<String, String> error = new LinkedHashMap<>();
+            error.put("error_code", code);
+            error.put("error_message", message);
+            return objectMapper.writeValueAsBytes(error);
+        } catch (IOException e) {
+            return new byte[0];
+        }
+    }
+
+    private void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private void sendQuietly(HttpExchange exchange, int status, byte[] body) {
+        try {
+            send(exchange, status, body);
+        } catch (IOException e) {
+            exchange.close();
+        }
+    }
+
+    private static class StandInException extends RuntimeException {
+        final int status;
+        final String code;
+
+        StandInException(int status, String code, String message) {
+            super(message);
+            this.status = status;
+            this.code = code;
+        }
+    }
+
+    /**
+     * Run the stand-in on its own, e.g. for a load test against a locally started portal:
+     * {@code --port=9090 --profile=realistic} (profiles: healthy, realistic, degraded,
+     * throttled, slow-drip).
+     */
+    public static void main(String[] args) throws IOException {
+        int port = 9090;
+        String profile = "realistic";
+        for (String arg : args) {
+            if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(arg.substring("--port=".length()));
+            } else if (arg.startsWith("--profile=")) {
+                profile = arg.substring("--profile=".length());
+            }
+        }
+
+        StandInProviderServer server = new StandInProviderServer(port);
+        server.setDefaultProfile(FaultProfile.preset(profile));
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+        server.start();
+    }
+}
@@ -0,0 +1,35 @@
+package com.loyaltyportal.service.notification;
+
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A digest email: the already rendered item lines of one recipient and order
+ */
+public class DigestEmailView {
+
+    static final Map<String, Function<DigestEmailView, ?>> FIELDS = Map.of(
+            "recipientName", DigestEmailView::getRecipientName,
+            "orderNumber", DigestEmailView::getOrderNumber,
+            "lines", DigestEmailView::getLines
+    );
+
+    private final String recipientName;
+    private final String orderNumber;
+    private final String lines;
+
+    public DigestEmailView(String recipientName, String orderNumber, Iterable<String> lines) {
+        this.recipientName = recipientName;
+        this.orderNumber = orderNumber;
+        StringBuilder joined = new StringBuilder();
+        for (String line : lines) {
+            joined.append("- ").append(line).append('\n');
+        }
+        this.lines = joined.toString();
+    }
+
+    // Getters
+    public String getRecipientName() { return recipientName; }
+    public String getOrderNumber() { return orderNumber; }
+    public String getLines() { return lines; }
+}
@@ -0,0 +1,176 @@
+package com.loyaltyportal.service.notification;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A plain-text email template, compiled once into literal and field segments.
+ *
+ * Placeholders are {@code {{field}}}, and a missing field renders as nothing;
+ * {@code {{#field}}...{{/field}}} renders its content only when the field is present
+ * and not blank. Field names are resolved
+ * against the view model's accessor table at compile time, so a typo fails at startup
+ * rather than in a rendered email, and rendering does no parsing or lookups. Output
+ * goes into a per-thread buffer that is reused across renders.
+ */
+public final class EmailTemplate<V> {
+
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(2048));
+
+    private final String name;
+    private final Segment<V>[] segments;
+
+    private EmailTemplate(String name, List<Segment<V>> segments) {
+        this.name = name;
+        this.segments = toArray(segments);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the source is malformed or names an unknown field
+     */
+    public static <V> EmailTemplate<V> compile(String name, String source, Map<String, Function<V, ?>> fields) {
+        Deque<Section<V>> open = new ArrayDeque<>();
+        Deque<List<Segment<V>>> targets = new ArrayDeque<>();
+        List<Segment<V>> root = new ArrayList<>();
+        targets.push(root);
+
+        int position = 0;
+        while (position < source.length()) {
+            int start = source.indexOf("{{", position);
+            if (start < 0) {
+                targets.peek().add(new Literal<>(source.substring(position)));
+                break;
+            }
+            if (start > position) {
+                targets.peek().add(new Literal<>(source.substring(position, start)));
+            }
+            int end = source.indexOf("}}", start);
+            if (end < 0) {
+                throw new IllegalArgumentException("Unclosed placeholder in template " + name);
+            }
+
+            String tag = source.substring(start + 2, end).trim();
+            if (tag.startsWith("#")) {
+                Section<V> section = new Section<>(tag.substring(1), field(name, tag.substring(1), fields));
+                targets.peek().add(section);
+                open.push(section);
+                targets.push(section.children);
+            } else if (tag.startsWith("/")) {
+                if (open.isEmpty() || !open.peek().field.equals(tag.substring(1))) {
+                    throw new IllegalArgumentException("Unexpected {{" + tag + "}} in template " + name);
+                }
+                open.pop().seal();
+                targets.pop();
+            } else {
+                targets.peek().add(new Field<>(field(name, tag, fields)));
+            }
+            position = end + 2;
+        }
+
+        if (!open.isEmpty()) {
+            throw new IllegalArgumentException("Unclosed section {{#" + open.peek().field + "}} in template " + name);
+        }
+        return new EmailTemplate<>(name, root);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String render(V view) {
+        StringBuilder buffer = BUFFER.get();
+        buffer.setLength(0);
+        renderTo(view, buffer);
+        String result = buffer.toString();
+        if (buffer.capacity() > MAX_RETAINED_BUFFER) {
+            // Do not pin a one-off huge buffer to the thread
+            BUFFER.remove();
+        }
+        return result;
+    }
+
+    public void renderTo(V view, StringBuilder out) {
+        for (Segment<V> segment : segments) {
+            segment.render(view, out);
+        }
+    }
+
+    private static <V> Function<V, ?> field(String template, String field, Map<String, Function<V, ?>> fields) {
+        Function<V, ?> accessor = fields.get(field);
+        if (accessor == null) {
+            throw new IllegalArgumentException("Unknown field '" + field + "' in template " + template);
+        }
+        return accessor;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> Segment<V>[] toArray(List<Segment<V>> segments) {
+        return segments.toArray(new Segment[0]);
+    }
+
+    private interface Segment<V> {
+        void render(V view, StringBuilder out);
+    }
+
+    private static final class Literal<V> implements Segment<V> {
+        private final String text;
+
+        Literal(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public void render(V view, StringBuilder out) {
+            out.append(text);
+        }
+    }
+
+    private static final class Field<V> implements Segment<V> {
+        private final Function<V, ?> accessor;
+
+        Field(Function<V, ?> accessor) {
+            this.accessor = accessor;
+        }
+
+        @Override
+        public void render(V view, StringBuilder out) {
+            Object value = accessor.apply(view);
+            if (value != null) {
+                out.append(value);
+            }
+        }
+    }
+
+    private static final class Section<V> implements Segment<V> {
+        private final String field;
+        private final Function<V, ?> accessor;
+        private final List<Segment<V>> children = new ArrayList<>();
+        private Segment<V>[] compiled;
+
+        Section(String field, Function<V, ?> accessor) {
+            this.field = field;
+            this.accessor = accessor;
+        }
+
+        void seal() {
+            compiled = toArray(children);
+        }
+
+        @Override
+        public void render(V view, StringBuilder out) {
+            Object value = accessor.apply(view);
+            if (value == null || (value instanceof String text && text.isBlank())) {
+                return;
+            }
+            for (Segment<V> child : compiled) {
+                child.render(view, out);
+            }
+        }
+    }
+}
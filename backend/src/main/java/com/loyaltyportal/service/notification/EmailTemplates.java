@@ -0,0 +1,112 @@
+package com.loyaltyportal.service.notification;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * The notification email templates, loaded from {@code templates/email} and compiled
+ * once when the application starts
+ */
+@Component
+public class EmailTemplates {
+
+    private static final String LOCATION = "templates/email/";
+
+    private final EmailTemplate<OrderEmailView> orderConfirmation;
+    private final EmailTemplate<OrderEmailView> orderCompletion;
+    private final EmailTemplate<ItemEmailView> virtualFulfillment;
+    private final EmailTemplate<ItemEmailView> shipping;
+    private final EmailTemplate<ItemEmailView> delivery;
+    private final EmailTemplate<ItemEmailView> virtualFulfillmentLine;
+    private final EmailTemplate<ItemEmailView> shippingLine;
+    private final EmailTemplate<ItemEmailView> deliveryLine;
+    private final Map<String, EmailTemplate<DigestEmailView>> digests;
+
+    public EmailTemplates() {
+        this.orderConfirmation = load("order-confirmation", OrderEmailView.FIELDS);
+        this.orderCompletion = load("order-completion", OrderEmailView.FIELDS);
+        this.virtualFulfillment = load("virtual-fulfillment", ItemEmailView.FIELDS);
+        this.shipping = load("shipping", ItemEmailView.FIELDS);
+        this.delivery = load("delivery", ItemEmailView.FIELDS);
+        this.virtualFulfillmentLine = load("virtual-fulfillment-line", ItemEmailView.FIELDS);
+        this.shippingLine = load("shipping-line", ItemEmailView.FIELDS);
+        this.deliveryLine = load("delivery-line", ItemEmailView.FIELDS);
+        this.digests = Map.of(
+                "VIRTUAL_FULFILLMENT", load("virtual-fulfillment-digest", DigestEmailView.FIELDS),
+                "SHIPPING", load("shipping-digest", DigestEmailView.FIELDS),
+                "DELIVERY", load("delivery-digest", DigestEmailView.FIELDS)
+        );
+    }
+
+    public String orderConfirmation(OrderEmailView order) {
+        return orderConfirmation.render(order);
+    }
+
+    public String orderCompletion(OrderEmailView order) {
+        return orderCompletion.render(order);
+    }
+
+    public String virtualFulfillment(ItemEmailView item) {
+        return virtualFulfillment.render(item);
+    }
+
+    public String shipping(ItemEmailView item) {
+        return shipping.render(item);
+    }
+
+    public String delivery(ItemEmailView item) {
+        return delivery.render(item);
+    }
+
+    /**
+     * The digest line for an item notification of the given type
+     */
+    public String digestLine(String type, ItemEmailView item) {
+        return switch (type) {
+            case "SHIPPING" -> shippingLine.render(item);
+            case "DELIVERY" -> deliveryLine.render(item);
+            case "VIRTUAL_FULFILLMENT" -> virtualFulfillmentLine.render(item);
+            default -> throw new IllegalArgumentException("No digest line for notification type " + type);
+        };
+    }
+
+    public String digest(String type, DigestEmailView digest) {
+        EmailTemplate<DigestEmailView> template = digests.get(type);
+        if (template == null) {
+            throw new IllegalArgumentException("No digest template for notification type " + type);
+        }
+        return template.render(digest);
+    }
+
+    /**
+     * Subject of a digest email; a digest of one reads like the single-item email
+     */
+    public static String digestSubject(String type, String orderNumber, int lineCount) {
+        String items = lineCount == 1 ? "Item" : lineCount + " Items";
+        return switch (type) {
+            case "SHIPPING" -> items + " Shipped - " + orderNumber;
+            case "DELIVERY" -> items + " Delivered - " + orderNumber;
+            default -> (lineCount == 1 ? "Virtual Item" : lineCount + " Virtual Items") + " Delivered - " + orderNumber;
+        };
+    }
+
+    private static <V> EmailTemplate<V> load(String name, Map<String, Function<V, ?>> fields) {
+        try (InputStream input = new ClassPathResource(LOCATION + name + ".txt").getInputStream()) {
+            String source = new String(input.readAllBytes(), StandardCharsets.UTF_8);
+            // Template files end with a newline; emails and digest lines do not
+            if (source.endsWith("\n")) {
+                source = source.substring(0, source.length() - 1);
+            }
+            return EmailTemplate.compile(name, source, fields);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not load email template " + name, e);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.loyaltyportal.service.notification;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Flat copy of what order item emails show, read directly by
+ * {@code OrderItemRepository.findEmailViews} for many items at once.
+ */
+public class ItemEmailView {
+
+    static final Map<String, Function<ItemEmailView, ?>> FIELDS = Map.of(
+            "recipientName", ItemEmailView::getRecipientName,
+            "orderNumber", ItemEmailView::getOrderNumber,
+            "shippingAddress", ItemEmailView::getShippingAddress,
+            "productName", ItemEmailView::getProductName,
+            "sku", ItemEmailView::getSku,
+            "quantity", ItemEmailView::getQuantity,
+            "trackingNumber", ItemEmailView::getTrackingNumber,
+            "deliveredAt", ItemEmailView::getDeliveredAt,
+            "fulfillmentReference", ItemEmailView::getFulfillmentReference
+    );
+
+    private final String recipientName;
+    private final String recipientEmail;
+    private final String orderNumber;
+    private final String shippingAddress;
+    private final String productName;
+    private final String sku;
+    private final Integer quantity;
+    private final String trackingNumber;
+    private final LocalDateTime deliveredAt;
+    private final String fulfillmentReference;
+
+    public ItemEmailView(String recipientName, String recipientEmail, String orderNumber, String shippingAddress,
+                         String productName, String sku, Integer quantity, String trackingNumber,
+                         LocalDateTime deliveredAt, String fulfillmentReference) {
+        this.recipientName = recipientName;
+        this.recipientEmail = recipientEmail;
+        this.orderNumber = orderNumber;
+        this.shippingAddress = shippingAddress;
+        this.productName = productName;
+        this.sku = sku;
+        this.quantity = quantity;
+        this.trackingNumber = trackingNumber;
+        this.deliveredAt = deliveredAt;
+        this.fulfillmentReference = fulfillmentReference;
+    }
+
+    // Getters
+    public String getRecipientName() { return recipientName; }
+    public String getRecipientEmail() { return recipientEmail; }
+    public String getOrderNumber() { return orderNumber; }
+    public String getShippingAddress() { return shippingAddress; }
+    public String getProductName() { return productName; }
+    public String getSku() { return sku; }
+    public Integer getQuantity() { return quantity; }
+    public String getTrackingNumber() { return trackingNumber; }
+    public LocalDateTime getDeliveredAt() { return deliveredAt; }
+    public String getFulfillmentReference() { return fulfillmentReference; }
+}
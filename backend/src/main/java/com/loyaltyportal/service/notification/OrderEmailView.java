@@ -0,0 +1,73 @@
+package com.loyaltyportal.service.notification;
+
+import com.loyaltyportal.entity.RedemptionOrder;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Flat copy of what order emails show, so templates never touch the entity graph
+ */
+public class OrderEmailView {
+
+    static final Map<String, Function<OrderEmailView, ?>> FIELDS = Map.of(
+            "recipientName", OrderEmailView::getRecipientName,
+            "orderNumber", OrderEmailView::getOrderNumber,
+            "companyName", OrderEmailView::getCompanyName,
+            "totalPoints", OrderEmailView::getTotalPoints,
+            "itemCount", OrderEmailView::getItemCount,
+            "createdAt", OrderEmailView::getCreatedAt,
+            "completedAt", OrderEmailView::getCompletedAt,
+            "shippingAddress", OrderEmailView::getShippingAddress
+    );
+
+    private final String recipientName;
+    private final String recipientEmail;
+    private final String orderNumber;
+    private final String companyName;
+    private final Integer totalPoints;
+    private final Integer itemCount;
+    private final LocalDateTime createdAt;
+    private final LocalDateTime completedAt;
+    private final String shippingAddress;
+
+    public OrderEmailView(String recipientName, String recipientEmail, String orderNumber, String companyName,
+                          Integer totalPoints, Integer itemCount, LocalDateTime createdAt,
+                          LocalDateTime completedAt, String shippingAddress) {
+        this.recipientName = recipientName;
+        this.recipientEmail = recipientEmail;
+        this.orderNumber = orderNumber;
+        this.companyName = companyName;
+        this.totalPoints = totalPoints;
+        this.itemCount = itemCount;
+        this.createdAt = createdAt;
+        this.completedAt = completedAt;
+        this.shippingAddress = shippingAddress;
+    }
+
+    public static OrderEmailView from(RedemptionOrder order) {
+        return new OrderEmailView(
+                order.getAccountManager().getName(),
+                order.getAccountManager().getEmail(),
+                order.getOrderNumber(),
+                order.getCompany().getName(),
+                order.getTotalPoints(),
+                order.getItemCount(),
+                order.getCreatedAt(),
+                order.getCompletedAt(),
+                order.getShippingAddress()
+        );
+    }
+
+    // Getters
+    public String getRecipientName() { return recipientName; }
+    public String getRecipientEmail() { return recipientEmail; }
+    public String getOrderNumber() { return orderNumber; }
+    public String getCompanyName() { return companyName; }
+    public Integer getTotalPoints() { return totalPoints; }
+    public Integer getItemCount() { return itemCount; }
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public LocalDateTime getCompletedAt() { return completedAt; }
+    public String getShippingAddress() { return shippingAddress; }
+}
@@ -0,0 +1,99 @@
+package com.loyaltyportal.service.resilience;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AIMD concurrency limiter driven by observed provider latency.
+ *
+ * The limiter keeps an exponentially weighted average of call latency as the
+ * provider's "normal" round trip time. A sample slower than
+ * {@code latencyTolerance} times that average, a timeout or a connection failure
+ * is treated as congestion and shrinks the limit multiplicatively. Any other
+ * success grows it by one, but only while the limit is actually being used, so an
+ * idle period does not inflate it.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private static final double RTT_SMOOTHING = 0.05;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final double latencyTolerance;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private double limit;
+    private double averageRttNanos;
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit,
+                                      double backoffRatio, double latencyTolerance) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.latencyTolerance = latencyTolerance;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= getLimit()) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Release a slot after a successful call and feed its latency back into the limit.
+     */
+    public void onSuccess(long rttNanos) {
+        int inFlightAtCompletion = inFlight.getAndDecrement();
+        synchronized (this) {
+            if (averageRttNanos == 0) {
+                averageRttNanos = rttNanos;
+            }
+            if (rttNanos > averageRttNanos * latencyTolerance) {
+                decrease();
+            } else if (inFlightAtCompletion * 2 >= limit) {
+                limit = Math.min(maxLimit, limit + 1);
+            }
+            averageRttNanos += (rttNanos - averageRttNanos) * RTT_SMOOTHING;
+        }
+    }
+
+    /**
+     * Release a slot after a call that indicates provider overload (timeout, 5xx, connection error).
+     */
+    public void onDropped() {
+        inFlight.decrementAndGet();
+        synchronized (this) {
+            decrease();
+        }
+    }
+
+    /**
+     * Release a slot without adjusting the limit.
+     */
+    public void onIgnored() {
+        inFlight.decrementAndGet();
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public synchronized double getAverageRttMillis() {
+        return averageRttNanos / 1_000_000d;
+    }
+
+    private void decrease() {
+        limit = Math.max(minLimit, limit * backoffRatio);
+    }
+}
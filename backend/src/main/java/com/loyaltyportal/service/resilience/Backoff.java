@@ -0,0 +1,31 @@
+package com.loyaltyportal.service.resilience;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Delay before the next attempt of a persisted retry (outbox entries, pending loyalty
+ * transactions). It doubles with every attempt up to {@code max}, and the delay actually
+ * used is drawn between half and all of that, so rows that failed together do not all
+ * come due in the same poll.
+ */
+public class Backoff {
+
+    private final long baseMillis;
+    private final long maxMillis;
+
+    public Backoff(Duration base, Duration max) {
+        this.baseMillis = base.toMillis();
+        this.maxMillis = max.toMillis();
+    }
+
+    /**
+     * Delay after {@code attempts} failed attempts: between half and all of
+     * base * 2^(attempts-1), capped at max
+     */
+    public Duration after(int attempts) {
+        long doubled = baseMillis << Math.min(Math.max(attempts - 1, 0), 20);
+        long capped = Math.min(doubled, maxMillis);
+        return Duration.ofMillis(capped / 2 + ThreadLocalRandom.current().nextLong(capped / 2 + 1));
+    }
+}
@@ -0,0 +1,35 @@
+package com.loyaltyportal.service.resilience;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Fixed cap on concurrent calls to one provider endpoint, so a slow endpoint cannot
+ * absorb every connection and thread the portal has. Callers never wait for a permit;
+ * a full bulkhead rejects immediately.
+ */
+public class Bulkhead {
+
+    private final int maxConcurrentCalls;
+    private final Semaphore permits;
+
+    public Bulkhead(int maxConcurrentCalls) {
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.permits = new Semaphore(maxConcurrentCalls);
+    }
+
+    public boolean tryAcquire() {
+        return permits.tryAcquire();
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public int getAvailablePermits() {
+        return permits.availablePermits();
+    }
+
+    public int getMaxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+}
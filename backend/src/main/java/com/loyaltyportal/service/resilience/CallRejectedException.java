@@ -0,0 +1,42 @@
+package com.loyaltyportal.service.resilience;
+
+/**
+ * Raised instead of calling the provider when a resilience guard refuses the call.
+ * It is never retried: the whole point is to fail fast while the provider recovers.
+ */
+public class CallRejectedException extends RuntimeException {
+
+    public enum Reason {
+        CIRCUIT_OPEN("circuit_open"),
+        BULKHEAD_FULL("bulkhead_full"),
+        CONCURRENCY_LIMIT("concurrency_limit"),
+        RATE_LIMITED("rate_limited");
+
+        private final String tag;
+
+        Reason(String tag) {
+            this.tag = tag;
+        }
+
+        public String getTag() {
+            return tag;
+        }
+    }
+
+    private final String endpoint;
+    private final Reason reason;
+
+    public CallRejectedException(String endpoint, Reason reason) {
+        super("Call to provider endpoint '" + endpoint + "' rejected: " + reason.getTag());
+        this.endpoint = endpoint;
+        this.reason = reason;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+}
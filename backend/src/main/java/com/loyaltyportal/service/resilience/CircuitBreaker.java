@@ -0,0 +1,161 @@
+package com.loyaltyportal.service.resilience;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.Duration;
+
+/**
+ * Failure-rate circuit breaker over a count-based sliding window.
+ *
+ * CLOSED lets every call through and records outcomes. Once at least
+ * {@code minimumCalls} outcomes are recorded and the failure rate reaches the
+ * threshold the breaker OPENs and rejects calls for {@code openDuration}. It then
+ * moves to HALF_OPEN and admits a small number of probe calls: if they all succeed
+ * the breaker closes again, any failure re-opens it.
+ */
+public class CircuitBreaker {
+
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public enum State {
+        CLOSED(0), OPEN(1), HALF_OPEN(2);
+
+        private final int code;
+
+        State(int code) {
+            this.code = code;
+        }
+
+        public int getCode() {
+            return code;
+        }
+    }
+
+    private final String name;
+    private final float failureRateThreshold;
+    private final int minimumCalls;
+    private final Duration openDuration;
+    private final int halfOpenPermittedCalls;
+    private final Clock clock;
+
+    // Ring buffer of recent outcomes, true = failure
+    private final boolean[] window;
+    private int windowIndex;
+    private int recordedCalls;
+    private int failedCalls;
+
+    private State state = State.CLOSED;
+    private long openedAtMillis;
+    private int halfOpenInFlight;
+    private int halfOpenSucceeded;
+
+    public CircuitBreaker(String name, float failureRateThreshold, int slidingWindowSize, int minimumCalls,
+                          Duration openDuration, int halfOpenPermittedCalls, Clock clock) {
+        this.name = name;
+        this.failureRateThreshold = failureRateThreshold;
+        this.window = new boolean[slidingWindowSize];
+        this.minimumCalls = Math.min(minimumCalls, slidingWindowSize);
+        this.openDuration = openDuration;
+        this.halfOpenPermittedCalls = halfOpenPermittedCalls;
+        this.clock = clock;
+    }
+
+    /**
+     * Ask for permission to make a call. Every permitted call must be followed by
+     * exactly one {@link #onSuccess()}, {@link #onFailure()} or {@link #onIgnored()}.
+     */
+    public synchronized boolean tryAcquirePermission() {
+        if (state == State.OPEN) {
+            if (clock.millis() - openedAtMillis < openDuration.toMillis()) {
+                return false;
+            }
+            transitionTo(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenInFlight + halfOpenSucceeded >= halfOpenPermittedCalls) {
+                return false;
+            }
+            halfOpenInFlight++;
+        }
+        return true;
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            halfOpenInFlight = Math.max(0, halfOpenInFlight - 1);
+            halfOpenSucceeded++;
+            if (halfOpenSucceeded >= halfOpenPermittedCalls) {
+                transitionTo(State.CLOSED);
+            }
+            return;
+        }
+        record(false);
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            transitionTo(State.OPEN);
+            return;
+        }
+        record(true);
+        if (state == State.CLOSED && recordedCalls >= minimumCalls && getFailureRate() >= failureRateThreshold) {
+            transitionTo(State.OPEN);
+        }
+    }
+
+    /**
+     * Release a permission without counting the outcome, e.g. for a business-level
+     * client error that says nothing about provider health.
+     */
+    public synchronized void onIgnored() {
+        if (state == State.HALF_OPEN) {
+            halfOpenInFlight = Math.max(0, halfOpenInFlight - 1);
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized float getFailureRate() {
+        return recordedCalls == 0 ? 0f : (float) failedCalls * 100 / recordedCalls;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    private void record(boolean failure) {
+        if (recordedCalls == window.length) {
+            if (window[windowIndex]) {
+                failedCalls--;
+            }
+        } else {
+            recordedCalls++;
+        }
+        window[windowIndex] = failure;
+        if (failure) {
+            failedCalls++;
+        }
+        windowIndex = (windowIndex + 1) % window.length;
+    }
+
+    private void transitionTo(State newState) {
+        logger.warn("Circuit breaker '{}' transitioning from {} to {} (failure rate: {}%)",
+                name, state, newState, getFailureRate());
+
+        state = newState;
+        halfOpenInFlight = 0;
+        halfOpenSucceeded = 0;
+
+        if (newState == State.OPEN) {
+            openedAtMillis = clock.millis();
+        } else if (newState == State.CLOSED) {
+            windowIndex = 0;
+            recordedCalls = 0;
+            failedCalls = 0;
+        }
+    }
+}
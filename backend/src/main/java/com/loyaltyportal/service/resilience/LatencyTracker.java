@@ -0,0 +1,59 @@
+package com.loyaltyportal.service.resilience;
+
+import java.util.Arrays;
+
+/**
+ * Rolling window of recent call latencies with a cached percentile.
+ *
+ * Samples go into a fixed ring buffer; the percentile is recomputed from a sorted
+ * copy only every {@code recomputeEvery} samples, so reading it on the hot path is
+ * a field read rather than a sort.
+ */
+public class LatencyTracker {
+
+    private final long[] samples;
+    private final double percentile;
+    private final int recomputeEvery;
+
+    private int index;
+    private int count;
+    private int sinceRecompute;
+    private volatile long cachedPercentileNanos = -1;
+
+    public LatencyTracker(int windowSize, double percentile, int recomputeEvery) {
+        this.samples = new long[windowSize];
+        this.percentile = percentile;
+        this.recomputeEvery = recomputeEvery;
+    }
+
+    public synchronized void record(long nanos) {
+        samples[index] = nanos;
+        index = (index + 1) % samples.length;
+        if (count < samples.length) {
+            count++;
+        }
+        if (++sinceRecompute >= recomputeEvery) {
+            sinceRecompute = 0;
+            recompute();
+        }
+    }
+
+    /**
+     * Configured percentile of the current window in nanoseconds, or -1 until the
+     * first {@code recomputeEvery} samples have been seen.
+     */
+    public long getPercentileNanos() {
+        return cachedPercentileNanos;
+    }
+
+    public synchronized int getSampleCount() {
+        return count;
+    }
+
+    private void recompute() {
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100.0 * count) - 1;
+        cachedPercentileNanos = sorted[Math.max(0, Math.min(count - 1, rank))];
+    }
+}
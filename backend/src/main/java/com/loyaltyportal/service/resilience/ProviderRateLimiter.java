@@ -0,0 +1,285 @@
+package com.loyaltyportal.service.resilience;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client-side rate limiting toward the loyalty provider.
+ *
+ * Every endpoint has a token bucket sized from the contracted requests-per-second,
+ * divided by the number of application instances sharing the contract, so the
+ * fleet as a whole stays under the cap without coordinating. An optional per-account
+ * bucket stops one busy account from using up the endpoint's whole allowance.
+ *
+ * Calls that find no token wait in a queue rather than failing: state-changing calls
+ * ({@link Priority#HIGH}) are served before balance checks ({@link Priority#LOW}).
+ * A call that cannot get a token within {@code max-wait}, or finds the queue full,
+ * fails with {@link CallRejectedException}. A 429 from the provider empties the
+ * endpoint's bucket for the Retry-After period.
+ */
+@Component
+public class ProviderRateLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProviderRateLimiter.class);
+
+    private static final int MAX_TRACKED_ACCOUNTS = 10_000;
+
+    public enum Priority {
+        HIGH,
+        LOW
+    }
+
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final double endpointRate;
+    private final double endpointBurst;
+    private final double accountRate;
+    private final Duration maxWait;
+    private final int maxQueueSize;
+
+    private final Map<String, EndpointLimiter> endpoints = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Autowired
+    public ProviderRateLimiter(
+            MeterRegistry meterRegistry,
+            @Value("${loyalty.api.rate-limit.enabled:false}") boolean enabled,
+            @Value("${loyalty.api.rate-limit.requests-per-second:50}") double requestsPerSecond,
+            @Value("${loyalty.api.rate-limit.burst:20}") double burst,
+            @Value("${loyalty.api.rate-limit.instances:1}") int instances,
+            @Value("${loyalty.api.rate-limit.per-account-requests-per-second:0}") double accountRequestsPerSecond,
+            @Value("${loyalty.api.rate-limit.max-wait:2s}") Duration maxWait,
+            @Value("${loyalty.api.rate-limit.max-queue-size:500}") int maxQueueSize) {
+        int share = Math.max(1, instances);
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.endpointRate = requestsPerSecond / share;
+        this.endpointBurst = burst / share;
+        this.accountRate = accountRequestsPerSecond / share;
+        this.maxWait = maxWait;
+        this.maxQueueSize = maxQueueSize;
+    }
+
+    /**
+     * Pass-through instance for clients that never reach a real provider (mocks).
+     */
+    public static ProviderRateLimiter disabled() {
+        return new ProviderRateLimiter(new SimpleMeterRegistry(), false, 1, 1, 1, 0, Duration.ZERO, 0);
+    }
+
+    /**
+     * Delay the call until both the endpoint and (if configured) the account have a
+     * token. Evaluated on every subscription, so retries are limited as well.
+     */
+    public <T> Mono<T> throttle(String endpoint, String accountId, Priority priority, Mono<T> call) {
+        if (!enabled) {
+            return call;
+        }
+
+        EndpointLimiter limiter = endpoints.computeIfAbsent(endpoint, EndpointLimiter::new);
+        return Mono.defer(() -> limiter.acquire(accountId, priority)).then(call);
+    }
+
+    /**
+     * The provider answered 429: stop sending to this endpoint for a while.
+     */
+    public void onThrottled(String endpoint, Duration retryAfter) {
+        if (!enabled) {
+            return;
+        }
+        EndpointLimiter limiter = endpoints.computeIfAbsent(endpoint, EndpointLimiter::new);
+        limiter.pause(retryAfter != null ? retryAfter : Duration.ofSeconds(1));
+    }
+
+    public int getQueueSize(String endpoint) {
+        EndpointLimiter limiter = endpoints.get(endpoint);
+        return limiter != null ? limiter.queueSize() : 0;
+    }
+
+    private static class Waiter {
+        final String accountId;
+        final Priority priority;
+        final long sequence;
+        final long enqueuedNanos;
+        final Sinks.Empty<Void> sink = Sinks.empty();
+
+        Waiter(String accountId, Priority priority, long sequence, long enqueuedNanos) {
+            this.accountId = accountId;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+
+    private class EndpointLimiter {
+        private final String endpoint;
+        private final RateBucket bucket;
+        private final Map<String, RateBucket> accountBuckets = new LinkedHashMap<String, RateBucket>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, RateBucket> eldest) {
+                return size() > MAX_TRACKED_ACCOUNTS;
+            }
+        };
+        private final TreeSet<Waiter> queue = new TreeSet<>(Comparator
+                .comparing((Waiter waiter) -> waiter.priority)
+                .thenComparingLong(waiter -> waiter.sequence));
+        private final Map<Priority, Timer> waitTimers = new ConcurrentHashMap<>();
+        private final Counter rejected;
+        private final Counter throttled;
+        private Disposable drainTimer;
+
+        EndpointLimiter(String endpoint) {
+            this.endpoint = endpoint;
+            this.bucket = new RateBucket(endpointRate, endpointBurst, System.nanoTime());
+            this.rejected = Counter.builder("loyalty.provider.calls.rejected")
+                    .tag("endpoint", endpoint)
+                    .tag("reason", CallRejectedException.Reason.RATE_LIMITED.getTag())
+                    .register(meterRegistry);
+            this.throttled = Counter.builder("loyalty.provider.ratelimit.throttled")
+                    .description("429 responses received from the provider")
+                    .tag("endpoint", endpoint)
+                    .register(meterRegistry);
+            Gauge.builder("loyalty.provider.ratelimit.queue.size", this, EndpointLimiter::queueSize)
+                    .description("Calls waiting for a rate limit token")
+                    .tag("endpoint", endpoint)
+                    .register(meterRegistry);
+        }
+
+        Mono<Void> acquire(String accountId, Priority priority) {
+            long now = System.nanoTime();
+            Waiter waiter;
+            synchronized (this) {
+                if (queue.isEmpty() && tryTake(accountId, now)) {
+                    waitTimer(priority).record(0, TimeUnit.NANOSECONDS);
+                    return Mono.empty();
+                }
+                if (queue.size() >= maxQueueSize) {
+                    rejected.increment();
+                    return Mono.error(new CallRejectedException(endpoint, CallRejectedException.Reason.RATE_LIMITED));
+                }
+                waiter = new Waiter(accountId, priority, sequence.incrementAndGet(), now);
+                queue.add(waiter);
+                scheduleDrain(now);
+            }
+
+            return waiter.sink.asMono()
+                    .timeout(maxWait, Mono.defer(() -> giveUp(waiter)))
+                    .doOnCancel(() -> {
+                        synchronized (this) {
+                            queue.remove(waiter);
+                        }
+                    });
+        }
+
+        private Mono<Void> giveUp(Waiter waiter) {
+            boolean removed;
+            synchronized (this) {
+                removed = queue.remove(waiter);
+            }
+            if (!removed) {
+                // Granted just as the wait ran out; the token is already taken
+                return Mono.empty();
+            }
+            rejected.increment();
+            return Mono.error(new CallRejectedException(endpoint, CallRejectedException.Reason.RATE_LIMITED));
+        }
+
+        synchronized void pause(Duration pause) {
+            throttled.increment();
+            bucket.pause(System.nanoTime(), pause.toNanos());
+            logger.warn("Provider throttled endpoint '{}', pausing calls for {} ms", endpoint, pause.toMillis());
+        }
+
+        synchronized int queueSize() {
+            return queue.size();
+        }
+
+        /** Must be called while holding the lock */
+        private boolean tryTake(String accountId, long now) {
+            if (!bucket.hasToken(now)) {
+                return false;
+            }
+            RateBucket account = accountBucket(accountId, now);
+            if (account != null && !account.hasToken(now)) {
+                return false;
+            }
+            bucket.take();
+            if (account != null) {
+                account.take();
+            }
+            return true;
+        }
+
+        private RateBucket accountBucket(String accountId, long now) {
+            if (accountRate <= 0 || accountId == null) {
+                return null;
+            }
+            return accountBuckets.computeIfAbsent(accountId,
+                    id -> new RateBucket(accountRate, Math.max(1.0, accountRate), now));
+        }
+
+        private void drain() {
+            long now = System.nanoTime();
+            synchronized (this) {
+                drainTimer = null;
+                // Highest priority first, but a waiter held back by its account limit
+                // does not block waiters for other accounts
+                Iterator<Waiter> waiters = queue.iterator();
+                while (waiters.hasNext() && bucket.hasToken(now)) {
+                    Waiter waiter = waiters.next();
+                    if (tryTake(waiter.accountId, now)) {
+                        waiters.remove();
+                        waitTimer(waiter.priority).record(now - waiter.enqueuedNanos, TimeUnit.NANOSECONDS);
+                        waiter.sink.tryEmitEmpty();
+                    }
+                }
+                if (!queue.isEmpty()) {
+                    scheduleDrain(now);
+                }
+            }
+        }
+
+        /** Must be called while holding the lock */
+        private void scheduleDrain(long now) {
+            if (drainTimer != null) {
+                return;
+            }
+            long delay = bucket.nanosUntilToken(now);
+            if (delay == 0) {
+                // Endpoint has tokens, so waiters are held back by account limits
+                delay = (long) (1_000_000_000L / Math.max(accountRate, endpointRate));
+            }
+            drainTimer = Schedulers.parallel().schedule(this::drain, delay, TimeUnit.NANOSECONDS);
+        }
+
+        private Timer waitTimer(Priority priority) {
+            return waitTimers.computeIfAbsent(priority, p -> Timer.builder("loyalty.provider.ratelimit.queue.wait")
+                    .description("Time calls spent waiting for a rate limit token")
+                    .tag("endpoint", endpoint)
+                    .tag("priority", p.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.loyaltyportal.service.resilience;
+
+import com.loyaltyportal.service.LoyaltyApiClient;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Resilience layer in front of every outbound provider call (loyalty API and
+ * virtual fulfillment API).
+ *
+ * Each endpoint gets its own circuit breaker, bulkhead and adaptive concurrency
+ * limiter, so a degraded {@code /debit} cannot starve {@code /balance}. Rejected
+ * calls fail immediately with {@link CallRejectedException} instead of queueing up
+ * behind provider timeouts.
+ */
+@Component
+public class ProviderResilience {
+
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final float failureRateThreshold;
+    private final int slidingWindowSize;
+    private final int minimumCalls;
+    private final Duration openDuration;
+    private final int halfOpenPermittedCalls;
+    private final int bulkheadMaxConcurrentCalls;
+    private final int limiterInitialLimit;
+    private final int limiterMinLimit;
+    private final int limiterMaxLimit;
+    private final double limiterBackoffRatio;
+    private final double limiterLatencyTolerance;
+    private final Clock clock;
+
+    private final Map<String, EndpointGuard> guards = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ProviderResilience(
+            MeterRegistry meterRegistry,
+            @Value("${loyalty.api.resilience.enabled:true}") boolean enabled,
+            @Value("${loyalty.api.resilience.circuit-breaker.failure-rate-threshold:50}") float failureRateThreshold,
+            @Value("${loyalty.api.resilience.circuit-breaker.sliding-window-size:50}") int slidingWindowSize,
+            @Value("${loyalty.api.resilience.circuit-breaker.minimum-calls:20}") int minimumCalls,
+            @Value("${loyalty.api.resilience.circuit-breaker.open-duration:30s}") Duration openDuration,
+            @Value("${loyalty.api.resilience.circuit-breaker.half-open-calls:5}") int halfOpenPermittedCalls,
+            @Value("${loyalty.api.resilience.bulkhead.max-concurrent-calls:50}") int bulkheadMaxConcurrentCalls,
+            @Value("${loyalty.api.resilience.limiter.initial-limit:20}") int limiterInitialLimit,
+            @Value("${loyalty.api.resilience.limiter.min-limit:2}") int limiterMinLimit,
+            @Value("${loyalty.api.resilience.limiter.max-limit:200}") int limiterMaxLimit,
+            @Value("${loyalty.api.resilience.limiter.backoff-ratio:0.9}") double limiterBackoffRatio,
+            @Value("${loyalty.api.resilience.limiter.latency-tolerance:2.0}") double limiterLatencyTolerance) {
+        this(meterRegistry, enabled, failureRateThreshold, slidingWindowSize, minimumCalls, openDuration,
+                halfOpenPermittedCalls, bulkheadMaxConcurrentCalls, limiterInitialLimit, limiterMinLimit,
+                limiterMaxLimit, limiterBackoffRatio, limiterLatencyTolerance, Clock.systemUTC());
+    }
+
+    public ProviderResilience(MeterRegistry meterRegistry, boolean enabled, float failureRateThreshold,
+                              int slidingWindowSize, int minimumCalls, Duration openDuration,
+                              int halfOpenPermittedCalls, int bulkheadMaxConcurrentCalls,
+                              int limiterInitialLimit, int limiterMinLimit, int limiterMaxLimit,
+                              double limiterBackoffRatio, double limiterLatencyTolerance, Clock clock) {
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.failureRateThreshold = failureRateThreshold;
+        this.slidingWindowSize = slidingWindowSize;
+        this.minimumCalls = minimumCalls;
+        this.openDuration = openDuration;
+        this.halfOpenPermittedCalls = halfOpenPermittedCalls;
+        this.bulkheadMaxConcurrentCalls = bulkheadMaxConcurrentCalls;
+        this.limiterInitialLimit = limiterInitialLimit;
+        this.limiterMinLimit = limiterMinLimit;
+        this.limiterMaxLimit = limiterMaxLimit;
+        this.limiterBackoffRatio = limiterBackoffRatio;
+        this.limiterLatencyTolerance = limiterLatencyTolerance;
+        this.clock = clock;
+    }
+
+    /**
+     * Pass-through instance for clients that never reach a real provider (mocks).
+     */
+    public static ProviderResilience disabled() {
+        return new ProviderResilience(new SimpleMeterRegistry(), false, 100, 1, 1, Duration.ZERO,
+                1, 1, 1, 1, 1, 1.0, 1.0, Clock.systemUTC());
+    }
+
+    /**
+     * Wrap a provider call. Guards are evaluated on every subscription, so each
+     * retry attempt is admitted, timed and recorded on its own.
+     */
+    public <T> Mono<T> guard(String endpoint, Mono<T> call) {
+        if (!enabled) {
+            return call;
+        }
+
+        EndpointGuard guard = guards.computeIfAbsent(endpoint, this::createGuard);
+
+        return Mono.defer(() -> {
+            CallRejectedException.Reason rejection = guard.tryAcquire();
+            if (rejection != null) {
+                guard.rejected(rejection).increment();
+                return Mono.error(new CallRejectedException(endpoint, rejection));
+            }
+
+            long startNanos = System.nanoTime();
+            AtomicBoolean released = new AtomicBoolean();
+
+            return call
+                    .doOnSuccess(result -> {
+                        if (released.compareAndSet(false, true)) {
+                            guard.onSuccess(System.nanoTime() - startNanos);
+                        }
+                    })
+                    .doOnError(error -> {
+                        if (released.compareAndSet(false, true)) {
+                            guard.onError(error, System.nanoTime() - startNanos);
+                        }
+                    })
+                    .doOnCancel(() -> {
+                        if (released.compareAndSet(false, true)) {
+                            guard.onCancelled();
+                        }
+                    });
+        });
+    }
+
+    public CircuitBreaker.State getCircuitState(String endpoint) {
+        EndpointGuard guard = guards.get(endpoint);
+        return guard != null ? guard.circuitBreaker.getState() : CircuitBreaker.State.CLOSED;
+    }
+
+    public int getConcurrencyLimit(String endpoint) {
+        EndpointGuard guard = guards.get(endpoint);
+        return guard != null ? guard.limiter.getLimit() : limiterInitialLimit;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Whether an error says something about provider health. Client errors
+     * (bad request, insufficient balance) are the caller's problem and must not
+     * trip the breaker or shrink the concurrency limit.
+     */
+    static boolean isProviderFailure(Throwable error) {
+        if (error instanceof TimeoutException || error instanceof WebClientRequestException) {
+            return true;
+        }
+        if (error instanceof WebClientResponseException) {
+            HttpStatus status = ((WebClientResponseException) error).getStatusCode();
+            return status.is5xxServerError() || status == HttpStatus.TOO_MANY_REQUESTS;
+        }
+        if (error instanceof LoyaltyApiClient.LoyaltyApiException) {
+            HttpStatus status = ((LoyaltyApiClient.LoyaltyApiException) error).getStatus();
+            return status == null || status.is5xxServerError() || status == HttpStatus.TOO_MANY_REQUESTS;
+        }
+        return !(error instanceof CallRejectedException);
+    }
+
+    private EndpointGuard createGuard(String endpoint) {
+        EndpointGuard guard = new EndpointGuard(endpoint);
+
+        Gauge.builder("loyalty.provider.circuit.state", guard.circuitBreaker, cb -> cb.getState().getCode())
+                .description("Circuit breaker state (0=closed, 1=open, 2=half-open)")
+                .tag("endpoint", endpoint)
+                .register(meterRegistry);
+        Gauge.builder("loyalty.provider.circuit.failure.rate", guard.circuitBreaker, CircuitBreaker::getFailureRate)
+                .tag("endpoint", endpoint)
+                .register(meterRegistry);
+        Gauge.builder("loyalty.provider.bulkhead.available", guard.bulkhead, Bulkhead::getAvailablePermits)
+                .tag("endpoint", endpoint)
+                .register(meterRegistry);
+        Gauge.builder("loyalty.provider.concurrency.limit", guard.limiter, AdaptiveConcurrencyLimiter::getLimit)
+                .tag("endpoint", endpoint)
+                .register(meterRegistry);
+        Gauge.builder("loyalty.provider.concurrency.inflight", guard.limiter, AdaptiveConcurrencyLimiter::getInFlight)
+                .tag("endpoint", endpoint)
+                .register(meterRegistry);
+
+        return guard;
+    }
+
+    private class EndpointGuard {
+        private final CircuitBreaker circuitBreaker;
+        private final Bulkhead bulkhead;
+        private final AdaptiveConcurrencyLimiter limiter;
+        private final Map<CallRejectedException.Reason, Counter> rejections = new ConcurrentHashMap<>();
+        private final Timer successTimer;
+        private final Timer failureTimer;
+        private final Timer ignoredTimer;
+        private final String endpoint;
+
+        EndpointGuard(String endpoint) {
+            this.endpoint = endpoint;
+            this.circuitBreaker = new CircuitBreaker(endpoint, failureRateThreshold, slidingWindowSize,
+                    minimumCalls, openDuration, halfOpenPermittedCalls, clock);
+            this.bulkhead = new Bulkhead(bulkheadMaxConcurrentCalls);
+            this.limiter = new AdaptiveConcurrencyLimiter(limiterInitialLimit, limiterMinLimit,
+                    limiterMaxLimit, limiterBackoffRatio, limiterLatencyTolerance);
+            this.successTimer = callTimer("success");
+            this.failureTimer = callTimer("failure");
+            this.ignoredTimer = callTimer("client_error");
+        }
+
+        CallRejectedException.Reason tryAcquire() {
+            if (!circuitBreaker.tryAcquirePermission()) {
+                return CallRejectedException.Reason.CIRCUIT_OPEN;
+            }
+            if (!bulkhead.tryAcquire()) {
+                circuitBreaker.onIgnored();
+                return CallRejectedException.Reason.BULKHEAD_FULL;
+            }
+            if (!limiter.tryAcquire()) {
+                bulkhead.release();
+                circuitBreaker.onIgnored();
+                return CallRejectedException.Reason.CONCURRENCY_LIMIT;
+            }
+            return null;
+        }
+
+        void onSuccess(long elapsedNanos) {
+            limiter.onSuccess(elapsedNanos);
+            bulkhead.release();
+            circuitBreaker.onSuccess();
+            successTimer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+        }
+
+        void onError(Throwable error, long elapsedNanos) {
+            if (isProviderFailure(error)) {
+                limiter.onDropped();
+                bulkhead.release();
+                circuitBreaker.onFailure();
+                failureTimer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+            } else {
+                limiter.onIgnored();
+                bulkhead.release();
+                circuitBreaker.onIgnored();
+                ignoredTimer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        void onCancelled() {
+            limiter.onIgnored();
+            bulkhead.release();
+            circuitBreaker.onIgnored();
+        }
+
+        Counter rejected(CallRejectedException.Reason reason) {
+            return rejections.computeIfAbsent(reason, r -> Counter.builder("loyalty.provider.calls.rejected")
+                    .description("Provider calls rejected by the resilience layer")
+                    .tag("endpoint", endpoint)
+                    .tag("reason", r.getTag())
+                    .register(meterRegistry));
+        }
+
+        private Timer callTimer(String outcome) {
+            return Timer.builder("loyalty.provider.calls")
+                    .description("Latency of provider calls admitted by the resilience layer")
+                    .tag("endpoint", endpoint)
+                    .tag("outcome", outcome)
+                    .register(meterRegistry);
+        }
+    }
+}
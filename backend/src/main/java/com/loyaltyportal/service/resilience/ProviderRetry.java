@@ -0,0 +1,169 @@
+package com.loyaltyportal.service.resilience;
+
+import com.loyaltyportal.service.LoyaltyApiClient;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Retry policy for provider calls.
+ *
+ * Backoff is exponential with jitter so retries from many callers do not arrive in
+ * lock-step. All endpoints share one {@link TokenBudget}: each logical call earns a
+ * fraction of a retry (10% by default) and each retry spends a whole one, so during
+ * an outage retries add at most that much load instead of multiplying it.
+ *
+ * Calls that change state (debit, credit) may only be retried after an ambiguous
+ * failure - a timeout or a 5xx, where the provider may already have applied them -
+ * when they carry an idempotency key. Without one only failures that prove the
+ * request was not applied (connection refused, 429, 503) are retried.
+ */
+@Component
+public class ProviderRetry {
+
+    private final MeterRegistry meterRegistry;
+    private final int maxAttempts;
+    private final Duration backoffDelay;
+    private final Duration maxBackoff;
+    private final double jitter;
+    private final TokenBudget budget;
+
+    private final Map<String, EndpointRetries> endpoints = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ProviderRetry(
+            MeterRegistry meterRegistry,
+            @Value("${loyalty.api.retry.max-attempts:3}") int maxAttempts,
+            @Value("${loyalty.api.retry.backoff-delay:1s}") Duration backoffDelay,
+            @Value("${loyalty.api.retry.max-backoff:10s}") Duration maxBackoff,
+            @Value("${loyalty.api.retry.jitter:0.5}") double jitter,
+            @Value("${loyalty.api.retry.budget-ratio:0.1}") double budgetRatio,
+            @Value("${loyalty.api.retry.budget-burst:10}") double budgetBurst) {
+        this.meterRegistry = meterRegistry;
+        this.maxAttempts = maxAttempts;
+        this.backoffDelay = backoffDelay;
+        this.maxBackoff = maxBackoff;
+        this.jitter = jitter;
+        this.budget = new TokenBudget(budgetRatio, budgetBurst);
+
+        Gauge.builder("loyalty.provider.retry.budget.tokens", budget, TokenBudget::getTokens)
+                .description("Retry tokens currently available")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Instance that never retries, for clients that never reach a real provider (mocks).
+     */
+    public static ProviderRetry disabled() {
+        return new ProviderRetry(new SimpleMeterRegistry(), 0, Duration.ZERO, Duration.ZERO, 0, 0, 0);
+    }
+
+    /**
+     * Retry a call that is safe to repeat, either because it only reads or because it
+     * carries an idempotency key the provider deduplicates on.
+     */
+    public <T> Mono<T> idempotent(String endpoint, Mono<T> call) {
+        return withRetry(endpoint, call, true);
+    }
+
+    /**
+     * Retry a state-changing call that has no idempotency key; only failures that
+     * prove the provider never applied it are retried.
+     */
+    public <T> Mono<T> nonIdempotent(String endpoint, Mono<T> call) {
+        return withRetry(endpoint, call, false);
+    }
+
+    private <T> Mono<T> withRetry(String endpoint, Mono<T> call, boolean idempotent) {
+        if (maxAttempts <= 1) {
+            return call;
+        }
+
+        EndpointRetries retries = endpoints.computeIfAbsent(endpoint, EndpointRetries::new);
+        // max-attempts counts the first call; Retry.backoff counts only the retries
+        Retry spec = Retry.backoff(maxAttempts - 1, backoffDelay)
+                .maxBackoff(maxBackoff)
+                .jitter(jitter)
+                .filter(error -> isRetryable(error, idempotent) && retries.tryAcquire())
+                .doBeforeRetry(signal -> retries.retried.increment())
+                .onRetryExhaustedThrow((retrySpec, signal) -> signal.failure());
+
+        return Mono.defer(() -> {
+            budget.deposit();
+            return call.retryWhen(spec);
+        });
+    }
+
+    /**
+     * Whether a failure may be retried at all, before the budget is consulted.
+     */
+    public static boolean isRetryable(Throwable error, boolean idempotent) {
+        if (error instanceof CallRejectedException) {
+            return false;
+        }
+        if (isNotApplied(error)) {
+            return true;
+        }
+        return idempotent && ProviderResilience.isProviderFailure(error);
+    }
+
+    /**
+     * True when the provider certainly did not process the request.
+     */
+    private static boolean isNotApplied(Throwable error) {
+        if (error instanceof WebClientRequestException) {
+            Throwable cause = error.getCause();
+            return cause instanceof ConnectException || cause instanceof UnknownHostException;
+        }
+        HttpStatus status = null;
+        if (error instanceof WebClientResponseException) {
+            status = ((WebClientResponseException) error).getStatusCode();
+        } else if (error instanceof LoyaltyApiClient.LoyaltyApiException) {
+            status = ((LoyaltyApiClient.LoyaltyApiException) error).getStatus();
+        }
+        return status == HttpStatus.TOO_MANY_REQUESTS || status == HttpStatus.SERVICE_UNAVAILABLE;
+    }
+
+    public double getBudgetTokens() {
+        return budget.getTokens();
+    }
+
+    private class EndpointRetries {
+        private final Counter retried;
+        private final Counter budgetExhausted;
+
+        EndpointRetries(String endpoint) {
+            this.retried = Counter.builder("loyalty.provider.retries")
+                    .description("Provider calls retried")
+                    .tag("endpoint", endpoint)
+                    .register(meterRegistry);
+            this.budgetExhausted = Counter.builder("loyalty.provider.retry.budget.exhausted")
+                    .description("Retries skipped because the retry budget was empty")
+                    .tag("endpoint", endpoint)
+                    .register(meterRegistry);
+        }
+
+        boolean tryAcquire() {
+            if (budget.tryWithdraw()) {
+                return true;
+            }
+            budgetExhausted.increment();
+            return false;
+        }
+    }
+}
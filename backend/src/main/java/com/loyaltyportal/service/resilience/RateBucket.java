@@ -0,0 +1,61 @@
+package com.loyaltyportal.service.resilience;
+
+/**
+ * Token bucket refilled continuously at {@code ratePerSecond}, holding at most
+ * {@code burst} tokens. Not thread-safe; callers synchronise around it.
+ */
+class RateBucket {
+
+    private final double ratePerSecond;
+    private final double burst;
+    private double tokens;
+    private long lastRefillNanos;
+    private long pausedUntilNanos;
+
+    RateBucket(double ratePerSecond, double burst, long nowNanos) {
+        this.ratePerSecond = ratePerSecond;
+        this.burst = Math.max(1.0, burst);
+        this.tokens = this.burst;
+        this.lastRefillNanos = nowNanos;
+    }
+
+    boolean hasToken(long nowNanos) {
+        refill(nowNanos);
+        return tokens >= 1.0;
+    }
+
+    void take() {
+        tokens -= 1.0;
+    }
+
+    /**
+     * Nanoseconds until the next token is available, 0 if one is available now
+     */
+    long nanosUntilToken(long nowNanos) {
+        refill(nowNanos);
+        if (nowNanos < pausedUntilNanos) {
+            return pausedUntilNanos - nowNanos;
+        }
+        if (tokens >= 1.0) {
+            return 0;
+        }
+        return (long) Math.ceil((1.0 - tokens) / ratePerSecond * 1_000_000_000L);
+    }
+
+    /**
+     * Empty the bucket and stop refilling for a while, e.g. after the provider answered 429
+     */
+    void pause(long nowNanos, long pauseNanos) {
+        tokens = 0;
+        pausedUntilNanos = Math.max(pausedUntilNanos, nowNanos + pauseNanos);
+        lastRefillNanos = pausedUntilNanos;
+    }
+
+    private void refill(long nowNanos) {
+        if (nowNanos <= lastRefillNanos) {
+            return;
+        }
+        tokens = Math.min(burst, tokens + (nowNanos - lastRefillNanos) * ratePerSecond / 1_000_000_000L);
+        lastRefillNanos = nowNanos;
+    }
+}
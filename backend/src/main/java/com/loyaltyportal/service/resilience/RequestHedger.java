@@ -0,0 +1,181 @@
+package com.loyaltyportal.service.resilience;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Request hedging for idempotent provider reads.
+ *
+ * If the primary request has not answered within the endpoint's observed latency
+ * percentile (clamped to a configured range), a second identical request is sent
+ * and whichever answers first wins; the other is cancelled. A primary that fails
+ * while its hedge is in flight waits for the hedge instead, so a fast failure such
+ * as a connection reset does not beat a hedge that would succeed; a primary that
+ * fails before the hedge fires fails the call. Hedges draw from one
+ * global {@link TokenBudget} so a provider that is slow for everyone does not get
+ * its load doubled. Only use this for calls that are safe to send twice.
+ */
+@Component
+public class RequestHedger {
+
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final double percentile;
+    private final Duration minDelay;
+    private final Duration maxDelay;
+    private final TokenBudget budget;
+
+    private final Map<String, EndpointHedging> endpoints = new ConcurrentHashMap<>();
+
+    @Autowired
+    public RequestHedger(
+            MeterRegistry meterRegistry,
+            @Value("${loyalty.api.hedging.enabled:false}") boolean enabled,
+            @Value("${loyalty.api.hedging.percentile:95}") double percentile,
+            @Value("${loyalty.api.hedging.min-delay:20ms}") Duration minDelay,
+            @Value("${loyalty.api.hedging.max-delay:2s}") Duration maxDelay,
+            @Value("${loyalty.api.hedging.budget-ratio:0.05}") double budgetRatio,
+            @Value("${loyalty.api.hedging.budget-burst:10}") double budgetBurst) {
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.percentile = percentile;
+        this.minDelay = minDelay;
+        this.maxDelay = maxDelay;
+        this.budget = new TokenBudget(budgetRatio, budgetBurst);
+
+        Gauge.builder("loyalty.provider.hedge.budget.tokens", budget, TokenBudget::getTokens)
+                .description("Hedge tokens currently available")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Pass-through instance for clients that never reach a real provider (mocks).
+     */
+    public static RequestHedger disabled() {
+        return new RequestHedger(new SimpleMeterRegistry(), false, 95, Duration.ZERO, Duration.ZERO, 0, 0);
+    }
+
+    /**
+     * Run an idempotent call, hedging it if it is slower than usual.
+     *
+     * @param call builds a fresh request each time it is invoked
+     */
+    public <T> Mono<T> hedge(String endpoint, Supplier<Mono<T>> call) {
+        if (!enabled) {
+            return Mono.defer(call);
+        }
+
+        EndpointHedging hedging = endpoints.computeIfAbsent(endpoint, EndpointHedging::new);
+
+        return Mono.defer(() -> {
+            budget.deposit();
+            hedging.requests.increment();
+
+            AtomicBoolean hedgeFired = new AtomicBoolean();
+            Sinks.One<Attempt<T>> hedgeOutcome = Sinks.one();
+
+            Mono<Attempt<T>> primary = timed(hedging, call, false)
+                    .onErrorResume(error -> {
+                        if (!hedgeFired.get()) {
+                            return Mono.error(error);
+                        }
+                        return hedgeOutcome.asMono().onErrorResume(hedgeError -> {
+                            error.addSuppressed(hedgeError);
+                            return Mono.error(error);
+                        });
+                    });
+            Mono<Attempt<T>> hedged = Mono.delay(hedging.hedgeDelay())
+                    .flatMap(tick -> {
+                        if (!budget.tryWithdraw()) {
+                            hedging.budgetExhausted.increment();
+                            return Mono.<Attempt<T>>never();
+                        }
+                        hedging.fired.increment();
+                        hedgeFired.set(true);
+                        // A failed hedge must not win the race; a failed primary picks its outcome up
+                        return timed(hedging, call, true)
+                                .doOnNext(hedgeOutcome::tryEmitValue)
+                                .doOnError(hedgeOutcome::tryEmitError)
+                                .onErrorResume(error -> Mono.never());
+                    });
+
+            return Mono.firstWithSignal(primary, hedged)
+                    .doOnNext(attempt -> {
+                        if (attempt.hedged) {
+                            hedging.won.increment();
+                        }
+                    })
+                    .map(attempt -> attempt.value);
+        });
+    }
+
+    public Duration getHedgeDelay(String endpoint) {
+        EndpointHedging hedging = endpoints.get(endpoint);
+        return hedging != null ? hedging.hedgeDelay() : maxDelay;
+    }
+
+    private <T> Mono<Attempt<T>> timed(EndpointHedging hedging, Supplier<Mono<T>> call, boolean hedged) {
+        return Mono.defer(() -> {
+            long startNanos = System.nanoTime();
+            return call.get()
+                    .doOnNext(value -> hedging.latency.record(System.nanoTime() - startNanos))
+                    .map(value -> new Attempt<>(value, hedged));
+        });
+    }
+
+    private static class Attempt<T> {
+        final T value;
+        final boolean hedged;
+
+        Attempt(T value, boolean hedged) {
+            this.value = value;
+            this.hedged = hedged;
+        }
+    }
+
+    private class EndpointHedging {
+        private final LatencyTracker latency = new LatencyTracker(1024, percentile, 64);
+        private final Counter requests;
+        private final Counter fired;
+        private final Counter won;
+        private final Counter budgetExhausted;
+
+        EndpointHedging(String endpoint) {
+            this.requests = counter("loyalty.provider.hedge.requests", endpoint);
+            this.fired = counter("loyalty.provider.hedge.fired", endpoint);
+            this.won = counter("loyalty.provider.hedge.won", endpoint);
+            this.budgetExhausted = counter("loyalty.provider.hedge.budget.exhausted", endpoint);
+
+            Gauge.builder("loyalty.provider.hedge.delay", this, h -> h.hedgeDelay().toMillis())
+                    .description("Current hedge delay in milliseconds")
+                    .tag("endpoint", endpoint)
+                    .register(meterRegistry);
+        }
+
+        Duration hedgeDelay() {
+            long nanos = latency.getPercentileNanos();
+            if (nanos < 0) {
+                return maxDelay;
+            }
+            long clamped = Math.max(minDelay.toNanos(), Math.min(maxDelay.toNanos(), nanos));
+            return Duration.ofNanos(clamped);
+        }
+
+        private Counter counter(String name, String endpoint) {
+            return Counter.builder(name).tag("endpoint", endpoint).register(meterRegistry);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.loyaltyportal.service.resilience;
+
+/**
+ * Token bucket that caps extra requests (hedges, retries) at a fraction of normal
+ * traffic. Every primary request deposits {@code ratio} of a token (capped at
+ * {@code maxTokens}) and every extra request spends a whole one, so extras can never
+ * exceed that fraction plus a small burst, even when the provider is failing or slow
+ * across the board.
+ */
+public class TokenBudget {
+
+    private final double ratio;
+    private final double maxTokens;
+    private double tokens;
+
+    public TokenBudget(double ratio, double maxTokens) {
+        this.ratio = ratio;
+        this.maxTokens = maxTokens;
+        this.tokens = maxTokens;
+    }
+
+    public synchronized void deposit() {
+        tokens = Math.min(maxTokens, tokens + ratio);
+    }
+
+    public synchronized boolean tryWithdraw() {
+        if (tokens < 1.0) {
+            return false;
+        }
+        tokens -= 1.0;
+        return true;
+    }
+
+    public synchronized double getTokens() {
+        return tokens;
+    }
+}
@@ -0,0 +1,94 @@
+package com.loyaltyportal.benchmark;
+
+import com.loyaltyportal.service.notification.EmailTemplates;
+import com.loyaltyportal.service.notification.ItemEmailView;
+import com.loyaltyportal.service.notification.OrderEmailView;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Render throughput of the notification email templates, against building the same
+ * email by hand. Run {@link #main} from the test classpath; the GC profiler reports
+ * bytes allocated per email as {@code gc.alloc.rate.norm}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmailTemplateBenchmark {
+
+    private EmailTemplates templates;
+    private ItemEmailView item;
+    private OrderEmailView order;
+
+    @Setup
+    public void setUp() {
+        templates = new EmailTemplates();
+        item = new ItemEmailView("Account Manager", "manager@example.com", "ORD-20240301-0001",
+                "1 Main Street\nSpringfield", "Branded Travel Mug", "MUG-001", 2, "1Z999AA10123456784",
+                LocalDateTime.of(2024, 3, 1, 9, 0), null);
+        order = new OrderEmailView("Account Manager", "manager@example.com", "ORD-20240301-0001",
+                "Example Corp", 4500, 3, LocalDateTime.of(2024, 3, 1, 9, 0), null,
+                "1 Main Street\nSpringfield");
+    }
+
+    @Benchmark
+    public String shippingTemplate() {
+        return templates.shipping(item);
+    }
+
+    @Benchmark
+    public String shippingHandBuilt() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Dear ").append(item.getRecipientName()).append(",\n\n");
+        sb.append("Your item has been shipped:\n\n");
+        sb.append("Product: ").append(item.getProductName()).append("\n");
+        sb.append("SKU: ").append(item.getSku()).append("\n");
+        sb.append("Quantity: ").append(item.getQuantity()).append("\n");
+        sb.append("Order: ").append(item.getOrderNumber()).append("\n");
+        sb.append("Tracking Number: ").append(item.getTrackingNumber()).append("\n\n");
+        if (item.getShippingAddress() != null) {
+            sb.append("Shipping Address:\n").append(item.getShippingAddress()).append("\n\n");
+        }
+        sb.append("You can track your shipment using the tracking number provided.\n\n");
+        sb.append("Thank you for your business!\n\n");
+        sb.append("Loyalty Redemption Portal Team");
+        return sb.toString();
+    }
+
+    @Benchmark
+    public String orderConfirmationTemplate() {
+        return templates.orderConfirmation(order);
+    }
+
+    @Benchmark
+    public String shippingDigestLine() {
+        return templates.digestLine("SHIPPING", item);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(EmailTemplateBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,137 @@
+package com.loyaltyportal.benchmark;
+
+import com.loyaltyportal.entity.TimeOrderedUuidGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Insert throughput into a large table keyed by random (v4) against time-ordered (v7)
+ * UUIDs. The table has a primary key and a foreign-key style index on a second UUID
+ * column, is preloaded with {@code preloadRows} rows using the same generator, and then
+ * takes committed batches of {@value #BATCH} rows.
+ *
+ * By default it runs against a file-backed H2 database with a small cache, so the
+ * indexes outgrow memory as they would in production. Set {@code -Dbenchmark.jdbc.url}
+ * (with {@code benchmark.jdbc.user} and {@code benchmark.jdbc.password}) to run it
+ * against PostgreSQL instead. Run {@link #main} from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class UuidInsertBenchmark {
+
+    private static final int BATCH = 1000;
+
+    @Param({"v4", "v7"})
+    public String generator;
+
+    @Param({"2000000"})
+    public int preloadRows;
+
+    private Path directory;
+    private Connection connection;
+    private PreparedStatement insert;
+    private Supplier<UUID> ids;
+    private Timestamp createdAt;
+
+    @Setup
+    public void setUp() throws Exception {
+        ids = "v7".equals(generator) ? TimeOrderedUuidGenerator::next : UUID::randomUUID;
+        connection = connect();
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS uuid_insert_benchmark");
+            statement.execute("CREATE TABLE uuid_insert_benchmark (id uuid PRIMARY KEY, parent_id uuid NOT NULL, "
+                    + "created_at timestamp NOT NULL)");
+            statement.execute("CREATE INDEX idx_uuid_insert_benchmark_parent ON uuid_insert_benchmark (parent_id)");
+        }
+        connection.commit();
+
+        createdAt = new Timestamp(System.currentTimeMillis());
+        insert = connection.prepareStatement(
+                "INSERT INTO uuid_insert_benchmark (id, parent_id, created_at) VALUES (?, ?, ?)");
+        for (int loaded = 0; loaded < preloadRows; loaded += BATCH) {
+            insertBatch();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE uuid_insert_benchmark");
+        }
+        connection.commit();
+        connection.close();
+        if (directory != null) {
+            try (var files = Files.walk(directory)) {
+                files.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void insertRows() throws SQLException {
+        insertBatch();
+    }
+
+    private void insertBatch() throws SQLException {
+        for (int i = 0; i < BATCH; i++) {
+            insert.setObject(1, ids.get());
+            insert.setObject(2, ids.get());
+            insert.setTimestamp(3, createdAt);
+            insert.addBatch();
+        }
+        insert.executeBatch();
+        connection.commit();
+    }
+
+    private Connection connect() throws Exception {
+        String url = System.getProperty("benchmark.jdbc.url");
+        if (url != null) {
+            return DriverManager.getConnection(url, System.getProperty("benchmark.jdbc.user"),
+                    System.getProperty("benchmark.jdbc.password"));
+        }
+        directory = Files.createTempDirectory("uuid-insert-benchmark");
+        // 16 MB of cache, far less than the preloaded indexes
+        return DriverManager.getConnection("jdbc:h2:file:" + directory.resolve("db") + ";CACHE_SIZE=16384",
+                "sa", "");
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(UuidInsertBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
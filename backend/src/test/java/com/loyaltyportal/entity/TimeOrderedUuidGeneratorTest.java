@@ -0,0 +1,63 @@
+package com.loyaltyportal.entity;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TimeOrderedUuidGeneratorTest {
+
+    private static final long MILLIS = 1709283600000L;
+
+    private final AtomicLong clock = new AtomicLong(MILLIS);
+    private final TimeOrderedUuidGenerator.Sequence sequence =
+            new TimeOrderedUuidGenerator.Sequence(clock::get, new Random(42));
+
+    @Test
+    void uuidsAreVersion7WithTheTimestampInFront() {
+        UUID uuid = sequence.next();
+
+        assertThat(uuid.version()).isEqualTo(7);
+        assertThat(uuid.variant()).isEqualTo(2);
+        assertThat(uuid.getMostSignificantBits() >>> 16).isEqualTo(MILLIS);
+    }
+
+    @Test
+    void uuidsIncreaseWithinAMillisecondAndWhenTheClockStepsBack() {
+        UUID previous = sequence.next();
+        for (int i = 0; i < 10000; i++) {
+            if (i == 5000) {
+                clock.set(MILLIS - 1000);
+            }
+            UUID next = sequence.next();
+            // String order is byte order, which is how the database compares uuid values
+            assertThat(next.toString()).isGreaterThan(previous.toString());
+            assertThat(next.version()).isEqualTo(7);
+            previous = next;
+        }
+        // 10000 IDs do not fit one millisecond's counter, so the timestamp was carried forward
+        assertThat(previous.getMostSignificantBits() >>> 16).isGreaterThan(MILLIS);
+    }
+
+    @Test
+    void newMillisecondRestartsTheCounter() {
+        UUID first = sequence.next();
+        clock.set(MILLIS + 1);
+        UUID second = sequence.next();
+
+        assertThat(second.getMostSignificantBits() >>> 16).isEqualTo(MILLIS + 1);
+        assertThat(second.getMostSignificantBits() & 0xFFF).isLessThan(2048);
+        assertThat(second.toString()).isGreaterThan(first.toString());
+    }
+
+    @Test
+    void hibernateGeneratorsShareOneSequence() {
+        UUID first = (UUID) new TimeOrderedUuidGenerator().generate(null, new RedemptionOrder());
+        UUID second = (UUID) new TimeOrderedUuidGenerator().generate(null, new OrderItem());
+
+        assertThat(second.toString()).isGreaterThan(first.toString());
+    }
+}
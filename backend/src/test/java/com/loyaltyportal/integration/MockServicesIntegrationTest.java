@@ -5,7 +5,10 @@ import com.loyaltyportal.dto.CreateOrderRequest;
 import com.loyaltyportal.dto.OrderSummaryDto;
 import com.loyaltyportal.entity.*;
 import com.loyaltyportal.repository.*;
+import com.loyaltyportal.service.OrderWorkflowService;
 import com.loyaltyportal.service.RedemptionService;
+import com.loyaltyportal.service.ShipmentIngestionService;
+import com.loyaltyportal.service.VirtualFulfillmentClient;
 import com.loyaltyportal.service.mock.MockLoyaltyApiClient;
 import com.loyaltyportal.service.mock.MockNotificationService;
 import org.junit.jupiter.api.BeforeEach;
@@ -16,7 +19,13 @@ import org.springframework.test.context.ActiveProfiles;
 import org.springframework.transaction.annotation.Transactional;
 import reactor.test.StepVerifier;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
@@ -49,6 +58,24 @@ public class MockServicesIntegrationTest {
     @Autowired
     private InventoryRepository inventoryRepository;
 
+    @Autowired
+    private RedemptionOrderRepository orderRepository;
+
+    @Autowired
+    private OrderItemRepository orderItemRepository;
+
+    @Autowired
+    private OrderWorkflowService workflowService;
+
+    @Autowired
+    private ShipmentIngestionService shipmentIngestionService;
+
+    @Autowired
+    private CompanyPointsSummaryRepository summaryRepository;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
     private Company testCompany;
     private AccountManager testAccountManager;
     private Product testProduct;
@@ -195,6 +222,83 @@ public class MockServicesIntegrationTest {
         assertThat(finalBalance).isEqualTo(50000); // Should be back to original
     }
 
+    @Test
+    void testOrderCompletesOnceWhenLastItemFulfilled() {
+        Product secondProduct = new Product("TEST-PRODUCT-002", "Second Test Product", ProductType.VIRTUAL, 500);
+        secondProduct.setCategory("Test Category");
+        secondProduct = productRepository.save(secondProduct);
+        inventoryRepository.save(new Inventory(secondProduct, 100));
+
+        CreateOrderRequest orderRequest = new CreateOrderRequest(
+                testCompany.getId(), testAccountManager.getId(), Arrays.asList(
+                        new CreateOrderRequest.OrderItemRequest(testProduct.getId(), 1),
+                        new CreateOrderRequest.OrderItemRequest(secondProduct.getId(), 2)));
+
+        OrderSummaryDto createdOrder = redemptionService.createOrder(orderRequest).block();
+        redemptionService.processOrder(createdOrder.getId()).block();
+
+        List<OrderItem> items = orderItemRepository.findByOrderId(createdOrder.getId());
+        assertThat(items).hasSize(2);
+
+        workflowService.completeVirtualFulfillment(items.get(0).getId(),
+                new VirtualFulfillmentClient.VirtualFulfillmentResponse("VF-1", "SUCCESS", "ok"));
+        assertThat(mockNotificationService.getEmailCountByType("ORDER_COMPLETION")).isEqualTo(0);
+
+        workflowService.completeVirtualFulfillment(items.get(1).getId(),
+                new VirtualFulfillmentClient.VirtualFulfillmentResponse("VF-2", "SUCCESS", "ok"));
+        // A duplicate result for an item that is already fulfilled is ignored
+        workflowService.completeVirtualFulfillment(items.get(1).getId(),
+                new VirtualFulfillmentClient.VirtualFulfillmentResponse("VF-2", "SUCCESS", "ok"));
+
+        RedemptionOrder order = orderRepository.findById(createdOrder.getId()).orElseThrow();
+        assertThat(order.getStatus()).isEqualTo(OrderStatus.COMPLETED);
+        assertThat(order.getCompletedAt()).isNotNull();
+        assertThat(mockNotificationService.getEmailCountByType("ORDER_COMPLETION")).isEqualTo(1);
+    }
+
+    @Test
+    void testShipmentManifestCompletesPhysicalOrder() throws IOException {
+        Product physicalProduct = new Product("TEST-PHYSICAL-001", "Test Physical Product", ProductType.PHYSICAL, 500);
+        physicalProduct.setCategory("Test Category");
+        physicalProduct = productRepository.save(physicalProduct);
+        inventoryRepository.save(new Inventory(physicalProduct, 100));
+
+        CreateOrderRequest orderRequest = new CreateOrderRequest(
+                testCompany.getId(), testAccountManager.getId(), Arrays.asList(
+                        new CreateOrderRequest.OrderItemRequest(physicalProduct.getId(), 1)));
+        OrderSummaryDto createdOrder = redemptionService.createOrder(orderRequest).block();
+        redemptionService.processOrder(createdOrder.getId()).block();
+        entityManager.flush();
+
+        String orderNumber = createdOrder.getOrderNumber();
+        String manifest = "order_number,sku,tracking_number,status\n" +
+                orderNumber + ",TEST-PHYSICAL-001,1Z999AA10123456784,SHIPPED\n" +
+                orderNumber + ",TEST-PHYSICAL-001,,DELIVERED\n" +
+                orderNumber + ",UNKNOWN-SKU,1Z999AA10123456785,SHIPPED\n";
+
+        List<ShipmentIngestionService.RowResult> results = new ArrayList<>();
+        ShipmentIngestionService.IngestionSummary summary = shipmentIngestionService.ingest(
+                new ByteArrayInputStream(manifest.getBytes(StandardCharsets.UTF_8)),
+                ShipmentIngestionService.Format.CSV, results::addAll);
+
+        assertThat(summary.getRows()).isEqualTo(3);
+        assertThat(summary.getApplied()).isEqualTo(2);
+        assertThat(results).extracting(ShipmentIngestionService.RowResult::getResult)
+                .containsExactly("APPLIED", "APPLIED", "FAILED");
+
+        entityManager.clear();
+        OrderItem item = orderItemRepository.findByOrderId(createdOrder.getId()).get(0);
+        assertThat(item.getFulfillmentStatus()).isEqualTo(FulfillmentStatus.DELIVERED);
+        assertThat(item.getTrackingNumber()).isEqualTo("1Z999AA10123456784");
+        RedemptionOrder order = orderRepository.findById(createdOrder.getId()).orElseThrow();
+        assertThat(order.getStatus()).isEqualTo(OrderStatus.COMPLETED);
+        assertThat(order.getCompletedItemCount()).isEqualTo(1);
+
+        CompanyPointsSummary companySummary = summaryRepository.findById(testCompany.getId()).orElseThrow();
+        assertThat(companySummary.getProcessingOrderPoints()).isZero();
+        assertThat(companySummary.getCompletedOrderPoints()).isEqualTo(500);
+    }
+
     @Test
     void testMockLoyaltyApiClient_DirectUsage() {
         // Test direct usage of mock client
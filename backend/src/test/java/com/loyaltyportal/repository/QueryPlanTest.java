@@ -0,0 +1,254 @@
+package com.loyaltyportal.repository;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.loyaltyportal.support.PostgresSchema;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Guards the indexes behind the hot repository queries.
+ *
+ * The schema is the Liquibase changelog applied to PostgreSQL, so the partitioned ledger,
+ * the PostgreSQL-only changesets and the INCLUDE columns appended by {@code modifySql} are
+ * all in place. It is seeded with a few thousand rows and analyzed. Each query mirrors the
+ * SQL of a repository method, and its plan must read the expected index (on the ledger,
+ * the partitions' copies of it) rather than scan the table; the covering indexes must
+ * answer their aggregates with an index-only scan.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+public class QueryPlanTest {
+
+    @Container
+    private static final PostgreSQLContainer<?> postgres = PostgresSchema.container();
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static final String COMPANY = uuid("0001", "7");
+    private static final String ACCOUNT_MANAGER = uuid("0002", "3");
+    private static final String PRODUCT = uuid("0003", "11");
+    private static final String ORDER = uuid("0004", "42");
+    private static final String ORDER_ITEM = uuid("0005", "42");
+
+    private static Connection connection;
+
+    @BeforeAll
+    static void createSchema() throws Exception {
+        connection = PostgresSchema.migrate(postgres).getConnection();
+        try (Statement statement = connection.createStatement()) {
+            seed(statement);
+            // Also sets the visibility map, without which no scan is index-only
+            statement.execute("VACUUM ANALYZE");
+            // Tables this small are cheaper to scan whole, so leave the planner to choose
+            // among the indexes; a query with no usable index still gets a sequential scan
+            statement.execute("SET enable_seqscan = off");
+            statement.execute("SET enable_bitmapscan = off");
+        }
+    }
+
+    @AfterAll
+    static void closeConnection() throws Exception {
+        connection.close();
+    }
+
+    @Test
+    void orderItemsByOrder() throws Exception {
+        // OrderItemRepository.findByOrder, findByOrderId
+        assertUsesIndex("SELECT * FROM order_item WHERE order_id = " + ORDER, "idx_order_item_order");
+    }
+
+    @Test
+    void orderItemsByProduct() throws Exception {
+        // OrderItemRepository.findByProduct, findByProductId
+        assertUsesIndex("SELECT * FROM order_item WHERE product_id = " + PRODUCT, "idx_order_item_product");
+    }
+
+    @Test
+    void quantitiesByProduct() throws Exception {
+        // OrderItemRepository.findPopularProducts
+        assertReadsIndexOnly("SELECT product_id, SUM(quantity) FROM order_item GROUP BY product_id",
+                "idx_order_item_product");
+    }
+
+    @Test
+    void transactionsByOrder() throws Exception {
+        // LoyaltyTransactionRepository.findByOrder, findByOrderId
+        assertUsesIndex("SELECT * FROM loyalty_transaction WHERE order_id = " + ORDER,
+                "idx_loyalty_transaction_order");
+    }
+
+    @Test
+    void transactionsByCompanyAndStatus() throws Exception {
+        // LoyaltyTransactionRepository.findByCompanyIdAndStatus, countByCompanyAndStatus
+        assertUsesIndex("SELECT * FROM loyalty_transaction WHERE company_id = " + COMPANY
+                + " AND status = 'COMPLETED'", "idx_loyalty_transaction_company_status");
+    }
+
+    @Test
+    void completedPointsByCompany() throws Exception {
+        // LoyaltyTransactionRepository.sumCompletedPointsByCompany
+        assertReadsIndexOnly("SELECT transaction_type, SUM(points_amount) FROM loyalty_transaction "
+                + "WHERE company_id = " + COMPANY + " AND status = 'COMPLETED' GROUP BY transaction_type",
+                "idx_loyalty_transaction_company_status");
+    }
+
+    @Test
+    void ledgerInProviderIdOrder() throws Exception {
+        // ReconciliationService's ledger chunk
+        assertUsesIndex("SELECT id FROM loyalty_transaction WHERE status = 'COMPLETED' "
+                + "AND external_transaction_id COLLATE \"C\" > 'TXN-100' "
+                + "AND processed_at >= TIMESTAMP '2024-02-01 00:00:00' AND processed_at < TIMESTAMP '2024-02-02 00:00:00' "
+                + "ORDER BY external_transaction_id COLLATE \"C\" LIMIT 1000",
+                "idx_loyalty_transaction_ledger_order");
+    }
+
+    @Test
+    void ordersByCompanyAndDateRange() throws Exception {
+        // RedemptionOrderRepository.findByCompanyAndDateRange
+        assertUsesIndex("SELECT * FROM redemption_order WHERE company_id = " + COMPANY
+                + " AND created_at BETWEEN TIMESTAMP '2024-02-01 00:00:00' AND TIMESTAMP '2024-02-08 00:00:00'",
+                "idx_redemption_order_company_created");
+    }
+
+    @Test
+    void orderTotalsByCompany() throws Exception {
+        // RedemptionOrderRepository.summarizeByCompany
+        assertReadsIndexOnly("SELECT status, COUNT(*), SUM(total_points) FROM redemption_order WHERE company_id = "
+                + COMPANY + " GROUP BY status", "idx_redemption_order_company_created");
+    }
+
+    @Test
+    void ordersByAccountManagerAndStatus() throws Exception {
+        // RedemptionOrderRepository.findByAccountManager, findByAccountManagerAndStatus
+        assertUsesIndex("SELECT * FROM redemption_order WHERE account_manager_id = " + ACCOUNT_MANAGER
+                + " AND status = 'PENDING'", "idx_redemption_order_account_manager");
+    }
+
+    @Test
+    void outboxRowsByOrderItem() throws Exception {
+        // Outbox rows of an item, e.g. when archiving its order
+        assertUsesIndex("SELECT * FROM fulfillment_outbox WHERE order_item_id = " + ORDER_ITEM,
+                "idx_fulfillment_outbox_order_item");
+    }
+
+    @Test
+    void transactionByProviderId() throws Exception {
+        // LoyaltyTransactionRepository.findByExternalTransactionId
+        assertUsesIndex("SELECT * FROM loyalty_transaction WHERE external_transaction_id = 'TXN-42'",
+                "idx_loyalty_transaction_external_id");
+    }
+
+    private static void assertUsesIndex(String sql, String index) throws Exception {
+        List<JsonNode> scans = scans(sql);
+        assertThat(scans).as(sql).isNotEmpty();
+        for (JsonNode scan : scans) {
+            assertThat(scan.path("Node Type").asText()).as(scan.toString()).isIn("Index Scan", "Index Only Scan");
+            assertThat(rootIndex(scan.path("Index Name").asText())).as(scan.toString()).isEqualTo(index);
+        }
+    }
+
+    private static void assertReadsIndexOnly(String sql, String index) throws Exception {
+        assertUsesIndex(sql, index);
+        assertThat(scans(sql)).allSatisfy(scan ->
+                assertThat(scan.path("Node Type").asText()).as(scan.toString()).isEqualTo("Index Only Scan"));
+    }
+
+    /**
+     * The scan nodes of the query's plan, one per partition on the ledger
+     */
+    private static List<JsonNode> scans(String sql) throws Exception {
+        JsonNode plan;
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("EXPLAIN (FORMAT JSON) " + sql)) {
+            result.next();
+            plan = objectMapper.readTree(result.getString(1)).get(0).get("Plan");
+        }
+        List<JsonNode> scans = new ArrayList<>();
+        collectScans(plan, scans);
+        return scans;
+    }
+
+    private static void collectScans(JsonNode node, List<JsonNode> scans) {
+        if (node.path("Node Type").asText().endsWith("Scan")) {
+            scans.add(node);
+        }
+        for (JsonNode child : node.path("Plans")) {
+            collectScans(child, scans);
+        }
+    }
+
+    /**
+     * The index a partition's index was created from, or the index itself
+     */
+    private static String rootIndex(String index) throws Exception {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT COALESCE(pg_partition_root(CAST(? AS regclass))::text, ?)")) {
+            statement.setString(1, index);
+            statement.setString(2, index);
+            try (ResultSet result = statement.executeQuery()) {
+                result.next();
+                return result.getString(1);
+            }
+        }
+    }
+
+    private static void seed(Statement statement) throws Exception {
+        statement.execute("INSERT INTO company (id, name, loyalty_account_id) "
+                + "SELECT " + uuidOf("0001", "x") + ", 'Company ' || x, 'ACCT-' || x FROM generate_series(0, 49) x");
+        statement.execute("INSERT INTO account_manager (id, company_id, email, name) "
+                + "SELECT " + uuidOf("0002", "x") + ", " + uuidOf("0001", "x % 50") + ", "
+                + "'manager' || x || '@example.com', 'Manager ' || x FROM generate_series(0, 39) x");
+        statement.execute("INSERT INTO product (id, sku, name, product_type, points_cost) "
+                + "SELECT " + uuidOf("0003", "x") + ", 'SKU-' || x, 'Product ' || x, 'PHYSICAL', 100 "
+                + "FROM generate_series(0, 59) x");
+        statement.execute("INSERT INTO redemption_order (id, order_number, company_id, account_manager_id, "
+                + "total_points, status, created_at) "
+                + "SELECT " + uuidOf("0004", "x") + ", 'ORD-' || x, " + uuidOf("0001", "x % 50") + ", "
+                + uuidOf("0002", "x % 40") + ", 100 + x % 900, "
+                + "CASE WHEN x % 5 = 0 THEN 'PENDING' ELSE 'COMPLETED' END, "
+                + "TIMESTAMP '2024-03-01 00:00:00' - x * INTERVAL '1 hour' FROM generate_series(1, 5000) x");
+        statement.execute("INSERT INTO order_item (id, order_id, product_id, quantity, points_per_item, "
+                + "fulfillment_status, created_at) "
+                + "SELECT " + uuidOf("0005", "x") + ", " + uuidOf("0004", "x % 5000 + 1") + ", "
+                + uuidOf("0003", "x % 60") + ", 1 + x % 3, 100, 'DELIVERED', "
+                + "TIMESTAMP '2024-03-01 00:00:00' - x * INTERVAL '1 hour' FROM generate_series(1, 8000) x");
+        statement.execute("INSERT INTO loyalty_transaction (id, order_id, company_id, points_amount, "
+                + "transaction_type, external_transaction_id, status, retry_count, processed_at, created_at) "
+                + "SELECT " + uuidOf("0006", "x") + ", " + uuidOf("0004", "x % 5000 + 1") + ", "
+                + uuidOf("0001", "x % 50") + ", 100, CASE WHEN x % 10 = 0 THEN 'REFUND' ELSE 'DEBIT' END, "
+                + "'TXN-' || x, CASE WHEN x % 7 = 0 THEN 'FAILED' ELSE 'COMPLETED' END, 0, "
+                + "TIMESTAMP '2024-03-01 00:00:00' - x * INTERVAL '1 hour', "
+                + "TIMESTAMP '2024-03-01 00:00:00' - x * INTERVAL '1 hour' FROM generate_series(1, 6000) x");
+        statement.execute("INSERT INTO fulfillment_outbox (id, order_item_id, reference_id, product_sku, quantity, "
+                + "status, attempts) "
+                + "SELECT " + uuidOf("0007", "x") + ", " + uuidOf("0005", "x") + ", 'REF-' || x, 'SKU', 1, "
+                + "'SENT', 1 FROM generate_series(1, 3000) x");
+    }
+
+    /**
+     * A fixed UUID literal, e.g. {@code uuid("0001", "7")} for company 7
+     */
+    private static String uuid(String group, String number) {
+        return "CAST('00000000-0000-0000-" + group + "-" + "0".repeat(12 - number.length()) + number + "' AS uuid)";
+    }
+
+    /**
+     * The SQL expression for {@link #uuid} of a computed number
+     */
+    private static String uuidOf(String group, String expression) {
+        return "CAST('00000000-0000-0000-" + group + "-' || lpad(CAST(" + expression + " AS text), 12, '0') AS uuid)";
+    }
+}
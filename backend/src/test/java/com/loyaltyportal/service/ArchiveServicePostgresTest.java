@@ -0,0 +1,125 @@
+package com.loyaltyportal.service;
+
+import com.loyaltyportal.support.PostgresSchema;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The partition and archive DDL of {@link ArchiveService} run against the ledger the
+ * changelog builds on PostgreSQL.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+public class ArchiveServicePostgresTest {
+
+    @Container
+    private static final PostgreSQLContainer<?> postgres = PostgresSchema.container();
+
+    private static DataSource dataSource;
+    private static JdbcTemplate jdbc;
+
+    private final UUID company = UUID.randomUUID();
+    private final UUID accountManager = UUID.randomUUID();
+
+    @BeforeAll
+    static void migrate() throws Exception {
+        dataSource = PostgresSchema.migrate(postgres);
+        jdbc = new JdbcTemplate(dataSource);
+    }
+
+    @Test
+    void partitionsAheadAreCreatedWhileArchivingIsDisabled() {
+        YearMonth ahead = YearMonth.now().plusMonths(6);
+        ArchiveService service = service(false, 6);
+        seedOwners();
+
+        service.maintainPartitions();
+
+        assertThat(parentOf(partition(ahead))).isEqualTo("loyalty_transaction");
+        UUID order = order(ahead.atDay(1).atStartOfDay(), "PENDING");
+        UUID transaction = transaction(order, ahead.atDay(2).atStartOfDay(), "PENDING");
+        assertThat(jdbc.queryForObject("SELECT tableoid::regclass::text FROM loyalty_transaction WHERE id = ?",
+                String.class, transaction)).isEqualTo(partition(ahead));
+    }
+
+    @Test
+    void closedPartitionsAndTheirOrdersAreMovedToTheArchive() {
+        YearMonth closed = YearMonth.now().minusMonths(24);
+        YearMonth open = closed.plusMonths(1);
+        ArchiveService service = service(true, 2);
+        seedOwners();
+        service.createPartitions(closed);
+
+        UUID archivedOrder = order(closed.atDay(1).atStartOfDay(), "COMPLETED");
+        transaction(archivedOrder, closed.atDay(1).atTime(12, 0), "COMPLETED");
+        UUID liveOrder = order(open.atDay(1).atStartOfDay(), "COMPLETED");
+        transaction(liveOrder, open.atDay(1).atTime(12, 0), "PENDING");
+
+        service.run();
+
+        assertThat(parentOf(partition(closed))).isEqualTo("loyalty_transaction_archive");
+        assertThat(parentOf(partition(open))).isEqualTo("loyalty_transaction");
+        assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM pg_constraint WHERE conrelid = CAST(? AS regclass) "
+                + "AND contype = 'f'", Integer.class, partition(closed))).isZero();
+        assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM loyalty_transaction_archive WHERE order_id = ?",
+                Integer.class, archivedOrder)).isEqualTo(1);
+
+        assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM redemption_order_archive WHERE id = ?",
+                Integer.class, archivedOrder)).isEqualTo(1);
+        assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM redemption_order WHERE id = ?",
+                Integer.class, archivedOrder)).isZero();
+        assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM redemption_order WHERE id = ?",
+                Integer.class, liveOrder)).isEqualTo(1);
+    }
+
+    private ArchiveService service(boolean enabled, int monthsAhead) {
+        return new ArchiveService(new NamedParameterJdbcTemplate(dataSource),
+                new DataSourceTransactionManager(dataSource), new SimpleMeterRegistry(), enabled, 13, monthsAhead, 500);
+    }
+
+    private void seedOwners() {
+        jdbc.update("INSERT INTO company (id, name, loyalty_account_id) VALUES (?, 'Acme', ?)",
+                company, "ACME-" + company);
+        jdbc.update("INSERT INTO account_manager (id, company_id, email, name) VALUES (?, ?, ?, 'Manager')",
+                accountManager, company, accountManager + "@example.com");
+    }
+
+    private UUID order(LocalDateTime createdAt, String status) {
+        UUID id = UUID.randomUUID();
+        jdbc.update("INSERT INTO redemption_order (id, order_number, company_id, account_manager_id, total_points, "
+                + "status, created_at) VALUES (?, ?, ?, ?, 100, ?, ?)",
+                id, "ORD-" + id, company, accountManager, status, createdAt);
+        return id;
+    }
+
+    private UUID transaction(UUID order, LocalDateTime createdAt, String status) {
+        UUID id = UUID.randomUUID();
+        jdbc.update("INSERT INTO loyalty_transaction (id, order_id, company_id, points_amount, transaction_type, "
+                + "status, created_at) VALUES (?, ?, ?, 100, 'DEBIT', ?, ?)",
+                id, order, company, status, createdAt);
+        return id;
+    }
+
+    private static String parentOf(String partition) {
+        return jdbc.queryForObject("SELECT p.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid "
+                + "JOIN pg_class p ON p.oid = i.inhparent WHERE c.relname = ?", String.class, partition);
+    }
+
+    private static String partition(YearMonth month) {
+        return "loyalty_transaction_p" + month.format(DateTimeFormatter.ofPattern("yyyyMM"));
+    }
+}
@@ -0,0 +1,117 @@
+package com.loyaltyportal.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ArchiveServiceTest {
+
+    private NamedParameterJdbcTemplate jdbcTemplate;
+    private JdbcOperations jdbcOperations;
+    private ArchiveService service;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = mock(NamedParameterJdbcTemplate.class);
+        jdbcOperations = mock(JdbcOperations.class);
+        when(jdbcTemplate.getJdbcOperations()).thenReturn(jdbcOperations);
+        service = new ArchiveService(jdbcTemplate, mock(PlatformTransactionManager.class),
+                new SimpleMeterRegistry(), true, 13, 2, 2);
+    }
+
+    @Test
+    void partitionsAreCreatedForTheComingMonths() {
+        service.createPartitions(YearMonth.of(2024, 11));
+
+        verify(jdbcOperations).execute("CREATE TABLE IF NOT EXISTS loyalty_transaction_p202411 PARTITION OF "
+                + "loyalty_transaction FOR VALUES FROM ('2024-11-01') TO ('2024-12-01')");
+        verify(jdbcOperations).execute("CREATE TABLE IF NOT EXISTS loyalty_transaction_p202412 PARTITION OF "
+                + "loyalty_transaction FOR VALUES FROM ('2024-12-01') TO ('2025-01-01')");
+        verify(jdbcOperations).execute("CREATE TABLE IF NOT EXISTS loyalty_transaction_p202501 PARTITION OF "
+                + "loyalty_transaction FOR VALUES FROM ('2025-01-01') TO ('2025-02-01')");
+    }
+
+    @Test
+    void partitionsAreMaintainedWhileArchivingIsDisabled() {
+        ArchiveService disabled = new ArchiveService(jdbcTemplate, mock(PlatformTransactionManager.class),
+                new SimpleMeterRegistry(), false, 13, 2, 2);
+        when(jdbcOperations.execute(any(ConnectionCallback.class))).thenReturn("PostgreSQL");
+
+        disabled.maintainPartitions();
+        disabled.run();
+
+        verify(jdbcOperations, times(3)).execute(startsWith("CREATE TABLE IF NOT EXISTS loyalty_transaction_p"));
+        verify(jdbcOperations, never()).execute(contains("DETACH PARTITION"));
+        verify(jdbcTemplate, never()).update(anyString(), any(SqlParameterSource.class));
+    }
+
+    @Test
+    void unpartitionedLedgerIsLeftAlone() {
+        when(jdbcOperations.execute(any(ConnectionCallback.class))).thenReturn("H2");
+
+        service.maintainPartitions();
+        service.maintainPartitions();
+
+        verify(jdbcOperations, times(1)).execute(any(ConnectionCallback.class));
+        verify(jdbcOperations, never()).execute(anyString());
+    }
+
+    @Test
+    void onlyClosedPartitionsPastRetentionAreArchived() {
+        when(jdbcTemplate.queryForList(contains("pg_inherits"), anyMap(), eq(String.class))).thenReturn(List.of(
+                "loyalty_transaction_p202301", "loyalty_transaction_p202302", "loyalty_transaction_p202403",
+                "loyalty_transaction_default"));
+        when(jdbcTemplate.queryForList(contains("pg_constraint"), anyMap(), eq(String.class)))
+                .thenReturn(List.of("fk_loyalty_transaction_order"));
+        when(jdbcOperations.queryForObject(contains("loyalty_transaction_p202301"), eq(Boolean.class)))
+                .thenReturn(false);
+        when(jdbcOperations.queryForObject(contains("loyalty_transaction_p202302"), eq(Boolean.class)))
+                .thenReturn(true);
+
+        assertThat(service.archivePartitions(YearMonth.of(2024, 1))).isEqualTo(1);
+
+        verify(jdbcOperations).execute("ALTER TABLE loyalty_transaction DETACH PARTITION loyalty_transaction_p202301");
+        verify(jdbcOperations).execute(
+                "ALTER TABLE loyalty_transaction_p202301 DROP CONSTRAINT \"fk_loyalty_transaction_order\"");
+        verify(jdbcOperations).execute("ALTER TABLE loyalty_transaction_archive ATTACH PARTITION "
+                + "loyalty_transaction_p202301 FOR VALUES FROM ('2023-01-01') TO ('2023-02-01')");
+        verify(jdbcOperations, never()).execute(
+                "ALTER TABLE loyalty_transaction DETACH PARTITION loyalty_transaction_p202302");
+        verify(jdbcOperations, never()).queryForObject(contains("loyalty_transaction_p202403"), eq(Boolean.class));
+    }
+
+    @Test
+    void ordersAreMovedInBatchesUntilFewerThanABatchRemain() {
+        when(jdbcTemplate.update(startsWith("INSERT INTO redemption_order_archive"), any(SqlParameterSource.class)))
+                .thenReturn(2, 1);
+
+        assertThat(service.archiveOrders(LocalDateTime.of(2023, 11, 1, 0, 0))).isEqualTo(3);
+
+        verify(jdbcTemplate, times(2)).update(startsWith("INSERT INTO order_item_archive"),
+                any(SqlParameterSource.class));
+        verify(jdbcTemplate, times(2)).update(startsWith("DELETE FROM redemption_order"),
+                any(SqlParameterSource.class));
+    }
+}
@@ -0,0 +1,136 @@
+package com.loyaltyportal.service;
+
+import com.loyaltyportal.entity.Company;
+import com.loyaltyportal.entity.CompanyPointsSummary;
+import com.loyaltyportal.entity.LoyaltyTransaction;
+import com.loyaltyportal.entity.OrderStatus;
+import com.loyaltyportal.entity.RedemptionOrder;
+import com.loyaltyportal.entity.TransactionType;
+import com.loyaltyportal.repository.CompanyPointsSummaryRepository;
+import com.loyaltyportal.repository.CompanyRepository;
+import com.loyaltyportal.repository.LoyaltyTransactionRepository;
+import com.loyaltyportal.repository.RedemptionOrderRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CompanyPointsSummaryServiceTest {
+
+    private static final UUID COMPANY_ID = UUID.randomUUID();
+
+    private CompanyPointsSummaryRepository summaryRepository;
+    private RedemptionOrderRepository orderRepository;
+    private LoyaltyTransactionRepository transactionRepository;
+    private CompanyPointsSummaryService service;
+
+    @BeforeEach
+    void setUp() {
+        summaryRepository = mock(CompanyPointsSummaryRepository.class);
+        orderRepository = mock(RedemptionOrderRepository.class);
+        transactionRepository = mock(LoyaltyTransactionRepository.class);
+        service = new CompanyPointsSummaryService(summaryRepository, mock(CompanyRepository.class),
+                orderRepository, transactionRepository, mock(ArchiveService.class),
+                mock(PlatformTransactionManager.class), new SimpleMeterRegistry(), true);
+    }
+
+    @Test
+    void changesAreAppliedAsDeltasWithoutReadingHistory() {
+        CompanyPointsSummary summary = new CompanyPointsSummary(COMPANY_ID);
+        when(summaryRepository.findForUpdate(COMPANY_ID)).thenReturn(Optional.of(summary));
+        RedemptionOrder order = order(500);
+
+        service.recordOrderCreated(order);
+        order.setStatus(OrderStatus.PROCESSING);
+        service.recordOrderStatusChange(order, OrderStatus.PENDING);
+        service.recordCompletedTransaction(new LoyaltyTransaction(order, order.getCompany(), 500, TransactionType.DEBIT));
+        order.setStatus(OrderStatus.CANCELLED);
+        service.recordOrderStatusChange(order, OrderStatus.PROCESSING);
+        service.recordCompletedTransaction(new LoyaltyTransaction(order, order.getCompany(), 500, TransactionType.REFUND));
+
+        assertThat(summary.getOrderCount()).isEqualTo(1);
+        assertThat(summary.getPointsOrdered()).isEqualTo(500);
+        assertThat(summary.getOrderPoints(OrderStatus.PENDING)).isZero();
+        assertThat(summary.getOrderPoints(OrderStatus.PROCESSING)).isZero();
+        assertThat(summary.getCancelledOrderPoints()).isEqualTo(500);
+        assertThat(summary.getPointsDebited()).isEqualTo(500);
+        assertThat(summary.getPointsRefunded()).isEqualTo(500);
+        verify(orderRepository, never()).summarizeByCompany(COMPANY_ID);
+        verify(transactionRepository, never()).sumCompletedPointsByCompany(COMPANY_ID);
+    }
+
+    @Test
+    void completedOrderMovesItsPointsOutOfProcessing() {
+        CompanyPointsSummary summary = new CompanyPointsSummary(COMPANY_ID);
+        when(summaryRepository.findForUpdate(COMPANY_ID)).thenReturn(Optional.of(summary));
+        RedemptionOrder order = order(500);
+        order.setStatus(OrderStatus.PROCESSING);
+        service.recordOrderCreated(order);
+
+        order.setStatus(OrderStatus.COMPLETED);
+        service.recordOrderStatusChange(order, OrderStatus.PROCESSING);
+        // A repeated status change with no actual change is ignored
+        service.recordOrderStatusChange(order, OrderStatus.COMPLETED);
+
+        assertThat(summary.getProcessingOrderPoints()).isZero();
+        assertThat(summary.getCompletedOrderPoints()).isEqualTo(500);
+        assertThat(summary.getOrderCount()).isEqualTo(1);
+    }
+
+    @Test
+    void missingSummaryIsComputedFromHistory() {
+        when(summaryRepository.findForUpdate(COMPANY_ID)).thenReturn(Optional.empty());
+        when(orderRepository.summarizeByCompany(COMPANY_ID)).thenReturn(List.of(
+                new Object[] {OrderStatus.COMPLETED, 2L, 700L},
+                new Object[] {OrderStatus.PENDING, 1L, 300L}));
+        when(transactionRepository.sumCompletedPointsByCompany(COMPANY_ID)).thenReturn(List.<Object[]>of(
+                new Object[] {TransactionType.DEBIT, 700L}));
+
+        service.recordOrderCreated(order(300));
+
+        ArgumentCaptor<CompanyPointsSummary> saved = ArgumentCaptor.forClass(CompanyPointsSummary.class);
+        verify(summaryRepository).save(saved.capture());
+        assertThat(saved.getValue().getOrderCount()).isEqualTo(3);
+        assertThat(saved.getValue().getPointsOrdered()).isEqualTo(1000);
+        assertThat(saved.getValue().getPendingOrderPoints()).isEqualTo(300);
+        assertThat(saved.getValue().getPointsDebited()).isEqualTo(700);
+    }
+
+    @Test
+    void rebuildCorrectsDriftedTotals() {
+        CompanyPointsSummary summary = new CompanyPointsSummary(COMPANY_ID);
+        summary.addOrder(OrderStatus.PENDING, 100);
+        when(summaryRepository.findForUpdate(COMPANY_ID)).thenReturn(Optional.of(summary));
+        when(orderRepository.summarizeByCompany(COMPANY_ID)).thenReturn(List.<Object[]>of(
+                new Object[] {OrderStatus.COMPLETED, 1L, 100L}));
+        when(transactionRepository.sumCompletedPointsByCompany(COMPANY_ID)).thenReturn(List.of());
+
+        assertThat(service.rebuild(COMPANY_ID)).isTrue();
+        assertThat(summary.getPendingOrderPoints()).isZero();
+        assertThat(summary.getCompletedOrderPoints()).isEqualTo(100);
+        assertThat(summary.getRebuiltAt()).isNotNull();
+
+        assertThat(service.rebuild(COMPANY_ID)).isFalse();
+    }
+
+    private RedemptionOrder order(int points) {
+        Company company = new Company("Acme", "ACME001", "GOLD");
+        company.setId(COMPANY_ID);
+        RedemptionOrder order = new RedemptionOrder();
+        order.setCompany(company);
+        order.setTotalPoints(points);
+        order.setStatus(OrderStatus.PENDING);
+        return order;
+    }
+}
@@ -0,0 +1,202 @@
+package com.loyaltyportal.service;
+
+import com.loyaltyportal.entity.FulfillmentOutboxEntry;
+import com.loyaltyportal.entity.OrderItem;
+import com.loyaltyportal.entity.OutboxStatus;
+import com.loyaltyportal.repository.FulfillmentOutboxRepository;
+import com.loyaltyportal.service.VirtualFulfillmentClient.VirtualFulfillmentResponse;
+import com.loyaltyportal.service.mock.standin.StandInProviderServer;
+import com.loyaltyportal.service.resilience.ProviderResilience;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class FulfillmentDispatcherTest {
+
+    private FulfillmentOutboxRepository outboxRepository;
+    private VirtualFulfillmentClient fulfillmentClient;
+    private OrderWorkflowService workflowService;
+
+    @BeforeEach
+    void setUp() {
+        outboxRepository = mock(FulfillmentOutboxRepository.class);
+        fulfillmentClient = mock(VirtualFulfillmentClient.class);
+        workflowService = mock(OrderWorkflowService.class);
+    }
+
+    @Test
+    void successfulFulfillmentCompletesEntryAndItem() {
+        FulfillmentOutboxEntry entry = entry();
+        givenDue(entry);
+        when(fulfillmentClient.fulfill(any()))
+                .thenReturn(Mono.just(new VirtualFulfillmentResponse("VF-1", "COMPLETED", "ok")));
+
+        assertThat(dispatcher(3).dispatchBatch()).isEqualTo(1);
+
+        assertThat(entry.getStatus()).isEqualTo(OutboxStatus.COMPLETED);
+        assertThat(entry.getFulfillmentId()).isEqualTo("VF-1");
+        verify(workflowService).completeVirtualFulfillment(eq(entry.getOrderItem().getId()), any());
+    }
+
+    @Test
+    void failedFulfillmentIsRetriedThenGivenUp() {
+        FulfillmentOutboxEntry entry = entry();
+        givenDue(entry);
+        when(fulfillmentClient.fulfill(any())).thenReturn(Mono.error(new IllegalStateException("provider down")));
+        FulfillmentDispatcher dispatcher = dispatcher(2);
+
+        dispatcher.dispatchBatch();
+        assertThat(entry.getStatus()).isEqualTo(OutboxStatus.PENDING);
+        assertThat(entry.getNextAttemptAt()).isAfter(LocalDateTime.now());
+        verify(workflowService, never()).failVirtualFulfillment(any(), anyString());
+
+        dispatcher.dispatchBatch();
+        assertThat(entry.getStatus()).isEqualTo(OutboxStatus.FAILED);
+        assertThat(entry.getLastError()).contains("provider down");
+        verify(workflowService).failVirtualFulfillment(eq(entry.getOrderItem().getId()), anyString());
+    }
+
+    @Test
+    void concurrentCallsAreBounded() {
+        List<FulfillmentOutboxEntry> entries = List.of(entry(), entry(), entry(), entry(), entry(), entry());
+        when(outboxRepository.findDueForDispatch(any(LocalDateTime.class), any(Pageable.class))).thenReturn(entries);
+        entries.forEach(entry -> when(outboxRepository.findById(entry.getId())).thenReturn(Optional.of(entry)));
+
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        // Count on the call itself: doOnTerminate runs before the completion reaches
+        // flatMap, which subscribes the next call as soon as it sees it
+        when(fulfillmentClient.fulfill(any())).thenAnswer(invocation -> Mono.delay(Duration.ofMillis(50))
+                .doOnSubscribe(subscription -> peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max))
+                .doOnTerminate(inFlight::decrementAndGet)
+                .thenReturn(new VirtualFulfillmentResponse("VF", "COMPLETED", "ok")));
+
+        dispatcher(3).dispatchBatch();
+
+        assertThat(peak.get()).isEqualTo(2);
+        assertThat(entries).allMatch(entry -> entry.getStatus() == OutboxStatus.COMPLETED);
+    }
+
+    @Test
+    void itemsAreBatchedPerSkuAcrossOrders() throws IOException {
+        List<FulfillmentOutboxEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            entries.add(entry(i % 4 == 0 ? "EBOOK-001" : "GIFT-CARD-50"));
+        }
+        when(outboxRepository.findDueForDispatch(any(LocalDateTime.class), any(Pageable.class))).thenReturn(entries);
+        entries.forEach(entry -> when(outboxRepository.findById(entry.getId())).thenReturn(Optional.of(entry)));
+
+        try (StandInProviderServer provider = new StandInProviderServer(0)) {
+            provider.start();
+            fulfillmentClient = new VirtualFulfillmentClient(WebClient.builder(), provider.getBaseUrl(),
+                    Duration.ofSeconds(5), ProviderResilience.disabled(), true, 10);
+
+            dispatcher(3).dispatchBatch();
+
+            // 15 gift cards in batches of 10 and 5, 5 ebooks in one batch
+            assertThat(provider.getRequestCount("fulfill/batch")).isEqualTo(3);
+            assertThat(provider.getRequestCount("fulfill")).isZero();
+        }
+        assertThat(entries).allMatch(entry -> entry.getStatus() == OutboxStatus.COMPLETED);
+        assertThat(entries).extracting(FulfillmentOutboxEntry::getFulfillmentId).doesNotHaveDuplicates();
+    }
+
+    @Test
+    void fallsBackToSingleCallsWithoutBatchEndpoint() {
+        List<FulfillmentOutboxEntry> entries = List.of(entry(), entry(), entry());
+        when(outboxRepository.findDueForDispatch(any(LocalDateTime.class), any(Pageable.class))).thenReturn(entries);
+        entries.forEach(entry -> when(outboxRepository.findById(entry.getId())).thenReturn(Optional.of(entry)));
+        when(fulfillmentClient.isBatching()).thenReturn(true);
+        when(fulfillmentClient.getMaxBatchSize()).thenReturn(10);
+        when(fulfillmentClient.fulfillBatch(any())).thenReturn(Mono.error(
+                WebClientResponseException.create(404, "Not Found", null, null, null)));
+        when(fulfillmentClient.fulfill(any()))
+                .thenReturn(Mono.just(new VirtualFulfillmentResponse("VF", "COMPLETED", "ok")));
+
+        dispatcher(3).dispatchBatch();
+
+        verify(fulfillmentClient, times(3)).fulfill(any());
+        assertThat(entries).allMatch(entry -> entry.getStatus() == OutboxStatus.COMPLETED);
+    }
+
+    @Test
+    void stuckBatchIsLeftInFlightAfterTimeout() {
+        FulfillmentOutboxEntry entry = entry();
+        givenDue(entry);
+        when(fulfillmentClient.fulfill(any())).thenReturn(Mono.never());
+
+        assertThat(dispatcher(3, new SimpleMeterRegistry(), Duration.ofMillis(100)).dispatchBatch()).isZero();
+
+        assertThat(entry.getStatus()).isEqualTo(OutboxStatus.IN_FLIGHT);
+        verify(workflowService, never()).completeVirtualFulfillment(any(), any());
+    }
+
+    @Test
+    void pendingGaugeIsRefreshedByThePollNotTheScrape() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        when(outboxRepository.countByStatus(OutboxStatus.PENDING)).thenReturn(7L);
+        FulfillmentDispatcher dispatcher = dispatcher(3, meterRegistry, Duration.ofMinutes(2));
+
+        assertThat(meterRegistry.get("loyalty.fulfillment.outbox.pending").gauge().value()).isZero();
+        dispatcher.dispatchDue();
+        dispatcher.dispatchDue();
+
+        assertThat(meterRegistry.get("loyalty.fulfillment.outbox.pending").gauge().value()).isEqualTo(7.0);
+        assertThat(meterRegistry.get("loyalty.fulfillment.outbox.pending").gauge().value()).isEqualTo(7.0);
+        verify(outboxRepository, times(1)).countByStatus(OutboxStatus.PENDING);
+    }
+
+    private FulfillmentDispatcher dispatcher(int maxAttempts) {
+        return dispatcher(maxAttempts, new SimpleMeterRegistry(), Duration.ofMinutes(2));
+    }
+
+    private FulfillmentDispatcher dispatcher(int maxAttempts, SimpleMeterRegistry meterRegistry, Duration batchTimeout) {
+        return new FulfillmentDispatcher(outboxRepository, fulfillmentClient, workflowService,
+                mock(PlatformTransactionManager.class), meterRegistry,
+                true, 50, 2, maxAttempts, Duration.ofSeconds(5), Duration.ofMinutes(1), Duration.ofMinutes(5),
+                batchTimeout);
+    }
+
+    private void givenDue(FulfillmentOutboxEntry entry) {
+        when(outboxRepository.findDueForDispatch(any(LocalDateTime.class), any(Pageable.class)))
+                .thenReturn(List.of(entry));
+        when(outboxRepository.findById(entry.getId())).thenReturn(Optional.of(entry));
+    }
+
+    private FulfillmentOutboxEntry entry() {
+        return entry("GIFT-CARD-50");
+    }
+
+    private FulfillmentOutboxEntry entry(String sku) {
+        OrderItem item = new OrderItem();
+        item.setId(UUID.randomUUID());
+        FulfillmentOutboxEntry entry = new FulfillmentOutboxEntry(item, "ORD-1-" + item.getId(), sku, 1,
+                "manager@example.com", "Account Manager", "Acme");
+        entry.setId(UUID.randomUUID());
+        return entry;
+    }
+}
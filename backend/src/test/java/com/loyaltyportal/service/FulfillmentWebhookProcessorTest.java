@@ -0,0 +1,180 @@
+package com.loyaltyportal.service;
+
+import com.loyaltyportal.dto.FulfillmentCallback;
+import com.loyaltyportal.entity.FulfillmentInboxEntry;
+import com.loyaltyportal.entity.FulfillmentOutboxEntry;
+import com.loyaltyportal.entity.OrderItem;
+import com.loyaltyportal.entity.OutboxStatus;
+import com.loyaltyportal.repository.FulfillmentInboxRepository;
+import com.loyaltyportal.repository.FulfillmentOutboxRepository;
+import com.loyaltyportal.service.FulfillmentWebhookProcessor.Outcome;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * The processor is not started here, so nothing drains the queue unless a test
+ * applies a batch itself. The inbox repository is a mock; transactions are no-ops.
+ */
+public class FulfillmentWebhookProcessorTest {
+
+    private FulfillmentInboxRepository inboxRepository;
+    private FulfillmentOutboxRepository outboxRepository;
+    private OrderWorkflowService workflowService;
+    private FulfillmentWebhookProcessor processor;
+
+    @BeforeEach
+    void setUp() {
+        inboxRepository = mock(FulfillmentInboxRepository.class);
+        outboxRepository = mock(FulfillmentOutboxRepository.class);
+        workflowService = mock(OrderWorkflowService.class);
+        when(inboxRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<FulfillmentInboxEntry> entries = invocation.getArgument(0);
+            entries.forEach(entry -> entry.setId(UUID.randomUUID()));
+            return entries;
+        });
+        processor = new FulfillmentWebhookProcessor(inboxRepository, outboxRepository, workflowService,
+                mock(PlatformTransactionManager.class), new SimpleMeterRegistry(),
+                3, 100, 1, 1000, 3, Duration.ofSeconds(2), Duration.ofMinutes(1));
+    }
+
+    @Test
+    void redeliveredCallbacksAreDeduplicated() {
+        assertThat(processor.accept(List.of(delivered("VF-1"), delivered("VF-1"))))
+                .containsExactly(Outcome.ACCEPTED, Outcome.DUPLICATE);
+        assertThat(processor.accept(List.of(delivered("VF-1")))).containsExactly(Outcome.DUPLICATE);
+        assertThat(processor.getQueueSize()).isEqualTo(1);
+        verify(inboxRepository, times(1)).saveAll(anyList());
+    }
+
+    @Test
+    void callbackAlreadyInInboxIsDuplicate() {
+        when(inboxRepository.findExistingFulfillmentIds(anyCollection())).thenReturn(List.of("VF-1"));
+
+        assertThat(processor.accept(List.of(delivered("VF-1"), delivered("VF-2"))))
+                .containsExactly(Outcome.DUPLICATE, Outcome.ACCEPTED);
+        assertThat(processor.getQueueSize()).isEqualTo(1);
+    }
+
+    @Test
+    void callbacksAreRejectedUnlessRecorded() {
+        when(inboxRepository.saveAll(anyList())).thenThrow(new DataAccessResourceFailureException("database down"));
+
+        assertThat(processor.accept(List.of(delivered("VF-1")))).containsExactly(Outcome.REJECTED);
+        assertThat(processor.getQueueSize()).isZero();
+    }
+
+    @Test
+    void fullQueueRejectsWholeBatch() {
+        processor.accept(List.of(delivered("VF-1"), delivered("VF-2")));
+
+        assertThat(processor.accept(List.of(delivered("VF-3"), delivered("VF-4"))))
+                .containsOnly(Outcome.REJECTED);
+        assertThat(processor.getQueueSize()).isEqualTo(2);
+        // Rejected callbacks were not remembered, so the provider's retry gets through
+        assertThat(processor.accept(List.of(delivered("VF-3")))).containsExactly(Outcome.ACCEPTED);
+    }
+
+    @Test
+    void intermediateStatusesAreIgnored() {
+        FulfillmentCallback processing = new FulfillmentCallback("VF-1", "ORD-1-a", "PROCESSING", null);
+
+        assertThat(processor.accept(List.of(processing))).containsExactly(Outcome.IGNORED);
+        assertThat(processor.getQueueSize()).isZero();
+    }
+
+    @Test
+    void batchIsAppliedAndBadCallbackIsIsolated() {
+        FulfillmentOutboxEntry good = entry("ORD-1-a");
+        FulfillmentOutboxEntry bad = entry("ORD-1-b");
+        when(outboxRepository.findByReferenceIdIn(anyCollection())).thenAnswer(invocation -> {
+            Collection<String> references = invocation.getArgument(0);
+            return Stream.of(good, bad).filter(entry -> references.contains(entry.getReferenceId())).toList();
+        });
+        doThrow(new OrderWorkflowService.WorkflowException("boom"))
+                .when(workflowService).completeVirtualFulfillment(eq(bad.getOrderItem().getId()), any());
+        FulfillmentInboxEntry goodCallback = inboxEntry("VF-1", "ORD-1-a");
+        FulfillmentInboxEntry badCallback = inboxEntry("VF-2", "ORD-1-b");
+        // Bad one first: the transactions here are no-ops, so nothing would undo what the
+        // failed batch changed before reaching it
+        givenInbox(badCallback, goodCallback);
+
+        processor.applyBatch(List.of(badCallback.getId(), goodCallback.getId()));
+
+        verify(workflowService, times(2)).completeVirtualFulfillment(eq(bad.getOrderItem().getId()), any());
+        verify(workflowService).completeVirtualFulfillment(eq(good.getOrderItem().getId()), any());
+        assertThat(good.getStatus()).isEqualTo(OutboxStatus.COMPLETED);
+        assertThat(good.getFulfillmentId()).isEqualTo("VF-1");
+        assertThat(goodCallback.getStatus()).isEqualTo(OutboxStatus.COMPLETED);
+        // Kept for another attempt rather than dropped
+        assertThat(badCallback.getStatus()).isEqualTo(OutboxStatus.PENDING);
+        assertThat(badCallback.getAttempts()).isEqualTo(1);
+        assertThat(badCallback.getLastError()).contains("boom");
+    }
+
+    @Test
+    void pendingInboxEntriesAreRequeued() {
+        FulfillmentInboxEntry left = inboxEntry("VF-1", "ORD-1-a");
+        when(inboxRepository.findPendingIds(any(LocalDateTime.class), any(Pageable.class)))
+                .thenReturn(List.of(left.getId()));
+
+        processor.requeuePending();
+        processor.requeuePending();
+
+        // Queued once, however often it is found
+        assertThat(processor.getQueueSize()).isEqualTo(1);
+    }
+
+    private void givenInbox(FulfillmentInboxEntry... entries) {
+        when(inboxRepository.findPendingForUpdate(anyCollection())).thenAnswer(invocation -> {
+            Collection<UUID> ids = invocation.getArgument(0);
+            return Stream.of(entries)
+                    .filter(entry -> ids.contains(entry.getId()) && entry.getStatus() == OutboxStatus.PENDING)
+                    .toList();
+        });
+        for (FulfillmentInboxEntry entry : entries) {
+            when(inboxRepository.findById(entry.getId())).thenReturn(Optional.of(entry));
+        }
+    }
+
+    private FulfillmentInboxEntry inboxEntry(String fulfillmentId, String referenceId) {
+        FulfillmentInboxEntry entry = new FulfillmentInboxEntry(fulfillmentId, referenceId, "DELIVERED", null);
+        entry.setId(UUID.randomUUID());
+        return entry;
+    }
+
+    private FulfillmentCallback delivered(String fulfillmentId) {
+        return new FulfillmentCallback(fulfillmentId, "ORD-1-" + fulfillmentId, "DELIVERED", null);
+    }
+
+    private FulfillmentOutboxEntry entry(String referenceId) {
+        OrderItem item = new OrderItem();
+        item.setId(UUID.randomUUID());
+        FulfillmentOutboxEntry entry = new FulfillmentOutboxEntry(item, referenceId, "GIFT-CARD-50", 1,
+                "manager@example.com", "Account Manager", "Acme");
+        entry.setId(UUID.randomUUID());
+        return entry;
+    }
+}
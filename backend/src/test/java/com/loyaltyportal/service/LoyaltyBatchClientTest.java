@@ -0,0 +1,129 @@
+package com.loyaltyportal.service;
+
+import com.loyaltyportal.dto.TransactionResponse;
+import com.loyaltyportal.service.mock.MockLoyaltyApiClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.function.Tuple3;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Runs the micro-batching client against the mock provider, including a rough
+ * throughput comparison between single and batched calls.
+ */
+public class LoyaltyBatchClientTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoyaltyBatchClientTest.class);
+
+    private static final int REQUESTS = 200;
+    private static final int CONCURRENCY = 50;
+
+    private MockLoyaltyApiClient provider;
+
+    @BeforeEach
+    void setUp() {
+        provider = new MockLoyaltyApiClient();
+    }
+
+    @Test
+    void eachCallerGetsItsOwnResult() {
+        LoyaltyBatchClient client = new LoyaltyBatchClient(provider, true, 50, Duration.ofMillis(5));
+
+        List<TransactionResponse> responses = run(i -> client.debitPoints("ACCT-" + (i % 7), 10, "ORDER-" + i));
+
+        assertThat(responses).hasSize(REQUESTS);
+        for (int i = 0; i < REQUESTS; i++) {
+            assertThat(responses.get(i).getReference()).isEqualTo("ORDER-" + i);
+            assertThat(responses.get(i).getAccountId()).isEqualTo("ACCT-" + (i % 7));
+        }
+        assertThat(provider.getProviderCallCount()).isLessThan(REQUESTS);
+    }
+
+    @Test
+    void repeatedReferenceInOneBatchSharesOneResult() {
+        LoyaltyBatchClient client = new LoyaltyBatchClient(provider, true, 50, Duration.ofMillis(5));
+
+        // The first debit goes out at once; the two repeats queue behind it in one batch
+        Tuple3<TransactionResponse, TransactionResponse, TransactionResponse> responses = Mono.zip(
+                client.debitPoints("ACCT-1", 10, "ORDER-0"),
+                client.debitPoints("ACCT-1", 10, "ORDER-1"),
+                client.debitPoints("ACCT-1", 10, "ORDER-1"))
+                .block(Duration.ofSeconds(10));
+
+        assertThat(responses.getT2().getReference()).isEqualTo("ORDER-1");
+        assertThat(responses.getT3()).isSameAs(responses.getT2());
+        assertThat(provider.getProviderCallCount()).isEqualTo(2);
+    }
+
+    @Test
+    void conflictingRequestUnderQueuedReferenceIsRefused() {
+        LoyaltyBatchClient client = new LoyaltyBatchClient(provider, true, 50, Duration.ofMillis(5));
+
+        Mono<TransactionResponse> first = client.debitPoints("ACCT-1", 10, "ORDER-0");
+        Mono<TransactionResponse> queued = client.debitPoints("ACCT-1", 10, "ORDER-1");
+        Mono<TransactionResponse> conflicting = client.debitPoints("ACCT-1", 20, "ORDER-1");
+
+        assertThatThrownBy(() -> Mono.zip(first, queued, conflicting).block(Duration.ofSeconds(10)))
+                .isInstanceOf(LoyaltyApiClient.LoyaltyApiException.class)
+                .hasMessageContaining("Conflicting request");
+    }
+
+    @Test
+    void fallsBackToSingleCallsWithoutBatchEndpoint() {
+        provider.setBatchEndpointEnabled(false);
+        LoyaltyBatchClient client = new LoyaltyBatchClient(provider, true, 50, Duration.ofMillis(5));
+
+        List<TransactionResponse> responses = run(i -> client.creditPoints("ACCT-1", 10, "REFUND-" + i));
+
+        assertThat(responses).hasSize(REQUESTS);
+        assertThat(responses).extracting(TransactionResponse::getReference).doesNotHaveDuplicates();
+        assertThat(client.isBatchSupported()).isFalse();
+        assertThat(provider.getProviderCallCount()).isEqualTo(REQUESTS);
+    }
+
+    @Test
+    void batchingRaisesThroughput() {
+        LoyaltyBatchClient single = new LoyaltyBatchClient(provider, false, 50, Duration.ofMillis(5));
+        long singleNanos = time(() -> run(i -> single.debitPoints("ACCT-1", 1, "SINGLE-" + i)));
+        int singleCalls = provider.getProviderCallCount();
+
+        MockLoyaltyApiClient batchProvider = new MockLoyaltyApiClient();
+        LoyaltyBatchClient batched = new LoyaltyBatchClient(batchProvider, true, 50, Duration.ofMillis(5));
+        long batchedNanos = time(() -> run(i -> batched.debitPoints("ACCT-1", 1, "BATCH-" + i)));
+        int batchedCalls = batchProvider.getProviderCallCount();
+
+        logger.info("Single: {} ops/sec over {} provider calls; batched: {} ops/sec over {} provider calls",
+                opsPerSecond(singleNanos), singleCalls, opsPerSecond(batchedNanos), batchedCalls);
+
+        assertThat(singleCalls).isEqualTo(REQUESTS);
+        assertThat(batchedCalls).isLessThan(REQUESTS / 4);
+    }
+
+    private List<TransactionResponse> run(Function<Integer, Mono<TransactionResponse>> call) {
+        return Flux.range(0, REQUESTS)
+                .flatMapSequential(i -> call.apply(i).subscribeOn(Schedulers.boundedElastic()), CONCURRENCY)
+                .collectList()
+                .block(Duration.ofSeconds(60));
+    }
+
+    private long time(Runnable runnable) {
+        long start = System.nanoTime();
+        runnable.run();
+        return System.nanoTime() - start;
+    }
+
+    private long opsPerSecond(long nanos) {
+        return REQUESTS * 1_000_000_000L / Math.max(1, nanos);
+    }
+}
@@ -0,0 +1,171 @@
+package com.loyaltyportal.service;
+
+import com.loyaltyportal.entity.NotificationOutboxEntry;
+import com.loyaltyportal.entity.OutboxStatus;
+import com.loyaltyportal.repository.NotificationOutboxRepository;
+import com.loyaltyportal.service.notification.EmailTemplates;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Pageable;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * {@link NotificationDispatcher#stop()} waits for the sender threads, so each test
+ * stops the dispatcher before checking the results.
+ */
+public class NotificationDispatcherTest {
+
+    private NotificationOutboxRepository outboxRepository;
+    private JavaMailSender mailSender;
+
+    @BeforeEach
+    void setUp() {
+        outboxRepository = mock(NotificationOutboxRepository.class);
+        mailSender = mock(JavaMailSender.class);
+        Session session = Session.getInstance(new Properties());
+        when(mailSender.createMimeMessage()).thenAnswer(invocation -> new MimeMessage(session));
+    }
+
+    @Test
+    void emailsAreSentInChunksOverOneConnectionEach() {
+        List<NotificationOutboxEntry> entries = givenDue(5);
+        List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> batchSizes.add(invocation.getArguments().length))
+                .when(mailSender).send((MimeMessage[]) any());
+        NotificationDispatcher dispatcher = dispatcher(2);
+
+        assertThat(dispatcher.dispatchBatch()).isEqualTo(5);
+        dispatcher.stop();
+
+        assertThat(batchSizes).containsExactlyInAnyOrder(2, 2, 1);
+        assertThat(entries).extracting(NotificationOutboxEntry::getStatus).containsOnly(OutboxStatus.COMPLETED);
+    }
+
+    @Test
+    void smtpOutageRetriesWholeChunk() {
+        List<NotificationOutboxEntry> entries = givenDue(2);
+        doThrow(new MailSendException("Could not connect to SMTP host")).when(mailSender).send((MimeMessage[]) any());
+        NotificationDispatcher dispatcher = dispatcher(10);
+
+        dispatcher.dispatchBatch();
+        dispatcher.stop();
+
+        assertThat(entries).extracting(NotificationOutboxEntry::getStatus).containsOnly(OutboxStatus.PENDING);
+        assertThat(entries.get(0).getNextAttemptAt()).isAfter(LocalDateTime.now());
+        assertThat(entries.get(0).getLastError()).contains("Could not connect");
+    }
+
+    @Test
+    void onlyRejectedMessagesOfAChunkAreRetried() {
+        List<NotificationOutboxEntry> entries = givenDue(2);
+        doAnswer(invocation -> {
+            for (Object argument : invocation.getArguments()) {
+                MimeMessage message = (MimeMessage) argument;
+                if (message.getAllRecipients()[0].toString().equals("manager1@example.com")) {
+                    throw new MailSendException(Map.of(message, new MessagingException("550 mailbox unavailable")));
+                }
+            }
+            return null;
+        }).when(mailSender).send((MimeMessage[]) any());
+        NotificationDispatcher dispatcher = dispatcher(10);
+
+        dispatcher.dispatchBatch();
+        dispatcher.stop();
+
+        assertThat(entries.get(0).getStatus()).isEqualTo(OutboxStatus.COMPLETED);
+        assertThat(entries.get(1).getStatus()).isEqualTo(OutboxStatus.PENDING);
+        assertThat(entries.get(1).getLastError()).contains("mailbox unavailable");
+    }
+
+    @Test
+    void digestLinesAreMergedIntoOneEmail() throws Exception {
+        List<NotificationOutboxEntry> entries = givenDue(3);
+        for (NotificationOutboxEntry entry : entries) {
+            entry.holdForDigest("SHIPPING|ORD-1|manager@example.com", "ORD-1", "Account Manager",
+                    LocalDateTime.now());
+        }
+        when(outboxRepository.findPendingByCoalesceKeyIn(any())).thenReturn(entries);
+        List<MimeMessage> sentMessages = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> {
+            for (Object message : invocation.getArguments()) {
+                sentMessages.add((MimeMessage) message);
+            }
+            return null;
+        }).when(mailSender).send((MimeMessage[]) any());
+        NotificationDispatcher dispatcher = dispatcher(10);
+
+        dispatcher.dispatchBatch();
+        dispatcher.stop();
+
+        assertThat(sentMessages).hasSize(1);
+        assertThat(sentMessages.get(0).getSubject()).isEqualTo("3 Items Shipped - ORD-1");
+        assertThat(entries).extracting(NotificationOutboxEntry::getStatus).containsOnly(OutboxStatus.COMPLETED);
+    }
+
+    @Test
+    void queueCapacityLimitsWhatIsClaimed() {
+        NotificationDispatcher dispatcher = new NotificationDispatcher(outboxRepository, mailSender, new EmailTemplates(),
+                mock(PlatformTransactionManager.class), new SimpleMeterRegistry(),
+                true, "noreply@example.com", 100, 1, 2, 5, 0, 3,
+                Duration.ofSeconds(30), Duration.ofMinutes(30), Duration.ofMinutes(5));
+        givenDue(0);
+
+        dispatcher.dispatchBatch();
+        dispatcher.stop();
+
+        ArgumentCaptor<Pageable> page = ArgumentCaptor.forClass(Pageable.class);
+        verify(outboxRepository).findDueForDispatch(any(), page.capture());
+        // Two queued chunks of five messages
+        assertThat(page.getValue().getPageSize()).isEqualTo(10);
+    }
+
+    private NotificationDispatcher dispatcher(int messagesPerConnection) {
+        return new NotificationDispatcher(outboxRepository, mailSender, new EmailTemplates(),
+                mock(PlatformTransactionManager.class), new SimpleMeterRegistry(),
+                true, "noreply@example.com", 100, 2, 16, messagesPerConnection, 0, 3,
+                Duration.ofSeconds(30), Duration.ofMinutes(30), Duration.ofMinutes(5));
+    }
+
+    private List<NotificationOutboxEntry> givenDue(int count) {
+        List<NotificationOutboxEntry> entries = Stream.iterate(0, i -> i + 1).limit(count)
+                .map(i -> {
+                    NotificationOutboxEntry entry = new NotificationOutboxEntry("SHIPPING",
+                            "manager" + i + "@example.com", "Item Shipped - ORD-" + i, "Your item has been shipped");
+                    entry.setId(UUID.randomUUID());
+                    entry.setNextAttemptAt(LocalDateTime.now());
+                    return entry;
+                })
+                .toList();
+        when(outboxRepository.findDueForDispatch(any(), any())).thenReturn(entries);
+        when(outboxRepository.findAllById(any())).thenAnswer(invocation -> {
+            Collection<UUID> ids = invocation.getArgument(0);
+            return entries.stream().filter(entry -> ids.contains(entry.getId())).toList();
+        });
+        return entries;
+    }
+}
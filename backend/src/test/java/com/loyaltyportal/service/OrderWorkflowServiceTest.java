@@ -0,0 +1,157 @@
+package com.loyaltyportal.service;
+
+import com.loyaltyportal.entity.FulfillmentStatus;
+import com.loyaltyportal.entity.OrderItem;
+import com.loyaltyportal.entity.OrderStatus;
+import com.loyaltyportal.entity.Product;
+import com.loyaltyportal.entity.ProductType;
+import com.loyaltyportal.entity.RedemptionOrder;
+import com.loyaltyportal.repository.FulfillmentOutboxRepository;
+import com.loyaltyportal.repository.OrderItemRepository;
+import com.loyaltyportal.repository.RedemptionOrderRepository;
+import com.loyaltyportal.service.VirtualFulfillmentClient.VirtualFulfillmentResponse;
+import com.loyaltyportal.service.notification.ItemEmailView;
+import com.loyaltyportal.service.notification.OrderEmailView;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Completing the last item of an order releases the order's held digest lines, so the
+ * last item's own line has to be queued before the order completes. Completion itself
+ * is decided by the order's item counters, not by reading the items.
+ */
+public class OrderWorkflowServiceTest {
+
+    private RedemptionOrderRepository orderRepository;
+    private OrderItemRepository orderItemRepository;
+    private NotificationService notificationService;
+    private CompanyPointsSummaryService summaryService;
+    private OrderWorkflowService workflowService;
+
+    private RedemptionOrder order;
+    private OrderEmailView orderView;
+
+    @BeforeEach
+    void setUp() {
+        orderRepository = mock(RedemptionOrderRepository.class);
+        orderItemRepository = mock(OrderItemRepository.class);
+        notificationService = mock(NotificationService.class);
+        summaryService = mock(CompanyPointsSummaryService.class);
+        workflowService = new OrderWorkflowService(orderRepository, orderItemRepository,
+                mock(InventoryService.class), notificationService,
+                mock(FulfillmentOutboxRepository.class), summaryService);
+
+        order = new RedemptionOrder();
+        order.setId(UUID.randomUUID());
+        order.setStatus(OrderStatus.PROCESSING);
+        when(orderRepository.markCompletedIfAllItemsDone(eq(order.getId()), any())).thenReturn(1);
+        orderView = new OrderEmailView("Account Manager", "manager@example.com", "ORD-1", "Acme",
+                100, 1, null, null, null);
+        when(orderRepository.findEmailViews(List.of(order.getId()))).thenReturn(List.of(orderView));
+    }
+
+    @Test
+    void lastDeliveredItemIsQueuedBeforeTheOrderCompletes() {
+        OrderItem item = item(ProductType.PHYSICAL);
+        item.markAsShipped("TRACK-1");
+
+        ItemEmailView itemView = emailView(item);
+
+        workflowService.markItemAsDelivered(item.getId());
+
+        InOrder inOrder = inOrder(notificationService);
+        inOrder.verify(notificationService).sendDeliveryNotification(itemView);
+        inOrder.verify(notificationService).sendOrderCompletionNotification(orderView);
+    }
+
+    @Test
+    void completedItemIsCountedAndCompletesTheOrderOnce() {
+        OrderItem item = item(ProductType.VIRTUAL);
+        emailView(item);
+
+        workflowService.completeVirtualFulfillment(item.getId(), new VirtualFulfillmentResponse("VF-1", "SUCCESS", "ok"));
+
+        verify(orderRepository).incrementCompletedItems(order.getId());
+        assertThat(order.getStatus()).isEqualTo(OrderStatus.COMPLETED);
+        assertThat(order.getCompletedAt()).isNotNull();
+        verify(summaryService).recordOrderStatusChange(order, OrderStatus.PROCESSING);
+        verify(notificationService).sendOrderCompletionNotification(orderView);
+        verify(orderItemRepository, never()).findByOrderId(any());
+
+        // A duplicate result for the fulfilled item is not counted again
+        workflowService.completeVirtualFulfillment(item.getId(), new VirtualFulfillmentResponse("VF-1", "SUCCESS", "ok"));
+
+        verify(orderRepository, times(1)).incrementCompletedItems(order.getId());
+        verify(notificationService, times(1)).sendOrderCompletionNotification(orderView);
+    }
+
+    @Test
+    void orderWithItemsLeftStaysProcessing() {
+        when(orderRepository.markCompletedIfAllItemsDone(eq(order.getId()), any())).thenReturn(0);
+        OrderItem item = item(ProductType.VIRTUAL);
+        emailView(item);
+
+        workflowService.completeVirtualFulfillment(item.getId(), new VirtualFulfillmentResponse("VF-1", "SUCCESS", "ok"));
+
+        verify(orderRepository).incrementCompletedItems(order.getId());
+        assertThat(order.getStatus()).isEqualTo(OrderStatus.PROCESSING);
+        verify(summaryService, never()).recordOrderStatusChange(any(), any());
+        verify(notificationService, never()).sendOrderCompletionNotification(any(OrderEmailView.class));
+    }
+
+    @Test
+    void failedItemIsCountedOnce() {
+        OrderItem item = item(ProductType.VIRTUAL);
+
+        workflowService.failVirtualFulfillment(item.getId(), "provider down");
+        workflowService.failVirtualFulfillment(item.getId(), "provider down");
+
+        assertThat(item.getFulfillmentStatus()).isEqualTo(FulfillmentStatus.FAILED);
+        verify(orderRepository, times(1)).incrementFailedItems(order.getId());
+        verify(orderRepository, never()).incrementCompletedItems(any());
+        verify(orderRepository, never()).markCompletedIfAllItemsDone(any(), any());
+    }
+
+    @Test
+    void lastVirtualItemIsQueuedBeforeTheOrderCompletes() {
+        OrderItem item = item(ProductType.VIRTUAL);
+        ItemEmailView itemView = emailView(item);
+        VirtualFulfillmentResponse response = new VirtualFulfillmentResponse("VF-1", "SUCCESS", "Delivered");
+
+        workflowService.completeVirtualFulfillment(item.getId(), response);
+
+        InOrder inOrder = inOrder(notificationService);
+        inOrder.verify(notificationService).sendVirtualFulfillmentNotification(itemView);
+        inOrder.verify(notificationService).sendOrderCompletionNotification(orderView);
+    }
+
+    private OrderItem item(ProductType type) {
+        OrderItem item = new OrderItem(order, new Product("SKU-1", "Item", type, 100), 1, 100);
+        item.setId(UUID.randomUUID());
+        item.setFulfillmentStatus(FulfillmentStatus.PENDING);
+        when(orderItemRepository.findByIdForUpdate(item.getId())).thenReturn(Optional.of(item));
+        return item;
+    }
+
+    private ItemEmailView emailView(OrderItem item) {
+        ItemEmailView view = new ItemEmailView("Account Manager", "manager@example.com", "ORD-1", null,
+                "Item", "SKU-1", 1, null, null, null);
+        when(orderItemRepository.findEmailViews(List.of(item.getId()))).thenReturn(List.of(view));
+        return view;
+    }
+}
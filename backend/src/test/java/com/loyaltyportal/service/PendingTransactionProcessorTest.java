@@ -0,0 +1,170 @@
+package com.loyaltyportal.service;
+
+import com.loyaltyportal.dto.TransactionResponse;
+import com.loyaltyportal.entity.Company;
+import com.loyaltyportal.entity.LoyaltyTransaction;
+import com.loyaltyportal.entity.OrderStatus;
+import com.loyaltyportal.entity.RedemptionOrder;
+import com.loyaltyportal.entity.TransactionStatus;
+import com.loyaltyportal.entity.TransactionType;
+import com.loyaltyportal.repository.LoyaltyTransactionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PendingTransactionProcessorTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 3, 1, 9, 0);
+
+    private LoyaltyTransactionRepository transactionRepository;
+    private LoyaltyBatchClient loyaltyClient;
+    private OrderWorkflowService workflowService;
+    private PendingTransactionProcessor processor;
+
+    @BeforeEach
+    void setUp() {
+        transactionRepository = mock(LoyaltyTransactionRepository.class);
+        loyaltyClient = mock(LoyaltyBatchClient.class);
+        workflowService = mock(OrderWorkflowService.class);
+        processor = new PendingTransactionProcessor(transactionRepository, loyaltyClient,
+                mock(CompanyPointsSummaryService.class), workflowService, mock(PlatformTransactionManager.class),
+                new SimpleMeterRegistry(), true, 2, 4,
+                Duration.ofSeconds(10), Duration.ofSeconds(30), Duration.ofMinutes(30), Duration.ofDays(35));
+    }
+
+    @Test
+    void backlogIsWalkedInKeysetChunks() {
+        LoyaltyTransaction first = transaction(0, TransactionStatus.PENDING);
+        LoyaltyTransaction second = transaction(1, TransactionStatus.FAILED);
+        LoyaltyTransaction third = transaction(2, TransactionStatus.PENDING);
+        when(transactionRepository.findNextToProcess(any(), any(), any(), any(), any()))
+                .thenReturn(List.of(first, second))
+                .thenReturn(List.of(third));
+        when(loyaltyClient.debitPoints(anyString(), anyInt(), anyString())).thenReturn(Mono.just(success()));
+
+        assertThat(processor.drain()).isEqualTo(3);
+
+        verify(transactionRepository).findNextToProcess(any(), any(), eq(NOW.plusSeconds(1)), eq(second.getId()),
+                eq(PageRequest.of(0, 2)));
+        assertThat(List.of(first, second, third)).extracting(LoyaltyTransaction::getStatus)
+                .containsOnly(TransactionStatus.COMPLETED);
+        assertThat(List.of(first, second, third)).extracting(LoyaltyTransaction::getNextAttemptAt).containsOnlyNulls();
+        verify(loyaltyClient).debitPoints(eq("ACME001"), eq(100), eq("ORDER-ORD-0"));
+    }
+
+    @Test
+    void failedCallIsRescheduledAndGivesUpAfterMaxRetries() {
+        LoyaltyTransaction retryable = transaction(0, TransactionStatus.PENDING);
+        LoyaltyTransaction lastAttempt = transaction(1, TransactionStatus.FAILED);
+        lastAttempt.setRetryCount(PendingTransactionProcessor.MAX_RETRIES - 1);
+        when(transactionRepository.findNextToProcess(any(), any(), any(), any(), any()))
+                .thenReturn(List.of(retryable, lastAttempt))
+                .thenReturn(List.of());
+        when(loyaltyClient.debitPoints(anyString(), anyInt(), anyString()))
+                .thenReturn(Mono.error(new IllegalStateException("provider unavailable")));
+
+        LocalDateTime before = LocalDateTime.now();
+        processor.drain();
+
+        assertThat(retryable.getStatus()).isEqualTo(TransactionStatus.FAILED);
+        assertThat(retryable.getRetryCount()).isEqualTo(1);
+        assertThat(retryable.getErrorMessage()).contains("provider unavailable");
+        assertThat(retryable.getNextAttemptAt()).isBetween(before.plusSeconds(15), LocalDateTime.now().plusSeconds(30));
+        assertThat(lastAttempt.getErrorMessage()).startsWith("Max retries exceeded");
+        assertThat(lastAttempt.getNextAttemptAt()).isNull();
+    }
+
+    @Test
+    void debitOfFailedOrderIsNotSentAgain() {
+        // The debit was refused, so the order failed; the row is still due, as rows
+        // recorded before failed debits stopped being scheduled are
+        LoyaltyTransaction refused = transaction(0, TransactionStatus.FAILED);
+        refused.getOrder().setStatus(OrderStatus.FAILED);
+        LoyaltyTransaction cancelled = transaction(1, TransactionStatus.FAILED);
+        cancelled.getOrder().setStatus(OrderStatus.CANCELLED);
+        when(transactionRepository.findNextToProcess(any(), any(), any(), any(), any()))
+                .thenReturn(List.of(refused, cancelled))
+                .thenReturn(List.of());
+
+        processor.drain();
+
+        verify(loyaltyClient, never()).debitPoints(anyString(), anyInt(), anyString());
+        assertThat(List.of(refused, cancelled)).extracting(LoyaltyTransaction::getStatus)
+                .containsOnly(TransactionStatus.FAILED);
+        assertThat(List.of(refused, cancelled)).extracting(LoyaltyTransaction::getNextAttemptAt).containsOnlyNulls();
+        assertThat(refused.getErrorMessage()).isEqualTo("Order is FAILED, debit not retried");
+    }
+
+    @Test
+    void retriedDebitMovesItsPendingOrderOn() {
+        LoyaltyTransaction pendingOrder = transaction(0, TransactionStatus.FAILED);
+        pendingOrder.getOrder().setStatus(OrderStatus.PENDING);
+        LoyaltyTransaction processingOrder = transaction(1, TransactionStatus.PENDING);
+        processingOrder.getOrder().setStatus(OrderStatus.PROCESSING);
+        when(transactionRepository.findNextToProcess(any(), any(), any(), any(), any()))
+                .thenReturn(List.of(pendingOrder, processingOrder))
+                .thenReturn(List.of());
+        when(loyaltyClient.debitPoints(anyString(), anyInt(), anyString())).thenReturn(Mono.just(success()));
+
+        processor.drain();
+
+        assertThat(pendingOrder.getStatus()).isEqualTo(TransactionStatus.COMPLETED);
+        verify(workflowService).startFulfillment(pendingOrder.getOrder());
+        verify(workflowService, never()).startFulfillment(processingOrder.getOrder());
+    }
+
+    @Test
+    void manualAttemptFollowsTheRetrySchedule() {
+        LoyaltyTransaction transaction = transaction(0, TransactionStatus.FAILED);
+        when(loyaltyClient.debitPoints(anyString(), anyInt(), anyString()))
+                .thenReturn(Mono.error(new IllegalStateException("provider unavailable")));
+
+        assertThat(processor.attemptNow(transaction)).isFalse();
+        assertThat(transaction.getRetryCount()).isEqualTo(1);
+        assertThat(transaction.getNextAttemptAt()).isAfter(LocalDateTime.now());
+        assertThat(transaction.canRetry()).isTrue();
+
+        transaction.setRetryCount(PendingTransactionProcessor.MAX_RETRIES - 1);
+        assertThat(processor.attemptNow(transaction)).isFalse();
+        assertThat(transaction.getErrorMessage()).startsWith("Max retries exceeded");
+        assertThat(transaction.getNextAttemptAt()).isNull();
+        assertThat(transaction.canRetry()).isFalse();
+    }
+
+    private LoyaltyTransaction transaction(int index, TransactionStatus status) {
+        Company company = new Company("Acme", "ACME001", "GOLD");
+        RedemptionOrder order = new RedemptionOrder();
+        order.setOrderNumber("ORD-" + index);
+        LoyaltyTransaction transaction = new LoyaltyTransaction(order, company, 100, TransactionType.DEBIT);
+        transaction.setId(UUID.randomUUID());
+        transaction.setCreatedAt(NOW.plusSeconds(index));
+        transaction.setNextAttemptAt(NOW.plusSeconds(index));
+        transaction.setStatus(status);
+        return transaction;
+    }
+
+    private TransactionResponse success() {
+        TransactionResponse response = new TransactionResponse();
+        response.setTransactionId("TXN-1");
+        response.setStatus("SUCCESS");
+        return response;
+    }
+}
@@ -0,0 +1,80 @@
+package com.loyaltyportal.service;
+
+import com.loyaltyportal.dto.PickLine;
+import com.loyaltyportal.entity.FulfillmentStatus;
+import com.loyaltyportal.repository.OrderItemRepository;
+import com.loyaltyportal.service.PickListService.PickStop;
+import com.loyaltyportal.service.PickListService.PickWave;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PickListServiceTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 3, 1, 9, 0);
+
+    private OrderItemRepository orderItemRepository;
+    private PickListService pickListService;
+
+    @BeforeEach
+    void setUp() {
+        orderItemRepository = mock(OrderItemRepository.class);
+        pickListService = new PickListService(orderItemRepository, 3, 10);
+    }
+
+    @Test
+    void itemsAreGroupedIntoStopsInLocationOrder() {
+        when(orderItemRepository.findPickLines(eq(FulfillmentStatus.PROCESSING), any(), any(), any()))
+                .thenReturn(List.of(
+                        line("ORD-1", "MUG", "B-02", 1),
+                        line("ORD-2", "MUG", "B-02", 2),
+                        line("ORD-2", "TEE", null, 1)));
+
+        PickWave wave = pickListService.buildWave(null, null);
+
+        assertThat(wave.getStops()).extracting(PickStop::getLocation)
+                .containsExactly("B-02", PickListService.UNASSIGNED_LOCATION);
+        assertThat(wave.getStops().get(0).getTotalQuantity()).isEqualTo(3);
+        assertThat(wave.getStops().get(0).getAllocations()).hasSize(2);
+        assertThat(wave.getOrderNumbers()).containsExactly("ORD-1", "ORD-2");
+        // A full wave means there may be more
+        assertThat(wave.getNextCursor()).isNotNull();
+    }
+
+    @Test
+    void nextCursorResumesAfterLastItem() {
+        PickLine last = line("ORD-3", "MUG", "A-01", 1);
+        String cursor = PickListService.encodeCursor(last.getCreatedAt(), last.getItemId());
+        when(orderItemRepository.findPickLines(any(), any(), any(), any())).thenReturn(List.of());
+
+        PickWave wave = pickListService.buildWave(cursor, 50);
+
+        verify(orderItemRepository).findPickLines(FulfillmentStatus.PROCESSING, last.getCreatedAt(),
+                last.getItemId(), PageRequest.of(0, 10));
+        assertThat(wave.getNextCursor()).isNull();
+        assertThat(wave.getStops()).isEmpty();
+    }
+
+    @Test
+    void malformedCursorIsRejected() {
+        assertThatThrownBy(() -> pickListService.buildWave("not-a-cursor", null))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private PickLine line(String orderNumber, String sku, String location, int quantity) {
+        return new PickLine(UUID.randomUUID(), NOW, UUID.randomUUID(), orderNumber,
+                sku, sku + " product", location, quantity);
+    }
+}
@@ -0,0 +1,173 @@
+package com.loyaltyportal.service;
+
+import com.loyaltyportal.dto.LedgerEntry;
+import com.loyaltyportal.dto.StatementEntry;
+import com.loyaltyportal.entity.Company;
+import com.loyaltyportal.entity.LoyaltyTransaction;
+import com.loyaltyportal.entity.TransactionStatus;
+import com.loyaltyportal.entity.TransactionType;
+import com.loyaltyportal.repository.LoyaltyTransactionRepository;
+import com.loyaltyportal.service.ReconciliationService.Mismatch;
+import com.loyaltyportal.service.ReconciliationService.MismatchKind;
+import com.loyaltyportal.service.ReconciliationService.Summary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.transaction.PlatformTransactionManager;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ReconciliationServiceTest {
+
+    private static final LocalDateTime FROM = LocalDateTime.of(2024, 3, 1, 0, 0);
+    private static final LocalDateTime TO = FROM.plusDays(1);
+    private static final LocalDateTime NOON = FROM.plusHours(12);
+
+    private LoyaltyTransactionRepository transactionRepository;
+    private NamedParameterJdbcTemplate jdbcTemplate;
+    private LoyaltyApiClient loyaltyApiClient;
+    private CompanyPointsSummaryService summaryService;
+    private ReconciliationService service;
+
+    @BeforeEach
+    void setUp() {
+        transactionRepository = mock(LoyaltyTransactionRepository.class);
+        jdbcTemplate = mock(NamedParameterJdbcTemplate.class);
+        loyaltyApiClient = mock(LoyaltyApiClient.class);
+        summaryService = mock(CompanyPointsSummaryService.class);
+        service = new ReconciliationService(transactionRepository, jdbcTemplate, loyaltyApiClient, summaryService,
+                mock(PlatformTransactionManager.class), new SimpleMeterRegistry(), true, 2, 2,
+                Duration.ofMinutes(5));
+    }
+
+    @Test
+    void ledgerIsReadInKeysetChunksAndMergedWithTheStatement() {
+        LedgerEntry a = ours("TXN-A", TransactionType.DEBIT, 100, NOON);
+        LedgerEntry b = ours("TXN-B", TransactionType.REFUND, 50, NOON);
+        LedgerEntry c = ours("TXN-C", TransactionType.DEBIT, 75, NOON);
+        ledger("", a, b);
+        ledger("TXN-B", c);
+        statement(theirs("TXN-A", "DEBIT", 100, NOON), theirs("TXN-B", "CREDIT", 50, NOON),
+                theirs("TXN-C", "DEBIT", 75, NOON));
+
+        List<Mismatch> mismatches = new ArrayList<>();
+        Summary summary = service.reconcile(FROM, TO, false, mismatches::add);
+
+        assertThat(mismatches).isEmpty();
+        assertThat(summary.getMatched()).isEqualTo(3);
+        verify(jdbcTemplate).query(anyString(), argThat((SqlParameterSource params) ->
+                        FROM.minusMinutes(5).equals(params.getValue("from"))
+                                && TO.plusMinutes(5).equals(params.getValue("to"))
+                                && "TXN-B".equals(params.getValue("afterExternalId"))
+                                && Integer.valueOf(2).equals(params.getValue("limit"))),
+                any(RowMapper.class));
+    }
+
+    @Test
+    void differencesAreReportedByKind() {
+        ledger("",
+                ours("TXN-A", TransactionType.DEBIT, 100, NOON),
+                ours("TXN-C", TransactionType.DEBIT, 75, NOON));
+        statement(theirs("TXN-B", "CREDIT", 20, NOON), theirs("TXN-C", "DEBIT", 80, NOON));
+
+        List<Mismatch> mismatches = new ArrayList<>();
+        Summary summary = service.reconcile(FROM, TO, false, mismatches::add);
+
+        assertThat(mismatches).extracting(Mismatch::getKind).containsExactly(
+                MismatchKind.MISSING_AT_PROVIDER, MismatchKind.MISSING_LOCALLY, MismatchKind.AMOUNT_MISMATCH);
+        assertThat(mismatches.get(2).getOurPoints()).isEqualTo(75);
+        assertThat(mismatches.get(2).getProviderPoints()).isEqualTo(80);
+        assertThat(summary.getMismatchCount()).isEqualTo(3);
+        assertThat(summary.getMatched()).isZero();
+    }
+
+    @Test
+    void unmatchedRowsInTheGraceWindowBelongToTheAdjacentRun() {
+        LocalDateTime justBefore = FROM.minusMinutes(2);
+        ledger("",
+                ours("TXN-A", TransactionType.DEBIT, 100, justBefore),
+                ours("TXN-B", TransactionType.DEBIT, 100, FROM.plusSeconds(1)));
+        // Stamped just before midnight by the provider, just after by us
+        statement(theirs("TXN-B", "DEBIT", 100, FROM.minusSeconds(1)), theirs("TXN-C", "DEBIT", 10, justBefore));
+
+        List<Mismatch> mismatches = new ArrayList<>();
+        Summary summary = service.reconcile(FROM, TO, false, mismatches::add);
+
+        assertThat(mismatches).isEmpty();
+        assertThat(summary.getMatched()).isEqualTo(1);
+    }
+
+    @Test
+    void transactionsMissingAtTheProviderCanBeReopened() {
+        UUID id = UUID.randomUUID();
+        ledger("", new LedgerEntry(id, "TXN-A", TransactionType.DEBIT, 100, "ACME001", NOON));
+        statement();
+        LoyaltyTransaction transaction = completedTransaction(id);
+        when(transactionRepository.findById(id)).thenReturn(Optional.of(transaction));
+
+        Summary summary = service.reconcile(FROM, TO, true, mismatch -> {});
+
+        assertThat(summary.getRetriesEnqueued()).isEqualTo(1);
+        assertThat(transaction.getStatus()).isEqualTo(TransactionStatus.PENDING);
+        assertThat(transaction.getNextAttemptAt()).isNotNull();
+        verify(summaryService).recordTransactionReopened(transaction);
+    }
+
+    @Test
+    void outOfOrderInputAbortsTheRun() {
+        ledger("");
+        statement(theirs("TXN-B", "DEBIT", 1, NOON), theirs("TXN-A", "DEBIT", 1, NOON));
+
+        assertThatThrownBy(() -> service.reconcile(FROM, TO, false, mismatch -> {}))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("statement");
+    }
+
+    private void statement(StatementEntry... entries) {
+        when(loyaltyApiClient.streamStatement(any(), any(), anyInt())).thenReturn(Flux.just(entries));
+    }
+
+    private void ledger(String afterExternalId, LedgerEntry... rows) {
+        when(jdbcTemplate.query(anyString(),
+                argThat((SqlParameterSource params) ->
+                        params != null && afterExternalId.equals(params.getValue("afterExternalId"))),
+                any(RowMapper.class))).thenReturn(List.of(rows));
+    }
+
+    private static LedgerEntry ours(String externalId, TransactionType type, int points, LocalDateTime at) {
+        return new LedgerEntry(UUID.randomUUID(), externalId, type, points, "ACME001", at);
+    }
+
+    private static StatementEntry theirs(String transactionId, String type, int points, LocalDateTime at) {
+        return new StatementEntry(transactionId, "ACME001", type, points, "REF-" + transactionId, at);
+    }
+
+    private static LoyaltyTransaction completedTransaction(UUID id) {
+        Company company = new Company("Acme", "ACME001", "GOLD");
+        company.setId(UUID.randomUUID());
+        LoyaltyTransaction transaction = new LoyaltyTransaction(null, company, 100, TransactionType.DEBIT);
+        transaction.setId(id);
+        transaction.markAsProcessing();
+        transaction.markAsCompleted("TXN-A");
+        return transaction;
+    }
+}
@@ -0,0 +1,142 @@
+package com.loyaltyportal.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.loyaltyportal.entity.OrderStatus;
+import com.loyaltyportal.entity.RedemptionOrder;
+import com.loyaltyportal.repository.OrderItemRepository;
+import com.loyaltyportal.repository.RedemptionOrderRepository;
+import com.loyaltyportal.service.ShipmentIngestionService.Format;
+import com.loyaltyportal.service.ShipmentIngestionService.IngestionSummary;
+import com.loyaltyportal.service.ShipmentIngestionService.RowResult;
+import com.loyaltyportal.service.notification.ItemEmailView;
+import com.loyaltyportal.service.notification.OrderEmailView;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * A manifest chunk applies its rows, completes the orders it finishes and queues their
+ * emails in one transaction.
+ */
+public class ShipmentIngestionServiceTest {
+
+    private static final String HEADER = "order_number,sku,tracking_number,status\n";
+
+    private NamedParameterJdbcTemplate jdbcTemplate;
+    private PlatformTransactionManager transactionManager;
+    private RedemptionOrderRepository orderRepository;
+    private OrderItemRepository orderItemRepository;
+    private NotificationService notificationService;
+    private CompanyPointsSummaryService summaryService;
+    private ShipmentIngestionService ingestionService;
+
+    private final UUID orderId = UUID.randomUUID();
+    private final UUID itemId = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        jdbcTemplate = mock(NamedParameterJdbcTemplate.class);
+        transactionManager = mock(PlatformTransactionManager.class);
+        orderRepository = mock(RedemptionOrderRepository.class);
+        orderItemRepository = mock(OrderItemRepository.class);
+        notificationService = mock(NotificationService.class);
+        summaryService = mock(CompanyPointsSummaryService.class);
+        ingestionService = new ShipmentIngestionService(jdbcTemplate, transactionManager, orderRepository,
+                orderItemRepository, notificationService, summaryService, new ObjectMapper(), 500);
+
+        // One processing physical item, as read by the chunk's state query
+        ResultSet state = mock(ResultSet.class);
+        when(state.getObject("id", UUID.class)).thenReturn(itemId);
+        when(state.getObject("order_id", UUID.class)).thenReturn(orderId);
+        when(state.getString("fulfillment_status")).thenReturn("PROCESSING");
+        when(state.getString("product_type")).thenReturn("PHYSICAL");
+        when(state.getString("order_number")).thenReturn("ORD-1");
+        when(state.getString("sku")).thenReturn("SKU-1");
+        when(jdbcTemplate.query(anyString(), any(SqlParameterSource.class), any(RowMapper.class)))
+                .thenAnswer(invocation -> List.of(invocation.<RowMapper<?>>getArgument(2).mapRow(state, 0)));
+        when(jdbcTemplate.batchUpdate(anyString(), any(SqlParameterSource[].class)))
+                .thenAnswer(invocation -> {
+                    int[] counts = new int[invocation.<SqlParameterSource[]>getArgument(1).length];
+                    Arrays.fill(counts, 1);
+                    return counts;
+                });
+    }
+
+    @Test
+    void deliveredManifestCompletesTheOrderAndQueuesEmailsBeforeCommit() throws IOException {
+        RedemptionOrder order = new RedemptionOrder();
+        order.setId(orderId);
+        order.setStatus(OrderStatus.PROCESSING);
+        when(orderRepository.markCompletedIfAllItemsDone(eq(orderId), any())).thenReturn(1);
+        when(orderRepository.findAllById(List.of(orderId))).thenReturn(List.of(order));
+        ItemEmailView itemView = new ItemEmailView("Account Manager", "manager@example.com", "ORD-1", null,
+                "Item", "SKU-1", 1, "1Z999", null, null);
+        when(orderItemRepository.findEmailViews(List.of(itemId))).thenReturn(List.of(itemView));
+        OrderEmailView orderView = new OrderEmailView("Account Manager", "manager@example.com", "ORD-1", "Acme",
+                100, 1, null, null, null);
+        when(orderRepository.findEmailViews(List.of(orderId))).thenReturn(List.of(orderView));
+
+        List<RowResult> results = new ArrayList<>();
+        IngestionSummary summary = ingest(HEADER +
+                "ORD-1,SKU-1,1Z999,SHIPPED\n" +
+                "ORD-1,SKU-1,,DELIVERED\n" +
+                "ORD-1,UNKNOWN-SKU,1Z998,SHIPPED\n", results);
+
+        assertThat(summary.getRows()).isEqualTo(3);
+        assertThat(summary.getApplied()).isEqualTo(2);
+        assertThat(results).extracting(RowResult::getResult).containsExactly("APPLIED", "APPLIED", "FAILED");
+        assertThat(order.getStatus()).isEqualTo(OrderStatus.COMPLETED);
+        verify(summaryService).recordOrderStatusChange(order, OrderStatus.PROCESSING);
+
+        InOrder inOrder = inOrder(notificationService, transactionManager);
+        inOrder.verify(notificationService).sendShippingNotification(itemView);
+        inOrder.verify(notificationService).sendDeliveryNotification(itemView);
+        inOrder.verify(notificationService).sendOrderCompletionNotification(orderView);
+        inOrder.verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void failedChunkQueuesNoEmails() throws IOException {
+        when(jdbcTemplate.batchUpdate(anyString(), any(SqlParameterSource[].class)))
+                .thenThrow(new QueryTimeoutException("statement timeout"));
+
+        List<RowResult> results = new ArrayList<>();
+        IngestionSummary summary = ingest(HEADER + "ORD-1,SKU-1,1Z999,SHIPPED\n", results);
+
+        assertThat(summary.getFailed()).isEqualTo(1);
+        assertThat(results.get(0).getMessage()).contains("statement timeout");
+        verify(transactionManager).rollback(any());
+        verify(transactionManager, never()).commit(any());
+        verifyNoInteractions(notificationService);
+    }
+
+    private IngestionSummary ingest(String manifest, List<RowResult> results) throws IOException {
+        return ingestionService.ingest(new ByteArrayInputStream(manifest.getBytes(StandardCharsets.UTF_8)),
+                Format.CSV, results::addAll);
+    }
+}
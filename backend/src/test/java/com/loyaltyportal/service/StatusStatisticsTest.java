@@ -0,0 +1,76 @@
+package com.loyaltyportal.service;
+
+import com.loyaltyportal.entity.OrderStatus;
+import com.loyaltyportal.entity.TransactionStatus;
+import com.loyaltyportal.repository.LoyaltyTransactionRepository;
+import com.loyaltyportal.repository.RedemptionOrderRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class StatusStatisticsTest {
+
+    private RedemptionOrderRepository orderRepository;
+    private LoyaltyTransactionRepository transactionRepository;
+    private StatusStatistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        orderRepository = mock(RedemptionOrderRepository.class);
+        transactionRepository = mock(LoyaltyTransactionRepository.class);
+        statistics = new StatusStatistics(orderRepository, transactionRepository);
+    }
+
+    @Test
+    void countsComeFromOneGroupedQueryPerTable() {
+        when(orderRepository.countGroupedByStatus()).thenReturn(List.of(
+                new Object[] {OrderStatus.COMPLETED, 7L},
+                new Object[] {OrderStatus.PENDING, 3L}));
+        when(transactionRepository.countGroupedByStatus()).thenReturn(List.<Object[]>of(
+                new Object[] {TransactionStatus.FAILED, 2L}));
+
+        StatusStatistics.Snapshot snapshot = statistics.current();
+
+        assertThat(snapshot.getTotalOrders()).isEqualTo(10);
+        assertThat(snapshot.orders(OrderStatus.COMPLETED)).isEqualTo(7);
+        assertThat(snapshot.orders(OrderStatus.CANCELLED)).isZero();
+        assertThat(snapshot.getTotalTransactions()).isEqualTo(2);
+        assertThat(snapshot.transactions(TransactionStatus.FAILED)).isEqualTo(2);
+    }
+
+    @Test
+    void readsAreServedFromTheSnapshotUntilRefreshed() {
+        when(orderRepository.countGroupedByStatus())
+                .thenReturn(List.<Object[]>of(new Object[] {OrderStatus.PENDING, 1L}))
+                .thenReturn(List.<Object[]>of(new Object[] {OrderStatus.PENDING, 2L}));
+        when(transactionRepository.countGroupedByStatus()).thenReturn(List.of());
+
+        statistics.current();
+        statistics.current();
+        assertThat(statistics.current().orders(OrderStatus.PENDING)).isEqualTo(1);
+        verify(orderRepository, times(1)).countGroupedByStatus();
+
+        statistics.refresh();
+        assertThat(statistics.current().orders(OrderStatus.PENDING)).isEqualTo(2);
+    }
+
+    @Test
+    void failedRefreshKeepsThePreviousSnapshot() {
+        when(orderRepository.countGroupedByStatus())
+                .thenReturn(List.<Object[]>of(new Object[] {OrderStatus.PENDING, 1L}))
+                .thenThrow(new IllegalStateException("database unavailable"));
+        when(transactionRepository.countGroupedByStatus()).thenReturn(List.of());
+
+        statistics.refresh();
+        statistics.refresh();
+
+        assertThat(statistics.current().orders(OrderStatus.PENDING)).isEqualTo(1);
+    }
+}
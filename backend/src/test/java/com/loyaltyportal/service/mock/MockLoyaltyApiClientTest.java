@@ -0,0 +1,58 @@
+package com.loyaltyportal.service.mock;
+
+import com.loyaltyportal.dto.TransactionResponse;
+import com.loyaltyportal.service.mock.standin.LatencyDistribution;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MockLoyaltyApiClientTest {
+
+    @Test
+    void latencyDoesNotBlockTheSubscribingThread() {
+        LatencyDistribution latency = LatencyDistribution.fixed(Duration.ofMillis(200));
+        MockLoyaltyApiClient client = new MockLoyaltyApiClient(latency, latency, latency);
+        client.setAccountBalance("ACCT-1", 1_000_000);
+        Scheduler single = Schedulers.newSingle("mock-caller");
+
+        try {
+            long start = System.nanoTime();
+            List<TransactionResponse> responses = Flux.range(0, 100)
+                    .flatMap(i -> client.creditPoints("ACCT-1", 1, "REF-" + i).subscribeOn(single), 100)
+                    .collectList()
+                    .block(Duration.ofSeconds(10));
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+            // A sleeping mock would need 100 x 200ms on one thread
+            assertThat(responses).hasSize(100);
+            assertThat(elapsedMillis).isLessThan(5_000);
+        } finally {
+            single.dispose();
+        }
+    }
+
+    @Test
+    void concurrentDebitsNeverOverdraw() {
+        MockLoyaltyApiClient client = new MockLoyaltyApiClient(LatencyDistribution.none(),
+                LatencyDistribution.none(), LatencyDistribution.none());
+        client.setAccountBalance("ACCT-1", 1000);
+
+        List<TransactionResponse> responses = Flux.range(0, 200)
+                .parallel(8)
+                .runOn(Schedulers.parallel())
+                .flatMap(i -> client.debitPoints("ACCT-1", 10, "REF-" + i))
+                .sequential()
+                .collectList()
+                .block(Duration.ofSeconds(10));
+
+        long debited = responses.stream().filter(response -> "SUCCESS".equals(response.getStatus())).count();
+        assertThat(debited).isLessThanOrEqualTo(100);
+        assertThat(client.getCurrentBalance("ACCT-1")).isEqualTo(1000 - 10 * (int) debited);
+    }
+}
@@ -0,0 +1,77 @@
+package com.loyaltyportal.service.mock;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MockRecordStoreTest {
+
+    @Test
+    void oldestRecordsAreEvictedFromRingAndIndexes() {
+        MockRecordStore<String[]> store = store(3);
+        store.add(record("1", "a@example.com", "SHIPPING"));
+        store.add(record("2", "b@example.com", "SHIPPING"));
+        store.add(record("3", "a@example.com", "DELIVERY"));
+        store.add(record("4", "a@example.com", "DELIVERY"));
+
+        assertThat(store.size()).isEqualTo(3);
+        assertThat(store.get("1")).isNull();
+        assertThat(store.get("4")).isNotNull();
+        assertThat(store.findByGroup("a@example.com")).extracting(r -> r[0]).containsExactly("3", "4");
+        assertThat(store.find(r -> true)).extracting(r -> r[0]).containsExactly("2", "3", "4");
+        assertThat(store.evictedCount()).isEqualTo(1);
+    }
+
+    @Test
+    void countersCoverEvictedRecords() {
+        MockRecordStore<String[]> store = store(2);
+        for (int i = 0; i < 5; i++) {
+            store.add(record(String.valueOf(i), "a@example.com", i % 2 == 0 ? "SHIPPING" : "DELIVERY"));
+        }
+
+        assertThat(store.totalRecorded()).isEqualTo(5);
+        assertThat(store.countOf("SHIPPING")).isEqualTo(3);
+        assertThat(store.countsByType()).containsEntry("DELIVERY", 2L);
+
+        store.clear();
+
+        assertThat(store.totalRecorded()).isZero();
+        assertThat(store.findByGroup("a@example.com")).isEmpty();
+    }
+
+    @Test
+    void concurrentWritersStayWithinCapacity() throws InterruptedException {
+        MockRecordStore<String[]> store = store(100);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int thread = 0; thread < 8; thread++) {
+            int t = thread;
+            executor.submit(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    store.add(record(t + "-" + i, "user" + (i % 10) + "@example.com", "SHIPPING"));
+                }
+            });
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(store.totalRecorded()).isEqualTo(8000);
+        assertThat(store.size()).isEqualTo(100);
+        int indexed = 0;
+        for (int i = 0; i < 10; i++) {
+            indexed += store.findByGroup("user" + i + "@example.com").size();
+        }
+        assertThat(indexed).isEqualTo(100);
+    }
+
+    private MockRecordStore<String[]> store(int capacity) {
+        return new MockRecordStore<>(capacity, r -> r[0], r -> r[1], r -> r[2]);
+    }
+
+    private String[] record(String id, String recipient, String type) {
+        return new String[] {id, recipient, type};
+    }
+}
@@ -0,0 +1,39 @@
+package com.loyaltyportal.service.mock.standin;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class LatencyDistributionTest {
+
+    @Test
+    void specsAreParsed() {
+        assertThat(LatencyDistribution.parse("none").sampleMillis()).isZero();
+        assertThat(LatencyDistribution.parse("fixed:250ms").sampleMillis()).isEqualTo(250);
+        assertThat(IntStream.range(0, 1000).mapToLong(i -> LatencyDistribution.parse("uniform:300ms-800ms")
+                .sampleMillis())).allMatch(millis -> millis >= 300 && millis <= 800);
+        assertThat(LatencyDistribution.parse("lognormal:40ms/400ms").toString()).contains("p50=40ms", "p99=400ms");
+    }
+
+    @Test
+    void bimodalDrawsTailAtGivenRate() {
+        LatencyDistribution latency = LatencyDistribution.bimodal(LatencyDistribution.parse("fixed:10ms"),
+                LatencyDistribution.parse("fixed:1s"), 0.1);
+
+        long slow = IntStream.range(0, 10_000).filter(i -> latency.sampleMillis() == 1000).count();
+
+        assertThat(slow).isBetween(800L, 1200L);
+        assertThat(LatencyDistribution.parse("bimodal:20ms/60ms,1s/3s,0.02").toString()).startsWith("bimodal(");
+    }
+
+    @Test
+    void malformedSpecIsRejected() {
+        assertThatThrownBy(() -> LatencyDistribution.parse("uniform:300ms"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> LatencyDistribution.parse("gaussian:10ms"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,98 @@
+package com.loyaltyportal.service.mock.standin;
+
+import com.loyaltyportal.dto.StatementEntry;
+import com.loyaltyportal.service.LoyaltyApiClient;
+import com.loyaltyportal.service.resilience.ProviderRateLimiter;
+import com.loyaltyportal.service.resilience.ProviderResilience;
+import com.loyaltyportal.service.resilience.ProviderRetry;
+import com.loyaltyportal.service.resilience.RequestHedger;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StandInProviderServerTest {
+
+    private StandInProviderServer provider;
+
+    @BeforeEach
+    void startProvider() throws IOException {
+        provider = new StandInProviderServer(0);
+        provider.start();
+        provider.setBalance("ACME001", 50000);
+    }
+
+    @AfterEach
+    void stopProvider() {
+        provider.stop();
+    }
+
+    @Test
+    void retriedDebitAfterTimeoutIsAppliedOnce() {
+        ProviderRetry retry = new ProviderRetry(new SimpleMeterRegistry(), 3, Duration.ofMillis(1),
+                Duration.ofMillis(5), 0.5, 1.0, 10);
+        LoyaltyApiClient client = client(Duration.ofMillis(300), retry);
+        // The first call in a fresh JVM spends longer than 300ms starting the shared
+        // event loop, so without a warm-up every attempt times out before it is sent
+        client(Duration.ofSeconds(5), ProviderRetry.disabled()).getBalance("ACME001").block(Duration.ofSeconds(5));
+
+        // Every response trickles in far slower than the client is willing to wait
+        provider.setProfile("debit", FaultProfile.healthy().withSlowDrip(1.0, Duration.ofMillis(200)));
+
+        StepVerifier.create(client.debitPoints("ACME001", 100, "ORDER-1001"))
+                .expectError(TimeoutException.class)
+                .verify(Duration.ofSeconds(10));
+
+        assertThat(provider.getRequestCount("debit")).isEqualTo(3);
+        assertThat(provider.getBalance("ACME001")).isEqualTo(49900);
+    }
+
+    @Test
+    void throttlingSurfacesRetryAfter() {
+        provider.setProfile("balance", FaultProfile.healthy().withThrottling(1.0, Duration.ofSeconds(2)));
+        LoyaltyApiClient client = client(Duration.ofSeconds(2), ProviderRetry.disabled());
+
+        StepVerifier.create(client.getBalance("ACME001"))
+                .expectErrorSatisfies(error -> {
+                    assertThat(error).isInstanceOf(LoyaltyApiClient.LoyaltyApiException.class);
+                    LoyaltyApiClient.LoyaltyApiException apiError = (LoyaltyApiClient.LoyaltyApiException) error;
+                    assertThat(apiError.getStatus()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+                    assertThat(apiError.getRetryAfter()).isEqualTo(Duration.ofSeconds(2));
+                })
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void statementIsPagedInTransactionIdOrder() {
+        LoyaltyApiClient client = client(Duration.ofSeconds(2), ProviderRetry.disabled());
+        LocalDateTime from = LocalDateTime.now().minusMinutes(1);
+        for (int i = 0; i < 5; i++) {
+            client.debitPoints("ACME001", 10, "ORDER-" + i).block(Duration.ofSeconds(5));
+        }
+        client.creditPoints("ACME001", 10, "REFUND-1").block(Duration.ofSeconds(5));
+
+        List<StatementEntry> entries = client.streamStatement(from, LocalDateTime.now().plusMinutes(1), 2)
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        assertThat(entries).hasSize(6);
+        assertThat(entries).extracting(StatementEntry::getTransactionId).isSorted();
+        assertThat(entries).filteredOn(entry -> "CREDIT".equals(entry.getType())).hasSize(1);
+        assertThat(provider.getRequestCount("statement")).isEqualTo(3);
+    }
+
+    private LoyaltyApiClient client(Duration timeout, ProviderRetry retry) {
+        return new LoyaltyApiClient(provider.getBaseUrl(), "test-key", timeout, ProviderResilience.disabled(),
+                retry, ProviderRateLimiter.disabled(), RequestHedger.disabled());
+    }
+}
@@ -0,0 +1,84 @@
+package com.loyaltyportal.service.notification;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class EmailTemplateTest {
+
+    private final EmailTemplates templates = new EmailTemplates();
+
+    @Test
+    void shippingEmailIsRenderedFromView() {
+        String body = templates.shipping(item("1 Main Street"));
+
+        assertThat(body).startsWith("Dear Account Manager,\n\nYour item has been shipped:\n\n");
+        assertThat(body).contains("SKU: MUG-001\nQuantity: 2\nOrder: ORD-1\nTracking Number: 1Z999\n\n");
+        assertThat(body).contains("Shipping Address:\n1 Main Street\n\n");
+        assertThat(body).endsWith("Loyalty Redemption Portal Team");
+    }
+
+    @Test
+    void sectionIsSkippedWhenFieldIsMissing() {
+        String body = templates.shipping(item(null));
+
+        assertThat(body).doesNotContain("Shipping Address");
+        assertThat(body).contains("Tracking Number: 1Z999\n\nYou can track your shipment");
+    }
+
+    @Test
+    void missingTrackingAndDeliveryAreLeftOut() {
+        ItemEmailView item = new ItemEmailView("Account Manager", "manager@example.com", "ORD-1", null,
+                "Travel Mug", "MUG-001", 2, null, null, null);
+
+        assertThat(templates.shipping(item)).doesNotContain("null").doesNotContain("Tracking Number")
+                .contains("Order: ORD-1\n\nThank you for your business!");
+        assertThat(templates.delivery(item)).doesNotContain("null").doesNotContain("Delivered At");
+        assertThat(templates.virtualFulfillment(item)).doesNotContain("null").doesNotContain("Delivered At");
+        assertThat(templates.digestLine("SHIPPING", item)).isEqualTo("Travel Mug (MUG-001) x2");
+        assertThat(templates.digestLine("DELIVERY", item)).isEqualTo("Travel Mug (MUG-001) x2");
+    }
+
+    @Test
+    void nullFieldRendersAsNothing() {
+        EmailTemplate<ItemEmailView> template = EmailTemplate.compile("plain", "[{{trackingNumber}}]", ItemEmailView.FIELDS);
+
+        assertThat(template.render(item(null))).isEqualTo("[1Z999]");
+        assertThat(template.render(new ItemEmailView(null, null, null, null, null, null, null, null, null, null)))
+                .isEqualTo("[]");
+    }
+
+    @Test
+    void digestListsEveryLine() {
+        ItemEmailView item = item(null);
+        String line = templates.digestLine("SHIPPING", item);
+
+        String body = templates.digest("SHIPPING", new DigestEmailView("Account Manager", "ORD-1", List.of(line, line)));
+
+        assertThat(line).isEqualTo("Travel Mug (MUG-001) x2 - tracking number 1Z999");
+        assertThat(body).contains("have been shipped:\n\n- " + line + "\n- " + line + "\n\n");
+        assertThat(EmailTemplates.digestSubject("SHIPPING", "ORD-1", 2)).isEqualTo("2 Items Shipped - ORD-1");
+    }
+
+    @Test
+    void unknownFieldFailsAtCompileTime() {
+        assertThatThrownBy(() -> EmailTemplate.compile("broken", "Dear {{recipient}}", ItemEmailView.FIELDS))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("recipient");
+    }
+
+    @Test
+    void unclosedSectionIsRejected() {
+        assertThatThrownBy(() -> EmailTemplate.compile("broken", "{{#sku}}SKU", ItemEmailView.FIELDS))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private ItemEmailView item(String shippingAddress) {
+        return new ItemEmailView("Account Manager", "manager@example.com", "ORD-1", shippingAddress,
+                "Travel Mug", "MUG-001", 2, "1Z999", LocalDateTime.of(2024, 3, 1, 9, 0), null);
+    }
+}
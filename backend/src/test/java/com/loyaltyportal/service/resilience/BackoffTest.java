@@ -0,0 +1,20 @@
+package com.loyaltyportal.service.resilience;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BackoffTest {
+
+    @Test
+    void backoffDoublesWithJitterUpToTheCap() {
+        Backoff backoff = new Backoff(Duration.ofSeconds(30), Duration.ofMinutes(30));
+        for (int i = 0; i < 100; i++) {
+            assertThat(backoff.after(1)).isBetween(Duration.ofSeconds(15), Duration.ofSeconds(30));
+            assertThat(backoff.after(3)).isBetween(Duration.ofSeconds(60), Duration.ofSeconds(120));
+            assertThat(backoff.after(30)).isBetween(Duration.ofMinutes(15), Duration.ofMinutes(30));
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.loyaltyportal.service.resilience;
+
+import com.loyaltyportal.service.resilience.ProviderRateLimiter.Priority;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ProviderRateLimiterTest {
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void burstIsSmoothedInsteadOfFailed() {
+        ProviderRateLimiter limiter = limiter(20, 5, Duration.ofSeconds(5));
+
+        long start = System.nanoTime();
+        List<String> results = Flux.range(0, 15)
+                .flatMap(i -> limiter.throttle("debit", "ACME001", Priority.HIGH, Mono.just("ok")), 15)
+                .collectList()
+                .block(Duration.ofSeconds(10));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // 5 from the burst, the other 10 at 20/s
+        assertThat(results).hasSize(15);
+        assertThat(elapsedMillis).isGreaterThanOrEqualTo(400);
+        assertThat(meterRegistry.get("loyalty.provider.ratelimit.queue.wait")
+                .tag("endpoint", "debit").tag("priority", "high").timer().count()).isEqualTo(15);
+    }
+
+    @Test
+    void debitsAreServedBeforeBalanceChecks() {
+        ProviderRateLimiter limiter = limiter(10, 1, Duration.ofSeconds(5));
+        limiter.throttle("balance", null, Priority.LOW, Mono.just("burst")).block();
+
+        List<String> order = new CopyOnWriteArrayList<>();
+        Mono<String> balance = limiter.throttle("balance", null, Priority.LOW, Mono.fromSupplier(() -> "balance"))
+                .doOnNext(order::add);
+        Mono<String> debit = limiter.throttle("balance", null, Priority.HIGH, Mono.fromSupplier(() -> "debit"))
+                .doOnNext(order::add);
+
+        Flux.merge(balance, debit).blockLast(Duration.ofSeconds(5));
+
+        assertThat(order).containsExactly("debit", "balance");
+    }
+
+    @Test
+    void callFailsWhenWaitExceedsMaxWait() {
+        ProviderRateLimiter limiter = limiter(1, 1, Duration.ofMillis(100));
+        limiter.throttle("debit", null, Priority.HIGH, Mono.just("burst")).block();
+
+        StepVerifier.create(limiter.throttle("debit", null, Priority.HIGH, Mono.just("late")))
+                .expectErrorMatches(error -> error instanceof CallRejectedException
+                        && ((CallRejectedException) error).getReason() == CallRejectedException.Reason.RATE_LIMITED)
+                .verify(Duration.ofSeconds(5));
+        assertThat(limiter.getQueueSize("debit")).isZero();
+    }
+
+    @Test
+    void providerThrottlingPausesTheEndpoint() {
+        ProviderRateLimiter limiter = limiter(100, 10, Duration.ofSeconds(5));
+        limiter.onThrottled("debit", Duration.ofMillis(300));
+
+        long start = System.nanoTime();
+        limiter.throttle("debit", null, Priority.HIGH, Mono.just("ok")).block(Duration.ofSeconds(5));
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(250);
+    }
+
+    private ProviderRateLimiter limiter(double requestsPerSecond, double burst, Duration maxWait) {
+        return new ProviderRateLimiter(meterRegistry, true, requestsPerSecond, burst, 1, 0, maxWait, 100);
+    }
+}
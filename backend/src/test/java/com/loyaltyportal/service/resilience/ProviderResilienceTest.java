@@ -0,0 +1,133 @@
+package com.loyaltyportal.service.resilience;
+
+import com.loyaltyportal.service.LoyaltyApiClient;
+import com.loyaltyportal.service.mock.standin.FaultProfile;
+import com.loyaltyportal.service.mock.standin.LatencyDistribution;
+import com.loyaltyportal.service.mock.standin.StandInProviderServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Exercises the resilience layer through the real {@link LoyaltyApiClient} against a
+ * local stand-in provider with injected latency and failures.
+ */
+public class ProviderResilienceTest {
+
+    private StandInProviderServer provider;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void startProvider() throws IOException {
+        provider = new StandInProviderServer(0);
+        provider.start();
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void stopProvider() {
+        provider.stop();
+    }
+
+    @Test
+    void circuitOpensOnFailureRateAndRejectsWithoutCallingProvider() {
+        provider.setProfile("balance", FaultProfile.healthy().withErrorRate(1.0));
+        ProviderResilience resilience = resilience(10, 5, 50, 20);
+        LoyaltyApiClient client = client(resilience);
+
+        for (int i = 0; i < 5; i++) {
+            StepVerifier.create(client.getBalance("TEST001")).expectError().verify(Duration.ofSeconds(5));
+        }
+
+        assertThat(resilience.getCircuitState("balance")).isEqualTo(CircuitBreaker.State.OPEN);
+
+        StepVerifier.create(client.getBalance("TEST001"))
+                .expectError(CallRejectedException.class)
+                .verify(Duration.ofSeconds(5));
+
+        assertThat(provider.getRequestCount("balance")).isEqualTo(5);
+        assertThat(meterRegistry.get("loyalty.provider.calls.rejected")
+                .tag("endpoint", "balance").tag("reason", "circuit_open")
+                .counter().count()).isEqualTo(1.0);
+        assertThat(meterRegistry.get("loyalty.provider.circuit.state")
+                .tag("endpoint", "balance").gauge().value()).isEqualTo(1.0);
+    }
+
+    @Test
+    void clientErrorsDoNotTripTheBreaker() {
+        ProviderResilience resilience = resilience(10, 5, 50, 20);
+        LoyaltyApiClient client = client(resilience);
+
+        // The stand-in answers 404 for a missing account ID
+        for (int i = 0; i < 10; i++) {
+            StepVerifier.create(client.getBalance("")).expectError().verify(Duration.ofSeconds(5));
+        }
+
+        assertThat(resilience.getCircuitState("balance")).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void bulkheadRejectsCallsBeyondMaxConcurrency() {
+        provider.setProfile("balance", FaultProfile.healthy()
+                .withLatency(LatencyDistribution.fixed(Duration.ofMillis(500))));
+        ProviderResilience resilience = resilience(50, 20, 2, 100);
+        LoyaltyApiClient client = client(resilience);
+
+        List<String> outcomes = Flux.range(0, 5)
+                .flatMap(i -> client.getBalance("TEST001")
+                        .map(balance -> "ok")
+                        .onErrorResume(CallRejectedException.class, e -> Mono.just(e.getReason().getTag())), 5)
+                .collectList()
+                .block(Duration.ofSeconds(10));
+
+        assertThat(outcomes).filteredOn("ok"::equals).hasSize(2);
+        assertThat(outcomes).filteredOn("bulkhead_full"::equals).hasSize(3);
+        assertThat(provider.getRequestCount("balance")).isEqualTo(2);
+    }
+
+    @Test
+    void concurrencyLimitShrinksWhenProviderLatencySpikes() {
+        provider.setProfile("balance", FaultProfile.healthy()
+                .withLatency(LatencyDistribution.fixed(Duration.ofMillis(10))));
+        ProviderResilience resilience = resilience(50, 20, 50, 20);
+        LoyaltyApiClient client = client(resilience);
+
+        for (int i = 0; i < 60; i++) {
+            client.getBalance("TEST001").block(Duration.ofSeconds(5));
+        }
+        int limitBeforeSpike = resilience.getConcurrencyLimit("balance");
+
+        provider.setProfile("balance", FaultProfile.healthy()
+                .withLatency(LatencyDistribution.fixed(Duration.ofMillis(300))));
+        for (int i = 0; i < 5; i++) {
+            client.getBalance("TEST001").block(Duration.ofSeconds(5));
+        }
+
+        assertThat(resilience.getConcurrencyLimit("balance")).isLessThan(limitBeforeSpike);
+        assertThat(meterRegistry.get("loyalty.provider.concurrency.limit")
+                .tag("endpoint", "balance").gauge().value())
+                .isEqualTo(resilience.getConcurrencyLimit("balance"));
+    }
+
+    private ProviderResilience resilience(int windowSize, int minimumCalls, int bulkhead, int initialLimit) {
+        return new ProviderResilience(meterRegistry, true, 50, windowSize, minimumCalls, Duration.ofMinutes(1),
+                2, bulkhead, initialLimit, 1, 200, 0.9, 2.0, Clock.systemUTC());
+    }
+
+    private LoyaltyApiClient client(ProviderResilience resilience) {
+        return new LoyaltyApiClient(provider.getBaseUrl(), "test-key",
+                Duration.ofSeconds(2), resilience, ProviderRetry.disabled(),
+                ProviderRateLimiter.disabled(), RequestHedger.disabled());
+    }
+}
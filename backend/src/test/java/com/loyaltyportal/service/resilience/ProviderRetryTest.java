@@ -0,0 +1,90 @@
+package com.loyaltyportal.service.resilience;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.net.ConnectException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ProviderRetryTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private AtomicInteger attempts;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        attempts = new AtomicInteger();
+    }
+
+    @Test
+    void timeoutIsRetriedOnlyWithIdempotencyKey() {
+        ProviderRetry retry = retry(1.0, 10);
+
+        StepVerifier.create(retry.nonIdempotent("debit", failing(new TimeoutException())))
+                .expectError(TimeoutException.class)
+                .verify(Duration.ofSeconds(5));
+        assertThat(attempts.get()).isEqualTo(1);
+
+        attempts.set(0);
+        StepVerifier.create(retry.idempotent("debit", failing(new TimeoutException())))
+                .expectError(TimeoutException.class)
+                .verify(Duration.ofSeconds(5));
+        assertThat(attempts.get()).isEqualTo(3);
+        assertThat(count("loyalty.provider.retries")).isEqualTo(2.0);
+    }
+
+    @Test
+    void connectionRefusedIsRetriedWithoutIdempotencyKey() {
+        ProviderRetry retry = retry(1.0, 10);
+        WebClientRequestException refused = new WebClientRequestException(new ConnectException("refused"),
+                HttpMethod.POST, URI.create("http://localhost/debit"), new HttpHeaders());
+
+        StepVerifier.create(retry.nonIdempotent("debit", failing(refused)))
+                .expectError(WebClientRequestException.class)
+                .verify(Duration.ofSeconds(5));
+        assertThat(attempts.get()).isEqualTo(3);
+    }
+
+    @Test
+    void budgetCapsRetriesDuringAnOutage() {
+        ProviderRetry retry = retry(0.1, 2);
+
+        for (int i = 0; i < 50; i++) {
+            retry.idempotent("debit", failing(new TimeoutException()))
+                    .onErrorResume(error -> Mono.empty())
+                    .block(Duration.ofSeconds(5));
+        }
+
+        // 2 tokens to start with plus 0.1 per call, against 2 wanted per call
+        assertThat(attempts.get() - 50).isLessThanOrEqualTo(7);
+        assertThat(count("loyalty.provider.retry.budget.exhausted")).isGreaterThan(40.0);
+    }
+
+    private ProviderRetry retry(double budgetRatio, double budgetBurst) {
+        return new ProviderRetry(meterRegistry, 3, Duration.ofMillis(1), Duration.ofMillis(5), 0.5,
+                budgetRatio, budgetBurst);
+    }
+
+    private Mono<String> failing(Throwable error) {
+        return Mono.defer(() -> {
+            attempts.incrementAndGet();
+            return Mono.error(error);
+        });
+    }
+
+    private double count(String name) {
+        return meterRegistry.get(name).tag("endpoint", "debit").counter().count();
+    }
+}
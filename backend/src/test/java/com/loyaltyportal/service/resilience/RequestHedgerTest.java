@@ -0,0 +1,124 @@
+package com.loyaltyportal.service.resilience;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RequestHedgerTest {
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void hedgeWinsWhenPrimaryIsSlow() {
+        RequestHedger hedger = hedger(1.0, 10);
+        AtomicInteger calls = new AtomicInteger();
+
+        StepVerifier.create(hedger.hedge("balance", () -> calls.incrementAndGet() == 1
+                        ? Mono.delay(Duration.ofSeconds(5)).map(tick -> "slow")
+                        : Mono.just("fast")))
+                .expectNext("fast")
+                .expectComplete()
+                .verify(Duration.ofSeconds(2));
+
+        assertThat(calls.get()).isEqualTo(2);
+        assertThat(count("loyalty.provider.hedge.fired")).isEqualTo(1.0);
+        assertThat(count("loyalty.provider.hedge.won")).isEqualTo(1.0);
+    }
+
+    @Test
+    void exhaustedBudgetSuppressesHedges() {
+        RequestHedger hedger = hedger(0.0, 0);
+        AtomicInteger calls = new AtomicInteger();
+
+        StepVerifier.create(hedger.hedge("balance", () -> {
+                    calls.incrementAndGet();
+                    return Mono.delay(Duration.ofMillis(300)).map(tick -> "slow");
+                }))
+                .expectNext("slow")
+                .expectComplete()
+                .verify(Duration.ofSeconds(2));
+
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(count("loyalty.provider.hedge.fired")).isEqualTo(0.0);
+        assertThat(count("loyalty.provider.hedge.budget.exhausted")).isEqualTo(1.0);
+    }
+
+    @Test
+    void failedHedgeDoesNotBeatPrimary() {
+        RequestHedger hedger = hedger(1.0, 10);
+        AtomicInteger calls = new AtomicInteger();
+
+        StepVerifier.create(hedger.hedge("balance", () -> calls.incrementAndGet() == 1
+                        ? Mono.delay(Duration.ofMillis(300)).map(tick -> "primary")
+                        : Mono.<String>error(new IllegalStateException("hedge failed"))))
+                .expectNext("primary")
+                .expectComplete()
+                .verify(Duration.ofSeconds(2));
+    }
+
+    @Test
+    void failedPrimaryWaitsForInFlightHedge() {
+        RequestHedger hedger = hedger(1.0, 10);
+        AtomicInteger calls = new AtomicInteger();
+
+        // The hedge fires at 100ms; the primary is reset at 150ms, before the hedge answers
+        StepVerifier.create(hedger.hedge("balance", () -> calls.incrementAndGet() == 1
+                        ? Mono.delay(Duration.ofMillis(150)).then(Mono.<String>error(new IllegalStateException("reset")))
+                        : Mono.delay(Duration.ofMillis(200)).map(tick -> "hedge")))
+                .expectNext("hedge")
+                .expectComplete()
+                .verify(Duration.ofSeconds(2));
+
+        assertThat(calls.get()).isEqualTo(2);
+        assertThat(count("loyalty.provider.hedge.won")).isEqualTo(1.0);
+    }
+
+    @Test
+    void failedPrimaryWithoutHedgeFailsAtOnce() {
+        RequestHedger hedger = hedger(1.0, 10);
+        AtomicInteger calls = new AtomicInteger();
+
+        StepVerifier.create(hedger.hedge("balance", () -> {
+                    calls.incrementAndGet();
+                    return Mono.<String>error(new IllegalStateException("reset"));
+                }))
+                .expectErrorMessage("reset")
+                .verify(Duration.ofSeconds(2));
+
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(count("loyalty.provider.hedge.fired")).isEqualTo(0.0);
+    }
+
+    @Test
+    void hedgeDelayFollowsObservedLatency() {
+        RequestHedger hedger = hedger(1.0, 10);
+        assertThat(hedger.getHedgeDelay("balance")).isEqualTo(Duration.ofMillis(100));
+
+        for (int i = 0; i < 128; i++) {
+            hedger.hedge("balance", () -> Mono.just("fast")).block();
+        }
+
+        assertThat(hedger.getHedgeDelay("balance")).isEqualTo(Duration.ofMillis(10));
+    }
+
+    private RequestHedger hedger(double budgetRatio, double budgetBurst) {
+        return new RequestHedger(meterRegistry, true, 95, Duration.ofMillis(10), Duration.ofMillis(100),
+                budgetRatio, budgetBurst);
+    }
+
+    private double count(String name) {
+        return meterRegistry.get(name).tag("endpoint", "balance").counter().count();
+    }
+}
@@ -0,0 +1,46 @@
+package com.loyaltyportal.support;
+
+import liquibase.Contexts;
+import liquibase.Liquibase;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+
+/**
+ * A PostgreSQL container with the Liquibase changelog applied, for tests that need what
+ * only PostgreSQL gets: the partitioned ledger, the vendor SQL changesets and the
+ * INCLUDE columns appended by {@code modifySql}.
+ */
+public final class PostgresSchema {
+
+    private static final String CHANGELOG = "db/changelog/db.changelog-master.xml";
+
+    private PostgresSchema() {
+    }
+
+    public static PostgreSQLContainer<?> container() {
+        return new PostgreSQLContainer<>(DockerImageName.parse("postgres:14-alpine"));
+    }
+
+    /**
+     * Apply the changelog, without the development sample data, and return a data source
+     * for the migrated database
+     */
+    public static DataSource migrate(PostgreSQLContainer<?> postgres) throws Exception {
+        DataSource dataSource = new DriverManagerDataSource(postgres.getJdbcUrl(), postgres.getUsername(),
+                postgres.getPassword());
+        try (Connection connection = dataSource.getConnection()) {
+            Database database = DatabaseFactory.getInstance()
+                    .findCorrectDatabaseImplementation(new JdbcConnection(connection));
+            new Liquibase(CHANGELOG, new ClassLoaderResourceAccessor(), database).update(new Contexts("test"));
+        }
+        return dataSource;
+    }
+}